@@ -0,0 +1,56 @@
+package com.example.insurance.benchmark;
+
+import com.example.insurance.metrics.QueryStageMetrics;
+import com.example.insurance.service.FacetCalculator;
+import com.example.insurance.service.PolicyLoader;
+import com.example.insurance.service.PolicyService;
+import com.example.insurance.service.QueryPlanner;
+import com.example.insurance.service.QueryResultCache;
+import com.example.insurance.store.PolicyStore;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A {@link PolicyService} wired by hand around a synthetic catalogue, shared by all benchmark
+ * threads of a trial.
+ * <p>
+ * The query result cache is disabled, so every invocation measures the planner and the store
+ * rather than a cache hit; {@link #cachedService} has the default cache for measuring the hit path.
+ */
+@State(Scope.Benchmark)
+public class CatalogueState {
+
+    /**
+     * Number of policies in the catalogue. Narrow the sizes with
+     * {@code -Pjmh.catalogueSizes=10000,100000}.
+     */
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int catalogueSize;
+
+    PolicyStore store;
+    PolicyService service;
+    PolicyService cachedService;
+
+    @Setup(Level.Trial)
+    public void load() {
+        store = SyntheticCatalogue.generate(catalogueSize);
+        service = serviceOf(store, 0);
+        cachedService = serviceOf(store, 4_000_000);
+    }
+
+    private static PolicyService serviceOf(PolicyStore store, long cacheRows) {
+        PolicyLoader loader = new PolicyLoader("", "", false, "", 0, 1) {
+            @Override
+            public PolicyStore load() {
+                return store;
+            }
+        };
+        QueryPlanner planner = new QueryPlanner(new QueryStageMetrics());
+        PolicyService service = new PolicyService(loader, planner, new QueryResultCache(planner, cacheRows), new FacetCalculator());
+        service.loadPolicies();
+        return service;
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.insurance.benchmark;
+
+import com.example.insurance.model.Policy;
+import com.example.insurance.model.PolicyPage;
+import com.example.insurance.model.PolicyQuery;
+import com.example.insurance.store.PolicyRows;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the {@code PolicyService} read paths behind the REST endpoints: filtering, name
+ * search and pagination. Results are returned as the service returns them, so the lazily
+ * materialised lists cost what they cost a request; {@link #filterPoliciesAsJson} adds the
+ * response serialization.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PolicyServiceBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    /**
+     * One type with a coverage floor, ordered by premium: an index intersection plus a sort.
+     */
+    private static final PolicyQuery TYPE_AND_COVERAGE = new PolicyQuery(null, null, "Health", 1_000_000, "desc", null, "premium");
+
+    /**
+     * A narrow premium band ordered by name: a range index lookup plus a sort.
+     */
+    private static final PolicyQuery PREMIUM_RANGE = new PolicyQuery(2000, 2100, null, null, "asc", null, null);
+
+    /**
+     * A substring of many names combined with a type.
+     */
+    private static final PolicyQuery NAME_AND_TYPE = new PolicyQuery(null, null, "Home", null, null, "shelter", null);
+
+    @Benchmark
+    public List<Policy> filterByTypeAndCoverage(CatalogueState state) {
+        return state.service.filterPolicies(TYPE_AND_COVERAGE);
+    }
+
+    @Benchmark
+    public List<Policy> filterByPremiumRange(CatalogueState state) {
+        return state.service.filterPolicies(PREMIUM_RANGE);
+    }
+
+    @Benchmark
+    public List<Policy> filterByNameAndType(CatalogueState state) {
+        return state.service.filterPolicies(NAME_AND_TYPE);
+    }
+
+    @Benchmark
+    public List<Policy> filterCached(CatalogueState state) {
+        return state.cachedService.filterPolicies(TYPE_AND_COVERAGE);
+    }
+
+    @Benchmark
+    public long filterPoliciesAsJson(CatalogueState state) throws IOException {
+        PolicyRows rows = (PolicyRows) state.service.filterPolicies(PREMIUM_RANGE);
+        CountingOutputStream out = new CountingOutputStream();
+        rows.writeJson(out);
+        return out.count;
+    }
+
+    @Benchmark
+    public List<Policy> getPoliciesByName(CatalogueState state) {
+        return state.service.getPoliciesByName("Shield");
+    }
+
+    @Benchmark
+    public List<Policy> getPoliciesByShortName(CatalogueState state) {
+        return state.service.getPoliciesByName("me");
+    }
+
+    @Benchmark
+    public PolicyPage firstPage(CatalogueState state) {
+        return state.service.getPoliciesWithTotalCount(0, PAGE_SIZE, null, true);
+    }
+
+    @Benchmark
+    public PolicyPage middlePage(CatalogueState state) {
+        return state.service.getPoliciesWithTotalCount(state.catalogueSize / PAGE_SIZE / 2, PAGE_SIZE, null, true);
+    }
+
+    @Benchmark
+    public PolicyPage firstPageByName(CatalogueState state) {
+        return state.service.getPoliciesWithTotalCount(0, PAGE_SIZE, "care", true);
+    }
+
+    @Benchmark
+    public PolicyPage firstPageByPremium(CatalogueState state) {
+        return state.service.getPoliciesWithTotalCount(0, PAGE_SIZE, null, true, "premium", "desc", null);
+    }
+
+    /**
+     * Output stream that only counts bytes, so serialization is measured without any I/O.
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.insurance.benchmark;
+
+import com.example.insurance.model.Policy;
+import com.example.insurance.model.PolicyPage;
+import com.example.insurance.model.PolicyQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of ordering filtered results by each sort key, both for the full result of
+ * {@code filterPolicies} and for the first page of {@code filterPoliciesPage}, where only the top
+ * rows need to be selected.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SortBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    @Param({"name", "premium", "coverage", "value"})
+    public String sortBy;
+
+    @Param({"asc", "desc"})
+    public String sortOrder;
+
+    private PolicyQuery query;
+
+    @Setup(Level.Trial)
+    public void prepare() {
+        // one of the common types matches about a fifth of the catalogue
+        query = new PolicyQuery(null, null, "Health", null, sortOrder, null, sortBy);
+    }
+
+    @Benchmark
+    public List<Policy> sortFiltered(CatalogueState state) {
+        return state.service.filterPolicies(query);
+    }
+
+    @Benchmark
+    public PolicyPage sortFirstPage(CatalogueState state) {
+        return state.service.filterPoliciesPage(query, PAGE_SIZE, null);
+    }
+}
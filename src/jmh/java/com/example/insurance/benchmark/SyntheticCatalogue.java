@@ -0,0 +1,89 @@
+package com.example.insurance.benchmark;
+
+import com.example.insurance.store.PolicyStore;
+
+import java.util.SplittableRandom;
+
+/**
+ * Generates reproducible policy catalogues of any size, shaped like the bundled one.
+ * <p>
+ * Types follow the bundled catalogue's mix. Premiums are log-normal around a per-type median, and
+ * coverage is a type-dependent multiple of the premium rounded to 1,000, so range filters and
+ * sorts see realistic skew and duplicate values. Names are drawn from a small vocabulary, so
+ * substring searches match many rows, and a small share of rows has no premium or coverage.
+ */
+public final class SyntheticCatalogue {
+
+    /**
+     * Policy types, in order of frequency.
+     */
+    public static final String[] TYPES = {"Vehicle", "Health", "Critical Illness", "Home", "Term Life", "Travel"};
+
+    private static final int[] TYPE_WEIGHTS = {24, 19, 19, 14, 12, 12};
+    private static final int[] MEDIAN_PREMIUMS = {2000, 3000, 4500, 2500, 5000, 800};
+    private static final int[] COVERAGE_MULTIPLES = {150, 170, 300, 400, 200, 120};
+    private static final String[][] TYPE_WORDS = {
+            {"Car", "Motor", "Drive", "Auto"},
+            {"Health", "Care", "Medi", "Wellness"},
+            {"Critical", "Cancer", "Heart", "Recovery"},
+            {"Home", "House", "Property", "Shelter"},
+            {"Term", "Life", "Legacy", "Future"},
+            {"Travel", "Trip", "Journey", "Voyage"}
+    };
+    private static final String[] ADJECTIVES = {"Secure", "Smart", "Prime", "Gold", "Silver", "Family", "Plus",
+            "Total", "Easy", "Safe", "Max", "Senior", "Young", "Elite", "Basic", "Complete"};
+    private static final String[] SUFFIXES = {"Plan", "Cover", "Shield", "Protect", "Guard", "Policy"};
+
+    /**
+     * Share of rows, in permille, whose premium and coverage are each left empty.
+     */
+    private static final int NULL_PERMILLE = 5;
+
+    private static final long SEED = 20240601L;
+
+    private SyntheticCatalogue() {
+    }
+
+    /**
+     * Builds a store of the given size. The same size always yields the same catalogue.
+     *
+     * @param size number of policies
+     * @return the indexed store
+     */
+    public static PolicyStore generate(int size) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        int totalWeight = 0;
+        for (int weight : TYPE_WEIGHTS) {
+            totalWeight += weight;
+        }
+        PolicyStore.Builder builder = new PolicyStore.Builder(size);
+        StringBuilder name = new StringBuilder(48);
+        for (int row = 0; row < size; row++) {
+            int type = pickType(random.nextInt(totalWeight));
+            double premium = MEDIAN_PREMIUMS[type] * Math.exp(0.6 * random.nextGaussian());
+            int roundedPremium = (int) Math.max(100, Math.round(premium / 10) * 10);
+            double coverage = roundedPremium * COVERAGE_MULTIPLES[type] * (0.5 + random.nextDouble());
+            int roundedCoverage = (int) Math.min(Integer.MAX_VALUE, Math.round(coverage / 1000) * 1000);
+
+            name.setLength(0);
+            name.append(ADJECTIVES[random.nextInt(ADJECTIVES.length)]).append(' ')
+                    .append(TYPE_WORDS[type][random.nextInt(TYPE_WORDS[type].length)]).append(' ')
+                    .append(SUFFIXES[random.nextInt(SUFFIXES.length)]).append(' ')
+                    .append(random.nextInt(1000));
+            builder.add((long) row + 1, name.toString(), TYPES[type],
+                    random.nextInt(1000) < NULL_PERMILLE ? null : roundedPremium,
+                    random.nextInt(1000) < NULL_PERMILLE ? null : roundedCoverage);
+        }
+        return builder.build();
+    }
+
+    private static int pickType(int draw) {
+        for (int type = 0; type < TYPE_WEIGHTS.length; type++) {
+            draw -= TYPE_WEIGHTS[type];
+            if (draw < 0) {
+                return type;
+            }
+        }
+        return TYPE_WEIGHTS.length - 1;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.insurance.loadtest;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Writes a synthetic {@code insurance_policies.json} in the format the server loads.
+ * <p>
+ * Types, and the adjective that starts each name, are drawn from a Zipf distribution whose skew is
+ * configurable, so a skewed catalogue has a few dominant types and popular name words. Premiums
+ * are log-normal around a per-type median and coverage is a multiple of the premium. The
+ * vocabulary is shared with {@link RequestMix} so that searches hit real names.
+ */
+final class CatalogueGenerator {
+
+    static final String[] TYPES = {"Vehicle", "Health", "Critical Illness", "Home", "Term Life", "Travel"};
+    static final int[] MEDIAN_PREMIUMS = {2000, 3000, 4500, 2500, 5000, 800};
+    static final String[][] TYPE_WORDS = {
+            {"Car", "Motor", "Drive", "Auto"},
+            {"Health", "Care", "Medi", "Wellness"},
+            {"Critical", "Cancer", "Heart", "Recovery"},
+            {"Home", "House", "Property", "Shelter"},
+            {"Term", "Life", "Legacy", "Future"},
+            {"Travel", "Trip", "Journey", "Voyage"}
+    };
+    static final String[] ADJECTIVES = {"Secure", "Smart", "Prime", "Gold", "Silver", "Family", "Plus",
+            "Total", "Easy", "Safe", "Max", "Senior", "Young", "Elite", "Basic", "Complete"};
+    static final String[] SUFFIXES = {"Plan", "Cover", "Shield", "Protect", "Guard", "Policy"};
+
+    /**
+     * Names end in a number below this bound.
+     */
+    static final int NAME_NUMBERS = 1000;
+
+    private static final int[] COVERAGE_MULTIPLES = {150, 170, 300, 400, 200, 120};
+
+    private CatalogueGenerator() {
+    }
+
+    /**
+     * Writes a catalogue of the given size.
+     *
+     * @param file     the file to write
+     * @param policies number of policies
+     * @param skew     Zipf exponent of the type and name-word distributions
+     * @param seed     random seed; the same arguments always produce the same file
+     * @throws IOException if the file cannot be written
+     */
+    static void write(Path file, int policies, double skew, long seed) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        ZipfDistribution types = new ZipfDistribution(TYPES.length, skew);
+        ZipfDistribution adjectives = new ZipfDistribution(ADJECTIVES.length, skew);
+        try (JsonGenerator generator = new JsonFactory().createGenerator(file.toFile(), JsonEncoding.UTF8)) {
+            generator.writeStartArray();
+            for (int i = 0; i < policies; i++) {
+                int type = types.sample(random);
+                int premium = (int) Math.max(100, Math.round(MEDIAN_PREMIUMS[type] * Math.exp(0.6 * random.nextGaussian()) / 10) * 10);
+                long coverage = Math.round(premium * COVERAGE_MULTIPLES[type] * (0.5 + random.nextDouble()) / 1000) * 1000;
+
+                generator.writeStartObject();
+                generator.writeNumberField("id", i + 1);
+                generator.writeStringField("name", ADJECTIVES[adjectives.sample(random)] + " "
+                        + TYPE_WORDS[type][random.nextInt(TYPE_WORDS[type].length)] + " "
+                        + SUFFIXES[random.nextInt(SUFFIXES.length)] + " " + random.nextInt(NAME_NUMBERS));
+                generator.writeStringField("type", TYPES[type]);
+                generator.writeNumberField("premium", premium);
+                generator.writeNumberField("coverage", (int) Math.min(coverage, Integer.MAX_VALUE));
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+    }
+}
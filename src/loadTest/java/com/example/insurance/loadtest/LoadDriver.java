@@ -0,0 +1,154 @@
+package com.example.insurance.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Drives the server with a fixed number of concurrent clients, each on its own virtual thread
+ * sending requests from the {@link RequestMix} back to back. Every client records latencies in its
+ * own histograms, which are merged once the run is over, so recording never contends.
+ * <p>
+ * Clients are closed-loop: a slow response delays that client's next request, so the histograms
+ * show the latency seen by the requests that were sent, not by a fixed arrival rate. Each client
+ * identifies itself with the {@value #CLIENT_HEADER} header, so the server's admission control
+ * treats them as separate clients; requests it sheds with 429 are counted apart from the latencies.
+ */
+final class LoadDriver {
+
+    /**
+     * Highest latency the histograms can record, in microseconds.
+     */
+    private static final long MAX_LATENCY_MICROS = Duration.ofMinutes(1).toNanos() / 1000;
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    static final String CLIENT_HEADER = "X-Client-Id";
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final URI baseUri;
+    private final RequestMix mix;
+    private final int clients;
+
+    LoadDriver(URI baseUri, RequestMix mix, int clients) {
+        this.baseUri = baseUri;
+        this.mix = mix;
+        this.clients = clients;
+    }
+
+    /**
+     * Runs all clients for the given time.
+     *
+     * @param duration how long to send requests
+     * @param seed     seed of the first client's random source; client {@code i} uses {@code seed + i}
+     * @return the merged statistics per endpoint
+     */
+    Map<RequestMix.Endpoint, EndpointStats> run(Duration duration, long seed) throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<Future<Map<RequestMix.Endpoint, EndpointStats>>> results = new ArrayList<>(clients);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                SplittableRandom random = new SplittableRandom(seed + i);
+                String clientId = "client-" + i;
+                results.add(executor.submit(() -> drive(clientId, random, deadline)));
+            }
+        }
+
+        Map<RequestMix.Endpoint, EndpointStats> merged = newStats();
+        for (Future<Map<RequestMix.Endpoint, EndpointStats>> result : results) {
+            try {
+                result.get().forEach((endpoint, stats) -> merged.get(endpoint).merge(stats));
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Load client failed", e.getCause());
+            }
+        }
+        return merged;
+    }
+
+    private Map<RequestMix.Endpoint, EndpointStats> drive(String clientId, SplittableRandom random, long deadline) {
+        Map<RequestMix.Endpoint, EndpointStats> stats = newStats();
+        while (System.nanoTime() < deadline) {
+            RequestMix.Request request = mix.next(random);
+            EndpointStats endpointStats = stats.get(request.endpoint());
+            HttpRequest httpRequest = HttpRequest.newBuilder(baseUri.resolve(request.pathAndQuery()))
+                    .timeout(REQUEST_TIMEOUT)
+                    .header(CLIENT_HEADER, clientId)
+                    .GET()
+                    .build();
+            long started = System.nanoTime();
+            try {
+                HttpResponse<InputStream> response = client.send(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
+                long bytes;
+                try (InputStream body = response.body()) {
+                    bytes = body.transferTo(OutputStream.nullOutputStream());
+                }
+                endpointStats.record((System.nanoTime() - started) / 1000, bytes, response.statusCode());
+            } catch (IOException e) {
+                endpointStats.errors++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return stats;
+    }
+
+    private static Map<RequestMix.Endpoint, EndpointStats> newStats() {
+        Map<RequestMix.Endpoint, EndpointStats> stats = new EnumMap<>(RequestMix.Endpoint.class);
+        for (RequestMix.Endpoint endpoint : RequestMix.Endpoint.values()) {
+            stats.put(endpoint, new EndpointStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Latencies, in microseconds, and counters of the requests sent to one endpoint. Requests
+     * rejected with 429 are only counted.
+     */
+    static final class EndpointStats {
+        final Histogram latencies = new Histogram(MAX_LATENCY_MICROS, 3);
+        long errors;
+        long rejected;
+        long bytes;
+
+        void record(long latencyMicros, long responseBytes, int status) {
+            if (status == TOO_MANY_REQUESTS) {
+                rejected++;
+                return;
+            }
+            latencies.recordValue(Math.min(latencyMicros, MAX_LATENCY_MICROS));
+            bytes += responseBytes;
+            if (status >= 400) {
+                errors++;
+            }
+        }
+
+        void merge(EndpointStats other) {
+            latencies.add(other.latencies);
+            errors += other.errors;
+            rejected += other.rejected;
+            bytes += other.bytes;
+        }
+    }
+}
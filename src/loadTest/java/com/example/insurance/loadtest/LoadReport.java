@@ -0,0 +1,146 @@
+package com.example.insurance.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Result of a load test run: throughput and latency percentiles per endpoint and over all
+ * requests, and the number of requests the server shed with 429. Written as {@code report.json},
+ * which a later run can be compared against, and as one HdrHistogram percentile distribution
+ * ({@code .hgrm}) per endpoint for plotting.
+ *
+ * @param settings  the parameters of the run
+ * @param endpoints the results per endpoint, followed by the total
+ */
+record LoadReport(LoadTestSettings settings, List<EndpointResult> endpoints) {
+
+    static final String FILE_NAME = "report.json";
+
+    private static final String TOTAL = "ALL";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    /**
+     * Measured results of one endpoint. Requests, throughput and latencies, in milliseconds, cover
+     * the requests that were not rejected.
+     */
+    record EndpointResult(String endpoint, long requests, long errors, long rejected, double requestsPerSecond,
+                          double megabytesPerSecond, double mean, double p50, double p90, double p99,
+                          double p999, double max) {
+
+        static EndpointResult of(String endpoint, LoadDriver.EndpointStats stats, double seconds) {
+            Histogram latencies = stats.latencies;
+            return new EndpointResult(endpoint, latencies.getTotalCount(), stats.errors, stats.rejected,
+                    round(latencies.getTotalCount() / seconds), round(stats.bytes / seconds / 1_000_000),
+                    millis(latencies.getMean()), millis(latencies.getValueAtPercentile(50)),
+                    millis(latencies.getValueAtPercentile(90)), millis(latencies.getValueAtPercentile(99)),
+                    millis(latencies.getValueAtPercentile(99.9)), millis(latencies.getMaxValue()));
+        }
+
+        private static double millis(double micros) {
+            return round(micros / 1000);
+        }
+
+        private static double round(double value) {
+            return Math.round(value * 1000) / 1000.0;
+        }
+    }
+
+    /**
+     * Builds the report of a run.
+     *
+     * @param settings the parameters of the run
+     * @param stats    the merged statistics per endpoint
+     * @return the report
+     */
+    static LoadReport of(LoadTestSettings settings, Map<RequestMix.Endpoint, LoadDriver.EndpointStats> stats) {
+        List<EndpointResult> endpoints = new ArrayList<>();
+        LoadDriver.EndpointStats total = new LoadDriver.EndpointStats();
+        stats.forEach((endpoint, endpointStats) -> {
+            endpoints.add(EndpointResult.of(endpoint.path, endpointStats, settings.durationSeconds()));
+            total.merge(endpointStats);
+        });
+        endpoints.add(EndpointResult.of(TOTAL, total, settings.durationSeconds()));
+        return new LoadReport(settings, endpoints);
+    }
+
+    /**
+     * Reads a report written by an earlier run.
+     *
+     * @param file the report file
+     * @return the report
+     * @throws IOException if the file cannot be read or parsed
+     */
+    static LoadReport read(Path file) throws IOException {
+        return MAPPER.readValue(file.toFile(), LoadReport.class);
+    }
+
+    /**
+     * Writes the report and the latency distributions to a directory.
+     *
+     * @param directory the output directory
+     * @param stats     the statistics the report was built from
+     * @throws IOException if a file cannot be written
+     */
+    void write(Path directory, Map<RequestMix.Endpoint, LoadDriver.EndpointStats> stats) throws IOException {
+        MAPPER.writeValue(directory.resolve(FILE_NAME).toFile(), this);
+        for (Map.Entry<RequestMix.Endpoint, LoadDriver.EndpointStats> entry : stats.entrySet()) {
+            Path file = directory.resolve(entry.getKey().name().toLowerCase(Locale.ROOT) + ".hgrm");
+            try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+                // values are recorded in microseconds; the distribution is written in milliseconds
+                entry.getValue().latencies.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+    }
+
+    /**
+     * Prints the results as a table.
+     *
+     * @param out the stream to print to
+     */
+    void print(PrintStream out) {
+        out.printf("%-26s %9s %7s %8s %10s %8s %8s %8s %8s %8s %8s%n",
+                "endpoint", "requests", "errors", "rejected", "req/s", "MB/s", "p50 ms", "p90 ms", "p99 ms", "p999 ms", "max ms");
+        for (EndpointResult result : endpoints) {
+            out.printf(Locale.ROOT, "%-26s %9d %7d %8d %10.1f %8.2f %8.2f %8.2f %8.2f %8.2f %8.2f%n",
+                    result.endpoint(), result.requests(), result.errors(), result.rejected(), result.requestsPerSecond(),
+                    result.megabytesPerSecond(), result.p50(), result.p90(), result.p99(), result.p999(), result.max());
+        }
+    }
+
+    /**
+     * Prints the change of throughput and tail latency of each endpoint against an earlier run.
+     *
+     * @param baseline the earlier report
+     * @param out      the stream to print to
+     */
+    void printComparison(LoadReport baseline, PrintStream out) {
+        if (!settings.equals(baseline.settings())) {
+            out.println("Warning: the baseline was run with different settings: " + baseline.settings());
+        }
+        out.printf("%-26s %10s %10s %10s%n", "endpoint", "req/s", "p99", "p999");
+        for (EndpointResult result : endpoints) {
+            baseline.endpoints().stream()
+                    .filter(previous -> previous.endpoint().equals(result.endpoint()))
+                    .findFirst()
+                    .ifPresent(previous -> out.printf(Locale.ROOT, "%-26s %10s %10s %10s%n", result.endpoint(),
+                            change(result.requestsPerSecond(), previous.requestsPerSecond()),
+                            change(result.p99(), previous.p99()),
+                            change(result.p999(), previous.p999())));
+        }
+    }
+
+    private static String change(double current, double previous) {
+        return previous == 0 ? "n/a" : String.format(Locale.ROOT, "%+.1f%%", (current - previous) * 100 / previous);
+    }
+}
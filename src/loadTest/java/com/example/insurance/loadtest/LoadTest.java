@@ -0,0 +1,71 @@
+package com.example.insurance.loadtest;
+
+import com.example.insurance.MivdhiServer;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * End-to-end HTTP load test. Generates a catalogue, starts {@link MivdhiServer} on a random port
+ * with it, warms the server up, then measures the full request path under concurrent load and
+ * writes a report. Run it with {@code ./gradlew loadTest}; settings are read from
+ * {@code loadTest.*} system properties (see {@link LoadTestSettings}).
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+        Path outputDirectory = Path.of(System.getProperty("loadTest.outputDir", "build/reports/loadtest"));
+        String baseline = System.getProperty("loadTest.baseline");
+        Files.createDirectories(outputDirectory);
+
+        Path catalogue = outputDirectory.resolve("insurance_policies.json");
+        long started = System.nanoTime();
+        CatalogueGenerator.write(catalogue, settings.policies(), settings.skew(), settings.seed());
+        System.out.printf("Generated %d policies (skew %.2f) in %d ms%n",
+                settings.policies(), settings.skew(), (System.nanoTime() - started) / 1_000_000);
+
+        try (ConfigurableApplicationContext server = startServer(catalogue, outputDirectory)) {
+            int port = ((WebServerApplicationContext) server).getWebServer().getPort();
+            LoadDriver driver = new LoadDriver(URI.create("http://localhost:" + port), new RequestMix(settings.skew()), settings.clients());
+            System.out.printf("Server listening on port %d; %d clients, %d s warm-up, %d s measurement%n",
+                    port, settings.clients(), settings.warmupSeconds(), settings.durationSeconds());
+
+            if (settings.warmupSeconds() > 0) {
+                driver.run(Duration.ofSeconds(settings.warmupSeconds()), ~settings.seed());
+            }
+            Map<RequestMix.Endpoint, LoadDriver.EndpointStats> stats = driver.run(Duration.ofSeconds(settings.durationSeconds()), settings.seed());
+
+            LoadReport report = LoadReport.of(settings, stats);
+            report.write(outputDirectory, stats);
+            report.print(System.out);
+            System.out.println("Report written to " + outputDirectory.resolve(LoadReport.FILE_NAME).toAbsolutePath());
+            if (baseline != null) {
+                report.printComparison(LoadReport.read(Path.of(baseline)), System.out);
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext startServer(Path catalogue, Path outputDirectory) {
+        // server and access logs go to files, so logging costs what it costs in production without flooding the console
+        return SpringApplication.run(MivdhiServer.class,
+                "--server.port=0",
+                "--policies.data.path=" + catalogue.toAbsolutePath(),
+                "--policies.snapshot.enabled=false",
+                "--policies.reload.watch=false",
+                "--spring.main.banner-mode=off",
+                "--logging.file.name=" + outputDirectory.resolve("server.log").toAbsolutePath(),
+                "--policies.access-log.path=" + outputDirectory.resolve("access.log").toAbsolutePath(),
+                "--policies.admission.client-header=" + LoadDriver.CLIENT_HEADER,
+                "--logging.pattern.console=");
+    }
+}
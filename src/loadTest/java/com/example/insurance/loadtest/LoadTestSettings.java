@@ -0,0 +1,35 @@
+package com.example.insurance.loadtest;
+
+/**
+ * Parameters of a load test run. They are written into the report, so two reports can only be
+ * compared meaningfully when their settings match.
+ *
+ * @param policies        number of policies in the generated catalogue
+ * @param skew            Zipf exponent of the catalogue and request distributions, 0 for uniform
+ * @param clients         number of concurrent clients
+ * @param warmupSeconds   time spent sending requests before measuring
+ * @param durationSeconds time spent measuring
+ * @param seed            random seed of the catalogue and the clients
+ */
+record LoadTestSettings(int policies, double skew, int clients, int warmupSeconds, int durationSeconds, long seed) {
+
+    /**
+     * Reads the settings from {@code loadTest.*} system properties, falling back to defaults.
+     *
+     * @return the settings
+     */
+    static LoadTestSettings fromSystemProperties() {
+        LoadTestSettings settings = new LoadTestSettings(
+                Integer.getInteger("loadTest.policies", 100_000),
+                Double.parseDouble(System.getProperty("loadTest.skew", "1.0")),
+                Integer.getInteger("loadTest.clients", 64),
+                Integer.getInteger("loadTest.warmup", 15),
+                Integer.getInteger("loadTest.duration", 60),
+                Long.getLong("loadTest.seed", 42L));
+        if (settings.policies <= 0 || settings.clients <= 0 || settings.durationSeconds <= 0
+                || settings.warmupSeconds < 0 || settings.skew < 0) {
+            throw new IllegalArgumentException("Invalid load test settings: " + settings);
+        }
+        return settings;
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.insurance.loadtest;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+/**
+ * The traffic mix sent by every client: browsing pages of {@code /policies}, name searches,
+ * filters and the type list, in fixed proportions. Parameters follow the same skew as the
+ * catalogue, so popular types, words and early pages are requested more often, as real users do.
+ */
+final class RequestMix {
+
+    /**
+     * The endpoints driven, each with its share of the traffic in percent.
+     */
+    enum Endpoint {
+        POLICIES("/policies", 40),
+        SEARCH("/policies/search", 20),
+        FILTER("/policies/filter", 30),
+        POLICY_TYPES("/policies/getPolicyTypes", 10);
+
+        final String path;
+        final int share;
+
+        Endpoint(String path, int share) {
+            this.path = path;
+            this.share = share;
+        }
+    }
+
+    /**
+     * A request to send: the endpoint it is reported under and its path and query.
+     */
+    record Request(Endpoint endpoint, String pathAndQuery) {
+    }
+
+    private static final int BROWSED_PAGES = 100;
+    private static final int[] PAGE_SIZES = {10, 20, 50};
+    private static final String[] SORT_KEYS = {"name", "premium", "coverage", "value"};
+
+    private final ZipfDistribution pages;
+    private final ZipfDistribution types;
+    private final ZipfDistribution adjectives;
+
+    RequestMix(double skew) {
+        this.pages = new ZipfDistribution(BROWSED_PAGES, skew);
+        this.types = new ZipfDistribution(CatalogueGenerator.TYPES.length, skew);
+        this.adjectives = new ZipfDistribution(CatalogueGenerator.ADJECTIVES.length, skew);
+    }
+
+    /**
+     * Draws the next request.
+     *
+     * @param random the calling client's random source
+     * @return the request
+     */
+    Request next(SplittableRandom random) {
+        int draw = random.nextInt(100);
+        for (Endpoint endpoint : Endpoint.values()) {
+            draw -= endpoint.share;
+            if (draw < 0) {
+                return new Request(endpoint, endpoint.path + query(endpoint, random));
+            }
+        }
+        throw new IllegalStateException("Endpoint shares do not add up to 100");
+    }
+
+    private String query(Endpoint endpoint, SplittableRandom random) {
+        return switch (endpoint) {
+            case POLICIES -> browse(random);
+            case SEARCH -> "?name=" + encode(searchTerm(random));
+            case FILTER -> filter(random);
+            case POLICY_TYPES -> "";
+        };
+    }
+
+    private String browse(SplittableRandom random) {
+        StringBuilder query = new StringBuilder("?page=").append(pages.sample(random))
+                .append("&size=").append(PAGE_SIZES[random.nextInt(PAGE_SIZES.length)]);
+        if (random.nextInt(3) == 0) {
+            query.append("&totalPagesRequired=true");
+        }
+        if (random.nextInt(4) == 0) {
+            query.append("&sortBy=").append(SORT_KEYS[random.nextInt(SORT_KEYS.length)])
+                    .append("&sortOrder=").append(random.nextBoolean() ? "asc" : "desc");
+        }
+        return query.toString();
+    }
+
+    private String searchTerm(SplittableRandom random) {
+        int type = types.sample(random);
+        String[] typeWords = CatalogueGenerator.TYPE_WORDS[type];
+        String term = CatalogueGenerator.ADJECTIVES[adjectives.sample(random)] + " " + typeWords[random.nextInt(typeWords.length)];
+        if (random.nextInt(10) < 3) {
+            // a full name matches a handful of policies
+            term += " " + CatalogueGenerator.SUFFIXES[random.nextInt(CatalogueGenerator.SUFFIXES.length)]
+                    + " " + random.nextInt(CatalogueGenerator.NAME_NUMBERS);
+        }
+        return term;
+    }
+
+    private String filter(SplittableRandom random) {
+        int type = types.sample(random);
+        int median = CatalogueGenerator.MEDIAN_PREMIUMS[type];
+        int minPremium = (int) (median * (0.5 + random.nextDouble())) / 10 * 10;
+        StringBuilder query = new StringBuilder("?policyType=").append(encode(CatalogueGenerator.TYPES[type]))
+                .append("&minPremium=").append(minPremium)
+                .append("&maxPremium=").append(minPremium + median / 10);
+        if (random.nextInt(4) == 0) {
+            query.append("&coverage=").append(median * 100);
+        }
+        query.append("&sortBy=").append(SORT_KEYS[random.nextInt(SORT_KEYS.length)])
+                .append("&sortOrder=").append(random.nextBoolean() ? "asc" : "desc");
+        if (random.nextBoolean()) {
+            query.append("&limit=20");
+        }
+        return query.toString();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
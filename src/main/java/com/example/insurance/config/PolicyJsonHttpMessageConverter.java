@@ -0,0 +1,160 @@
+package com.example.insurance.config;
+
+import com.example.insurance.model.Policy;
+import com.example.insurance.model.PolicyBatchResult;
+import com.example.insurance.model.PolicyPage;
+import com.example.insurance.model.ShardPage;
+import com.example.insurance.store.PolicyRows;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes policy lists by concatenating the pre-serialized JSON fragments kept in the store,
+ * instead of handing {@code Policy} objects to Jackson. Handles {@link PolicyRows},
+ * {@link PolicyPage}, {@link PolicyBatchResult} and {@link ShardPage} bodies; the output is what
+ * Jackson would produce for them, up to the order of fields.
+ */
+public class PolicyJsonHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final byte[] POLICIES_FIELD = "{\"policies\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TOTAL_PAGES_FIELD = ",\"totalPages\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NEXT_CURSOR_FIELD = ",\"nextCursor\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] VERSION_FIELD = "{\"version\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] HAS_MORE_FIELD = ",\"hasMore\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TOTAL_FIELD = ",\"total\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] POSITIONS_FIELD = ",\"positions\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SHARD_POLICIES_FIELD = ",\"policies\":".getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Constructor for injecting the ObjectMapper used for lists that are not backed by a store.
+     *
+     * @param objectMapper the application's object mapper
+     */
+    public PolicyJsonHttpMessageConverter(ObjectMapper objectMapper) {
+        super(MediaType.APPLICATION_JSON);
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return PolicyRows.class.isAssignableFrom(clazz) || PolicyPage.class.isAssignableFrom(clazz)
+                || PolicyBatchResult.class.isAssignableFrom(clazz) || ShardPage.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Policy JSON is write-only", inputMessage);
+    }
+
+    @Override
+    protected Long getContentLength(Object body, MediaType contentType) {
+        return body instanceof PolicyRows rows ? rows.jsonLength() : null;
+    }
+
+    @Override
+    protected void writeInternal(Object body, HttpOutputMessage outputMessage) throws IOException {
+        OutputStream out = new BufferedOutputStream(outputMessage.getBody(), BUFFER_SIZE);
+        if (body instanceof PolicyRows rows) {
+            rows.writeJson(out);
+        } else if (body instanceof PolicyBatchResult batch) {
+            writeBatch(batch, out);
+        } else if (body instanceof ShardPage shardPage) {
+            writeShardPage(shardPage, out);
+        } else {
+            writePage((PolicyPage) body, out);
+        }
+        out.flush();
+    }
+
+    private void writePage(PolicyPage page, OutputStream out) throws IOException {
+        out.write(POLICIES_FIELD);
+        writePolicies(page.getPolicies(), out);
+        if (page.getTotalPages() != null) {
+            out.write(TOTAL_PAGES_FIELD);
+            out.write(Integer.toString(page.getTotalPages()).getBytes(StandardCharsets.US_ASCII));
+        }
+        if (page.getNextCursor() != null) {
+            out.write(NEXT_CURSOR_FIELD);
+            writeString(page.getNextCursor(), out);
+        }
+        out.write('}');
+    }
+
+    private void writeShardPage(ShardPage page, OutputStream out) throws IOException {
+        out.write(VERSION_FIELD);
+        out.write(Long.toString(page.getVersion()).getBytes(StandardCharsets.US_ASCII));
+        out.write(HAS_MORE_FIELD);
+        out.write(Boolean.toString(page.isHasMore()).getBytes(StandardCharsets.US_ASCII));
+        if (page.getTotal() != null) {
+            out.write(TOTAL_FIELD);
+            out.write(Integer.toString(page.getTotal()).getBytes(StandardCharsets.US_ASCII));
+        }
+        if (page.getPositions() != null) {
+            out.write(POSITIONS_FIELD);
+            out.write('[');
+            int[] positions = page.getPositions();
+            for (int i = 0; i < positions.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                out.write(Integer.toString(positions[i]).getBytes(StandardCharsets.US_ASCII));
+            }
+            out.write(']');
+        }
+        if (page.getPolicies() != null) {
+            out.write(SHARD_POLICIES_FIELD);
+            writePolicies(page.getPolicies(), out);
+        }
+        out.write('}');
+    }
+
+    private void writeBatch(PolicyBatchResult batch, OutputStream out) throws IOException {
+        out.write('{');
+        boolean first = true;
+        for (Map.Entry<String, List<Policy>> entry : batch.entrySet()) {
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            writeString(entry.getKey(), out);
+            out.write(':');
+            writePolicies(entry.getValue(), out);
+        }
+        out.write('}');
+    }
+
+    private static void writeString(String value, OutputStream out) throws IOException {
+        out.write('"');
+        out.write(JsonStringEncoder.getInstance().quoteAsUTF8(value));
+        out.write('"');
+    }
+
+    private void writePolicies(List<?> policies, OutputStream out) throws IOException {
+        if (policies instanceof PolicyRows rows) {
+            rows.writeJson(out);
+        } else {
+            out.write(objectMapper.writeValueAsBytes(policies));
+        }
+    }
+}
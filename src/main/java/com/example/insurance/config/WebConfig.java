@@ -1,34 +1,70 @@
 package com.example.insurance.config;
 
+import com.example.insurance.controller.PolicyController;
+import com.example.insurance.interceptor.AdmissionControlInterceptor;
+import com.example.insurance.interceptor.ConditionalRequestInterceptor;
 import com.example.insurance.interceptor.RequestValidationInterceptor;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.*;
+
+import java.util.List;
 /**
- * Web configuration class for setting up interceptors and CORS mappings.
+ * Web configuration class for setting up interceptors, message converters and CORS mappings.
  */
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
+    @Autowired
+    private AdmissionControlInterceptor admissionControlInterceptor;
+
     @Autowired
     private RequestValidationInterceptor requestValidationInterceptor;
 
+    @Autowired
+    private ConditionalRequestInterceptor conditionalRequestInterceptor;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     /**
      * Registers custom interceptors with the application.
-     * In this case, adds a RequestValidationInterceptor to validate requests to /policies/** endpoints.
+     * Adds an AdmissionControlInterceptor that sheds load on /policies/** endpoints before anything
+     * else runs, a RequestValidationInterceptor to validate the requests, and a
+     * ConditionalRequestInterceptor that records the catalogue version for the ETag of GET
+     * responses, which ConditionalResponseAdvice answers with 304 Not Modified when unchanged.
      *
      * @param registry the InterceptorRegistry to which interceptors are added
      */
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(admissionControlInterceptor)
+                .addPathPatterns("/policies/**");
         registry.addInterceptor(requestValidationInterceptor)
                 .addPathPatterns("/policies/**");
+        registry.addInterceptor(conditionalRequestInterceptor)
+                .addPathPatterns("/policies/**");
+    }
+
+    /**
+     * Puts the PolicyJsonHttpMessageConverter ahead of Jackson, so policy lists are written from
+     * their pre-serialized fragments.
+     *
+     * @param converters the converters configured so far
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(0, new PolicyJsonHttpMessageConverter(objectMapper));
     }
 
     /**
      * Configures CORS (Cross-Origin Resource Sharing) settings for the application.
-     * Allows GET requests from the specified frontend origin (http://localhost:5173) to access any backend endpoint.
+     * Allows GET, POST, PUT and DELETE requests from the specified frontend origin (http://localhost:5173) to access any backend endpoint
+     * and exposes the pagination cursor, ETag and Retry-After headers to it.
      *
      * @return a WebMvcConfigurer bean with CORS mappings configured
      */
@@ -39,8 +75,9 @@ public class WebConfig implements WebMvcConfigurer {
             public void addCorsMappings(CorsRegistry registry) {
                 registry.addMapping("/**")
                         .allowedOrigins("http://localhost:5173") // frontend URL
-                        .allowedMethods("GET")
-                        .allowedHeaders("*");
+                        .allowedMethods("GET", "POST", "PUT", "DELETE")
+                        .allowedHeaders("*")
+                        .exposedHeaders(PolicyController.NEXT_CURSOR_HEADER, HttpHeaders.ETAG, HttpHeaders.RETRY_AFTER);
             }
         };
     }
@@ -0,0 +1,71 @@
+package com.example.insurance.controller;
+
+import com.example.insurance.service.PolicyReloader;
+import com.example.insurance.service.QueryResultCache;
+import com.example.insurance.store.PolicyStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+/**
+ * REST controller for operational tasks on the running service.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/admin")
+public class AdminController {
+
+    private final PolicyReloader policyReloader;
+    private final QueryResultCache queryResultCache;
+
+    /**
+     * Constructor for injecting the PolicyReloader and QueryResultCache.
+     *
+     * @param policyReloader   component that rebuilds and swaps the policy store
+     * @param queryResultCache cache whose counters are reported
+     */
+    public AdminController(PolicyReloader policyReloader, QueryResultCache queryResultCache) {
+        this.policyReloader = policyReloader;
+        this.queryResultCache = queryResultCache;
+    }
+
+    /**
+     * Reloads the policy catalogue and waits until the new store is serving. Other requests keep
+     * being answered from the current store while the new one is built.
+     *
+     * @return the number of policies and the version of the newly published store
+     */
+    @PostMapping("/reload")
+    public Map<String, Object> reloadPolicies() {
+        log.info("Reloading policy catalogue");
+        PolicyStore store;
+        try {
+            store = policyReloader.requestReload().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("policies", store.size());
+        result.put("version", Long.toHexString(store.version()));
+        return result;
+    }
+
+    /**
+     * Returns the counters of the query result cache.
+     *
+     * @return hits, misses, hit rate, evictions, entries and cached rows
+     */
+    @GetMapping("/cache")
+    public Map<String, Object> getCacheStats() {
+        return queryResultCache.stats();
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.insurance.controller;
+
+import com.example.insurance.interceptor.AdmissionControlInterceptor;
+import com.example.insurance.metrics.AccessLog;
+import com.example.insurance.metrics.QueryStageMetrics;
+import com.example.insurance.metrics.RequestMetrics;
+import com.example.insurance.service.PolicyWriter;
+import com.example.insurance.service.ShardCoordinator;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * REST controller exposing the service's metrics for scraping, in the Prometheus text format.
+ */
+@RestController
+public class MetricsController {
+
+    private static final String PROMETHEUS_TEXT = "text/plain;version=0.0.4;charset=utf-8";
+
+    private final RequestMetrics requestMetrics;
+    private final QueryStageMetrics queryStageMetrics;
+    private final AccessLog accessLog;
+    private final AdmissionControlInterceptor admissionControlInterceptor;
+    private final PolicyWriter policyWriter;
+    private final ShardCoordinator shardCoordinator;
+
+    /**
+     * Constructor for injecting the RequestMetrics, QueryStageMetrics, AccessLog, AdmissionControlInterceptor,
+     * PolicyWriter and ShardCoordinator.
+     *
+     * @param requestMetrics              per-endpoint request counters and latencies
+     * @param queryStageMetrics           per-stage query timing and selectivity
+     * @param accessLog                   access log whose written and dropped records are counted
+     * @param admissionControlInterceptor admission control whose rejections and load are reported
+     * @param policyWriter                writer whose journal commits and publications are reported
+     * @param shardCoordinator            coordinator whose shard requests are reported
+     */
+    public MetricsController(RequestMetrics requestMetrics, QueryStageMetrics queryStageMetrics, AccessLog accessLog,
+                             AdmissionControlInterceptor admissionControlInterceptor, PolicyWriter policyWriter,
+                             ShardCoordinator shardCoordinator) {
+        this.requestMetrics = requestMetrics;
+        this.queryStageMetrics = queryStageMetrics;
+        this.accessLog = accessLog;
+        this.admissionControlInterceptor = admissionControlInterceptor;
+        this.policyWriter = policyWriter;
+        this.shardCoordinator = shardCoordinator;
+    }
+
+    /**
+     * Returns all metrics: request counts by status class and latency histograms per endpoint,
+     * rows in, rows out and time per query stage, the access log counters, admission control
+     * rejections and load, the write journal's commits, publications and compactions, and the
+     * latency and failures of requests to each shard when coordinating a partitioned catalogue.
+     *
+     * @return the metrics in the Prometheus text exposition format
+     */
+    @GetMapping(value = "/metrics", produces = PROMETHEUS_TEXT)
+    public String getMetrics() {
+        StringBuilder out = new StringBuilder(16 * 1024);
+        requestMetrics.writeTo(out);
+        queryStageMetrics.writeTo(out);
+        accessLog.writeTo(out);
+        admissionControlInterceptor.writeTo(out);
+        policyWriter.writeTo(out);
+        shardCoordinator.writeTo(out);
+        return out.toString();
+    }
+}
@@ -1,47 +1,145 @@
 package com.example.insurance.controller;
+import com.example.insurance.exception.InvalidRequestException;
+import com.example.insurance.exception.PartitionedCatalogueException;
 import com.example.insurance.model.Policy;
+import com.example.insurance.model.PolicyBatchQuery;
+import com.example.insurance.model.PolicyBatchResult;
+import com.example.insurance.model.PolicyFacets;
+import com.example.insurance.model.PolicyPage;
+import com.example.insurance.model.PolicyQuery;
+import com.example.insurance.model.PolicySuggestion;
 import com.example.insurance.service.PolicyService;
-import lombok.extern.slf4j.Slf4j;
+import com.example.insurance.service.PolicyWriter;
+import com.example.insurance.service.ShardCoordinator;
+import com.example.insurance.store.PolicyRows;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 /**
  * REST controller for handling insurance policy-related requests.
+ * <p>
+ * On the coordinator of a partitioned catalogue, reads are answered from the shards by the
+ * {@link ShardCoordinator}: lookups by id from the shard holding the id, paginated listings,
+ * {@code /filter}, {@code /search}, {@code /suggest} and {@code /getPolicyTypes} across all
+ * shards. Facets, batch queries and exports cannot be merged from the shards' answers and are
+ * rejected with 501 rather than answered from this node's own catalogue.
  */
-@Slf4j
 @RestController
 @RequestMapping("/policies")
 public class PolicyController {
 
+    /**
+     * Response header carrying the cursor for the next page of a paged filter request.
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final int DEFAULT_PAGE_SIZE = 10;
+
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+
     private final PolicyService policyService;
+    private final PolicyWriter policyWriter;
+    private final ShardCoordinator shardCoordinator;
 
     /**
-     * Constructor for injecting the PolicyService.
+     * Constructor for injecting the PolicyService, PolicyWriter and ShardCoordinator.
      *
-     * @param policyService service class that handles policy operations
+     * @param policyService    service class that handles policy operations
+     * @param policyWriter     component that journals and publishes policy writes
+     * @param shardCoordinator coordinator fanning queries out to the shards, when partitioned
      */
-    public PolicyController(PolicyService policyService) {
+    public PolicyController(PolicyService policyService, PolicyWriter policyWriter, ShardCoordinator shardCoordinator) {
         this.policyService = policyService;
+        this.policyWriter = policyWriter;
+        this.shardCoordinator = shardCoordinator;
     }
 
     /**
-     * Retrieves a paginated list of policies, with optional name filtering and total count.
+     * Retrieves a paginated list of policies, with optional name filtering, ordering and total count.
+     * Pass the returned {@code nextCursor} back as {@code cursor} to fetch the following page.
      *
-     * @param page                page number (default is 0)
+     * @param page                page number (default is 0), ignored when a cursor is given
      * @param size                number of policies per page (default is 10)
      * @param totalPagesRequired  flag to include total policy count in response
      * @param name                optional filter for policy name
-     * @return map containing paginated policies and optionally total count
+     * @param sortBy              optional field to order by: name, premium, coverage or value
+     * @param sortOrder           optional sort order ("asc" or "desc")
+     * @param cursor              optional cursor returned by the previous page
+     * @return page containing the policies, optionally total count, and the next cursor
      */
     @GetMapping
-    public Map<String, Object> getPolicies(@RequestParam(defaultValue = "0") int page,
+    public PolicyPage getPolicies(@RequestParam(defaultValue = "0") int page,
                                            @RequestParam(defaultValue = "10") int size,
                                            @RequestParam(defaultValue = "false", required = false) boolean totalPagesRequired,
-                                           @RequestParam(required = false) String name) {
-        log.info("Fetching policies for page={}, size={}, totalPagesRequired={}, name={}", page, size, totalPagesRequired, name);
-        return policyService.getPoliciesWithTotalCount(page, size, name, totalPagesRequired);
+                                           @RequestParam(required = false) String name,
+                                           @RequestParam(required = false) String sortBy,
+                                           @RequestParam(required = false) String sortOrder,
+                                           @RequestParam(required = false) String cursor) {
+        if (shardCoordinator.isEnabled()) {
+            return shardCoordinator.getPolicies(page, size, name, totalPagesRequired, sortBy, sortOrder, cursor);
+        }
+        return policyService.getPoliciesWithTotalCount(page, size, name, totalPagesRequired, sortBy, sortOrder, cursor);
+    }
+
+    /**
+     * Retrieves a single policy by id.
+     *
+     * @param id the policy id
+     * @return the policy
+     */
+    @GetMapping("/{id:\\d+}")
+    public Policy getPolicy(@PathVariable long id) {
+        if (shardCoordinator.isEnabled()) {
+            return shardCoordinator.getPolicy(id);
+        }
+        return policyService.getPolicy(id);
+    }
+
+    /**
+     * Creates a policy. The id is assigned by the service and returned with the stored policy.
+     * The response is sent once the write is durable; reads see it as soon as the next store is
+     * published, usually within milliseconds.
+     *
+     * @param policy the policy, without an id
+     * @return the stored policy with its id
+     */
+    @PostMapping
+    public ResponseEntity<Policy> createPolicy(@RequestBody Policy policy) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(policyWriter.create(policy));
+    }
+
+    /**
+     * Replaces the policy with the given id, or creates it if there is none.
+     *
+     * @param id     the policy id
+     * @param policy the new contents of the policy
+     * @return the stored policy, with 201 if it was created and 200 if it was replaced
+     */
+    @PutMapping("/{id:\\d+}")
+    public ResponseEntity<Policy> putPolicy(@PathVariable long id, @RequestBody Policy policy) {
+        boolean created = policyWriter.put(id, policy);
+        policy.setId(id);
+        return ResponseEntity.status(created ? HttpStatus.CREATED : HttpStatus.OK).body(policy);
+    }
+
+    /**
+     * Deletes the policy with the given id.
+     *
+     * @param id the policy id
+     * @return 204 once the deletion is durable
+     */
+    @DeleteMapping("/{id:\\d+}")
+    public ResponseEntity<Void> deletePolicy(@PathVariable long id) {
+        policyWriter.delete(id);
+        return ResponseEntity.noContent().build();
     }
 
     /**
@@ -52,31 +150,148 @@ public class PolicyController {
      */
     @GetMapping("/search")
     public List<Policy> getPoliciesByName(@RequestParam(required = false) String name) {
-        log.info("Searching policies by name={}", name);
-        return policyService.getPoliciesByName(policyService.getPolicies(), name);
+        if (shardCoordinator.isEnabled()) {
+            return shardCoordinator.getPoliciesByName(name);
+        }
+        return policyService.getPoliciesByName(name);
+    }
+
+    /**
+     * Suggests policy names starting with the given prefix (case-insensitive), for autocomplete.
+     *
+     * @param prefix beginning of the policy name
+     * @param limit  maximum number of suggestions (default is 10)
+     * @return ids and names of the matching policies in name order
+     */
+    @GetMapping("/suggest")
+    public List<PolicySuggestion> suggestPolicies(@RequestParam(required = false) String prefix,
+                                                  @RequestParam(defaultValue = "10") int limit) {
+        if (shardCoordinator.isEnabled()) {
+            return shardCoordinator.suggestPolicies(prefix, limit);
+        }
+        return policyService.suggestPolicies(prefix, limit);
     }
 
     /**
      * Filters policies based on various optional criteria such as premium, type, coverage, name, and sort order.
+     * When {@code limit} or {@code cursor} is given the result is paged, and the cursor for the next page is
+     * returned in the {@value #NEXT_CURSOR_HEADER} response header.
      *
      * @param minPremium minimum premium (inclusive)
      * @param maxPremium maximum premium (inclusive)
      * @param policyType policy type to filter
      * @param name       name of the policy to filter
      * @param coverage   minimum coverage amount (inclusive)
-     * @param sortOrder  sort order by name ("asc" or "desc"), default is "aesc" (typo for "asc"?)
+     * @param sortOrder  sort order ("asc" or "desc"), default is "aesc" (typo for "asc"?)
+     * @param sortBy     field to order by: name (default), premium, coverage or value (coverage per unit of premium)
+     * @param limit      maximum number of policies per page (optional)
+     * @param cursor     cursor returned by the previous page (optional)
      * @return list of filtered policies
      */
     @GetMapping("/filter")
-    public List<Policy> getFilteredPolicies(@RequestParam(required = false) Integer minPremium,
-                                            @RequestParam(required = false) Integer maxPremium,
-                                            @RequestParam(required = false) String policyType,
-                                            @RequestParam(required = false) String name,
-                                            @RequestParam(required = false) Integer coverage,
-                                            @RequestParam(required = false, defaultValue = "aesc") String sortOrder) {
-        log.info("Filtering policies with minPremium={}, maxPremium={}, policyType={}, coverage={}, sortOrder={}, name={}",
-                minPremium, maxPremium, policyType, coverage, sortOrder, name);
-        return policyService.filterPolicies(minPremium, maxPremium, policyType, coverage, sortOrder, name);
+    public ResponseEntity<List<Policy>> getFilteredPolicies(@RequestParam(required = false) Integer minPremium,
+                                                            @RequestParam(required = false) Integer maxPremium,
+                                                            @RequestParam(required = false) String policyType,
+                                                            @RequestParam(required = false) String name,
+                                                            @RequestParam(required = false) Integer coverage,
+                                                            @RequestParam(required = false, defaultValue = "aesc") String sortOrder,
+                                                            @RequestParam(required = false) String sortBy,
+                                                            @RequestParam(required = false) Integer limit,
+                                                            @RequestParam(required = false) String cursor) {
+        PolicyQuery query = new PolicyQuery(minPremium, maxPremium, policyType, coverage, sortOrder, name, sortBy);
+        if (limit == null && cursor == null) {
+            return ResponseEntity.ok(shardCoordinator.isEnabled() ? shardCoordinator.filterPolicies(query) : policyService.filterPolicies(query));
+        }
+
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        PolicyPage page = shardCoordinator.isEnabled() ? shardCoordinator.filterPoliciesPage(query, pageSize, cursor)
+                : policyService.filterPoliciesPage(query, pageSize, cursor);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getPolicies());
+    }
+
+    /**
+     * Evaluates a batch of filter queries in one request. Each entry takes the criteria of
+     * {@code /filter} by their field names (minPremium, maxPremium, policyType, minCoverage, name,
+     * sortOrder, sortBy) plus an optional {@code id} and {@code limit}. Broad queries share a
+     * single pass over the data.
+     *
+     * @param queries the filter criteria
+     * @return the matching policies of each query, keyed by its id or its position in the batch
+     */
+    @PostMapping("/batch-query")
+    public PolicyBatchResult batchQuery(@RequestBody List<PolicyBatchQuery> queries) {
+        requireUnpartitioned("/policies/batch-query");
+        return policyService.batchQuery(queries);
+    }
+
+    /**
+     * Returns facets of the policies matching the given criteria, for the filter sidebar: the
+     * number of matches, the count per policy type and premium and coverage statistics with
+     * histograms. Accepts the same criteria as {@code /filter}; without any the facets of the
+     * whole catalogue are returned.
+     *
+     * @param minPremium minimum premium (inclusive)
+     * @param maxPremium maximum premium (inclusive)
+     * @param policyType policy type to filter
+     * @param name       name of the policy to filter
+     * @param coverage   minimum coverage amount (inclusive)
+     * @return the facets of the matching policies
+     */
+    @GetMapping("/facets")
+    public PolicyFacets getFacets(@RequestParam(required = false) Integer minPremium,
+                                  @RequestParam(required = false) Integer maxPremium,
+                                  @RequestParam(required = false) String policyType,
+                                  @RequestParam(required = false) String name,
+                                  @RequestParam(required = false) Integer coverage) {
+        requireUnpartitioned("/policies/facets");
+        return policyService.getFacets(new PolicyQuery(minPremium, maxPremium, policyType, coverage, null, name, null));
+    }
+
+    /**
+     * Exports every policy matching the given criteria as newline-delimited JSON, one policy per
+     * line. Matches are produced and written a chunk at a time and the response is flushed after
+     * each chunk, so memory use stays bounded and a slow client simply slows the export down.
+     * Unlike {@code /filter}, results stay in storage order unless a sort is requested.
+     *
+     * @param format     export format, only "ndjson" is supported (default)
+     * @param minPremium minimum premium (inclusive)
+     * @param maxPremium maximum premium (inclusive)
+     * @param policyType policy type to filter
+     * @param name       name of the policy to filter
+     * @param coverage   minimum coverage amount (inclusive)
+     * @param sortOrder  sort order ("asc" or "desc", optional)
+     * @param sortBy     field to order by: name, premium, coverage or value (optional)
+     * @return the streamed policies
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportPolicies(@RequestParam(defaultValue = "ndjson") String format,
+                                                                @RequestParam(required = false) Integer minPremium,
+                                                                @RequestParam(required = false) Integer maxPremium,
+                                                                @RequestParam(required = false) String policyType,
+                                                                @RequestParam(required = false) String name,
+                                                                @RequestParam(required = false) Integer coverage,
+                                                                @RequestParam(required = false) String sortOrder,
+                                                                @RequestParam(required = false) String sortBy) {
+        if (!"ndjson".equalsIgnoreCase(format)) {
+            throw new InvalidRequestException("format must be ndjson.");
+        }
+        requireUnpartitioned("/policies/export");
+        Iterator<PolicyRows> chunks = policyService.exportPolicies(
+                new PolicyQuery(minPremium, maxPremium, policyType, coverage, sortOrder, name, sortBy));
+
+        StreamingResponseBody body = out -> {
+            OutputStream buffered = new BufferedOutputStream(out, EXPORT_BUFFER_SIZE);
+            while (chunks.hasNext()) {
+                chunks.next().writeNdjson(buffered);
+                // blocks while the client is behind, which is what throttles the scan
+                buffered.flush();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
 
     /**
@@ -86,9 +301,19 @@ public class PolicyController {
      */
     @GetMapping("/getPolicyTypes")
     public Set<String> getPolicyTypes() {
-        log.info("getPolicy types");
-        return policyService.getPolicies().stream()
-                .map(Policy::getType)
-                .collect(Collectors.toSet());
+        if (shardCoordinator.isEnabled()) {
+            return shardCoordinator.getPolicyTypes();
+        }
+        return policyService.getPolicyTypes();
+    }
+
+    /**
+     * Rejects a request the coordinator of a partitioned catalogue cannot answer from the shards,
+     * instead of answering it from this node's catalogue alone.
+     */
+    private void requireUnpartitioned(String endpoint) {
+        if (shardCoordinator.isEnabled()) {
+            throw new PartitionedCatalogueException(endpoint + " is not available while the catalogue is partitioned into shards; use /policies/filter instead.");
+        }
     }
 }
@@ -0,0 +1,120 @@
+package com.example.insurance.controller;
+
+import com.example.insurance.exception.PolicyNotFoundException;
+import com.example.insurance.model.Policy;
+import com.example.insurance.model.PolicyQuery;
+import com.example.insurance.model.PolicySuggestion;
+import com.example.insurance.model.ShardPage;
+import com.example.insurance.service.PolicyService;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * REST controller answering queries from the coordinator of a partitioned catalogue. Requests
+ * are always answered from this node's own shard, never fanned out again, so every node can be
+ * configured as both coordinator and shard.
+ */
+@RestController
+@RequestMapping("/shard")
+public class ShardController {
+
+    private final PolicyService policyService;
+
+    /**
+     * Constructor for injecting the PolicyService.
+     *
+     * @param policyService service holding this node's shard of the catalogue
+     */
+    public ShardController(PolicyService policyService) {
+        this.policyService = policyService;
+    }
+
+    /**
+     * Returns this shard's policies matching the criteria of {@code /policies/filter}, in the
+     * query's order: all of them, or with a {@code limit} one page after position {@code after}.
+     *
+     * @param minPremium minimum premium (inclusive)
+     * @param maxPremium maximum premium (inclusive)
+     * @param policyType policy type to filter
+     * @param name       name of the policy to filter
+     * @param coverage   minimum coverage amount (inclusive)
+     * @param sortOrder  sort order ("asc" or "desc", optional)
+     * @param sortBy     field to order by: name, premium, coverage or value (optional)
+     * @param after      position of the last policy already returned from this shard (default -1)
+     * @param limit      maximum number of policies (optional)
+     * @param version    catalogue version {@code after} refers to (optional)
+     * @param count      flag to include the number of matches
+     * @return this shard's part of the result
+     */
+    @GetMapping("/policies")
+    public ShardPage getPolicies(@RequestParam(required = false) Integer minPremium,
+                                 @RequestParam(required = false) Integer maxPremium,
+                                 @RequestParam(required = false) String policyType,
+                                 @RequestParam(required = false) String name,
+                                 @RequestParam(required = false) Integer coverage,
+                                 @RequestParam(required = false) String sortOrder,
+                                 @RequestParam(required = false) String sortBy,
+                                 @RequestParam(defaultValue = "-1") int after,
+                                 @RequestParam(required = false) Integer limit,
+                                 @RequestParam(required = false) Long version,
+                                 @RequestParam(defaultValue = "false") boolean count) {
+        PolicyQuery query = new PolicyQuery(minPremium, maxPremium, policyType, coverage, sortOrder, name, sortBy);
+        return policyService.getShardPage(query, after, limit, version, count);
+    }
+
+    /**
+     * Returns this shard's policies whose name contains the given text, as {@code /policies/search}.
+     *
+     * @param name name or partial name of the policy
+     * @return list of matching policies in storage order
+     */
+    @GetMapping("/search")
+    public List<Policy> getPoliciesByName(@RequestParam(required = false) String name) {
+        return policyService.getPoliciesByName(name);
+    }
+
+    /**
+     * Looks up a policy of this shard by id, as {@code /policies/{id}}. A missing policy is
+     * answered with an empty list rather than 404, so the coordinator can tell it apart from a
+     * node that does not serve this endpoint.
+     *
+     * @param id the policy id
+     * @return a list holding the policy, or an empty list if this shard has none with that id
+     */
+    @GetMapping("/policy")
+    public List<Policy> getPolicy(@RequestParam long id) {
+        try {
+            return List.of(policyService.getPolicy(id));
+        } catch (PolicyNotFoundException e) {
+            return List.of();
+        }
+    }
+
+    /**
+     * Suggests names of this shard's policies starting with the given prefix, as {@code /policies/suggest}.
+     *
+     * @param prefix beginning of the policy name
+     * @param limit  maximum number of suggestions (default is 10)
+     * @return ids and names of the matching policies in name order
+     */
+    @GetMapping("/suggest")
+    public List<PolicySuggestion> suggestPolicies(@RequestParam(required = false) String prefix,
+                                                  @RequestParam(defaultValue = "10") int limit) {
+        return policyService.suggestPolicies(prefix, limit);
+    }
+
+    /**
+     * Returns the distinct policy types of this shard, as {@code /policies/getPolicyTypes}.
+     *
+     * @return set of policy types
+     */
+    @GetMapping("/types")
+    public Set<String> getPolicyTypes() {
+        return policyService.getPolicyTypes();
+    }
+}
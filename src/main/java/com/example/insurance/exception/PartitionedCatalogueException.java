@@ -0,0 +1,7 @@
+package com.example.insurance.exception;
+
+public class PartitionedCatalogueException extends RuntimeException {
+    public PartitionedCatalogueException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.insurance.exception;
+
+public class PolicyLoadException extends RuntimeException {
+    public PolicyLoadException(String message) {
+        super(message);
+    }
+
+    public PolicyLoadException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
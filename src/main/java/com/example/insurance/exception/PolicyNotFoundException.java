@@ -0,0 +1,7 @@
+package com.example.insurance.exception;
+
+public class PolicyNotFoundException extends RuntimeException {
+    public PolicyNotFoundException(long id) {
+        super("Policy not found: " + id);
+    }
+}
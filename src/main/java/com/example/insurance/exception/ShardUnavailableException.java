@@ -0,0 +1,11 @@
+package com.example.insurance.exception;
+
+public class ShardUnavailableException extends RuntimeException {
+    public ShardUnavailableException(String message) {
+        super(message);
+    }
+
+    public ShardUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
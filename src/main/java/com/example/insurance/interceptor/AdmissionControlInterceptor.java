@@ -0,0 +1,268 @@
+package com.example.insurance.interceptor;
+
+import com.example.insurance.exception.TooManyRequestsException;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.cors.CorsUtils;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Interceptor that sheds load before any work is done for insurance policy APIs.
+ * <p>
+ * Every request is given a cost from its endpoint and query shape: a page or the type list costs
+ * {@value #CHEAP_COST}, an unfiltered full sort or an export {@value #FULL_SCAN_COST}. A request is
+ * rejected with 429 Too Many Requests and a Retry-After header when
+ * <ul>
+ *     <li>its client's token bucket does not hold enough tokens for the cost, or</li>
+ *     <li>admitting it would push the total cost of requests in flight over the limit. Requests of
+ *     {@value #HEAVY_COST} and more may only fill {@value #HEAVY_SHARE_PERCENT}% of the limit, so
+ *     cheap requests still get through while expensive ones saturate the node.</li>
+ * </ul>
+ * Both checks are lock-free; the in-flight cost is released when the response completes,
+ * including for asynchronous requests such as exports.
+ */
+@Component
+public class AdmissionControlInterceptor implements AsyncHandlerInterceptor {
+
+    static final int CHEAP_COST = 1;
+    static final int INDEXED_COST = 2;
+    static final int HEAVY_COST = 5;
+    static final int FULL_SCAN_COST = 20;
+
+    private static final int HEAVY_SHARE_PERCENT = 75;
+
+    /**
+     * In-flight cost limit per CPU core when none is configured.
+     */
+    private static final int DEFAULT_COST_PER_CORE = 16;
+
+    private static final String ADMITTED_COST = AdmissionControlInterceptor.class.getName() + ".cost";
+
+    private final boolean enabled;
+    private final String clientHeader;
+    private final int trustedProxies;
+    private final int maxInFlightCost;
+    private final ClientRateLimiter rateLimiter;
+    private final AtomicInteger inFlightCost = new AtomicInteger();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder overloaded = new LongAdder();
+
+    /**
+     * Constructor for injecting the admission control settings.
+     *
+     * @param enabled         whether requests are checked at all
+     * @param clientRate      tokens per second added to each client's bucket
+     * @param clientBurst     number of tokens a client's bucket holds
+     * @param clientHeader    header identifying the client, blank to use the remote address
+     * @param trustedProxies  number of trusted proxies in front of the node that append to the client header
+     * @param maxInFlightCost limit on the total cost of requests in flight, 0 for a limit based on the number of cores
+     */
+    public AdmissionControlInterceptor(@Value("${policies.admission.enabled:true}") boolean enabled,
+                                       @Value("${policies.admission.client-rate:100}") double clientRate,
+                                       @Value("${policies.admission.client-burst:200}") int clientBurst,
+                                       @Value("${policies.admission.client-header:}") String clientHeader,
+                                       @Value("${policies.admission.trusted-proxies:1}") int trustedProxies,
+                                       @Value("${policies.admission.max-in-flight-cost:0}") int maxInFlightCost) {
+        if (trustedProxies < 1) {
+            throw new IllegalArgumentException("policies.admission.trusted-proxies must be at least 1, got " + trustedProxies);
+        }
+        this.enabled = enabled;
+        this.clientHeader = clientHeader.isBlank() ? null : clientHeader;
+        this.trustedProxies = trustedProxies;
+        this.maxInFlightCost = maxInFlightCost > 0 ? maxInFlightCost
+                : DEFAULT_COST_PER_CORE * Runtime.getRuntime().availableProcessors();
+        this.rateLimiter = new ClientRateLimiter(clientRate, clientBurst);
+    }
+
+    /**
+     * Admits the request or rejects it with 429.
+     *
+     * @param request  the current HTTP request
+     * @param response the current HTTP response
+     * @param handler  the chosen handler to execute
+     * @return true if the request is admitted
+     * @throws TooManyRequestsException if the client is over its rate or the node is overloaded
+     */
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // an async dispatch continues a request that was admitted already
+        if (!enabled || request.getDispatcherType() == DispatcherType.ASYNC || CorsUtils.isPreFlightRequest(request)) {
+            return true;
+        }
+        int cost = costOf(request);
+        String client = clientOf(request);
+        long wait = rateLimiter.tryAcquire(client, cost, System.nanoTime());
+        if (wait > 0) {
+            rateLimited.increment();
+            throw new TooManyRequestsException("Request rate limit exceeded.", Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999_999_999)));
+        }
+
+        int limit = cost >= HEAVY_COST ? maxInFlightCost * HEAVY_SHARE_PERCENT / 100 : maxInFlightCost;
+        while (true) {
+            int current = inFlightCost.get();
+            // a single request is always admitted on an idle node, whatever its cost
+            if (current + cost > limit && current > 0) {
+                rateLimiter.release(client, cost);
+                overloaded.increment();
+                throw new TooManyRequestsException("Server is busy, please retry.", 1);
+            }
+            if (inFlightCost.compareAndSet(current, current + cost)) {
+                break;
+            }
+        }
+        request.setAttribute(ADMITTED_COST, cost);
+        return true;
+    }
+
+    /**
+     * Keeps the cost of an asynchronous request in flight until its response is complete.
+     *
+     * @param request  the current HTTP request
+     * @param response the current HTTP response
+     * @param handler  the handler that started async processing
+     */
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getAttribute(ADMITTED_COST) instanceof Integer cost) {
+            request.getAsyncContext().addListener(new ReleaseListener(cost));
+        }
+    }
+
+    /**
+     * Releases the cost of a completed synchronous request.
+     *
+     * @param request  the current HTTP request
+     * @param response the current HTTP response
+     * @param handler  the handler that ran
+     * @param ex       any exception thrown by the handler
+     */
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        // async requests are released by their ReleaseListener
+        if (request.getDispatcherType() != DispatcherType.ASYNC && request.getAttribute(ADMITTED_COST) instanceof Integer cost) {
+            request.removeAttribute(ADMITTED_COST);
+            inFlightCost.addAndGet(-cost);
+        }
+    }
+
+    /**
+     * Writes the admission counters in the Prometheus text format.
+     *
+     * @param out the buffer to write to
+     */
+    public void writeTo(StringBuilder out) {
+        out.append("# HELP insurance_admission_rejected_total Requests rejected with 429, by reason.\n");
+        out.append("# TYPE insurance_admission_rejected_total counter\n");
+        out.append("insurance_admission_rejected_total{reason=\"client_rate\"} ").append(rateLimited.sum()).append('\n');
+        out.append("insurance_admission_rejected_total{reason=\"overload\"} ").append(overloaded.sum()).append('\n');
+        out.append("# HELP insurance_admission_in_flight_cost Total cost of the requests being processed.\n");
+        out.append("# TYPE insurance_admission_in_flight_cost gauge\n");
+        out.append("insurance_admission_in_flight_cost ").append(inFlightCost.get()).append('\n');
+        out.append("# HELP insurance_admission_tracked_clients Clients with a token bucket.\n");
+        out.append("# TYPE insurance_admission_tracked_clients gauge\n");
+        out.append("insurance_admission_tracked_clients ").append(rateLimiter.trackedClients()).append('\n');
+    }
+
+    /**
+     * Estimates the relative cost of a request from its endpoint and parameters: paging and
+     * single-index lookups are cheap, filters that must sort everything they match are not.
+     */
+    static int costOf(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return switch (path) {
+            case "/policies" -> request.getParameter("name") == null ? CHEAP_COST : INDEXED_COST;
+            case "/policies/search" -> {
+                String name = request.getParameter("name");
+                // names shorter than a trigram cannot use the index and scan every name
+                yield name != null && name.length() < 3 ? HEAVY_COST : INDEXED_COST;
+            }
+            case "/policies/filter" -> {
+                if (request.getParameter("limit") != null || request.getParameter("cursor") != null) {
+                    yield INDEXED_COST;
+                }
+                yield hasFilter(request) ? HEAVY_COST : FULL_SCAN_COST;
+            }
+            case "/policies/facets" -> hasFilter(request) ? HEAVY_COST : CHEAP_COST;
+            case "/policies/export", "/policies/batch-query" -> FULL_SCAN_COST;
+            default -> CHEAP_COST;
+        };
+    }
+
+    private static boolean hasFilter(HttpServletRequest request) {
+        return (request.getParameter("minPremium") != null && request.getParameter("maxPremium") != null)
+                || request.getParameter("policyType") != null
+                || request.getParameter("coverage") != null
+                || request.getParameter("name") != null;
+    }
+
+    private String clientOf(HttpServletRequest request) {
+        if (clientHeader != null) {
+            String value = request.getHeader(clientHeader);
+            if (value != null) {
+                String client = clientOf(value, trustedProxies);
+                if (!client.isEmpty()) {
+                    return client;
+                }
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    /**
+     * Picks the client out of a header such as X-Forwarded-For, to which every proxy appends the
+     * address it received the request from. Entries left of those the trusted proxies appended are
+     * supplied by the client and may be forged, so the client is the {@code trustedProxies}-th entry
+     * from the right, or the first one if the request passed fewer proxies.
+     *
+     * @param header         the header value, a comma-separated list of hops
+     * @param trustedProxies number of trusted proxies that append to the header
+     * @return the client's entry, empty if the header holds none
+     */
+    static String clientOf(String header, int trustedProxies) {
+        int end = header.length();
+        for (int hop = 1; ; hop++) {
+            int comma = header.lastIndexOf(',', end - 1);
+            if (hop == trustedProxies || comma < 0) {
+                return header.substring(comma + 1, end).trim();
+            }
+            end = comma;
+        }
+    }
+
+    /**
+     * Releases the cost of an asynchronous request once its response is complete. Timeouts and
+     * errors are followed by a completion too, so only {@code onComplete} releases.
+     */
+    private final class ReleaseListener implements AsyncListener {
+        private final int cost;
+
+        ReleaseListener(int cost) {
+            this.cost = cost;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            inFlightCost.addAndGet(-cost);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
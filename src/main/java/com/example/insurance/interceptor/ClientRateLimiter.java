@@ -0,0 +1,96 @@
+package com.example.insurance.interceptor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-client token buckets, implemented as the generic cell rate algorithm: each client's bucket is
+ * a single {@link AtomicLong} holding the time at which it will be full again, so taking tokens is
+ * one compare-and-set and needs no lock or allocation. Buckets live in a {@link ConcurrentHashMap},
+ * whose reads are lock-free and whose writes lock only one bin.
+ * <p>
+ * Buckets that have refilled completely carry no state worth keeping, so they are swept out once
+ * the number of tracked clients passes a threshold.
+ */
+final class ClientRateLimiter {
+
+    /**
+     * Number of tracked clients above which full buckets are swept out.
+     */
+    private static final int SWEEP_THRESHOLD = 10_000;
+
+    /**
+     * Minimum time between two sweeps.
+     */
+    private static final long SWEEP_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param tokensPerSecond rate at which each bucket refills
+     * @param burst           number of tokens a full bucket holds
+     */
+    ClientRateLimiter(double tokensPerSecond, int burst) {
+        this.nanosPerToken = (long) Math.max(1, 1_000_000_000L / tokensPerSecond);
+        this.burstNanos = burst * nanosPerToken;
+    }
+
+    /**
+     * Takes tokens from a client's bucket if it holds enough.
+     *
+     * @param client the client key
+     * @param tokens number of tokens to take; more than a full bucket counts as a full bucket
+     * @param now    the current {@link System#nanoTime()}
+     * @return 0 if the tokens were taken, otherwise the nanoseconds until they will be available
+     */
+    long tryAcquire(String client, int tokens, long now) {
+        AtomicLong fullAt = buckets.get(client);
+        if (fullAt == null) {
+            sweepIfCrowded(now);
+            fullAt = buckets.computeIfAbsent(client, c -> new AtomicLong(now));
+        }
+        long cost = Math.min(tokens * nanosPerToken, burstNanos);
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + cost;
+            long excess = next - now - burstNanos;
+            if (excess > 0) {
+                return excess;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Gives back tokens taken for a request that was then not admitted after all.
+     *
+     * @param client the client key
+     * @param tokens number of tokens to give back
+     */
+    void release(String client, int tokens) {
+        AtomicLong fullAt = buckets.get(client);
+        if (fullAt != null) {
+            fullAt.addAndGet(-Math.min(tokens * nanosPerToken, burstNanos));
+        }
+    }
+
+    /**
+     * @return the number of clients with a tracked bucket
+     */
+    int trackedClients() {
+        return buckets.size();
+    }
+
+    private void sweepIfCrowded(long now) {
+        long due = nextSweep.get();
+        if (buckets.size() > SWEEP_THRESHOLD && now - due >= 0 && nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_NANOS)) {
+            buckets.values().removeIf(fullAt -> fullAt.get() - now <= 0);
+        }
+    }
+}
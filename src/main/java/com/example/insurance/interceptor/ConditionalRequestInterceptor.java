@@ -0,0 +1,85 @@
+package com.example.insurance.interceptor;
+
+import com.example.insurance.service.PolicyService;
+import com.example.insurance.service.ShardCoordinator;
+import jakarta.servlet.http.*;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.util.Set;
+
+/**
+ * Interceptor that makes GET requests for insurance policy APIs conditional.
+ * Every successful response for a given URL is fully determined by the loaded catalogue, so the
+ * ETag is the catalogue version. It is taken here, before the controller runs. The collection
+ * endpoints answer 200 whatever the catalogue holds, so a request to one of them whose
+ * {@code If-None-Match} still names the current version is answered with 304 Not Modified right
+ * here, without running the query. Whether a policy looked up by id exists depends on the
+ * catalogue, so those requests always run and the {@link ConditionalResponseAdvice} decides on
+ * 304 once the controller has succeeded; a missing policy gets its 404. Either way the ETag is
+ * only set on successful responses. A coordinator answers from other nodes' shards, not from its
+ * own catalogue, so its responses get no ETag.
+ */
+@Slf4j
+@Component
+public class ConditionalRequestInterceptor implements HandlerInterceptor {
+
+    /**
+     * Request attribute holding the ETag of the catalogue the request is answered from.
+     */
+    static final String ETAG_ATTRIBUTE = ConditionalRequestInterceptor.class.getName() + ".etag";
+
+    /**
+     * Endpoints whose status does not depend on the data, which are answered with 304 before the
+     * controller runs.
+     */
+    private static final Set<String> COLLECTION_PATHS = Set.of("/policies", "/policies/search", "/policies/suggest",
+            "/policies/filter", "/policies/getPolicyTypes", "/policies/facets");
+
+    private final PolicyService policyService;
+    private final ShardCoordinator shardCoordinator;
+
+    /**
+     * Constructor for injecting the PolicyService and ShardCoordinator.
+     *
+     * @param policyService    service holding the current catalogue
+     * @param shardCoordinator coordinator whose merged responses are not conditional
+     */
+    public ConditionalRequestInterceptor(PolicyService policyService, ShardCoordinator shardCoordinator) {
+        this.policyService = policyService;
+        this.shardCoordinator = shardCoordinator;
+    }
+
+    /**
+     * Records the ETag of the current catalogue for the response and short-circuits a request to
+     * a collection endpoint if the client already has it. A write or reload that lands while the
+     * request runs can only make the body newer than its ETag, which costs the client one extra
+     * full response, never a stale one.
+     *
+     * @param request  the current HTTP request
+     * @param response the current HTTP response
+     * @param handler  the chosen handler to execute
+     * @return false if a 304 was sent; true to let the request proceed
+     */
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (!HttpMethod.GET.matches(request.getMethod()) || shardCoordinator.coordinates(path)) {
+            return true;
+        }
+        String etag = "\"" + Long.toHexString(policyService.getView().version()) + "\"";
+        // without the response, the check leaves the ETag off errors the controller may still raise
+        if (COLLECTION_PATHS.contains(path) && new ServletWebRequest(request).checkNotModified(etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            response.setHeader(HttpHeaders.ETAG, etag);
+            log.debug("Not modified: {}", request.getRequestURI());
+            return false;
+        }
+        request.setAttribute(ETAG_ATTRIBUTE, etag);
+        return true;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.insurance.interceptor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Applies the ETag recorded by the {@link ConditionalRequestInterceptor} to successful responses
+ * and answers them with 304 Not Modified, without writing the body, if the client already has
+ * that version. Only 200 responses are conditional, so error bodies never carry an ETag and a
+ * request for a missing policy gets its 404 whatever {@code If-None-Match} says. Unchanged
+ * requests to collection endpoints are already answered by the interceptor and never get here.
+ */
+@Slf4j
+@ControllerAdvice
+public class ConditionalResponseAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (!(request instanceof ServletServerHttpRequest servletRequest)
+                || !(response instanceof ServletServerHttpResponse servletResponse)) {
+            return body;
+        }
+        Object etag = servletRequest.getServletRequest().getAttribute(ConditionalRequestInterceptor.ETAG_ATTRIBUTE);
+        if (etag == null) {
+            return body;
+        }
+        // sets the ETag and decides on 304 only while the status is still 200
+        ServletWebRequest webRequest = new ServletWebRequest(servletRequest.getServletRequest(), servletResponse.getServletResponse());
+        if (webRequest.checkNotModified((String) etag)) {
+            log.debug("Not modified: {}", servletRequest.getServletRequest().getRequestURI());
+            return null;
+        }
+        return body;
+    }
+}
@@ -28,7 +28,6 @@ public class RequestValidationInterceptor implements HandlerInterceptor {
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
         String uri = request.getRequestURI();
-        log.info("Intercepting request: {}", uri);
 
         // Validate that at least one filter parameter is provided for /filter requests
         if (uri.contains("/filter")) {
@@ -39,6 +38,20 @@ public class RequestValidationInterceptor implements HandlerInterceptor {
             }
         }
 
+        // Validate the result limit for /suggest and paged /filter requests
+        if (uri.contains("/suggest") || uri.contains("/filter")) {
+            try {
+                String limit = request.getParameter("limit");
+                if (limit != null && Integer.parseInt(limit) <= 0) {
+                    log.warn("Invalid limit: {}", limit);
+                    throw new InvalidRequestException("Limit must be > 0.");
+                }
+            } catch (NumberFormatException e) {
+                log.error("Limit parameter not a number", e);
+                throw new InvalidRequestException("Limit must be a valid integer.");
+            }
+        }
+
         // Validate pagination parameters for paginated /policies endpoint (excluding /filter and /search)
         if (uri.contains("/policies") && !uri.contains("/filter") && !uri.contains("/search")) {
             try {
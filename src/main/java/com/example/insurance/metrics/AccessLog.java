@@ -0,0 +1,301 @@
+package com.example.insurance.metrics;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Access log written off the request threads.
+ * <p>
+ * Request threads claim a slot in a preallocated ring buffer with a compare-and-set and fill in
+ * its fixed fields: primitives and references to strings the request already holds, so nothing
+ * is allocated and nothing is formatted on the request path. A single background thread formats
+ * the published slots and writes them to the file in batches, one flush per batch. When the
+ * buffer is full the record is dropped and counted instead of blocking the request.
+ * <p>
+ * If writing fails, the file is closed and reopened with backoff. Until it is open again the
+ * writer keeps taking records off the buffer and counts them as dropped, as it does for the batch
+ * that failed, so requests are never held up and no record goes missing from the counters.
+ * <p>
+ * Successful requests are sampled at the configured rate; responses with a 4xx or 5xx status are
+ * always logged. Each line holds the completion time, method, path, status, duration in
+ * microseconds and query string.
+ */
+@Slf4j
+@Component
+public class AccessLog {
+
+    /**
+     * Longest query string written; longer ones are truncated.
+     */
+    private static final int MAX_QUERY_LENGTH = 512;
+
+    /**
+     * Maximum number of records formatted between two flushes.
+     */
+    private static final int BATCH_SIZE = 1024;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * Shortest and longest wait before reopening the file after a write failed.
+     */
+    private static final long MIN_RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_RETRY_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private static final VarHandle SEQUENCES = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final Path path;
+    private final double sampleRate;
+    private final int capacity;
+    private final int mask;
+
+    // one slot per index; sequences[slot] is the sequence number last published there
+    private final long[] sequences;
+    private final long[] timestamps;
+    private final long[] durations;
+    private final int[] statuses;
+    private final String[] methods;
+    private final String[] uris;
+    private final String[] queries;
+
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private volatile long written;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    /**
+     * Constructor for injecting the access log settings.
+     *
+     * @param path       file the log is appended to, blank to turn the access log off
+     * @param sampleRate fraction of successful requests that are logged, between 0 and 1
+     * @param bufferSize number of records the ring buffer holds, rounded up to a power of two
+     */
+    public AccessLog(@Value("${policies.access-log.path:}") String path,
+                     @Value("${policies.access-log.sample-rate:1.0}") double sampleRate,
+                     @Value("${policies.access-log.buffer-size:65536}") int bufferSize) {
+        this.path = path.isBlank() ? null : Path.of(path);
+        this.sampleRate = Math.max(0, Math.min(sampleRate, 1));
+        this.capacity = Integer.highestOneBit(Math.max(bufferSize - 1, 1)) << 1;
+        this.mask = capacity - 1;
+        int slots = this.path == null ? 0 : capacity;
+        this.sequences = new long[slots];
+        Arrays.fill(sequences, -1);
+        this.timestamps = new long[slots];
+        this.durations = new long[slots];
+        this.statuses = new int[slots];
+        this.methods = new String[slots];
+        this.uris = new String[slots];
+        this.queries = new String[slots];
+    }
+
+    /**
+     * Opens the log file and starts the writer thread, unless the access log is turned off.
+     *
+     * @throws IOException if the log file cannot be opened
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        if (path == null) {
+            return;
+        }
+        Writer out = open();
+        running = true;
+        writer = Thread.ofPlatform().name("access-log").daemon().start(() -> drain(out));
+        log.info("Writing access log to {} (sample rate {}, buffer of {} records)", path, sampleRate, capacity);
+    }
+
+    /**
+     * Stops the writer thread once it has written every record already in the buffer.
+     *
+     * @throws InterruptedException if interrupted while waiting for the writer
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    /**
+     * Records a completed request. Never blocks: the record is dropped if the buffer is full.
+     *
+     * @param timestampMillis completion time, in milliseconds since the epoch
+     * @param method          the HTTP method
+     * @param uri             the request path
+     * @param query           the query string, or null
+     * @param status          the response status
+     * @param nanos           the time taken, in nanoseconds
+     */
+    public void record(long timestampMillis, String method, String uri, String query, int status, long nanos) {
+        if (!running) {
+            return;
+        }
+        if (status < 400 && sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed.get() >= capacity) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & mask;
+        timestamps[slot] = timestampMillis;
+        durations[slot] = nanos;
+        statuses[slot] = status;
+        methods[slot] = method;
+        uris[slot] = uri;
+        queries[slot] = query;
+        SEQUENCES.setRelease(sequences, slot, sequence);
+    }
+
+    /**
+     * Writes the access log counters in the Prometheus text format.
+     *
+     * @param out the buffer to write to
+     */
+    public void writeTo(StringBuilder out) {
+        out.append("# HELP insurance_access_log_records_total Access log records, by outcome.\n");
+        out.append("# TYPE insurance_access_log_records_total counter\n");
+        out.append("insurance_access_log_records_total{outcome=\"written\"} ").append(written).append('\n');
+        out.append("insurance_access_log_records_total{outcome=\"dropped\"} ").append(dropped.sum()).append('\n');
+    }
+
+    /**
+     * Writer loop: formats every published record in order, flushing after each batch, and parks
+     * briefly whenever the buffer is empty. While the file cannot be written, records are taken
+     * off the buffer and counted as dropped, and the file is reopened with backoff.
+     */
+    private void drain(Writer initial) {
+        StringBuilder line = new StringBuilder(256);
+        Writer out = initial;
+        long retryNanos = MIN_RETRY_NANOS;
+        long retryAt = 0;
+        while (true) {
+            if (out == null && System.nanoTime() - retryAt >= 0) {
+                try {
+                    out = open();
+                    retryNanos = MIN_RETRY_NANOS;
+                    log.info("Reopened access log {}", path);
+                } catch (IOException e) {
+                    log.warn("Cannot reopen access log {}, retrying in {} s: {}", path, TimeUnit.NANOSECONDS.toSeconds(retryNanos), e.toString());
+                    retryAt = System.nanoTime() + retryNanos;
+                    retryNanos = Math.min(retryNanos * 2, MAX_RETRY_NANOS);
+                }
+            }
+
+            long next = consumed.get();
+            int batch = 0;
+            IOException failure = null;
+            while (batch < BATCH_SIZE && (long) SEQUENCES.getAcquire(sequences, (int) next & mask) == next) {
+                int slot = (int) next & mask;
+                if (out != null && failure == null) {
+                    format(slot, line);
+                    try {
+                        out.append(line);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+                // let go of the request's strings and hand the slot back to the producers
+                methods[slot] = null;
+                uris[slot] = null;
+                queries[slot] = null;
+                consumed.set(++next);
+                batch++;
+            }
+            if (batch > 0 && out != null && failure == null) {
+                try {
+                    out.flush();
+                    written += batch;
+                    continue;
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                log.error("Writing the access log failed, reopening {}", path, failure);
+                closeQuietly(out);
+                out = null;
+                retryAt = System.nanoTime() + retryNanos;
+            }
+            if (batch > 0) {
+                // not written, or not known to have reached the file
+                dropped.add(batch);
+            } else if (!running) {
+                break;
+            } else {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        closeQuietly(out);
+    }
+
+    private Writer open() throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        return Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+    }
+
+    private static void closeQuietly(Writer out) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            // the file is being given up on anyway
+        }
+    }
+
+    private void format(int slot, StringBuilder line) {
+        line.setLength(0);
+        line.append(Instant.ofEpochMilli(timestamps[slot])).append(' ')
+                .append(methods[slot]).append(' ')
+                .append(uris[slot]).append(' ')
+                .append(statuses[slot]).append(' ')
+                .append(durations[slot] / 1000).append("us ");
+        String query = queries[slot];
+        if (query == null || query.isEmpty()) {
+            line.append('-');
+        } else {
+            int length = Math.min(query.length(), MAX_QUERY_LENGTH);
+            for (int i = 0; i < length; i++) {
+                char c = query.charAt(i);
+                // keep one record per line whatever the client sent
+                line.append(c < ' ' || c == 0x7f ? '?' : c);
+            }
+        }
+        line.append('\n');
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.insurance.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two buckets from about 1 µs to 17 s.
+ * <p>
+ * Recording finds the bucket from the position of the highest set bit and increments two
+ * {@link LongAdder}s, so it costs a few nanoseconds and does not contend between threads. Reads
+ * are not atomic across buckets, which is fine for scraping.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Upper bound of the first bucket, as a power of two in nanoseconds (1,024 ns).
+     */
+    private static final int FIRST_BOUND_SHIFT = 10;
+
+    /**
+     * Number of bounded buckets; a final bucket holds everything above the last bound (2^34 ns).
+     */
+    private static final int BOUNDED_BUCKETS = 25;
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDED_BUCKETS + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one observation.
+     *
+     * @param nanos the observed duration in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 1);
+        int bucket = 64 - Long.numberOfLeadingZeros(value - 1) - FIRST_BOUND_SHIFT;
+        buckets[Math.max(0, Math.min(bucket, BOUNDED_BUCKETS))].increment();
+        sumNanos.add(value);
+    }
+
+    /**
+     * Writes the histogram in the Prometheus text format, as cumulative {@code _bucket} series
+     * in seconds followed by {@code _sum} and {@code _count}.
+     *
+     * @param out    the buffer to write to
+     * @param name   the metric name
+     * @param labels the labels of the series, rendered as {@code key="value"} pairs, or empty
+     */
+    public void writeTo(StringBuilder out, String name, String labels) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < BOUNDED_BUCKETS; i++) {
+            cumulative += buckets[i].sum();
+            double bound = (double) (1L << (FIRST_BOUND_SHIFT + i)) / 1_000_000_000;
+            out.append(name).append("_bucket{").append(prefix).append("le=\"")
+                    .append(String.format(Locale.ROOT, "%.9f", bound)).append("\"} ").append(cumulative).append('\n');
+        }
+        cumulative += buckets[BOUNDED_BUCKETS].sum();
+        out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(name).append("_sum");
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(String.format(Locale.ROOT, "%.9f", sumNanos.sum() / 1e9)).append('\n');
+        out.append(name).append("_count");
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(cumulative).append('\n');
+    }
+}
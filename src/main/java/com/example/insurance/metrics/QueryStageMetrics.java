@@ -0,0 +1,97 @@
+package com.example.insurance.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time and selectivity of each stage of query evaluation. A predicate stage runs either as an
+ * index lookup, producing candidates from the whole catalogue, or as a filter over candidates;
+ * the matches are then put in order. For each stage and mode, the rows going in and coming out
+ * and a latency histogram are kept. Rows out divided by rows in is the stage's observed selectivity.
+ */
+@Component
+public class QueryStageMetrics {
+
+    /**
+     * The stages of query evaluation.
+     */
+    public enum Stage {
+        PREMIUM, TYPE, COVERAGE, NAME, SORT
+    }
+
+    /**
+     * How a stage was executed.
+     */
+    public enum Mode {
+        LOOKUP, FILTER, ORDER
+    }
+
+    private final StageStats[][] stats = new StageStats[Stage.values().length][Mode.values().length];
+
+    public QueryStageMetrics() {
+        for (StageStats[] byMode : stats) {
+            for (int mode = 0; mode < byMode.length; mode++) {
+                byMode[mode] = new StageStats();
+            }
+        }
+    }
+
+    /**
+     * Records one execution of a stage.
+     *
+     * @param stage   the stage
+     * @param mode    how it was executed
+     * @param rowsIn  rows considered: the catalogue size for a lookup, the candidates for a filter
+     * @param rowsOut rows produced
+     * @param nanos   time taken, in nanoseconds
+     */
+    public void record(Stage stage, Mode mode, int rowsIn, int rowsOut, long nanos) {
+        StageStats stageStats = stats[stage.ordinal()][mode.ordinal()];
+        stageStats.rowsIn.add(rowsIn);
+        stageStats.rowsOut.add(rowsOut);
+        stageStats.latency.record(nanos);
+    }
+
+    /**
+     * Writes the counters and histograms of every stage that has run, in the Prometheus text format.
+     *
+     * @param out the buffer to write to
+     */
+    public void writeTo(StringBuilder out) {
+        out.append("# HELP insurance_query_stage_rows_in_total Rows considered by a query stage.\n");
+        out.append("# TYPE insurance_query_stage_rows_in_total counter\n");
+        forEachStage((labels, stageStats) -> out.append("insurance_query_stage_rows_in_total{").append(labels).append("} ")
+                .append(stageStats.rowsIn.sum()).append('\n'));
+        out.append("# HELP insurance_query_stage_rows_out_total Rows produced by a query stage.\n");
+        out.append("# TYPE insurance_query_stage_rows_out_total counter\n");
+        forEachStage((labels, stageStats) -> out.append("insurance_query_stage_rows_out_total{").append(labels).append("} ")
+                .append(stageStats.rowsOut.sum()).append('\n'));
+        out.append("# HELP insurance_query_stage_duration_seconds Time spent in a query stage.\n");
+        out.append("# TYPE insurance_query_stage_duration_seconds histogram\n");
+        forEachStage((labels, stageStats) -> stageStats.latency.writeTo(out, "insurance_query_stage_duration_seconds", labels));
+    }
+
+    private void forEachStage(StageWriter writer) {
+        for (Stage stage : Stage.values()) {
+            for (Mode mode : Mode.values()) {
+                StageStats stageStats = stats[stage.ordinal()][mode.ordinal()];
+                if (stageStats.rowsIn.sum() > 0 || stageStats.rowsOut.sum() > 0) {
+                    writer.write("stage=\"" + stage.name().toLowerCase(Locale.ROOT) + "\",mode=\""
+                            + mode.name().toLowerCase(Locale.ROOT) + "\"", stageStats);
+                }
+            }
+        }
+    }
+
+    private interface StageWriter {
+        void write(String labels, StageStats stageStats);
+    }
+
+    private static final class StageStats {
+        private final LongAdder rowsIn = new LongAdder();
+        private final LongAdder rowsOut = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.insurance.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request counters and latency histograms per endpoint, keyed by HTTP method and the matched
+ * handler pattern (e.g. {@code GET /policies/filter}) so that query strings and path variables
+ * do not multiply the series. Recording is a lookup in a concurrent map plus a few
+ * {@link LongAdder} increments.
+ */
+@Component
+public class RequestMetrics {
+
+    /**
+     * Pattern reported for requests that no handler matched.
+     */
+    public static final String UNMATCHED = "UNMATCHED";
+
+    private static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx"};
+
+    private final Map<String, Map<String, Endpoint>> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * Records one handled request.
+     *
+     * @param method  the HTTP method
+     * @param pattern the matched handler pattern, or {@link #UNMATCHED}
+     * @param status  the response status
+     * @param nanos   the time taken, in nanoseconds
+     */
+    public void record(String method, String pattern, int status, long nanos) {
+        Map<String, Endpoint> byPattern = endpoints.get(method);
+        if (byPattern == null) {
+            byPattern = endpoints.computeIfAbsent(method, m -> new ConcurrentHashMap<>());
+        }
+        Endpoint endpoint = byPattern.get(pattern);
+        if (endpoint == null) {
+            endpoint = byPattern.computeIfAbsent(pattern, p -> new Endpoint());
+        }
+        endpoint.statuses[Math.max(0, Math.min(status / 100 - 1, STATUS_CLASSES.length - 1))].increment();
+        endpoint.latency.record(nanos);
+    }
+
+    /**
+     * Writes every endpoint's counters and latency histogram in the Prometheus text format.
+     *
+     * @param out the buffer to write to
+     */
+    public void writeTo(StringBuilder out) {
+        out.append("# HELP insurance_http_requests_total Requests handled, by endpoint and status class.\n");
+        out.append("# TYPE insurance_http_requests_total counter\n");
+        endpoints.forEach((method, byPattern) -> byPattern.forEach((pattern, endpoint) -> {
+            for (int i = 0; i < STATUS_CLASSES.length; i++) {
+                long count = endpoint.statuses[i].sum();
+                if (count > 0) {
+                    out.append("insurance_http_requests_total{").append(labels(method, pattern))
+                            .append(",status=\"").append(STATUS_CLASSES[i]).append("\"} ").append(count).append('\n');
+                }
+            }
+        }));
+        out.append("# HELP insurance_http_request_duration_seconds Time from receiving a request to completing its response, by endpoint.\n");
+        out.append("# TYPE insurance_http_request_duration_seconds histogram\n");
+        endpoints.forEach((method, byPattern) -> byPattern.forEach((pattern, endpoint) ->
+                endpoint.latency.writeTo(out, "insurance_http_request_duration_seconds", labels(method, pattern))));
+    }
+
+    private static String labels(String method, String pattern) {
+        return "method=\"" + method + "\",uri=\"" + pattern.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static final class Endpoint {
+        private final LongAdder[] statuses = new LongAdder[STATUS_CLASSES.length];
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        Endpoint() {
+            for (int i = 0; i < statuses.length; i++) {
+                statuses[i] = new LongAdder();
+            }
+        }
+    }
+}
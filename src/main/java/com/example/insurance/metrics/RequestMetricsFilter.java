@@ -0,0 +1,98 @@
+package com.example.insurance.metrics;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Servlet filter that times every request, interceptors, handler and response writing included,
+ * and records it in {@link RequestMetrics} and the {@link AccessLog}. Requests that continue
+ * asynchronously, such as streaming exports, are recorded when the async processing completes.
+ */
+@Component
+public class RequestMetricsFilter extends OncePerRequestFilter {
+
+    private static final Set<String> KNOWN_METHODS = Set.of("GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS", "TRACE");
+
+    private final RequestMetrics requestMetrics;
+    private final AccessLog accessLog;
+
+    /**
+     * Constructor for injecting the RequestMetrics and AccessLog.
+     *
+     * @param requestMetrics registry the requests are recorded in
+     * @param accessLog      access log the requests are written to
+     */
+    public RequestMetricsFilter(RequestMetrics requestMetrics, AccessLog accessLog) {
+        this.requestMetrics = requestMetrics;
+        this.accessLog = accessLog;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long started = System.nanoTime();
+        boolean failed = true;
+        try {
+            filterChain.doFilter(request, response);
+            failed = false;
+        } finally {
+            if (!failed && request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new CompletionListener(request, response, started));
+            } else {
+                record(request, failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus(), started);
+            }
+        }
+    }
+
+    private void record(HttpServletRequest request, int status, long started) {
+        long nanos = System.nanoTime() - started;
+        // arbitrary method tokens would otherwise each get their own series
+        String method = KNOWN_METHODS.contains(request.getMethod()) ? request.getMethod() : "OTHER";
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        requestMetrics.record(method, pattern instanceof String matched ? matched : RequestMetrics.UNMATCHED, status, nanos);
+        accessLog.record(System.currentTimeMillis(), request.getMethod(), request.getRequestURI(), request.getQueryString(), status, nanos);
+    }
+
+    /**
+     * Records an asynchronous request once its response is complete. Timeouts and errors are
+     * followed by a completion too, so only {@code onComplete} records.
+     */
+    private final class CompletionListener implements AsyncListener {
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final long started;
+
+        CompletionListener(HttpServletRequest request, HttpServletResponse response, long started) {
+            this.request = request;
+            this.response = response;
+            this.started = started;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            record(request, response.getStatus(), started);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.insurance.model;
+
+
+import lombok.*;
+
+/**
+ * Number of values falling in {@code [from, to]}, both inclusive.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class HistogramBucket {
+    private int from;
+    private int to;
+    private int count;
+
+}
@@ -0,0 +1,24 @@
+package com.example.insurance.model;
+
+
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * Statistics of a numeric policy attribute over the policies that have a value for it. The
+ * histogram buckets are the same for every query on a catalogue, so results can be compared.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class NumericFacet {
+    private int count;
+    private Integer min;
+    private Integer max;
+    private Double average;
+    private List<HistogramBucket> histogram;
+
+}
@@ -0,0 +1,18 @@
+package com.example.insurance.model;
+
+
+import lombok.*;
+
+/**
+ * One entry of a batch query: the usual filter criteria plus an identifier that keys its
+ * results in the response and an optional cap on the number of policies returned.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@ToString(callSuper = true)
+public class PolicyBatchQuery extends PolicyQuery {
+    private String id;
+    private Integer limit;
+
+}
@@ -0,0 +1,13 @@
+package com.example.insurance.model;
+
+
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Results of a batch query: the matching policies of every entry, keyed by the entry's
+ * identifier, in the order the entries were given.
+ */
+public class PolicyBatchResult extends LinkedHashMap<String, List<Policy>> {
+
+}
@@ -0,0 +1,23 @@
+package com.example.insurance.model;
+
+
+import lombok.*;
+
+import java.util.Map;
+
+/**
+ * Aggregates over a set of policies for the filter sidebar: the number of policies, the count
+ * per policy type and statistics of the premium and coverage values.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class PolicyFacets {
+    private int total;
+    private Map<String, Integer> types;
+    private NumericFacet premium;
+    private NumericFacet coverage;
+
+}
@@ -0,0 +1,24 @@
+package com.example.insurance.model;
+
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * One page of policies together with the total count, when it was requested, and the cursor
+ * for the next page, which is null on the last page. Null fields are left out of the JSON.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PolicyPage {
+    private List<Policy> policies;
+    private Integer totalPages;
+    private String nextCursor;
+
+}
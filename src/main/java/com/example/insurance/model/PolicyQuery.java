@@ -0,0 +1,25 @@
+package com.example.insurance.model;
+
+import lombok.*;
+
+/**
+ * Filter criteria understood by {@code PolicyService.filterPolicies}. Every field is optional;
+ * the premium range only applies when both bounds are present. Results are ordered by
+ * {@code sortBy} (name when only a sort order is given) and kept in storage order when
+ * neither is set.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class PolicyQuery {
+    private Integer minPremium;
+    private Integer maxPremium;
+    private String policyType;
+    private Integer minCoverage;
+    private String sortOrder;
+    private String name;
+    private String sortBy;
+
+}
@@ -0,0 +1,18 @@
+package com.example.insurance.model;
+
+
+import lombok.*;
+
+/**
+ * Lightweight autocomplete entry returned instead of the full {@link Policy}.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class PolicySuggestion {
+    private Long id;
+    private String name;
+
+}
@@ -0,0 +1,29 @@
+package com.example.insurance.model;
+
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * Partial result of a query answered by one shard of a partitioned catalogue, as returned to
+ * the coordinator. Besides the policies it carries the version of the shard's catalogue and,
+ * for pages, the position of every policy in the shard's ordering, so the coordinator can build
+ * a cursor that resumes each shard exactly where the merged page left it. Null fields are left
+ * out of the JSON.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ShardPage {
+    private long version;
+    private boolean hasMore;
+    private Integer total;
+    private int[] positions;
+    private List<Policy> policies;
+
+}
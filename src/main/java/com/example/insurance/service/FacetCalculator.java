@@ -0,0 +1,339 @@
+package com.example.insurance.service;
+
+import com.example.insurance.model.HistogramBucket;
+import com.example.insurance.model.NumericFacet;
+import com.example.insurance.model.PolicyFacets;
+import com.example.insurance.store.PolicyStore;
+import com.example.insurance.store.PolicyView;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes {@link PolicyFacets} in a single pass over a set of rows: type counts and the
+ * count, sum, minimum, maximum and histogram of premium and coverage are all accumulated
+ * together. Large row sets are split across cores with fork-join and the partial results merged.
+ * <p>
+ * Histogram buckets span the whole catalogue's value range, taken from the view's range
+ * bounds, so the buckets of a filtered result line up with the unfiltered ones. The facets of
+ * the unfiltered catalogue are precomputed once per base store. For a view with published
+ * changes they are derived on first use from the base's totals, taking out the hidden rows and
+ * adding the delta rows, unless the changes moved a range bound and with it the buckets.
+ */
+@Slf4j
+@Component
+public class FacetCalculator {
+
+    /**
+     * Number of histogram buckets per numeric facet.
+     */
+    private static final int HISTOGRAM_BUCKETS = 10;
+
+    /**
+     * Row count below which a fork-join task accumulates directly instead of splitting further.
+     */
+    private static final int SPLIT_THRESHOLD = 32 * 1024;
+
+    private volatile BaseTotals baseTotals;
+    private volatile Unfiltered unfiltered;
+
+    /**
+     * Computes and keeps the facets of a whole view. Called before the view is published. The
+     * base is only aggregated if it is not the one aggregated last.
+     *
+     * @param view the newly published view
+     */
+    public void precompute(PolicyView view) {
+        long started = System.nanoTime();
+        unfiltered = new Unfiltered(view.version(), derive(view, totalsOf(view.base())));
+        log.debug("Precomputed facets of {} policies in {} ms", view.size(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Returns the facets of a whole view, precomputed unless changes have been published since,
+     * in which case they are derived from the base's totals and kept for the requests that follow.
+     *
+     * @param view the policy view
+     * @return facets over every policy
+     */
+    public PolicyFacets unfiltered(PolicyView view) {
+        Unfiltered current = unfiltered;
+        if (current != null && current.version() == view.version()) {
+            return current.facets();
+        }
+        PolicyFacets facets = derive(view, totalsOf(view.base()));
+        unfiltered = new Unfiltered(view.version(), facets);
+        return facets;
+    }
+
+    /**
+     * Computes the facets of a set of rows.
+     *
+     * @param view the policy view
+     * @param rows the rows to aggregate, or null for every row
+     * @return facets over the given rows
+     */
+    public PolicyFacets compute(PolicyView view, int[] rows) {
+        Buckets premiumBuckets = Buckets.of(view.minPremium(), view.maxPremium());
+        Buckets coverageBuckets = Buckets.of(view.minCoverage(), view.maxCoverage());
+        return toFacets(view, accumulate(view, rows, premiumBuckets, coverageBuckets), premiumBuckets, coverageBuckets);
+    }
+
+    private BaseTotals totalsOf(PolicyStore store) {
+        BaseTotals current = baseTotals;
+        if (current != null && current.store() == store) {
+            return current;
+        }
+        PolicyView view = PolicyView.of(store);
+        Buckets premiumBuckets = Buckets.of(view.minPremium(), view.maxPremium());
+        Buckets coverageBuckets = Buckets.of(view.minCoverage(), view.maxCoverage());
+        current = new BaseTotals(store, premiumBuckets, coverageBuckets, accumulate(view, null, premiumBuckets, coverageBuckets));
+        baseTotals = current;
+        return current;
+    }
+
+    /**
+     * Turns the totals of a view's base into the facets of the view: O(changes) as long as the
+     * buckets are unchanged, otherwise a full pass over the view.
+     */
+    private PolicyFacets derive(PolicyView view, BaseTotals base) {
+        Buckets premiumBuckets = Buckets.of(view.minPremium(), view.maxPremium());
+        Buckets coverageBuckets = Buckets.of(view.minCoverage(), view.maxCoverage());
+        if (!view.hasChanges()) {
+            return toFacets(view, base.totals(), premiumBuckets, coverageBuckets);
+        }
+        if (!premiumBuckets.equals(base.premiumBuckets()) || !coverageBuckets.equals(base.coverageBuckets())) {
+            return compute(view, null);
+        }
+        Totals totals = new Totals(view.typeDictionary().length, premiumBuckets, coverageBuckets);
+        totals.count = base.totals().count;
+        Map<String, Integer> codes = new HashMap<>();
+        String[] typeDictionary = view.typeDictionary();
+        for (int code = 0; code < typeDictionary.length; code++) {
+            codes.put(typeDictionary[code], code);
+        }
+        String[] baseTypes = view.base().typeDictionary();
+        for (int code = 0; code < baseTypes.length; code++) {
+            Integer viewCode = codes.get(baseTypes[code]);
+            if (viewCode != null) {
+                totals.typeCounts[viewCode] = base.totals().typeCounts[code];
+            }
+        }
+        totals.premium.merge(base.totals().premium);
+        totals.coverage.merge(base.totals().coverage);
+        // with no ordering the positions of the hidden rows are the rows themselves
+        for (int row : view.hiddenPositions(null, false)) {
+            totals.remove(view, row, premiumBuckets, coverageBuckets);
+        }
+        for (int row = view.base().size(); row < view.rowCount(); row++) {
+            totals.add(view, row, premiumBuckets, coverageBuckets);
+        }
+        // a removed row may have held the minimum or maximum; the view knows the visible ones
+        totals.premium.min = view.minPremium();
+        totals.premium.max = view.maxPremium();
+        totals.coverage.min = view.minCoverage();
+        totals.coverage.max = view.maxCoverage();
+        return toFacets(view, totals, premiumBuckets, coverageBuckets);
+    }
+
+    private static Totals accumulate(PolicyView view, int[] rows, Buckets premiumBuckets, Buckets coverageBuckets) {
+        FacetTask task = new FacetTask(view, rows, premiumBuckets, coverageBuckets, 0, rows == null ? view.rowCount() : rows.length);
+        return task.to - task.from > SPLIT_THRESHOLD ? ForkJoinPool.commonPool().invoke(task) : task.compute();
+    }
+
+    private static PolicyFacets toFacets(PolicyView view, Totals totals, Buckets premiumBuckets, Buckets coverageBuckets) {
+        String[] typeDictionary = view.typeDictionary();
+        Map<String, Integer> types = new LinkedHashMap<>();
+        for (int code = 0; code < typeDictionary.length; code++) {
+            types.put(typeDictionary[code], totals.typeCounts[code]);
+        }
+        return new PolicyFacets(totals.count, types,
+                totals.premium.toFacet(premiumBuckets), totals.coverage.toFacet(coverageBuckets));
+    }
+
+    /**
+     * Totals of every row of a base store, from which the facets of views over it are derived.
+     */
+    private record BaseTotals(PolicyStore store, Buckets premiumBuckets, Buckets coverageBuckets, Totals totals) {
+    }
+
+    private record Unfiltered(long version, PolicyFacets facets) {
+    }
+
+    /**
+     * Fixed-width histogram layout covering {@code [min, max]} of a column in at most
+     * {@link #HISTOGRAM_BUCKETS} buckets.
+     */
+    private record Buckets(int min, long width, int count) {
+
+        static Buckets of(int min, int max) {
+            if (min == PolicyStore.NULL_INT) {
+                return new Buckets(0, 1, 0);
+            }
+            long range = (long) max - min + 1;
+            long width = (range + HISTOGRAM_BUCKETS - 1) / HISTOGRAM_BUCKETS;
+            return new Buckets(min, width, (int) ((range + width - 1) / width));
+        }
+
+        int bucketOf(int value) {
+            long bucket = ((long) value - min) / width;
+            return (int) Math.max(0, Math.min(bucket, count - 1));
+        }
+    }
+
+    /**
+     * Accumulated statistics of one numeric column.
+     */
+    private static final class Stats {
+        private int count;
+        private long sum;
+        private int min = Integer.MAX_VALUE;
+        private int max = Integer.MIN_VALUE;
+        private final int[] histogram;
+
+        Stats(Buckets buckets) {
+            this.histogram = new int[buckets.count()];
+        }
+
+        void add(int value, Buckets buckets) {
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            histogram[buckets.bucketOf(value)]++;
+        }
+
+        void remove(int value, Buckets buckets) {
+            count--;
+            sum -= value;
+            histogram[buckets.bucketOf(value)]--;
+        }
+
+        void merge(Stats other) {
+            count += other.count;
+            sum += other.sum;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += other.histogram[i];
+            }
+        }
+
+        NumericFacet toFacet(Buckets buckets) {
+            List<HistogramBucket> bucketList = new ArrayList<>(histogram.length);
+            for (int i = 0; i < histogram.length; i++) {
+                long from = buckets.min() + i * buckets.width();
+                long to = Math.min(from + buckets.width() - 1, Integer.MAX_VALUE);
+                bucketList.add(new HistogramBucket((int) from, (int) to, histogram[i]));
+            }
+            return count == 0
+                    ? new NumericFacet(0, null, null, null, bucketList)
+                    : new NumericFacet(count, min, max, (double) sum / count, bucketList);
+        }
+    }
+
+    /**
+     * Accumulated facets of a slice of rows.
+     */
+    private static final class Totals {
+        private int count;
+        private final int[] typeCounts;
+        private final Stats premium;
+        private final Stats coverage;
+
+        Totals(int types, Buckets premiumBuckets, Buckets coverageBuckets) {
+            this.typeCounts = new int[types];
+            this.premium = new Stats(premiumBuckets);
+            this.coverage = new Stats(coverageBuckets);
+        }
+
+        void add(PolicyView view, int row, Buckets premiumBuckets, Buckets coverageBuckets) {
+            count++;
+            int typeCode = view.typeCode(row);
+            if (typeCode != PolicyStore.NO_TYPE) {
+                typeCounts[typeCode]++;
+            }
+            int premiumValue = view.premium(row);
+            if (premiumValue != PolicyStore.NULL_INT) {
+                premium.add(premiumValue, premiumBuckets);
+            }
+            int coverageValue = view.coverage(row);
+            if (coverageValue != PolicyStore.NULL_INT) {
+                coverage.add(coverageValue, coverageBuckets);
+            }
+        }
+
+        void remove(PolicyView view, int row, Buckets premiumBuckets, Buckets coverageBuckets) {
+            count--;
+            int typeCode = view.typeCode(row);
+            if (typeCode != PolicyStore.NO_TYPE) {
+                typeCounts[typeCode]--;
+            }
+            int premiumValue = view.premium(row);
+            if (premiumValue != PolicyStore.NULL_INT) {
+                premium.remove(premiumValue, premiumBuckets);
+            }
+            int coverageValue = view.coverage(row);
+            if (coverageValue != PolicyStore.NULL_INT) {
+                coverage.remove(coverageValue, coverageBuckets);
+            }
+        }
+
+        Totals merge(Totals other) {
+            count += other.count;
+            for (int code = 0; code < typeCounts.length; code++) {
+                typeCounts[code] += other.typeCounts[code];
+            }
+            premium.merge(other.premium);
+            coverage.merge(other.coverage);
+            return this;
+        }
+    }
+
+    /**
+     * Aggregates {@code rows[from, to)}, or the visible rows from {@code from} to {@code to} when
+     * there is no row array, splitting in halves until a slice is below {@link #SPLIT_THRESHOLD}.
+     */
+    private static final class FacetTask extends RecursiveTask<Totals> {
+        private final PolicyView view;
+        private final int[] rows;
+        private final Buckets premiumBuckets;
+        private final Buckets coverageBuckets;
+        private final int from;
+        private final int to;
+
+        FacetTask(PolicyView view, int[] rows, Buckets premiumBuckets, Buckets coverageBuckets, int from, int to) {
+            this.view = view;
+            this.rows = rows;
+            this.premiumBuckets = premiumBuckets;
+            this.coverageBuckets = coverageBuckets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                FacetTask left = new FacetTask(view, rows, premiumBuckets, coverageBuckets, from, middle);
+                FacetTask right = new FacetTask(view, rows, premiumBuckets, coverageBuckets, middle, to);
+                left.fork();
+                return right.compute().merge(left.join());
+            }
+
+            Totals totals = new Totals(view.typeDictionary().length, premiumBuckets, coverageBuckets);
+            int baseSize = view.base().size();
+            for (int i = from; i < to; i++) {
+                int row = rows == null ? i : rows[i];
+                if (rows == null && row < baseSize && view.isHidden(row)) {
+                    continue;
+                }
+                totals.add(view, row, premiumBuckets, coverageBuckets);
+            }
+            return totals;
+        }
+    }
+}
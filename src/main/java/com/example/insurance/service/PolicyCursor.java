@@ -0,0 +1,108 @@
+package com.example.insurance.service;
+
+import com.example.insurance.exception.InvalidRequestException;
+import com.example.insurance.model.PolicyQuery;
+import com.example.insurance.store.PolicyStore;
+import com.example.insurance.store.PolicyView;
+import com.example.insurance.store.RowKey;
+import lombok.Getter;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * Opaque keyset pagination cursor. It records the {@link RowKey} of the last returned row, as
+ * given by {@link QueryPlanner#keyOf}, together with the version of the base store and a hash of
+ * the query, so the next page resumes right after that row and a cursor cannot be replayed
+ * against other data or other criteria. Writes published over the same base keep the cursor
+ * valid, since the key still marks the same point in the order; it expires once the catalogue
+ * is reloaded or the journal compacted into a new base.
+ */
+@Getter
+public final class PolicyCursor {
+
+    private static final int FIXED_LENGTH = Long.BYTES + Integer.BYTES * 3 + Double.BYTES;
+
+    private final long version;
+    private final int queryHash;
+    private final RowKey rowKey;
+
+    private PolicyCursor(long version, int queryHash, RowKey rowKey) {
+        this.version = version;
+        this.queryHash = queryHash;
+        this.rowKey = rowKey;
+    }
+
+    /**
+     * Encodes a cursor pointing after the given row.
+     *
+     * @param view   the view the row belongs to
+     * @param query  the query being paginated
+     * @param rowKey key of the last returned row
+     * @return the opaque cursor string
+     */
+    public static String encode(PolicyView view, PolicyQuery query, RowKey rowKey) {
+        byte[] name = rowKey.name() == null ? new byte[0] : rowKey.name().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_LENGTH + name.length)
+                .putLong(view.base().version())
+                .putInt(hash(query))
+                .putInt(rowKey.place())
+                .putDouble(rowKey.number())
+                .putInt(rowKey.name() == null ? -1 : name.length)
+                .put(name);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * Decodes a cursor and checks that it belongs to the given view and query.
+     *
+     * @param cursor the opaque cursor string
+     * @param view   the current view
+     * @param query  the query being paginated
+     * @return the decoded cursor
+     * @throws InvalidRequestException if the cursor is malformed, stale or from another query
+     */
+    public static PolicyCursor decode(String cursor, PolicyView view, PolicyQuery query) {
+        PolicyCursor decoded;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getUrlDecoder().decode(cursor));
+            long version = buffer.getLong();
+            int queryHash = buffer.getInt();
+            int place = buffer.getInt();
+            double number = buffer.getDouble();
+            int nameLength = buffer.getInt();
+            if (nameLength < -1 || nameLength > buffer.remaining()) {
+                throw new InvalidRequestException("Invalid cursor.");
+            }
+            String name = null;
+            if (nameLength >= 0) {
+                byte[] bytes = new byte[nameLength];
+                buffer.get(bytes);
+                name = new String(bytes, StandardCharsets.UTF_8);
+            }
+            if (buffer.hasRemaining()) {
+                throw new InvalidRequestException("Invalid cursor.");
+            }
+            decoded = new PolicyCursor(version, queryHash, new RowKey(name, number, place));
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new InvalidRequestException("Invalid cursor.");
+        }
+        if (decoded.version != view.base().version()) {
+            throw new InvalidRequestException("Cursor has expired because the policy catalogue changed.");
+        }
+        if (decoded.queryHash != hash(query) || decoded.rowKey.place() < 0) {
+            throw new InvalidRequestException("Cursor does not match this query.");
+        }
+        return decoded;
+    }
+
+    static int hash(PolicyQuery query) {
+        return Objects.hash(query.getMinPremium(), query.getMaxPremium(),
+                PolicyStore.normalise(query.getPolicyType()), query.getMinCoverage(),
+                PolicyStore.normalise(query.getName()),
+                PolicyStore.normalise(query.getSortBy()), PolicyStore.normalise(query.getSortOrder()));
+    }
+}
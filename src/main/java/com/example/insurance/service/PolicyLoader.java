@@ -0,0 +1,534 @@
+package com.example.insurance.service;
+
+import com.example.insurance.exception.PolicyLoadException;
+import com.example.insurance.store.PolicyChange;
+import com.example.insurance.store.PolicyJournal;
+import com.example.insurance.store.PolicyRows;
+import com.example.insurance.store.PolicySnapshot;
+import com.example.insurance.store.PolicyStore;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Loads the policy catalogue into a {@link PolicyStore}.
+ * <p>
+ * The JSON array is read with Jackson's streaming {@link JsonParser} and every record is written
+ * straight into the store's columns, so no intermediate {@code List<Policy>} or object tree is
+ * ever built. The catalogue is read from the file configured by {@code policies.data.path},
+ * or from the bundled {@code insurance_policies.json} resource when no path is set. Malformed
+ * input fails the load with a {@link PolicyLoadException} naming the offending location.
+ * <p>
+ * After a successful parse the store is written to a binary {@link PolicySnapshot}, by default
+ * next to the data file. On the next start the snapshot is read instead of re-parsing, as long as
+ * the data file still has the size and modification time the snapshot recorded, so an unchanged
+ * file is not read at all; otherwise the loader falls back to JSON and checksums it in the same
+ * pass. The bundled resource has no modification time and is checksummed instead.
+ * <p>
+ * Changes written through the API are kept in a {@link PolicyJournal}, by default next to the
+ * data file, and replayed over the catalogue on every load, sealed segments first. Compaction
+ * folds sealed segments into the data file with {@link #writeBase(PolicyStore, List)}; loading
+ * and compaction exclude each other, so a load never pairs an old data file with already deleted
+ * segments.
+ * <p>
+ * In partitioned mode ({@code policies.shard.count} above 1) the loader keeps only the policies
+ * whose id hashes to {@code policies.shard.index}, so each node holds a disjoint slice of the
+ * catalogue; see {@link ShardCoordinator}. Policies without an id belong to shard 0. A snapshot
+ * records the shard it holds and is only used by the same shard; by default each shard keeps its
+ * own. The journal is disabled, because compacting one shard's slice into a data file shared
+ * with the other shards would lose theirs.
+ */
+@Slf4j
+@Component
+public class PolicyLoader {
+
+    private static final String BUNDLED_RESOURCE = "/insurance_policies.json";
+
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    /**
+     * 2^64 divided by the golden ratio, for Fibonacci hashing of ids onto shards.
+     */
+    private static final long SHARD_HASH_MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+    private static final int BASE_BUFFER_SIZE = 64 * 1024;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final Path dataPath;
+    private final Path snapshotPath;
+    private final Path journalPath;
+    private final int shardIndex;
+    private final int shardCount;
+
+    // checksum and length of the data file as writeBase last left it, -1 before the first compaction
+    private long writtenChecksum;
+    private long writtenLength = -1;
+    // checksum and length of the data file as last loaded or written, -1 while unknown
+    private long baseChecksum;
+    private long baseLength = -1;
+
+    /**
+     * Constructor for injecting the configured data, snapshot and journal files and the shard of
+     * the catalogue this node holds.
+     *
+     * @param dataPath        filesystem path of the policy catalogue, blank to use the bundled resource
+     * @param snapshotPath    path of the binary snapshot, blank to keep it next to the data file
+     * @param snapshotEnabled whether snapshots are read and written at all
+     * @param journalPath     path of the write journal, blank to keep it next to the data file
+     * @param shardIndex      the shard this node holds, from 0 to {@code shardCount - 1}
+     * @param shardCount      number of shards the catalogue is partitioned into, 1 to hold all of it
+     */
+    public PolicyLoader(@Value("${policies.data.path:}") String dataPath,
+                        @Value("${policies.snapshot.path:}") String snapshotPath,
+                        @Value("${policies.snapshot.enabled:true}") boolean snapshotEnabled,
+                        @Value("${policies.journal.path:}") String journalPath,
+                        @Value("${policies.shard.index:0}") int shardIndex,
+                        @Value("${policies.shard.count:1}") int shardCount) {
+        if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException("policies.shard.index must be between 0 and policies.shard.count - 1, got "
+                    + shardIndex + " of " + shardCount);
+        }
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+        String shardSuffix = shardCount == 1 ? "" : ".shard-" + shardIndex + "-of-" + shardCount;
+        this.dataPath = dataPath.isBlank() ? null : Path.of(dataPath);
+        if (!snapshotEnabled) {
+            this.snapshotPath = null;
+        } else if (!snapshotPath.isBlank()) {
+            this.snapshotPath = Path.of(snapshotPath);
+        } else {
+            this.snapshotPath = this.dataPath == null ? null : Path.of(dataPath + shardSuffix + SNAPSHOT_SUFFIX);
+        }
+        if (shardCount > 1) {
+            this.journalPath = null;
+        } else if (!journalPath.isBlank()) {
+            this.journalPath = Path.of(journalPath);
+        } else {
+            this.journalPath = this.dataPath == null ? null : Path.of(dataPath + JOURNAL_SUFFIX);
+        }
+    }
+
+    /**
+     * Returns the configured data file.
+     *
+     * @return the filesystem path of the catalogue, or null when the bundled resource is used
+     */
+    public Path getDataPath() {
+        return dataPath;
+    }
+
+    /**
+     * Returns the configured write journal.
+     *
+     * @return the filesystem path of the journal, or null when the catalogue is read-only
+     */
+    public Path getJournalPath() {
+        return journalPath;
+    }
+
+    /**
+     * Returns the number of shards the catalogue is partitioned into.
+     *
+     * @return the shard count, 1 when this node holds the whole catalogue
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Loads the configured catalogue, from its snapshot when an up-to-date one exists, and
+     * replays the write journal over it.
+     *
+     * @return the populated store
+     * @throws PolicyLoadException if the catalogue or the journal cannot be read or is malformed
+     */
+    public synchronized PolicyStore load() {
+        PolicyStore base = loadBase();
+        if (journalPath == null) {
+            return base;
+        }
+        long started = System.nanoTime();
+        List<PolicyChange> changes;
+        try {
+            changes = PolicyJournal.readAll(journalPath);
+        } catch (IOException e) {
+            throw new PolicyLoadException("Error reading policy journal " + journalPath, e);
+        }
+        if (changes.isEmpty()) {
+            return base;
+        }
+        PolicyStore store = base.withChanges(changes);
+        log.info("Replayed {} changes from {} in {} ms", changes.size(), journalPath, (System.nanoTime() - started) / 1_000_000);
+        return store;
+    }
+
+    /**
+     * Replaces the data file with the contents of a store, snapshots the new file and deletes the
+     * journal segments it now holds. The file is written to a temporary file in the same directory
+     * first and then renamed over the old one, so readers see either file in full. A crash before
+     * the segments are deleted only means they are replayed over changes they already contain.
+     * <p>
+     * If the data file no longer holds what was last loaded from or written to it, someone edited
+     * it since, and the new file is not moved over the edit; the reload the edit triggers replays
+     * the segments over it instead.
+     *
+     * @param store    the store to write, which must contain every change in {@code segments}
+     * @param segments sealed journal segments to delete once the data file is replaced
+     * @return true if the data file was replaced, false if it was left alone because it was edited
+     * @throws IOException           if the file cannot be written
+     * @throws IllegalStateException if the bundled catalogue is in use
+     */
+    public synchronized boolean writeBase(PolicyStore store, List<Path> segments) throws IOException {
+        if (dataPath == null) {
+            throw new IllegalStateException("The bundled policy catalogue cannot be rewritten");
+        }
+        long started = System.nanoTime();
+        PolicyRows rows = store.policiesInRange(0, store.size());
+        long length = rows.jsonLength();
+        Path temporary = Files.createTempFile(dataPath.toAbsolutePath().getParent(), dataPath.getFileName().toString(), ".tmp");
+        long checksum;
+        long modified;
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                CheckedOutputStream out = new CheckedOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel), BASE_BUFFER_SIZE), new CRC32C());
+                rows.writeJson(out);
+                out.flush();
+                channel.force(true);
+                checksum = out.getChecksum().getValue();
+            }
+            // checked as late as possible; an edit landing between the check and the move is still lost
+            if (baseLength < 0 || !holds(baseChecksum, baseLength)) {
+                log.warn("{} was changed since it was loaded, leaving it for the reload instead of compacting the journal into it", dataPath);
+                return false;
+            }
+            Files.move(temporary, dataPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // the segments may only go once the new file is durably in place
+            PolicyJournal.syncDirectory(dataPath);
+            modified = modified();
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        log.info("Wrote {} policies to {} in {} ms", store.size(), dataPath, (System.nanoTime() - started) / 1_000_000);
+        if (snapshotPath != null) {
+            writeSnapshot(store, new PolicySnapshot.Source(checksum, length, modified));
+        }
+        writtenChecksum = checksum;
+        writtenLength = length;
+        baseChecksum = checksum;
+        baseLength = length;
+        for (Path segment : segments) {
+            Files.deleteIfExists(segment);
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether the data file holds exactly what {@link #writeBase(PolicyStore, List)} last
+     * wrote to it, so a change on disk was made by a compaction and need not be reloaded. The file
+     * is only checksummed when its length matches.
+     *
+     * @return true if the file is unchanged since the last compaction wrote it
+     */
+    public synchronized boolean isWrittenBase() {
+        return dataPath != null && writtenLength >= 0 && holds(writtenChecksum, writtenLength);
+    }
+
+    /**
+     * Tells whether the data file has the given length and checksum. It is only read when the
+     * length matches.
+     */
+    private boolean holds(long checksum, long length) {
+        try {
+            if (Files.size(dataPath) != length) {
+                return false;
+            }
+            try (ChecksumInputStream in = new ChecksumInputStream(Files.newInputStream(dataPath))) {
+                in.transferTo(OutputStream.nullOutputStream());
+                return in.checksum() == checksum && in.length() == length;
+            }
+        } catch (IOException e) {
+            log.debug("Could not checksum {}", dataPath, e);
+            return false;
+        }
+    }
+
+    private PolicyStore loadBase() {
+        String source = dataPath == null ? "classpath:" + BUNDLED_RESOURCE : dataPath.toString();
+        if (snapshotPath != null) {
+            PolicyStore store = readSnapshot(source);
+            if (store != null) {
+                return store;
+            }
+        }
+
+        if (shardCount > 1) {
+            log.info("Loading shard {} of {} of the policies from {}", shardIndex, shardCount, source);
+        } else {
+            log.info("Loading policies from {}", source);
+        }
+        try {
+            // taken before the parse, so an edit landing during it makes the snapshot stale rather than wrong
+            long modified = modified();
+            try (ChecksumInputStream in = new ChecksumInputStream(openSource(source))) {
+                PolicyStore store = read(in, source);
+                if (snapshotPath != null) {
+                    writeSnapshot(store, new PolicySnapshot.Source(in.checksum(), in.length(), modified));
+                }
+                loadedBase(in.checksum(), in.length());
+                return store;
+            }
+        } catch (IOException e) {
+            throw new PolicyLoadException("Error reading policies from " + source, e);
+        }
+    }
+
+    /**
+     * Parses a JSON array of policies from a stream into a new store.
+     *
+     * @param in     the JSON input
+     * @param source description of the input used in log and error messages
+     * @return the populated store
+     * @throws IOException         if the stream cannot be read
+     * @throws PolicyLoadException if the input is not a valid policy array
+     */
+    public PolicyStore read(InputStream in, String source) throws IOException {
+        long started = System.nanoTime();
+        PolicyStore.Builder builder = new PolicyStore.Builder(1024);
+        long bytes;
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            expect(parser, parser.nextToken() == JsonToken.START_ARRAY, "a JSON array of policies", source);
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                expect(parser, parser.currentToken() == JsonToken.START_OBJECT, "a policy object", source);
+                readPolicy(parser, builder, source);
+            }
+            expect(parser, parser.nextToken() == null, "end of input after the policy array", source);
+            bytes = parser.currentLocation().getByteOffset();
+        }
+        long parsed = System.nanoTime();
+
+        PolicyStore store = builder.build();
+        long built = System.nanoTime();
+
+        double parseSeconds = Math.max(parsed - started, 1) / 1e9;
+        log.info("Loaded {} policies from {} ({} bytes) in {} ms: parsed at {} policies/s ({} MB/s), indexed in {} ms",
+                store.size(), source, bytes, (built - started) / 1_000_000,
+                Math.round(store.size() / parseSeconds), String.format("%.1f", bytes / parseSeconds / 1e6),
+                (built - parsed) / 1_000_000);
+        return store;
+    }
+
+    private InputStream openSource(String source) throws IOException {
+        InputStream in = dataPath == null ? getClass().getResourceAsStream(BUNDLED_RESOURCE) : Files.newInputStream(dataPath);
+        if (in == null) {
+            throw new PolicyLoadException("Policy catalogue not found: " + source);
+        }
+        return in;
+    }
+
+    /**
+     * Reads the snapshot if it was built from the current source. A stale, corrupt or unreadable
+     * snapshot is ignored so the caller falls back to JSON.
+     *
+     * @return the store, or null when the snapshot cannot be used
+     */
+    private PolicyStore readSnapshot(String source) {
+        long started = System.nanoTime();
+        try {
+            PolicySnapshot.Source recorded = PolicySnapshot.source(snapshotPath, shardIndex, shardCount);
+            PolicyStore store = recorded == null || !isSnapshotSource(recorded, source)
+                    ? null : PolicySnapshot.read(snapshotPath, recorded, shardIndex, shardCount);
+            if (store == null) {
+                log.info("No up-to-date policy snapshot at {}", snapshotPath);
+                return null;
+            }
+            log.info("Loaded {} policies from snapshot {} in {} ms", store.size(), snapshotPath, (System.nanoTime() - started) / 1_000_000);
+            loadedBase(recorded.checksum(), recorded.length());
+            return store;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unusable policy snapshot {}", snapshotPath, e);
+            return null;
+        }
+    }
+
+    /**
+     * Tells whether the current source is the one a snapshot was built from. A data file is
+     * compared by size and modification time only; the bundled resource has no modification time
+     * and is checksummed.
+     */
+    private boolean isSnapshotSource(PolicySnapshot.Source recorded, String source) throws IOException {
+        if (dataPath != null) {
+            return Files.size(dataPath) == recorded.length() && modified() == recorded.modified();
+        }
+        try (ChecksumInputStream in = new ChecksumInputStream(openSource(source))) {
+            in.transferTo(OutputStream.nullOutputStream());
+            return in.checksum() == recorded.checksum() && in.length() == recorded.length();
+        }
+    }
+
+    /**
+     * Returns the modification time of the data file in nanoseconds, 0 for the bundled resource.
+     */
+    private long modified() throws IOException {
+        return dataPath == null ? 0 : Files.getLastModifiedTime(dataPath).to(TimeUnit.NANOSECONDS);
+    }
+
+    private void loadedBase(long checksum, long length) {
+        if (dataPath != null) {
+            baseChecksum = checksum;
+            baseLength = length;
+        }
+    }
+
+    private void writeSnapshot(PolicyStore store, PolicySnapshot.Source source) {
+        long started = System.nanoTime();
+        try {
+            PolicySnapshot.write(store, source, shardIndex, shardCount, snapshotPath);
+            log.info("Wrote policy snapshot {} in {} ms", snapshotPath, (System.nanoTime() - started) / 1_000_000);
+        } catch (IOException e) {
+            log.warn("Could not write policy snapshot {}", snapshotPath, e);
+        }
+    }
+
+    private void readPolicy(JsonParser parser, PolicyStore.Builder builder, String source) throws IOException {
+        Long id = null;
+        String name = null;
+        String type = null;
+        Integer premium = null;
+        Integer coverage = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id" -> id = value == JsonToken.VALUE_NULL ? null : readLong(parser, field, source);
+                case "name" -> name = readString(parser, field, source);
+                case "type" -> type = readString(parser, field, source);
+                case "premium" -> premium = value == JsonToken.VALUE_NULL ? null : readInt(parser, field, source);
+                case "coverage" -> coverage = value == JsonToken.VALUE_NULL ? null : readInt(parser, field, source);
+                default -> parser.skipChildren();
+            }
+        }
+        expect(parser, parser.currentToken() == JsonToken.END_OBJECT, "a field name or end of policy object", source);
+        if (shardCount == 1 || shardOf(id, shardCount) == shardIndex) {
+            builder.add(id, name, type, premium, coverage);
+        }
+    }
+
+    /**
+     * Returns the shard a policy belongs to. The id is mixed before taking the remainder, so ids
+     * that share a stride still spread evenly. The {@link ShardCoordinator} routes lookups by id
+     * the same way.
+     *
+     * @param id         the policy id, may be null
+     * @param shardCount number of shards
+     * @return the shard index
+     */
+    static int shardOf(Long id, int shardCount) {
+        if (id == null) {
+            return 0;
+        }
+        return (int) (((id * SHARD_HASH_MULTIPLIER) >>> 32) % shardCount);
+    }
+
+    private long readLong(JsonParser parser, String field, String source) throws IOException {
+        expect(parser, parser.currentToken() == JsonToken.VALUE_NUMBER_INT
+                && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER, "an integer for '" + field + "'", source);
+        return parser.getLongValue();
+    }
+
+    private int readInt(JsonParser parser, String field, String source) throws IOException {
+        expect(parser, parser.currentToken() == JsonToken.VALUE_NUMBER_INT
+                && parser.getNumberType() == JsonParser.NumberType.INT, "a 32-bit integer for '" + field + "'", source);
+        return parser.getIntValue();
+    }
+
+    private String readString(JsonParser parser, String field, String source) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, token == JsonToken.VALUE_STRING, "a string for '" + field + "'", source);
+        return parser.getText();
+    }
+
+    private static void expect(JsonParser parser, boolean condition, String expected, String source) {
+        if (!condition) {
+            throw new PolicyLoadException(String.format("Invalid policy data in %s at line %d, column %d: expected %s but found %s",
+                    source, parser.currentLocation().getLineNr(), parser.currentLocation().getColumnNr(),
+                    expected, parser.currentToken()));
+        }
+    }
+
+    /**
+     * Input stream that computes the CRC32C and length of everything read through it, so the
+     * source checksum comes for free with the parse.
+     */
+    private static final class ChecksumInputStream extends FilterInputStream {
+        private final CRC32C crc = new CRC32C();
+        private long length;
+
+        ChecksumInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                crc.update(b);
+                length++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                crc.update(buffer, offset, read);
+                length += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            // route skipped bytes through read so they are checksummed too
+            byte[] buffer = new byte[(int) Math.min(Math.max(count, 0), 8192)];
+            long skipped = 0;
+            while (skipped < count) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, count - skipped));
+                if (read < 0) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        long checksum() {
+            return crc.getValue();
+        }
+
+        long length() {
+            return length;
+        }
+    }
+}
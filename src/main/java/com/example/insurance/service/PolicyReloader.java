@@ -0,0 +1,153 @@
+package com.example.insurance.service;
+
+import com.example.insurance.store.PolicyStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads the policy catalogue in the background, either on request or when the configured data
+ * file changes on disk.
+ * <p>
+ * Reloads run one at a time on a dedicated thread. A request made while no reload is queued
+ * schedules one; requests made before that reload starts share it, so a burst of file events or
+ * admin calls costs a single rebuild. A request made while a reload is already running queues
+ * exactly one more, which is guaranteed to see the latest file.
+ * <p>
+ * Compacting the write journal replaces the data file too. Such a file already holds exactly the
+ * published catalogue, so a change event is ignored while the file is still the one the
+ * {@link PolicyLoader} last wrote.
+ */
+@Slf4j
+@Component
+public class PolicyReloader {
+
+    /**
+     * How long the data file must stay quiet before a change triggers a reload, so a file that is
+     * written in several chunks is only parsed once the writer is done.
+     */
+    private static final long DEBOUNCE_MILLIS = 500;
+
+    private final PolicyService policyService;
+    private final PolicyLoader policyLoader;
+    private final Path dataPath;
+    private final boolean watchEnabled;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("policy-reload").daemon().factory());
+
+    private CompletableFuture<PolicyStore> queued;
+    private WatchService watchService;
+
+    /**
+     * Constructor for injecting the PolicyService and the watch settings.
+     *
+     * @param policyService service whose store is replaced on reload
+     * @param policyLoader  loader providing the configured data file
+     * @param watchEnabled  whether changes to the data file trigger a reload
+     */
+    public PolicyReloader(PolicyService policyService, PolicyLoader policyLoader,
+                          @Value("${policies.reload.watch:true}") boolean watchEnabled) {
+        this.policyService = policyService;
+        this.policyLoader = policyLoader;
+        this.dataPath = policyLoader.getDataPath();
+        this.watchEnabled = watchEnabled;
+    }
+
+    /**
+     * Starts watching the data file. Nothing is watched when the bundled catalogue is used.
+     *
+     * @throws IOException if the watch service cannot be registered
+     */
+    @PostConstruct
+    public void startWatching() throws IOException {
+        if (!watchEnabled || dataPath == null) {
+            return;
+        }
+        Path directory = dataPath.toAbsolutePath().getParent();
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread.ofPlatform().name("policy-watch").daemon().start(this::watch);
+        log.info("Watching {} for policy catalogue changes", dataPath);
+    }
+
+    /**
+     * Stops the watcher and the reload thread.
+     *
+     * @throws IOException if the watch service cannot be closed
+     */
+    @PreDestroy
+    public void stop() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Schedules a reload of the catalogue, or joins the one already queued.
+     *
+     * @return future completing with the newly published store, or exceptionally if the load failed
+     */
+    public synchronized CompletableFuture<PolicyStore> requestReload() {
+        if (queued == null) {
+            CompletableFuture<PolicyStore> reload = new CompletableFuture<>();
+            queued = reload;
+            executor.execute(() -> run(reload));
+        }
+        return queued;
+    }
+
+    private void run(CompletableFuture<PolicyStore> reload) {
+        synchronized (this) {
+            // from here on the file may change again, so later requests need a reload of their own
+            queued = null;
+        }
+        try {
+            reload.complete(policyService.reloadPolicies());
+        } catch (RuntimeException e) {
+            log.error("Policy catalogue reload failed, keeping the current catalogue", e);
+            reload.completeExceptionally(e);
+        }
+    }
+
+    private void watch() {
+        Path fileName = dataPath.getFileName();
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = drain(key, fileName);
+                // wait for the writer to go quiet before reloading
+                while ((key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= drain(key, fileName);
+                }
+                if (changed && policyLoader.isWrittenBase()) {
+                    log.debug("Policy catalogue {} was rewritten by a journal compaction", dataPath);
+                } else if (changed) {
+                    log.info("Policy catalogue {} changed on disk", dataPath);
+                    requestReload();
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            log.debug("Stopped watching {}", dataPath);
+        }
+    }
+
+    private static boolean drain(WatchKey key, Path fileName) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            // an overflow means events were lost, so the file may have changed
+            changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context());
+        }
+        key.reset();
+        return changed;
+    }
+}
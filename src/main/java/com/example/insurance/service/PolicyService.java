@@ -1,80 +1,162 @@
 package com.example.insurance.service;
 
+import com.example.insurance.exception.InvalidRequestException;
+import com.example.insurance.exception.PolicyNotFoundException;
 import com.example.insurance.model.Policy;
+import com.example.insurance.model.PolicyBatchQuery;
+import com.example.insurance.model.PolicyBatchResult;
+import com.example.insurance.model.PolicyFacets;
+import com.example.insurance.model.PolicyPage;
+import com.example.insurance.model.PolicyQuery;
+import com.example.insurance.model.PolicySuggestion;
+import com.example.insurance.model.ShardPage;
+import com.example.insurance.store.PolicyChange;
+import com.example.insurance.store.PolicyRows;
+import com.example.insurance.store.PolicyStore;
+import com.example.insurance.store.PolicyView;
+import com.example.insurance.store.RowKey;
 import com.example.insurance.util.CommonUtils;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.io.InputStream;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReference;
 /**
  * Service class responsible for managing and retrieving insurance policies.
+ * <p>
+ * The current {@link PolicyView} is held in an {@link AtomicReference}. A reload builds a complete
+ * new store, indexes included, and publishes a view of it with a single swap; every request reads
+ * the reference once, so in-flight requests finish against the view they started with and reads
+ * never take a lock. Writes are published the same way, as a new view laying the changes over the
+ * same base store, so a write never rebuilds the catalogue's indexes. When the journal is compacted
+ * the changes are folded into a new base and the view is moved onto it with
+ * {@link #rebase(PolicyView, PolicyStore)}. Reloads, writes and rebases are serialized so that none
+ * publishes over another.
  */
 @Slf4j
 @Service
 public class PolicyService {
 
-    private static List<Policy> policyList = new ArrayList<>();
+    /**
+     * Upper bound on the number of suggestions returned by {@link #suggestPolicies(String, int)}.
+     */
+    public static final int MAX_SUGGESTIONS = 50;
+
+    /**
+     * Upper bound on the number of queries in one call to {@link #batchQuery(List)}.
+     */
+    public static final int MAX_BATCH_QUERIES = 100;
+
+    private final AtomicReference<PolicyView> policyView = new AtomicReference<>(PolicyView.of(PolicyStore.empty()));
+
+    private final PolicyLoader policyLoader;
+    private final QueryPlanner queryPlanner;
+    private final QueryResultCache queryResultCache;
+    private final FacetCalculator facetCalculator;
+
+    /**
+     * Constructor for injecting the PolicyLoader, QueryPlanner, QueryResultCache and FacetCalculator.
+     *
+     * @param policyLoader     loader that reads the policy catalogue into a store
+     * @param queryPlanner     planner that evaluates filter queries against the store indexes
+     * @param queryResultCache cache of complete query results in front of the planner
+     * @param facetCalculator  aggregator computing facets over query results
+     */
+    public PolicyService(PolicyLoader policyLoader, QueryPlanner queryPlanner, QueryResultCache queryResultCache,
+                         FacetCalculator facetCalculator) {
+        this.policyLoader = policyLoader;
+        this.queryPlanner = queryPlanner;
+        this.queryResultCache = queryResultCache;
+        this.facetCalculator = facetCalculator;
+    }
 
     /**
-     * Loads the list of policies from a JSON file (`insurance_policies.json`) at application startup.
+     * Loads the policy catalogue at application startup. A missing or malformed catalogue fails
+     * startup instead of serving an empty list.
      */
     @PostConstruct
     public void loadPolicies() {
-        try {
-            log.info("Loading policies from policies.json");
-            ObjectMapper mapper = new ObjectMapper();
-            InputStream is = getClass().getResourceAsStream("/insurance_policies.json");
-            List<Policy> policies = mapper.readValue(is, new TypeReference<List<Policy>>() {});
-            if (!CommonUtils.nullOrEmpty(policies)) {
-                policyList = policies;
-                log.info("Loaded {} policies", policies.size());
-            }
-        } catch (Exception e) {
-            log.error("Error loading policies from JSON", e);
-        }
+        PolicyView loaded = PolicyView.of(policyLoader.load());
+        facetCalculator.precompute(loaded);
+        policyView.set(loaded);
+    }
+
+    /**
+     * Loads the catalogue again and publishes the new store once it is fully built. If the load
+     * fails the current store stays in place.
+     *
+     * @return the newly published store
+     * @throws com.example.insurance.exception.PolicyLoadException if the catalogue cannot be read or is malformed
+     */
+    public synchronized PolicyStore reloadPolicies() {
+        PolicyStore reloaded = policyLoader.load();
+        PolicyView view = PolicyView.of(reloaded);
+        facetCalculator.precompute(view);
+        PolicyView previous = policyView.getAndSet(view);
+        queryResultCache.invalidateAll();
+        log.info("Reloaded policy catalogue: {} policies (version {}) replaced {} policies (version {})",
+                reloaded.size(), Long.toHexString(reloaded.version()), previous.size(), Long.toHexString(previous.version()));
+        return reloaded;
     }
 
     /**
-     * Returns all policies loaded in memory.
+     * Lays committed changes over the current view and publishes the result. Only the changed
+     * policies are indexed; requests already running keep reading the previous view. The base is
+     * unchanged, so cached results stay valid.
      *
-     * @return list of all policies
+     * @param changes the changes, in commit order
+     * @return the newly published view
      */
-    public List<Policy> getPolicies() {
-        return policyList;
+    public synchronized PolicyView applyChanges(List<PolicyChange> changes) {
+        PolicyView updated = policyView.get().withChanges(changes);
+        policyView.set(updated);
+        return updated;
     }
 
     /**
-     * Returns paginated list of all policies.
+     * Moves the current view onto a store that has the changes of an earlier view folded in, so
+     * that only the changes published since then stay in the overlay. Does nothing if the catalogue
+     * was reloaded in the meantime.
      *
-     * @param page the page number (zero-based)
-     * @param size number of policies per page
-     * @return sublist of policies for the specified page
+     * @param folded the view whose changes were folded
+     * @param store  the store built by {@link PolicyView#fold()} from {@code folded}
      */
-    public List<Policy> getPolicies(int page, int size) {
-        int start = Math.min(page * size, policyList.size());
-        int end = Math.min(start + size, policyList.size());
-        log.debug("Returning paginated policies from {} to {}", start, end);
-        return policyList.subList(start, end);
+    public synchronized void rebase(PolicyView folded, PolicyStore store) {
+        PolicyView current = policyView.get();
+        if (current.base() != folded.base()) {
+            return;
+        }
+        PolicyView rebased = current.rebase(store, folded);
+        // under the lock, so the facets are those of the view actually published
+        facetCalculator.precompute(rebased);
+        policyView.set(rebased);
+        queryResultCache.invalidateAll();
     }
 
     /**
-     * Returns paginated list from a custom policy list.
+     * Returns the view holding all policies loaded in memory.
      *
-     * @param page     the page number (zero-based)
-     * @param size     number of policies per page
-     * @param policies the list of policies to paginate
-     * @return sublist of policies for the specified page
+     * @return the policy view
      */
-    public List<Policy> getPolicies(int page, int size, List<Policy> policies) {
-        int start = Math.min(page * size, policies.size());
-        int end = Math.min(start + size, policies.size());
-        log.debug("Returning paginated policies from {} to {}", start, end);
-        return policies.subList(start, end);
+    public PolicyView getView() {
+        return policyView.get();
+    }
+
+    /**
+     * Returns the policy with the given id.
+     *
+     * @param id the policy id
+     * @return the policy
+     * @throws PolicyNotFoundException if no policy has that id
+     */
+    public Policy getPolicy(long id) {
+        PolicyView view = policyView.get();
+        int row = view.rowOfId(id);
+        if (row < 0) {
+            throw new PolicyNotFoundException(id);
+        }
+        return view.policyAt(row);
     }
 
     /**
@@ -85,39 +167,112 @@ public class PolicyService {
      * @param size               number of items per page
      * @param name               policy name filter (optional)
      * @param totalPagesRequired flag to indicate if total count should be included
-     * @return a map containing policies and optionally total count
+     * @return a page containing policies and optionally total count
      */
-    public Map<String, Object> getPoliciesWithTotalCount(int page, int size, String name, boolean totalPagesRequired) {
-        Map<String, Object> uiOutputMap = new LinkedHashMap<>();
+    public PolicyPage getPoliciesWithTotalCount(int page, int size, String name, boolean totalPagesRequired) {
+        return getPoliciesWithTotalCount(page, size, name, totalPagesRequired, null, null, null);
+    }
 
-        if (CommonUtils.nullOrEmpty(name)) {
-            List<Policy> policies = getPolicies(page, size);
-            uiOutputMap.put("policies", policies);
+    /**
+     * Returns a paginated response of policies along with total count, optionally filtered by
+     * name and ordered by one of the precomputed sort orders. When a cursor is given the page
+     * starts right after the row the cursor points at, so deep pages cost the same as the first
+     * one and writes published in between do not invalidate it; otherwise the zero-based page
+     * number is used.
+     *
+     * @param page               page number (zero-based), ignored when a cursor is given
+     * @param size               number of items per page
+     * @param name               policy name filter (optional)
+     * @param totalPagesRequired flag to indicate if total count should be included
+     * @param sortBy             field to order by: name, premium, coverage or value (optional)
+     * @param sortOrder          sort order ("asc" or "desc", optional)
+     * @param cursor             opaque cursor from a previous response (optional)
+     * @return a page containing policies, optionally the total count, and the next cursor if more policies follow
+     */
+    public PolicyPage getPoliciesWithTotalCount(int page, int size, String name, boolean totalPagesRequired,
+                                                String sortBy, String sortOrder, String cursor) {
+        PolicyView view = policyView.get();
+        PolicyQuery query = new PolicyQuery();
+        query.setName(CommonUtils.nullOrEmpty(name) ? null : name);
+        query.setSortBy(sortBy);
+        query.setSortOrder(sortOrder);
 
-            if (totalPagesRequired)
-                uiOutputMap.put("totalPages", getPolicies().size());
+        // a name filter always reports its total, so its matches are needed for every page
+        int[] rowsByName = query.getName() == null ? null : queryResultCache.execute(view, query);
+        int[] rows;
+        boolean hasMore;
+        if (cursor != null) {
+            RowKey afterKey = PolicyCursor.decode(cursor, view, query).getRowKey();
+            QueryPlanner.RowPage rowPage = rowsByName == null ? queryPlanner.pageAfter(view, query, afterKey, size)
+                    : queryPlanner.pageAfter(view, query, rowsByName, afterKey, size);
+            rows = rowPage.rows();
+            hasMore = rowPage.hasMore();
+        } else if (rowsByName == null) {
+            QueryPlanner.RowPage rowPage = queryPlanner.range(view, query, pageStart(page, size, view.size()), size);
+            rows = rowPage.rows();
+            hasMore = rowPage.hasMore();
         } else {
-            List<Policy> policiesByName = getPoliciesByName(policyList, name);
-            List<Policy> policies = getPolicies(page, size, policiesByName);
-            uiOutputMap.put("policies", policies);
-            uiOutputMap.put("totalPages", policiesByName.size());
+            int start = pageStart(page, size, rowsByName.length);
+            int end = Math.min(start + size, rowsByName.length);
+            rows = Arrays.copyOfRange(rowsByName, start, end);
+            hasMore = end < rowsByName.length;
+        }
+        log.debug("Returning {} paginated policies", rows.length);
+        Integer totalPages = null;
+        if (rowsByName != null)
+            totalPages = rowsByName.length;
+        else if (totalPagesRequired)
+            totalPages = view.size();
+
+        return new PolicyPage(view.policiesAt(rows, 0, rows.length), totalPages, nextCursor(view, query, rows, hasMore));
+    }
+
+    /**
+     * Finds all policies whose name contains the given text (case insensitive).
+     *
+     * @param name name or partial name of the policy
+     * @return list of policies that match the name
+     */
+    public List<Policy> getPoliciesByName(String name) {
+        if (name == null) {
+            return List.of();
+        }
+        PolicyView view = policyView.get();
+        // blank names match by substring here but are ignored by the planner, so only real names are cached
+        int[] rows = name.isBlank() ? view.rowsWithName(name)
+                : queryResultCache.execute(view, new PolicyQuery(null, null, null, null, null, name, null));
+        return view.policiesAt(rows, 0, rows.length);
+    }
+
+    /**
+     * Suggests policies whose name starts with the given prefix (case insensitive), for
+     * autocomplete. Served from the sorted name index in O(prefix + limit) after the lookup.
+     *
+     * @param prefix beginning of the policy name
+     * @param limit  maximum number of suggestions, capped at {@link #MAX_SUGGESTIONS}
+     * @return ids and names of the first matching policies in name order
+     */
+    public List<PolicySuggestion> suggestPolicies(String prefix, int limit) {
+        if (CommonUtils.nullOrEmpty(prefix)) {
+            return List.of();
+        }
+        PolicyView view = policyView.get();
+        int[] rows = view.rowsWithPrefix(prefix, Math.min(limit, MAX_SUGGESTIONS));
+        List<PolicySuggestion> suggestions = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            long id = view.id(row);
+            suggestions.add(new PolicySuggestion(id == PolicyStore.NULL_LONG ? null : id, view.name(row)));
         }
-        return uiOutputMap;
+        return suggestions;
     }
 
     /**
-     * Filters the policy list by matching name (case insensitive).
+     * Returns all distinct policy types. The set is built once per loaded catalogue.
      *
-     * @param policyList list of policies to filter
-     * @param name       name or partial name of the policy
-     * @return filtered list of policies that match the name
+     * @return read-only set of policy types
      */
-    public List<Policy> getPoliciesByName(List<Policy> policyList, String name) {
-        return policyList.stream()
-                .filter(policy -> Objects.nonNull(name) &&
-                        Objects.nonNull(policy.getName()) &&
-                        policy.getName().toLowerCase().contains(name.toLowerCase()))
-                .toList();
+    public Set<String> getPolicyTypes() {
+        return policyView.get().typeNames();
     }
 
     /**
@@ -132,92 +287,180 @@ public class PolicyService {
      * @return filtered and sorted list of policies
      */
     public List<Policy> filterPolicies(Integer minPremium, Integer maxPremium, String policyType, Integer minCoverage, String sortOrder, String policyName) {
-        List<Policy> filtered = getPolicies();
-        filtered = sortPolicies(filtered, sortOrder);
+        return filterPolicies(new PolicyQuery(minPremium, maxPremium, policyType, minCoverage, sortOrder, policyName, null));
+    }
 
-        if (!CommonUtils.nullOrEmpty(maxPremium) && !CommonUtils.nullOrEmpty(minPremium)) {
-            filtered = filterByPremiumRange(filtered, minPremium, maxPremium);
-            if (filtered.isEmpty()) return filtered;
-        }
+    /**
+     * Filters policies by the given criteria. The query planner starts from the most selective
+     * index and sorts only the matching rows; repeated queries are answered from the result cache.
+     *
+     * @param query the filter criteria
+     * @return filtered and sorted list of policies
+     */
+    public List<Policy> filterPolicies(PolicyQuery query) {
+        PolicyView view = policyView.get();
+        int[] rows = queryResultCache.execute(view, query);
+        return view.policiesAt(rows, 0, rows.length);
+    }
 
-        if (!CommonUtils.nullOrEmpty(policyType)) {
-            filtered = filterByPolicyType(filtered, policyType);
-            if (filtered.isEmpty()) return filtered;
+    /**
+     * Evaluates many filter queries at once. Broad queries share a single pass over the data
+     * instead of scanning it once each; selective ones are still served from their indexes.
+     * Entries without an identifier are keyed by their position in the list.
+     *
+     * @param queries the filter criteria, each with an optional identifier and limit
+     * @return the matching policies of each query, keyed by identifier
+     * @throws InvalidRequestException if the batch is empty, too large, has duplicate identifiers or invalid entries
+     */
+    public PolicyBatchResult batchQuery(List<PolicyBatchQuery> queries) {
+        if (CommonUtils.nullOrEmpty(queries)) {
+            throw new InvalidRequestException("At least one query must be provided.");
         }
-
-        if (!CommonUtils.nullOrEmpty(minCoverage)) {
-            filtered = filterByCoverage(filtered, minCoverage);
-            if (filtered.isEmpty()) return filtered;
+        if (queries.size() > MAX_BATCH_QUERIES) {
+            throw new InvalidRequestException("A batch may contain at most " + MAX_BATCH_QUERIES + " queries.");
         }
-
-        if (!CommonUtils.nullOrEmpty(policyName)) {
-            filtered = getPoliciesByName(filtered, policyName);
-            if (filtered.isEmpty()) return filtered;
+        List<String> ids = new ArrayList<>(queries.size());
+        int[] limits = new int[queries.size()];
+        for (int i = 0; i < queries.size(); i++) {
+            PolicyBatchQuery query = queries.get(i);
+            if (query == null) {
+                throw new InvalidRequestException("Batch queries must not be null.");
+            }
+            String id = query.getId() == null ? String.valueOf(i) : query.getId();
+            if (ids.contains(id)) {
+                throw new InvalidRequestException("Duplicate batch query id: " + id);
+            }
+            if (query.getLimit() != null && query.getLimit() <= 0) {
+                throw new InvalidRequestException("Limit must be > 0.");
+            }
+            ids.add(id);
+            limits[i] = query.getLimit() == null ? Integer.MAX_VALUE : query.getLimit();
         }
 
-        return filtered;
+        PolicyView view = policyView.get();
+        int[][] rows = queryPlanner.executeAll(view, new ArrayList<>(queries), limits);
+        PolicyBatchResult result = new PolicyBatchResult();
+        for (int i = 0; i < rows.length; i++) {
+            result.put(ids.get(i), view.policiesAt(rows[i], 0, rows[i].length));
+        }
+        return result;
     }
 
     /**
-     * Filters a list of policies by premium range.
+     * Computes the facets of the policies matching the given criteria: their number, the count
+     * per type and premium and coverage statistics. The facets of the whole catalogue are
+     * precomputed; filtered ones are aggregated in one pass over the cached matching rows.
      *
-     * @param policies list of policies
-     * @param min minimum premium
-     * @param max maximum premium
-     * @return filtered list by premium range
+     * @param query the filter criteria; sort parameters are ignored
+     * @return the facets
      */
-    private List<Policy> filterByPremiumRange(List<Policy> policies, Integer min, Integer max) {
-        return policies.stream()
-                .filter(p -> (min == null || p.getPremium() >= min) &&
-                        (max == null || p.getPremium() <= max))
-                .collect(Collectors.toList());
+    public PolicyFacets getFacets(PolicyQuery query) {
+        PolicyView view = policyView.get();
+        if (queryPlanner.matchesAll(view, query)) {
+            return facetCalculator.unfiltered(view);
+        }
+        PolicyQuery unsorted = new PolicyQuery(query.getMinPremium(), query.getMaxPremium(), query.getPolicyType(),
+                query.getMinCoverage(), null, query.getName(), null);
+        return facetCalculator.compute(view, queryResultCache.execute(view, unsorted));
     }
 
     /**
-     * Filters policies by type.
+     * Returns one keyset page of the policies matching the given criteria.
      *
-     * @param policies list of policies
-     * @param type type to filter
-     * @return filtered list by type
+     * @param query  the filter criteria
+     * @param limit  maximum number of policies on the page
+     * @param cursor opaque cursor from the previous page, or null for the first page
+     * @return the page and the cursor for the next one
      */
-    private List<Policy> filterByPolicyType(List<Policy> policies, String type) {
-        return policies.stream()
-                .filter(p -> type == null || p.getType().equalsIgnoreCase(type))
-                .collect(Collectors.toList());
+    public PolicyPage filterPoliciesPage(PolicyQuery query, int limit, String cursor) {
+        PolicyView view = policyView.get();
+        RowKey afterKey = cursor == null ? null : PolicyCursor.decode(cursor, view, query).getRowKey();
+        QueryPlanner.RowPage rowPage = queryPlanner.pageAfter(view, query, afterKey, limit);
+        int[] rows = rowPage.rows();
+        return new PolicyPage(view.policiesAt(rows, 0, rows.length), null, nextCursor(view, query, rows, rowPage.hasMore()));
     }
 
     /**
-     * Filters policies by minimum coverage.
+     * Streams all policies matching the given criteria, for exports. Matches are produced lazily
+     * in chunks from the current view, so memory use does not grow with the result size, and a
+     * reload during the export does not affect it.
      *
-     * @param policies list of policies
-     * @param minCoverage minimum coverage amount
-     * @return filtered list by coverage
+     * @param query the filter criteria
+     * @return iterator over consecutive chunks of matching policies in the query's order
+     * @throws com.example.insurance.exception.InvalidRequestException if the criteria are invalid
      */
-    private List<Policy> filterByCoverage(List<Policy> policies, Integer minCoverage) {
-        return policies.stream()
-                .filter(p -> minCoverage == null || p.getCoverage() >= minCoverage)
-                .collect(Collectors.toList());
+    public Iterator<PolicyRows> exportPolicies(PolicyQuery query) {
+        PolicyView view = policyView.get();
+        Iterator<int[]> chunks = queryPlanner.scan(view, query);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return chunks.hasNext();
+            }
+
+            @Override
+            public PolicyRows next() {
+                int[] rows = chunks.next();
+                return view.policiesAt(rows, 0, rows.length);
+            }
+        };
     }
 
     /**
-     * Sorts the given policy list by name in ascending or descending order.
+     * Answers the part of a query that falls on this node's shard of a partitioned catalogue,
+     * for the {@link ShardCoordinator}. Without a limit every match is returned; with one, the
+     * first {@code limit} matches after a position in the query's order, each with its position,
+     * so the coordinator can resume this shard after any of them.
      *
-     * @param policies list of policies
-     * @param order sort order ("asc" or "desc")
-     * @return sorted list of policies
+     * @param query         the filter criteria
+     * @param afterPosition position of the last row already returned, or -1 to start at the beginning
+     * @param limit         maximum number of policies to return, 0 to only count them, or null for all of them
+     * @param version       catalogue version the positions refer to, or null on the first request
+     * @param count         whether to include the total number of matches
+     * @return the matching policies of this shard
+     * @throws InvalidRequestException if the position is out of range or the catalogue has changed since {@code version}
      */
-    private List<Policy> sortPolicies(List<Policy> policies, String order) {
-        if (order != null) {
-            if ("desc".equalsIgnoreCase(order)) {
-                policies = policies.stream()
-                        .sorted(Comparator.comparing(Policy::getName).reversed())
-                        .toList();
-            } else {
-                policies = policies.stream()
-                        .sorted(Comparator.comparing(Policy::getName))
-                        .toList();
+    public ShardPage getShardPage(PolicyQuery query, int afterPosition, Integer limit, Long version, boolean count) {
+        PolicyView view = policyView.get();
+        if (version != null && version != view.version()) {
+            throw new InvalidRequestException("Cursor has expired because the policy catalogue changed.");
+        }
+        if (afterPosition < -1 || afterPosition >= Math.max(view.rowCount(), 1)) {
+            throw new InvalidRequestException("Cursor does not match this query.");
+        }
+        if (limit != null && limit < 0) {
+            throw new InvalidRequestException("Limit must be >= 0.");
+        }
+
+        int[] rows;
+        int[] positions = null;
+        boolean hasMore = false;
+        if (limit == null) {
+            rows = queryResultCache.execute(view, query);
+        } else {
+            QueryPlanner.RowPage rowPage = queryPlanner.page(view, query, afterPosition, limit);
+            rows = rowPage.rows();
+            hasMore = rowPage.hasMore();
+            positions = new int[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                positions[i] = queryPlanner.position(view, query, rows[i]);
             }
         }
-        return policies;
+        Integer total = null;
+        if (count) {
+            total = queryPlanner.matchesAll(view, query) ? view.size() : queryResultCache.execute(view, query).length;
+        }
+        return new ShardPage(view.version(), hasMore, total, positions, view.policiesAt(rows, 0, rows.length));
+    }
+
+    private String nextCursor(PolicyView view, PolicyQuery query, int[] rows, boolean hasMore) {
+        if (!hasMore || rows.length == 0) {
+            return null;
+        }
+        return PolicyCursor.encode(view, query, queryPlanner.keyOf(view, query, rows[rows.length - 1]));
+    }
+
+    private static int pageStart(int page, int size, int total) {
+        return (int) Math.min((long) page * size, total);
     }
 }
@@ -0,0 +1,520 @@
+package com.example.insurance.service;
+
+import com.example.insurance.exception.InvalidRequestException;
+import com.example.insurance.exception.PolicyNotFoundException;
+import com.example.insurance.exception.ReadOnlyCatalogueException;
+import com.example.insurance.exception.TooManyRequestsException;
+import com.example.insurance.metrics.LatencyHistogram;
+import com.example.insurance.model.Policy;
+import com.example.insurance.store.PolicyChange;
+import com.example.insurance.store.PolicyJournal;
+import com.example.insurance.store.PolicyStore;
+import com.example.insurance.store.PolicyView;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accepts creates, updates and deletes of policies and makes them durable and visible.
+ * <p>
+ * Writes are queued and committed by a single journal thread with group commit: everything queued
+ * while one batch is being synced goes into the next, which is appended to the {@link PolicyJournal}
+ * with one write and one fsync. A write is acknowledged as soon as its batch is durable. Committed
+ * batches are handed to a publish thread, which lays every batch that arrived while it was
+ * publishing the previous one over the current view in one go through {@link PolicyService}, so
+ * reads see a write shortly after it is acknowledged and never wait for one. Batches that fail to
+ * publish are kept and retried with backoff; compaction waits until they are published.
+ * <p>
+ * Once the journal holds {@code policies.journal.compact-after} changes, it is sealed as a segment
+ * and new writes continue in a fresh file. Every publish re-indexes all changes laid over the base,
+ * so the threshold also bounds the cost of a publish. A compaction thread then folds the changes of the
+ * published view into a new store, writes it to the data file, deletes the sealed segments and
+ * moves the live view onto the new store, so neither commits nor publishes wait for the catalogue
+ * to be rebuilt. Without a journal, or on the coordinator of a partitioned catalogue, the catalogue
+ * is read-only.
+ */
+@Slf4j
+@Component
+public class PolicyWriter {
+
+    /**
+     * Upper bound on the number of writes committed with one fsync.
+     */
+    private static final int MAX_BATCH = 4096;
+
+    /**
+     * Writes that may wait for a commit before new ones are rejected with 429.
+     */
+    private static final int MAX_PENDING_WRITES = 65_536;
+
+    /**
+     * How often the writer threads check whether they should stop while idle.
+     */
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * Longest wait between two attempts to publish changes after a failure.
+     */
+    private static final long MAX_RETRY_MILLIS = 5_000;
+
+    /**
+     * Longest a request waits for its write to be committed before it gives up.
+     */
+    private static final long COMMIT_TIMEOUT_SECONDS = 30;
+
+    private final PolicyService policyService;
+    private final PolicyLoader policyLoader;
+    private final ShardCoordinator shardCoordinator;
+    private final long compactAfter;
+    private final BlockingQueue<PendingWrite> pending = new LinkedBlockingQueue<>(MAX_PENDING_WRITES);
+    private final BlockingQueue<List<PolicyChange>> committed = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Compaction> compactionQueue = new LinkedBlockingQueue<>();
+    // committed changes the published view does not reflect yet, by id
+    private final Map<Long, PolicyChange> unpublished = new ConcurrentHashMap<>();
+    private final LatencyHistogram commitLatency = new LatencyHistogram();
+    private final LatencyHistogram publishLatency = new LatencyHistogram();
+    private final LongAdder committedChanges = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+
+    private PolicyJournal journal;
+    private Thread committer;
+    private Thread publisher;
+    private Thread compactor;
+    private volatile boolean running;
+    private volatile boolean compacting;
+    private volatile long compactAt;
+    // changes in sealed segments and in the journal, guarded by the journal
+    private volatile long journalRecords;
+    private long sealedRecords;
+
+    // confined to the journal thread
+    private long nextId;
+
+    // confined to the publish thread
+    private final List<List<PolicyChange>> publishing = new ArrayList<>();
+    private long retryMillis = POLL_MILLIS;
+
+    /**
+     * Constructor for injecting the PolicyService, the PolicyLoader, the ShardCoordinator and the
+     * compaction threshold.
+     *
+     * @param policyService    service whose view receives the changes
+     * @param policyLoader     loader providing the journal and rewriting the data file on compaction
+     * @param shardCoordinator coordinator of a partitioned catalogue, whose writes are rejected
+     * @param compactAfter     number of journaled changes that triggers a compaction, 0 to never compact
+     */
+    public PolicyWriter(PolicyService policyService, PolicyLoader policyLoader, ShardCoordinator shardCoordinator,
+                        @Value("${policies.journal.compact-after:10000}") long compactAfter) {
+        this.policyService = policyService;
+        this.policyLoader = policyLoader;
+        this.shardCoordinator = shardCoordinator;
+        this.compactAfter = compactAfter;
+        this.compactAt = compactAfter;
+    }
+
+    /**
+     * Opens the journal, cutting off a record torn by a crash, and starts the writer threads. The
+     * journal and any segments left by an interrupted compaction have already been replayed by
+     * the {@link PolicyLoader}.
+     *
+     * @throws IOException if the journal or its segments cannot be read
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        Path journalPath = policyLoader.getJournalPath();
+        if (journalPath == null) {
+            log.info("No policy journal configured, the catalogue is read-only");
+            return;
+        }
+        if (shardCoordinator.isEnabled()) {
+            // a write here would only reach this node's catalogue, never the shard owning the id
+            log.info("Coordinating shards, the catalogue is read-only");
+            return;
+        }
+        for (Path segment : PolicyJournal.segments(journalPath)) {
+            sealedRecords += PolicyJournal.read(segment).size();
+        }
+        journal = PolicyJournal.open(journalPath);
+        journalRecords = sealedRecords + journal.records();
+        running = true;
+        committer = Thread.ofPlatform().name("policy-journal").daemon().start(this::commitLoop);
+        publisher = Thread.ofPlatform().name("policy-publish").daemon().start(this::publishLoop);
+        compactor = Thread.ofPlatform().name("policy-compact").daemon().start(this::compactLoop);
+        log.info("Journaling policy writes to {} ({} changes not yet compacted)", journalPath, journalRecords);
+    }
+
+    /**
+     * Stops the writer threads and closes the journal. Writes still queued are failed, and so are
+     * writes submitted from now on; everything acknowledged is in the journal.
+     *
+     * @throws IOException          if the journal cannot be closed
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        if (journal == null) {
+            return;
+        }
+        running = false;
+        committer.join();
+        publisher.join();
+        compactor.join();
+        List<PendingWrite> abandoned = new ArrayList<>();
+        pending.drainTo(abandoned);
+        abandoned.forEach(write -> write.result().completeExceptionally(new IllegalStateException("Policy writer stopped")));
+        synchronized (journal) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Creates a policy with a new id, one higher than any id written so far.
+     *
+     * @param policy the policy; its id must not be set
+     * @return the policy as stored, with its id
+     * @throws InvalidRequestException     if the policy is invalid or has an id
+     * @throws ReadOnlyCatalogueException  if no journal is configured or the catalogue is partitioned
+     * @throws TooManyRequestsException    if too many writes are waiting
+     */
+    public Policy create(Policy policy) {
+        validate(policy);
+        if (policy.getId() != null) {
+            throw new InvalidRequestException("Policy ids are assigned on create; use PUT /policies/{id} to write a given id.");
+        }
+        return submit(PolicyChange.upsert(0, policy), true).change().policy();
+    }
+
+    /**
+     * Replaces the policy with the given id, or creates it if there is none.
+     *
+     * @param id     the policy id
+     * @param policy the new contents; its id must be unset or equal to {@code id}
+     * @return true if the policy was created, false if it replaced an existing one
+     * @throws InvalidRequestException     if the policy is invalid or has another id
+     * @throws ReadOnlyCatalogueException  if no journal is configured or the catalogue is partitioned
+     * @throws TooManyRequestsException    if too many writes are waiting
+     */
+    public boolean put(long id, Policy policy) {
+        validate(policy);
+        if (policy.getId() != null && policy.getId() != id) {
+            throw new InvalidRequestException("Policy id in the body does not match the path.");
+        }
+        return !submit(PolicyChange.upsert(id, policy), false).existed();
+    }
+
+    /**
+     * Deletes the policy with the given id.
+     *
+     * @param id the policy id
+     * @throws PolicyNotFoundException     if no policy has that id
+     * @throws ReadOnlyCatalogueException  if no journal is configured or the catalogue is partitioned
+     * @throws TooManyRequestsException    if too many writes are waiting
+     */
+    public void delete(long id) {
+        if (!submit(PolicyChange.delete(id), false).existed()) {
+            throw new PolicyNotFoundException(id);
+        }
+    }
+
+    /**
+     * Writes the journal counters and latencies in the Prometheus text format.
+     *
+     * @param out the buffer to write to
+     */
+    public void writeTo(StringBuilder out) {
+        out.append("# HELP insurance_journal_changes_total Policy changes committed to the journal.\n");
+        out.append("# TYPE insurance_journal_changes_total counter\n");
+        out.append("insurance_journal_changes_total ").append(committedChanges.sum()).append('\n');
+        out.append("# HELP insurance_journal_commit_duration_seconds Time to append and sync one batch of changes.\n");
+        out.append("# TYPE insurance_journal_commit_duration_seconds histogram\n");
+        commitLatency.writeTo(out, "insurance_journal_commit_duration_seconds", "");
+        out.append("# HELP insurance_journal_publish_duration_seconds Time to publish a view with committed changes.\n");
+        out.append("# TYPE insurance_journal_publish_duration_seconds histogram\n");
+        publishLatency.writeTo(out, "insurance_journal_publish_duration_seconds", "");
+        out.append("# HELP insurance_journal_records Changes in the journal not yet compacted into the data file.\n");
+        out.append("# TYPE insurance_journal_records gauge\n");
+        out.append("insurance_journal_records ").append(journalRecords).append('\n');
+        out.append("# HELP insurance_journal_compactions_total Compactions of the journal into the data file.\n");
+        out.append("# TYPE insurance_journal_compactions_total counter\n");
+        out.append("insurance_journal_compactions_total ").append(compactions.sum()).append('\n');
+    }
+
+    private static void validate(Policy policy) {
+        if (policy.getName() == null || policy.getName().isBlank()) {
+            throw new InvalidRequestException("Policy name must be provided.");
+        }
+        if ((policy.getPremium() != null && policy.getPremium() < 0) || (policy.getCoverage() != null && policy.getCoverage() < 0)) {
+            throw new InvalidRequestException("Premium and coverage must be >= 0.");
+        }
+    }
+
+    private Committed submit(PolicyChange change, boolean assignId) {
+        if (journal == null) {
+            if (policyLoader.getShardCount() > 1 || shardCoordinator.isEnabled()) {
+                throw new ReadOnlyCatalogueException("The policy catalogue is read-only while it is partitioned into shards.");
+            }
+            throw new ReadOnlyCatalogueException("The policy catalogue is read-only; set policies.data.path or policies.journal.path to accept writes.");
+        }
+        if (!running) {
+            throw new IllegalStateException("Policy writer stopped");
+        }
+        PendingWrite write = new PendingWrite(change, assignId, new CompletableFuture<>());
+        if (!pending.offer(write)) {
+            throw new TooManyRequestsException("Too many pending policy writes, please retry.", 1);
+        }
+        // stop() may have drained the queue between the check and the offer; if so nobody else will fail the write
+        if (!running && pending.remove(write)) {
+            throw new IllegalStateException("Policy writer stopped");
+        }
+        try {
+            return write.result().get(COMMIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Policy write failed", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Timed out waiting for the policy journal; the write may still be committed.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the policy journal; the write may still be committed.");
+        }
+    }
+
+    private void commitLoop() {
+        List<PendingWrite> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            while (running) {
+                PendingWrite first = pending.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // everything that queued up during the previous fsync shares the next one
+                pending.drainTo(batch, MAX_BATCH - 1);
+                try {
+                    commit(batch);
+                } catch (RuntimeException e) {
+                    // fail the batch instead of the thread; writes already completed are unaffected
+                    log.error("Could not commit {} policy writes", batch.size(), e);
+                    batch.forEach(write -> write.result().completeExceptionally(e));
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            log.debug("Policy journal thread interrupted");
+        }
+    }
+
+    private void commit(List<PendingWrite> batch) {
+        long started = System.nanoTime();
+        PolicyView view = policyService.getView();
+        nextId = Math.max(nextId, view.maxId() == PolicyStore.NULL_LONG ? 1 : view.maxId() + 1);
+        List<PolicyChange> changes = new ArrayList<>(batch.size());
+        Map<Long, PolicyChange> batchChanges = new HashMap<>();
+        Committed[] results = new Committed[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            PendingWrite write = batch.get(i);
+            PolicyChange change = write.assignId() ? PolicyChange.upsert(nextId++, write.change().policy()) : write.change();
+            nextId = Math.max(nextId, change.id() + 1);
+            boolean existed = exists(change.id(), batchChanges);
+            results[i] = new Committed(change, existed);
+            // deleting what is not there changes nothing, so it is not journaled
+            if (existed || !change.isDelete()) {
+                changes.add(change);
+                batchChanges.put(change.id(), change);
+            }
+        }
+
+        if (!changes.isEmpty()) {
+            try {
+                synchronized (journal) {
+                    journal.append(changes);
+                    journalRecords = sealedRecords + journal.records();
+                    // handed over under the lock, so a seal never takes changes the publish thread cannot see yet
+                    unpublished.putAll(batchChanges);
+                    committed.add(changes);
+                }
+            } catch (IOException e) {
+                log.error("Could not write {} policy changes to the journal", changes.size(), e);
+                UncheckedIOException failure = new UncheckedIOException("Could not write the policy journal", e);
+                batch.forEach(write -> write.result().completeExceptionally(failure));
+                return;
+            }
+        }
+        commitLatency.record(System.nanoTime() - started);
+        committedChanges.add(changes.size());
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result().complete(results[i]);
+        }
+    }
+
+    /**
+     * Tells whether a policy exists once every committed change is applied: the latest change to
+     * the id decides, otherwise the published view. A change leaves {@code unpublished} only
+     * after the view holding it is published, so the view is read after the map.
+     */
+    private boolean exists(long id, Map<Long, PolicyChange> batchChanges) {
+        PolicyChange latest = batchChanges.get(id);
+        if (latest == null) {
+            latest = unpublished.get(id);
+        }
+        return latest != null ? !latest.isDelete() : policyService.getView().rowOfId(id) >= 0;
+    }
+
+    private void publishLoop() {
+        try {
+            while (running) {
+                if (publishing.isEmpty()) {
+                    List<PolicyChange> first = committed.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    publishing.add(first);
+                }
+                // batches committed while the previous view was being published are published together
+                committed.drainTo(publishing);
+                if (publish()) {
+                    compactIfDue();
+                } else {
+                    Thread.sleep(retryMillis);
+                    retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+                }
+            }
+        } catch (InterruptedException e) {
+            log.debug("Policy publish thread interrupted");
+        }
+    }
+
+    /**
+     * Publishes the batches in {@code publishing}. If that fails they are kept, still counted as
+     * unpublished, and tried again together with whatever is committed in the meantime.
+     *
+     * @return true if the batches were published
+     */
+    private boolean publish() {
+        long started = System.nanoTime();
+        List<PolicyChange> changes = new ArrayList<>();
+        publishing.forEach(changes::addAll);
+        try {
+            policyService.applyChanges(changes);
+        } catch (RuntimeException e) {
+            log.error("Could not publish {} policy changes, retrying in {} ms", changes.size(), retryMillis, e);
+            return false;
+        }
+        publishing.clear();
+        retryMillis = POLL_MILLIS;
+        for (PolicyChange change : changes) {
+            unpublished.remove(change.id(), change);
+        }
+        publishLatency.record(System.nanoTime() - started);
+        return true;
+    }
+
+    /**
+     * Seals the journal once enough changes have accumulated and hands the published view to the
+     * compaction thread. Only the seal happens under the journal lock; the data file is written
+     * while new changes are committed to the fresh journal file.
+     */
+    private void compactIfDue() {
+        if (compactAfter <= 0 || compacting || journalRecords < compactAt || policyLoader.getDataPath() == null) {
+            return;
+        }
+        Compaction compaction;
+        synchronized (journal) {
+            // holds off the journal thread, so every change in the sealed segments is in the published view
+            committed.drainTo(publishing);
+            if (!publishing.isEmpty() && !publish()) {
+                return;
+            }
+            try {
+                long records = journal.records();
+                journal.seal();
+                sealedRecords += records;
+                compaction = new Compaction(policyService.getView(), PolicyJournal.segments(policyLoader.getJournalPath()), sealedRecords);
+            } catch (IOException e) {
+                log.warn("Could not seal the policy journal, retrying after {} more changes", compactAfter, e);
+                compactAt = journalRecords + compactAfter;
+                return;
+            } finally {
+                journalRecords = sealedRecords + journal.records();
+            }
+        }
+        compacting = true;
+        compactionQueue.add(compaction);
+    }
+
+    private void compactLoop() {
+        try {
+            while (running) {
+                Compaction compaction = compactionQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (compaction != null) {
+                    compact(compaction);
+                }
+            }
+        } catch (InterruptedException e) {
+            log.debug("Policy compaction thread interrupted");
+        }
+    }
+
+    private void compact(Compaction compaction) {
+        long started = System.nanoTime();
+        try {
+            if (policyService.getView().base() != compaction.view().base()) {
+                // reloaded since the journal was sealed; the reload already replayed the segments
+                log.info("Policy catalogue reloaded, retrying the compaction after {} more changes", compactAfter);
+                compactAt = journalRecords + compactAfter;
+                return;
+            }
+            PolicyStore folded = compaction.view().fold();
+            if (!policyLoader.writeBase(folded, compaction.segments())) {
+                // the data file was edited; the reload it triggers replays the segments over the edit
+                compactAt = journalRecords + compactAfter;
+                return;
+            }
+            policyService.rebase(compaction.view(), folded);
+            synchronized (journal) {
+                sealedRecords -= compaction.records();
+                journalRecords = sealedRecords + journal.records();
+            }
+            compactAt = compactAfter;
+            compactions.increment();
+            log.info("Compacted {} journaled policy changes into {} in {} ms",
+                    compaction.records(), policyLoader.getDataPath(), (System.nanoTime() - started) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            // the segments stay and are folded in by the next compaction
+            log.warn("Could not compact the policy journal, retrying after {} more changes", compactAfter, e);
+            compactAt = journalRecords + compactAfter;
+        } finally {
+            compacting = false;
+        }
+    }
+
+    /**
+     * A write waiting to be committed. Creates have their id assigned at commit time.
+     */
+    private record PendingWrite(PolicyChange change, boolean assignId, CompletableFuture<Committed> result) {
+    }
+
+    /**
+     * Outcome of a committed write: the change as journaled and whether the policy existed before.
+     */
+    private record Committed(PolicyChange change, boolean existed) {
+    }
+
+    /**
+     * Work for the compaction thread: a view holding every change in the sealed segments, and
+     * the number of changes they contain.
+     */
+    private record Compaction(PolicyView view, List<Path> segments, long records) {
+    }
+}
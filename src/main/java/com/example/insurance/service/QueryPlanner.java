@@ -0,0 +1,1050 @@
+package com.example.insurance.service;
+
+import com.example.insurance.metrics.QueryStageMetrics;
+import com.example.insurance.metrics.QueryStageMetrics.Mode;
+import com.example.insurance.metrics.QueryStageMetrics.Stage;
+import com.example.insurance.model.PolicyQuery;
+import com.example.insurance.store.PolicyStore;
+import com.example.insurance.store.PolicyView;
+import com.example.insurance.store.RowKey;
+import com.example.insurance.store.SortKey;
+import com.example.insurance.store.SortPermutation;
+import com.example.insurance.util.CommonUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * Cost-based planner for policy filter queries.
+ * <p>
+ * Each active predicate is turned into a {@link Step} with an estimated result size taken from
+ * the store's secondary indexes. The most selective indexed step produces the initial candidate
+ * rows, the remaining steps are applied to those candidates in order of increasing estimate,
+ * and only the surviving rows are sorted, through the store's precomputed
+ * {@link SortPermutation}s.
+ * <p>
+ * Keyset pages either walk the precomputed ordering from the cursor position and probe each row,
+ * or fetch all candidates from the indexes and keep the ones after the cursor, whichever the
+ * estimates say is cheaper. When fetching, a small page is selected from the candidates with a
+ * bounded heap in O(M log K) instead of sorting all M of them. Scans for streaming exports work
+ * the same way, so they never hold more than a bounded number of rows at once.
+ * <p>
+ * A batch of queries is evaluated together: selective queries still start from their best
+ * index, while all broad ones share a single pass over the rows, each block of rows being
+ * tested against every query while it is in cache.
+ * <p>
+ * Queries against a {@link PolicyView} with published changes are planned separately for the
+ * base store and the small delta store; hidden base rows are dropped and the two sorted results
+ * merged, so writes never require the base indexes to be rebuilt.
+ * <p>
+ * The time and selectivity of every lookup, filter and sort is recorded in {@link QueryStageMetrics}.
+ */
+@Slf4j
+@Component
+public class QueryPlanner {
+
+    /**
+     * Number of rows taken from the ordering at a time when walking it for a keyset page.
+     */
+    private static final int WALK_CHUNK = 1024;
+
+    /**
+     * Largest index estimate for which a scan fetches and sorts all candidates up front instead of
+     * walking the ordering.
+     */
+    private static final int SCAN_FETCH_LIMIT = 64 * WALK_CHUNK;
+
+    /**
+     * A page is selected with a heap when the candidates outnumber it by at least this factor;
+     * below that a full primitive sort is as fast.
+     */
+    private static final int TOP_K_RATIO = 8;
+
+    /**
+     * In a batch, a query whose best index matches less than one row in this many is served from
+     * that index; broader queries join the shared scan.
+     */
+    private static final int SHARED_SCAN_SELECTIVITY = 8;
+
+    private final QueryStageMetrics stageMetrics;
+
+    /**
+     * Constructor for injecting the QueryStageMetrics.
+     *
+     * @param stageMetrics recorder of per-stage timing and selectivity
+     */
+    public QueryPlanner(QueryStageMetrics stageMetrics) {
+        this.stageMetrics = stageMetrics;
+    }
+
+    /**
+     * Evaluates a query against a view.
+     *
+     * @param view  the policy view
+     * @param query the filter criteria
+     * @return all matching rows in the query's order
+     */
+    public int[] execute(PolicyView view, PolicyQuery query) {
+        if (!view.hasChanges()) {
+            return execute(view.base(), query);
+        }
+        return overlay(view, query, execute(view.base(), query));
+    }
+
+    /**
+     * Completes the result of a query over a view's base into its result over the view: hidden
+     * rows are dropped and the matches of the delta merged in.
+     *
+     * @param view     the policy view
+     * @param query    the filter criteria
+     * @param baseRows all matching rows of the base in the query's order, which are not modified
+     * @return all matching rows of the view in the query's order
+     */
+    public int[] overlay(PolicyView view, PolicyQuery query, int[] baseRows) {
+        if (!view.hasChanges()) {
+            return baseRows;
+        }
+        int[] rows = view.visible(view.hiddenCount() == 0 ? baseRows : baseRows.clone(), Integer.MAX_VALUE);
+        int[] deltaRows = view.deltaRows(execute(view.delta(), query));
+        return PolicyView.merge(rows, deltaRows, Integer.MAX_VALUE, Order.of(query).of(view));
+    }
+
+    /**
+     * Evaluates a batch of queries, sharing one pass over the rows between all queries that are
+     * too broad to benefit from an index. Every query is validated before any work is done.
+     *
+     * @param view    the policy view
+     * @param queries the filter criteria
+     * @param limits  maximum number of rows to return for each query
+     * @return for each query, its first matching rows in the query's order
+     */
+    public int[][] executeAll(PolicyView view, List<PolicyQuery> queries, int[] limits) {
+        if (!view.hasChanges()) {
+            return executeAll(view.base(), queries, limits);
+        }
+        // hidden rows may take up part of each base result
+        int[] baseLimits = new int[limits.length];
+        for (int i = 0; i < limits.length; i++) {
+            baseLimits[i] = (int) Math.min((long) limits[i] + view.hiddenCount(), Integer.MAX_VALUE);
+        }
+        int[][] results = executeAll(view.base(), queries, baseLimits);
+        int[][] deltaResults = executeAll(view.delta(), queries, limits);
+        for (int i = 0; i < results.length; i++) {
+            results[i] = PolicyView.merge(view.visible(results[i], limits[i]), view.deltaRows(deltaResults[i]),
+                    limits[i], Order.of(queries.get(i)).of(view));
+        }
+        return results;
+    }
+
+    /**
+     * Evaluates a query lazily, producing the matching rows in the query's order one chunk at a
+     * time. The base is scanned as described for stores; the delta's matches, which are few, are
+     * fetched up front and merged into the chunk they fall in. The query is validated before this
+     * method returns.
+     *
+     * @param view  the policy view
+     * @param query the filter criteria
+     * @return iterator over non-empty chunks of matching rows
+     */
+    public Iterator<int[]> scan(PolicyView view, PolicyQuery query) {
+        if (!view.hasChanges()) {
+            return scan(view.base(), query);
+        }
+        Iterator<int[]> baseChunks = scan(view.base(), query);
+        int[] deltaRows = view.deltaRows(execute(view.delta(), query));
+        PolicyView.RowOrder order = Order.of(query).of(view);
+        return new Iterator<>() {
+            private int merged;
+            private int[] next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && baseChunks.hasNext()) {
+                    int[] chunk = view.visible(baseChunks.next(), Integer.MAX_VALUE);
+                    if (chunk.length > 0) {
+                        // delta rows before the last row of the chunk belong to it
+                        int end = merged;
+                        while (end < deltaRows.length && order.compare(deltaRows[end], chunk[chunk.length - 1]) < 0) {
+                            end++;
+                        }
+                        next = PolicyView.merge(chunk, Arrays.copyOfRange(deltaRows, merged, end), Integer.MAX_VALUE, order);
+                        merged = end;
+                    }
+                }
+                if (next == null && merged < deltaRows.length) {
+                    int end = Math.min(merged + WALK_CHUNK, deltaRows.length);
+                    next = Arrays.copyOfRange(deltaRows, merged, end);
+                    merged = end;
+                }
+                return next != null;
+            }
+
+            @Override
+            public int[] next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int[] chunk = next;
+                next = null;
+                return chunk;
+            }
+        };
+    }
+
+    /**
+     * Evaluates one keyset page of a query: the first {@code limit} matching rows after a position
+     * returned by {@link #position(PolicyView, PolicyQuery, int)}.
+     *
+     * @param view          the policy view
+     * @param query         the filter criteria
+     * @param afterPosition position of the last row already returned, or -1 for the first page
+     * @param limit         maximum number of rows to return
+     * @return the rows of the page and whether more rows follow
+     */
+    public RowPage page(PolicyView view, PolicyQuery query, int afterPosition, int limit) {
+        if (!view.hasChanges()) {
+            return page(view.base(), query, afterPosition, limit);
+        }
+        if (afterPosition < 0) {
+            return pageFrom(view, query, 0, 0, limit);
+        }
+        Order order = Order.of(query);
+        IntPredicate after = candidate -> view.compare(order.key(), order.descending(), candidate, afterPosition) > 0;
+        return pageFrom(view, query, firstAfter(order, view.base(), 0, after),
+                firstAfter(order, view.delta(), view.base().size(), after), limit);
+    }
+
+    /**
+     * Evaluates one keyset page of a query: the first {@code limit} matching rows that come after
+     * a {@link RowKey} returned by {@link #keyOf(PolicyView, PolicyQuery, int)}. The key may come
+     * from an earlier view over the same base; the page then resumes after the row's old place
+     * in the order, whether or not the row has been changed or deleted since.
+     *
+     * @param view     the policy view
+     * @param query    the filter criteria
+     * @param afterKey key of the last row already returned, or null for the first page
+     * @param limit    maximum number of rows to return
+     * @return the rows of the page and whether more rows follow
+     */
+    public RowPage pageAfter(PolicyView view, PolicyQuery query, RowKey afterKey, int limit) {
+        if (afterKey == null) {
+            return page(view, query, -1, limit);
+        }
+        Order order = Order.of(query);
+        IntPredicate after = candidate -> view.compare(order.key(), order.descending(), candidate, afterKey) > 0;
+        int baseStart = firstAfter(order, view.base(), 0, after);
+        if (!view.hasChanges()) {
+            return page(view.base(), query, baseStart - 1, limit);
+        }
+        return pageFrom(view, query, baseStart, firstAfter(order, view.delta(), view.base().size(), after), limit);
+    }
+
+    /**
+     * Cuts one keyset page, as {@link #pageAfter(PolicyView, PolicyQuery, RowKey, int)} evaluates
+     * it, out of the complete result of the query when the caller already has it, finding where
+     * the page starts by binary search.
+     *
+     * @param view     the policy view
+     * @param query    the filter criteria
+     * @param rows     all rows matching the query in the view, in the query's order
+     * @param afterKey key of the last row already returned
+     * @param limit    maximum number of rows to return
+     * @return the rows of the page and whether more rows follow
+     */
+    public RowPage pageAfter(PolicyView view, PolicyQuery query, int[] rows, RowKey afterKey, int limit) {
+        Order order = Order.of(query);
+        int low = 0;
+        int high = rows.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (view.compare(order.key(), order.descending(), rows[middle], afterKey) > 0) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        int end = (int) Math.min((long) low + limit, rows.length);
+        return new RowPage(Arrays.copyOfRange(rows, low, end), end < rows.length);
+    }
+
+    /**
+     * Returns where a row falls in a query's order, for {@link #pageAfter(PolicyView, PolicyQuery, RowKey, int)}.
+     *
+     * @param view  the policy view
+     * @param query the filter criteria
+     * @param row   a row of the view
+     * @return the row's key
+     */
+    public RowKey keyOf(PolicyView view, PolicyQuery query, int row) {
+        return view.keyOf(Order.of(query).key(), row);
+    }
+
+    /**
+     * Returns {@code limit} rows of a query without criteria, starting at an offset into its
+     * results.
+     *
+     * @param view  the policy view
+     * @param query the sort parameters; criteria must not be set
+     * @param from  number of rows to skip
+     * @param limit maximum number of rows to return
+     * @return the rows of the page and whether more rows follow
+     */
+    public RowPage range(PolicyView view, PolicyQuery query, int from, int limit) {
+        if (!view.hasChanges()) {
+            return page(view.base(), query, from - 1, limit);
+        }
+        if (from >= view.size()) {
+            return new RowPage(new int[0], false);
+        }
+        // the largest base position whose preceding visible base and delta rows are at most from
+        Order order = Order.of(query);
+        SortPermutation baseOrdering = order.in(view.base());
+        int[] hiddenPositions = view.hiddenPositions(order.key(), order.descending());
+        int cut = -1;
+        int cutDelta = 0;
+        int low = 0;
+        int high = view.base().size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int row = baseOrdering == null ? middle : baseOrdering.rowAt(middle);
+            int deltaBefore = firstAfter(order, view.delta(), view.base().size(),
+                    candidate -> view.compare(order.key(), order.descending(), candidate, row) > 0);
+            int before = middle - lowerBound(hiddenPositions, middle) + deltaBefore;
+            if (before <= from) {
+                cut = middle;
+                cutDelta = deltaBefore;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (cut < 0) {
+            return pageFrom(view, query, 0, from, limit);
+        }
+        int cutRow = baseOrdering == null ? cut : baseOrdering.rowAt(cut);
+        int skip = from - (cut - lowerBound(hiddenPositions, cut) + cutDelta);
+        if (!view.isHidden(cutRow) && skip == 0) {
+            return pageFrom(view, query, cut, cutDelta, limit);
+        }
+        return pageFrom(view, query, cut + 1, cutDelta + skip - (view.isHidden(cutRow) ? 0 : 1), limit);
+    }
+
+    /**
+     * Returns the position of a row for {@link #page(PolicyView, PolicyQuery, int, int)}: its
+     * position in the query's ordering when the view has no changes, otherwise the row itself.
+     *
+     * @param view  the policy view
+     * @param query the filter criteria
+     * @param row   a row of the view
+     * @return the position
+     */
+    public int position(PolicyView view, PolicyQuery query, int row) {
+        if (view.hasChanges()) {
+            return row;
+        }
+        SortPermutation ordering = ordering(view.base(), query);
+        return ordering == null ? row : ordering.positionOf(row);
+    }
+
+    /**
+     * Tells whether a query has no active criteria, so that it matches every row.
+     *
+     * @param view  the policy view
+     * @param query the filter criteria
+     * @return true if the query does not filter at all
+     */
+    public boolean matchesAll(PolicyView view, PolicyQuery query) {
+        return plan(view.base(), query).isEmpty();
+    }
+
+    /**
+     * Evaluates a query against a store.
+     *
+     * @param store the policy store
+     * @param query the filter criteria
+     * @return all matching rows in the query's order
+     */
+    private int[] execute(PolicyStore store, PolicyQuery query) {
+        SortPermutation ordering = ordering(store, query);
+        List<Step> steps = plan(store, query);
+        log.debug("Query plan for {}: {}", query, steps);
+
+        if (steps.isEmpty()) {
+            return ordering == null ? rowRange(0, store.size()) : ordering.rowsBetween(0, store.size());
+        }
+        return order(match(store, steps), ordering);
+    }
+
+    /**
+     * Evaluates a batch of queries, sharing one pass over the rows between all queries that are
+     * too broad to benefit from an index. Every query is validated before any work is done.
+     *
+     * @param store   the policy store
+     * @param queries the filter criteria
+     * @param limits  maximum number of rows to return for each query
+     * @return for each query, its first matching rows in the query's order
+     */
+    private int[][] executeAll(PolicyStore store, List<PolicyQuery> queries, int[] limits) {
+        int count = queries.size();
+        SortPermutation[] orderings = new SortPermutation[count];
+        List<List<Step>> plans = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            orderings[i] = ordering(store, queries.get(i));
+            plans.add(plan(store, queries.get(i)));
+        }
+
+        int[][] results = new int[count][];
+        List<Integer> shared = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            List<Step> steps = plans.get(i);
+            if (steps.isEmpty()) {
+                results[i] = rowRange(0, store.size());
+            } else if ((long) steps.get(0).estimate() * SHARED_SCAN_SELECTIVITY < store.size()) {
+                results[i] = match(store, steps);
+            } else {
+                shared.add(i);
+            }
+        }
+        log.debug("Batch of {} queries: {} served by indexes, {} by a shared scan", count, count - shared.size(), shared.size());
+
+        if (!shared.isEmpty()) {
+            int[][] matches = new int[shared.size()][WALK_CHUNK];
+            int[] found = new int[shared.size()];
+            for (int from = 0; from < store.size(); from += WALK_CHUNK) {
+                int to = Math.min(from + WALK_CHUNK, store.size());
+                for (int s = 0; s < shared.size(); s++) {
+                    int[] chunk = filterRange(store, plans.get(shared.get(s)), null, from, to);
+                    if (found[s] + chunk.length > matches[s].length) {
+                        matches[s] = Arrays.copyOf(matches[s], Math.max(matches[s].length * 2, found[s] + chunk.length));
+                    }
+                    System.arraycopy(chunk, 0, matches[s], found[s], chunk.length);
+                    found[s] += chunk.length;
+                }
+            }
+            for (int s = 0; s < shared.size(); s++) {
+                results[shared.get(s)] = Arrays.copyOf(matches[s], found[s]);
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            results[i] = first(results[i], orderings[i], limits[i]);
+        }
+        return results;
+    }
+
+    /**
+     * Evaluates a query lazily, producing the matching rows in the query's order one chunk at a
+     * time. Selective queries fetch their candidates from the indexes in one go; broad ones walk
+     * the ordering and filter {@value #WALK_CHUNK} rows at a time, so memory stays bounded no
+     * matter how many rows match. The query is validated before this method returns.
+     *
+     * @param store the policy store
+     * @param query the filter criteria
+     * @return iterator over non-empty chunks of matching rows
+     */
+    private Iterator<int[]> scan(PolicyStore store, PolicyQuery query) {
+        SortPermutation ordering = ordering(store, query);
+        List<Step> steps = plan(store, query);
+        log.debug("Scan plan for {}: {}", query, steps);
+
+        if (!steps.isEmpty() && steps.get(0).estimate() <= SCAN_FETCH_LIMIT) {
+            int[] rows = order(match(store, steps), ordering);
+            return rows.length == 0 ? Collections.emptyIterator() : List.of(rows).iterator();
+        }
+        return new Iterator<>() {
+            private int position;
+            private int[] next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && position < store.size()) {
+                    int end = Math.min(position + WALK_CHUNK, store.size());
+                    int[] chunk = filterRange(store, steps, ordering, position, end);
+                    position = end;
+                    if (chunk.length > 0) {
+                        next = chunk;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public int[] next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int[] chunk = next;
+                next = null;
+                return chunk;
+            }
+        };
+    }
+
+    /**
+     * Evaluates one keyset page of a query: the first {@code limit} matching rows whose position
+     * in the query's order is after {@code afterPosition}.
+     *
+     * @param store         the policy store
+     * @param query         the filter criteria
+     * @param afterPosition position of the last row already returned, or -1 for the first page
+     * @param limit         maximum number of rows to return
+     * @return the rows of the page and whether more rows follow
+     */
+    private RowPage page(PolicyStore store, PolicyQuery query, int afterPosition, int limit) {
+        SortPermutation ordering = ordering(store, query);
+        List<Step> steps = plan(store, query);
+        int total = store.size();
+        int start = afterPosition + 1;
+
+        if (steps.isEmpty()) {
+            int end = (int) Math.min((long) start + limit, total);
+            int[] rows = ordering == null ? rowRange(start, end) : ordering.rowsBetween(start, end);
+            return new RowPage(rows, end < total);
+        }
+
+        // walking probes about limit * total / estimate rows, fetching the candidates touches estimate rows
+        int estimate = steps.get(0).estimate();
+        long walkCost = ((long) limit + 1) * total / Math.max(estimate, 1);
+        log.debug("Page plan for {}: {}, walk cost {}", query, steps, walkCost);
+        if (walkCost < estimate) {
+            return walk(store, steps, ordering, start, limit);
+        }
+
+        int[] positions = match(store, steps);
+        int kept = 0;
+        for (int row : positions) {
+            int position = ordering == null ? row : ordering.positionOf(row);
+            if (position >= start) {
+                positions[kept++] = position;
+            }
+        }
+        int[] first = smallest(positions, kept, limit);
+        int[] rows = new int[first.length];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = ordering == null ? first[i] : ordering.rowAt(first[i]);
+        }
+        return new RowPage(rows, kept > limit);
+    }
+
+    /**
+     * Returns the precomputed ordering a query's results follow, or null for storage order.
+     *
+     * @param store the policy store
+     * @param query the filter criteria
+     * @return the sort permutation, or null when the query has neither sort key nor sort order
+     */
+    public SortPermutation ordering(PolicyStore store, PolicyQuery query) {
+        return Order.of(query).in(store);
+    }
+
+    /**
+     * Builds the list of steps for the active predicates, cheapest first.
+     *
+     * @param store the policy store
+     * @param query the filter criteria
+     * @return steps ordered by estimated result size
+     */
+    List<Step> plan(PolicyStore store, PolicyQuery query) {
+        List<Step> steps = new ArrayList<>(4);
+        if (!CommonUtils.nullOrEmpty(query.getMaxPremium()) && !CommonUtils.nullOrEmpty(query.getMinPremium())) {
+            steps.add(new PremiumRangeStep(store, query.getMinPremium(), query.getMaxPremium()));
+        }
+        if (!CommonUtils.nullOrEmpty(query.getPolicyType())) {
+            steps.add(new TypeStep(store, query.getPolicyType()));
+        }
+        if (!CommonUtils.nullOrEmpty(query.getMinCoverage())) {
+            steps.add(new CoverageStep(store, query.getMinCoverage()));
+        }
+        if (!CommonUtils.nullOrEmpty(query.getName())) {
+            steps.add(new NameStep(store, query.getName()));
+        }
+        steps.sort(Comparator.comparingInt(Step::estimate));
+        return steps;
+    }
+
+    /**
+     * Returns the {@code k} smallest of {@code values[0, count)} in ascending order. Small
+     * selections keep a bounded max-heap of the best values seen so far, costing
+     * O(count log k); otherwise the values are sorted in place.
+     */
+    static int[] smallest(int[] values, int count, int k) {
+        if (k >= count) {
+            Arrays.sort(values, 0, count);
+            return Arrays.copyOf(values, count);
+        }
+        if ((long) k * TOP_K_RATIO > count) {
+            Arrays.sort(values, 0, count);
+            return Arrays.copyOf(values, k);
+        }
+        if (k == 0) {
+            return new int[0];
+        }
+        int[] heap = Arrays.copyOf(values, k);
+        for (int i = k / 2 - 1; i >= 0; i--) {
+            siftDown(heap, i, k);
+        }
+        for (int i = k; i < count; i++) {
+            if (values[i] < heap[0]) {
+                heap[0] = values[i];
+                siftDown(heap, 0, k);
+            }
+        }
+        Arrays.sort(heap);
+        return heap;
+    }
+
+    /**
+     * Restores the max-heap property below {@code index}.
+     */
+    private static void siftDown(int[] heap, int index, int size) {
+        int value = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1] > heap[child]) {
+                child++;
+            }
+            if (heap[child] <= value) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = value;
+    }
+
+    /**
+     * Returns the first {@code limit} of the given rows in the ordering, selecting them with
+     * {@link #smallest} so a small limit does not sort every row.
+     */
+    private static int[] first(int[] rows, SortPermutation ordering, int limit) {
+        if (ordering != null) {
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = ordering.positionOf(rows[i]);
+            }
+        }
+        int[] selected = smallest(rows, rows.length, limit);
+        if (ordering != null) {
+            for (int i = 0; i < selected.length; i++) {
+                selected[i] = ordering.rowAt(selected[i]);
+            }
+        }
+        return selected;
+    }
+
+    private int[] order(int[] rows, SortPermutation ordering) {
+        long started = System.nanoTime();
+        int[] ordered;
+        if (ordering == null) {
+            Arrays.sort(rows);
+            ordered = rows;
+        } else {
+            ordered = ordering.sort(rows);
+        }
+        stageMetrics.record(Stage.SORT, Mode.ORDER, rows.length, ordered.length, System.nanoTime() - started);
+        return ordered;
+    }
+
+    /**
+     * Runs the steps of a plan: the first one through its index, the rest as filters.
+     */
+    private int[] match(PolicyStore store, List<Step> steps) {
+        long started = System.nanoTime();
+        int[] rows = steps.get(0).lookup(store);
+        long finished = System.nanoTime();
+        stageMetrics.record(steps.get(0).stage(), Mode.LOOKUP, store.size(), rows.length, finished - started);
+        for (int i = 1; i < steps.size() && rows.length > 0; i++) {
+            rows = filter(store, steps.get(i), rows);
+        }
+        return rows;
+    }
+
+    /**
+     * Applies one step as a filter, recording its time and selectivity.
+     */
+    private int[] filter(PolicyStore store, Step step, int[] rows) {
+        long started = System.nanoTime();
+        int[] matches = step.filter(store, rows);
+        stageMetrics.record(step.stage(), Mode.FILTER, rows.length, matches.length, System.nanoTime() - started);
+        return matches;
+    }
+
+    /**
+     * Walks the ordering from a start position, filtering chunks of rows through every step,
+     * until one row more than the page needs has been found.
+     */
+    private RowPage walk(PolicyStore store, List<Step> steps, SortPermutation ordering, int start, int limit) {
+        int total = store.size();
+        int[] matches = new int[(int) Math.min((long) limit + 1, total + 1L)];
+        int found = 0;
+        int position = start;
+        while (position < total && found < matches.length) {
+            int end = Math.min(position + WALK_CHUNK, total);
+            int[] chunk = filterRange(store, steps, ordering, position, end);
+            int take = Math.min(chunk.length, matches.length - found);
+            System.arraycopy(chunk, 0, matches, found, take);
+            found += take;
+            position = end;
+        }
+        return new RowPage(Arrays.copyOf(matches, Math.min(found, limit)), found > limit);
+    }
+
+    /**
+     * Returns the rows at positions {@code [from, to)} of the ordering that pass every step.
+     */
+    private int[] filterRange(PolicyStore store, List<Step> steps, SortPermutation ordering, int from, int to) {
+        int[] chunk = ordering == null ? rowRange(from, to) : ordering.rowsBetween(from, to);
+        for (int i = 0; i < steps.size() && chunk.length > 0; i++) {
+            chunk = filter(store, steps.get(i), chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * Merges a page of the base, starting at a position in its ordering and skipping hidden rows,
+     * with a page of the delta starting at a position in its ordering.
+     */
+    private RowPage pageFrom(PolicyView view, PolicyQuery query, int baseStart, int deltaStart, int limit) {
+        PolicyStore base = view.base();
+        SortPermutation baseOrdering = ordering(base, query);
+        int wanted = (int) Math.min((long) limit + 1, Integer.MAX_VALUE);
+        int[] rows = new int[Math.min(wanted, base.size())];
+        int found = 0;
+        int after = baseStart - 1;
+        while (found < wanted) {
+            RowPage basePage = page(base, query, after, wanted - found);
+            for (int row : basePage.rows()) {
+                if (!view.isHidden(row)) {
+                    rows[found++] = row;
+                }
+            }
+            if (!basePage.hasMore() || basePage.rows().length == 0) {
+                break;
+            }
+            int last = basePage.rows()[basePage.rows().length - 1];
+            after = baseOrdering == null ? last : baseOrdering.positionOf(last);
+        }
+        int[] deltaRows = view.deltaRows(page(view.delta(), query, deltaStart - 1, wanted).rows());
+        int[] merged = PolicyView.merge(Arrays.copyOf(rows, found), deltaRows, wanted, Order.of(query).of(view));
+        return new RowPage(Arrays.copyOf(merged, Math.min(merged.length, limit)), merged.length > limit);
+    }
+
+    /**
+     * Returns the first position in the ordering of the base or the delta whose row, as a row of
+     * the view, comes after a bound, by binary search.
+     */
+    private static int firstAfter(Order order, PolicyStore store, int offset, IntPredicate after) {
+        SortPermutation ordering = order.in(store);
+        int low = 0;
+        int high = store.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int candidate = offset + (ordering == null ? middle : ordering.rowAt(middle));
+            if (after.test(candidate)) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Number of the sorted values that are smaller than a key.
+     */
+    private static int lowerBound(int[] sorted, int key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int[] rowRange(int from, int to) {
+        int[] rows = new int[Math.max(0, to - from)];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = from + i;
+        }
+        return rows;
+    }
+
+    /**
+     * The order a query's results follow: a sort key and direction, or storage order when the key
+     * is null. A sort order without a sort key orders by name.
+     */
+    private record Order(SortKey key, boolean descending) {
+
+        static Order of(PolicyQuery query) {
+            SortKey key = SortKey.parse(query.getSortBy());
+            if (key == null && query.getSortOrder() != null) {
+                key = SortKey.NAME;
+            }
+            return new Order(key, key != null && "desc".equalsIgnoreCase(query.getSortOrder()));
+        }
+
+        /**
+         * @return the store's precomputed ordering, or null for storage order
+         */
+        SortPermutation in(PolicyStore store) {
+            return key == null ? null : store.permutation(key, descending);
+        }
+
+        /**
+         * @return the order of the rows of a view
+         */
+        PolicyView.RowOrder of(PolicyView view) {
+            return (row, otherRow) -> view.compare(key, descending, row, otherRow);
+        }
+    }
+
+    /**
+     * Rows of one keyset page.
+     *
+     * @param rows    the rows on the page, in query order
+     * @param hasMore whether further matching rows follow the page
+     */
+    public record RowPage(int[] rows, boolean hasMore) {
+    }
+
+    /**
+     * A single predicate of a query plan.
+     */
+    interface Step {
+
+        /**
+         * @return the stage this predicate is reported under
+         */
+        Stage stage();
+
+        /**
+         * @return estimated number of rows matching this predicate on its own
+         */
+        int estimate();
+
+        /**
+         * Produces every row matching this predicate, using an index where available.
+         */
+        int[] lookup(PolicyStore store);
+
+        /**
+         * Keeps the candidate rows that match this predicate by probing the columns.
+         */
+        int[] filter(PolicyStore store, int[] rows);
+    }
+
+    /**
+     * Premium between two bounds, inclusive, served by the sorted premium index.
+     */
+    static final class PremiumRangeStep implements Step {
+        private final int min;
+        private final int max;
+        private final int estimate;
+
+        PremiumRangeStep(PolicyStore store, int min, int max) {
+            this.min = min;
+            this.max = max;
+            this.estimate = store.premiumIndex().countBetween(min, max);
+        }
+
+        @Override
+        public Stage stage() {
+            return Stage.PREMIUM;
+        }
+
+        @Override
+        public int estimate() {
+            return estimate;
+        }
+
+        @Override
+        public int[] lookup(PolicyStore store) {
+            return store.premiumIndex().rowsBetween(min, max);
+        }
+
+        @Override
+        public int[] filter(PolicyStore store, int[] rows) {
+            int[] matches = new int[rows.length];
+            int found = 0;
+            for (int row : rows) {
+                int premium = store.premium(row);
+                if (premium != PolicyStore.NULL_INT && premium >= min && premium <= max) {
+                    matches[found++] = row;
+                }
+            }
+            return Arrays.copyOf(matches, found);
+        }
+
+        @Override
+        public String toString() {
+            return "premium[" + min + ".." + max + "]~" + estimate;
+        }
+    }
+
+    /**
+     * Policy type, compared case-insensitively through the type dictionary and served by the
+     * per-type posting lists.
+     */
+    static final class TypeStep implements Step {
+        private final boolean[] typeMask;
+        private final int estimate;
+
+        TypeStep(PolicyStore store, String type) {
+            this.typeMask = store.typeMask(type);
+            int total = 0;
+            for (int code = 0; code < typeMask.length; code++) {
+                if (typeMask[code]) {
+                    total += store.rowsOfType(code).length;
+                }
+            }
+            this.estimate = total;
+        }
+
+        @Override
+        public Stage stage() {
+            return Stage.TYPE;
+        }
+
+        @Override
+        public int estimate() {
+            return estimate;
+        }
+
+        @Override
+        public int[] lookup(PolicyStore store) {
+            int[] rows = new int[estimate];
+            int found = 0;
+            for (int code = 0; code < typeMask.length; code++) {
+                if (typeMask[code]) {
+                    int[] posting = store.rowsOfType(code);
+                    System.arraycopy(posting, 0, rows, found, posting.length);
+                    found += posting.length;
+                }
+            }
+            return rows;
+        }
+
+        @Override
+        public int[] filter(PolicyStore store, int[] rows) {
+            int[] matches = new int[rows.length];
+            int found = 0;
+            for (int row : rows) {
+                int typeCode = store.typeCode(row);
+                if (typeCode != PolicyStore.NO_TYPE && typeMask[typeCode]) {
+                    matches[found++] = row;
+                }
+            }
+            return Arrays.copyOf(matches, found);
+        }
+
+        @Override
+        public String toString() {
+            return "type~" + estimate;
+        }
+    }
+
+    /**
+     * Minimum coverage, inclusive, served by the sorted coverage index.
+     */
+    static final class CoverageStep implements Step {
+        private final int minCoverage;
+        private final int estimate;
+
+        CoverageStep(PolicyStore store, int minCoverage) {
+            this.minCoverage = minCoverage;
+            this.estimate = store.coverageIndex().countAtLeast(minCoverage);
+        }
+
+        @Override
+        public Stage stage() {
+            return Stage.COVERAGE;
+        }
+
+        @Override
+        public int estimate() {
+            return estimate;
+        }
+
+        @Override
+        public int[] lookup(PolicyStore store) {
+            return store.coverageIndex().rowsAtLeast(minCoverage);
+        }
+
+        @Override
+        public int[] filter(PolicyStore store, int[] rows) {
+            int[] matches = new int[rows.length];
+            int found = 0;
+            for (int row : rows) {
+                int coverage = store.coverage(row);
+                if (coverage != PolicyStore.NULL_INT && coverage >= minCoverage) {
+                    matches[found++] = row;
+                }
+            }
+            return Arrays.copyOf(matches, found);
+        }
+
+        @Override
+        public String toString() {
+            return "coverage[" + minCoverage + "..]~" + estimate;
+        }
+    }
+
+    /**
+     * Case-insensitive substring match on the name, served by the trigram index. Queries shorter
+     * than a trigram are estimated at the full store size so they run as a residual filter
+     * whenever another predicate is present.
+     */
+    static final class NameStep implements Step {
+        private final String name;
+        private final String query;
+        private final int estimate;
+
+        NameStep(PolicyStore store, String name) {
+            this.name = name;
+            this.query = PolicyStore.normalise(name);
+            this.estimate = store.estimateNameMatches(name);
+        }
+
+        @Override
+        public Stage stage() {
+            return Stage.NAME;
+        }
+
+        @Override
+        public int estimate() {
+            return estimate;
+        }
+
+        @Override
+        public int[] lookup(PolicyStore store) {
+            return store.rowsWithName(name);
+        }
+
+        @Override
+        public int[] filter(PolicyStore store, int[] rows) {
+            int[] matches = new int[rows.length];
+            int found = 0;
+            for (int row : rows) {
+                String lowerName = store.lowerName(row);
+                if (lowerName != null && lowerName.contains(query)) {
+                    matches[found++] = row;
+                }
+            }
+            return Arrays.copyOf(matches, found);
+        }
+
+        @Override
+        public String toString() {
+            return "name[" + query + "]~" + estimate;
+        }
+    }
+}
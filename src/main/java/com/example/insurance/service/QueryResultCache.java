@@ -0,0 +1,151 @@
+package com.example.insurance.service;
+
+import com.example.insurance.model.PolicyQuery;
+import com.example.insurance.store.PolicyStore;
+import com.example.insurance.store.PolicyView;
+import com.example.insurance.store.SortKey;
+import com.example.insurance.util.CommonUtils;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Cache of complete query results, in front of {@link QueryPlanner#execute(PolicyView, PolicyQuery)}.
+ * <p>
+ * Entries hold the result over a view's base store, keyed by the base version and a normalised
+ * form of the query, so two spellings of the same criteria share an entry and results of a
+ * replaced base are never served. Writes published over the same base leave the entries valid:
+ * each request drops the hidden rows from the cached result and merges in the matches of the
+ * small delta store. Only the matching row numbers are kept; policies are materialised per
+ * request. The cache is bounded by the total number of cached rows and evicts with Caffeine's
+ * W-TinyLFU policy.
+ * <p>
+ * Concurrent misses on the same key are coalesced: the first caller computes the result on its own
+ * thread and every other caller waits for that computation instead of running the plan again.
+ * A bound of zero turns the cache off and every query goes straight to the planner.
+ */
+@Component
+public class QueryResultCache {
+
+    /**
+     * Weight charged per entry on top of its rows, so that many empty results still count.
+     */
+    private static final int ENTRY_WEIGHT = 16;
+
+    private final QueryPlanner queryPlanner;
+    private final AsyncCache<Key, int[]> results;
+
+    /**
+     * Constructor for injecting the QueryPlanner and the cache bound.
+     *
+     * @param queryPlanner planner that evaluates queries on a miss
+     * @param maxRows      maximum total number of rows held across all cached results, 0 to disable caching
+     */
+    public QueryResultCache(QueryPlanner queryPlanner, @Value("${policies.cache.max-rows:4000000}") long maxRows) {
+        this.queryPlanner = queryPlanner;
+        this.results = maxRows <= 0 ? null : Caffeine.newBuilder()
+                .maximumWeight(maxRows)
+                .weigher((Key key, int[] rows) -> ENTRY_WEIGHT + rows.length)
+                .recordStats()
+                .buildAsync();
+    }
+
+    /**
+     * Returns all rows matching a query in the query's order, from the cache when possible.
+     *
+     * @param view  the policy view
+     * @param query the filter criteria
+     * @return all matching rows in the query's order; callers must not modify the array
+     */
+    public int[] execute(PolicyView view, PolicyQuery query) {
+        if (results == null) {
+            return queryPlanner.execute(view, query);
+        }
+        return queryPlanner.overlay(view, query, executeOnBase(view, query));
+    }
+
+    private int[] executeOnBase(PolicyView view, PolicyQuery query) {
+        Key key = Key.of(view, query);
+        CompletableFuture<int[]> computation = new CompletableFuture<>();
+        CompletableFuture<int[]> result = results.get(key, (k, executor) -> computation);
+        if (result == computation) {
+            // this caller missed, so it evaluates the plan; failed futures are dropped by the cache
+            try {
+                computation.complete(queryPlanner.execute(view.hasChanges() ? PolicyView.of(view.base()) : view, query));
+            } catch (RuntimeException e) {
+                computation.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Drops every cached result, e.g. after the base store was replaced.
+     */
+    public void invalidateAll() {
+        if (results != null) {
+            results.synchronous().invalidateAll();
+        }
+    }
+
+    /**
+     * Returns the cache counters.
+     *
+     * @return whether caching is enabled, hits, misses, evictions, the number of entries and the number of cached rows
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> counters = new LinkedHashMap<>();
+        counters.put("enabled", results != null);
+        if (results == null) {
+            return counters;
+        }
+        CacheStats stats = results.synchronous().stats();
+        counters.put("hits", stats.hitCount());
+        counters.put("misses", stats.missCount());
+        counters.put("hitRate", stats.hitRate());
+        counters.put("evictions", stats.evictionCount());
+        counters.put("entries", results.synchronous().estimatedSize());
+        counters.put("weight", results.synchronous().policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L));
+        return counters;
+    }
+
+    /**
+     * Normalised query: criteria the planner ignores are dropped, text criteria are lowercased and
+     * the sort parameters are reduced to the ordering they select.
+     */
+    record Key(long version, Integer minPremium, Integer maxPremium, String policyType, Integer minCoverage,
+               String name, SortKey sortKey, boolean descending) {
+
+        static Key of(PolicyView view, PolicyQuery query) {
+            boolean premiumRange = !CommonUtils.nullOrEmpty(query.getMinPremium()) && !CommonUtils.nullOrEmpty(query.getMaxPremium());
+            SortKey sortKey = SortKey.parse(query.getSortBy());
+            if (sortKey == null && query.getSortOrder() != null) {
+                sortKey = SortKey.NAME;
+            }
+            return new Key(view.base().version(),
+                    premiumRange ? query.getMinPremium() : null,
+                    premiumRange ? query.getMaxPremium() : null,
+                    CommonUtils.nullOrEmpty(query.getPolicyType()) ? null : PolicyStore.normalise(query.getPolicyType()),
+                    query.getMinCoverage(),
+                    CommonUtils.nullOrEmpty(query.getName()) ? null : PolicyStore.normalise(query.getName()),
+                    sortKey,
+                    sortKey != null && "desc".equalsIgnoreCase(query.getSortOrder()));
+        }
+    }
+}
@@ -0,0 +1,494 @@
+package com.example.insurance.service;
+
+import com.example.insurance.exception.InvalidRequestException;
+import com.example.insurance.exception.PolicyNotFoundException;
+import com.example.insurance.exception.ShardUnavailableException;
+import com.example.insurance.metrics.LatencyHistogram;
+import com.example.insurance.model.Policy;
+import com.example.insurance.model.PolicyPage;
+import com.example.insurance.model.PolicyQuery;
+import com.example.insurance.model.PolicySuggestion;
+import com.example.insurance.model.ShardPage;
+import com.example.insurance.store.PolicyStore;
+import com.example.insurance.store.SortKey;
+import com.example.insurance.util.CommonUtils;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * Coordinator of a partitioned catalogue. When {@code policies.shard.peers} lists the shards,
+ * listing, filter, search, suggest and policy type requests are answered by fanning them out to
+ * every shard's {@code /shard} endpoints in parallel, one virtual thread per shard, and merging
+ * the partial results. A lookup by id goes only to the shard the id hashes to.
+ * <p>
+ * Each shard returns its matches already in the query's order, so the results are combined with
+ * a k-way merge on the same sort key. Ties, which a single node keeps in storage order, and
+ * unsorted listings are merged by id, so a catalogue stored in id order lists exactly as it
+ * would on one node. Totals are the sum of the shards'
+ * totals. A page at an offset needs the first {@code offset + size} matches of every shard,
+ * while a cursor records where each shard left off (see {@link ShardCursor}), so cursor pages
+ * cost the same at any depth. A shard that fails or does not answer in time fails the request
+ * with a {@link ShardUnavailableException}.
+ */
+@Slf4j
+@Service
+public class ShardCoordinator {
+
+    private static final String COORDINATED_PATH = "/policies";
+
+    private static final TypeReference<ShardPage> SHARD_PAGE = new TypeReference<>() {
+    };
+
+    private static final TypeReference<List<Policy>> POLICY_LIST = new TypeReference<>() {
+    };
+
+    private static final TypeReference<List<PolicySuggestion>> SUGGESTION_LIST = new TypeReference<>() {
+    };
+
+    private static final TypeReference<List<String>> STRING_LIST = new TypeReference<>() {
+    };
+
+    // the order of PolicyView#rowsWithPrefix, with storage order approximated by id order
+    private static final Comparator<PolicySuggestion> SUGGESTION_ORDER = Comparator
+            .comparing((PolicySuggestion suggestion) -> PolicyStore.normalise(suggestion.getName()), Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(PolicySuggestion::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final ObjectMapper objectMapper;
+    private final List<URI> shards;
+    private final Duration timeout;
+    private final ExecutorService fanOutExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpClient httpClient;
+    private final LatencyHistogram[] latencies;
+    private final LongAdder[] failures;
+
+    /**
+     * Constructor for injecting the ObjectMapper and the configured shards.
+     *
+     * @param objectMapper  mapper used to read the shards' responses
+     * @param peers         comma-separated base URLs of the shards in shard order, blank to serve from this node alone
+     * @param timeoutMillis time a shard has to answer one request
+     */
+    public ShardCoordinator(ObjectMapper objectMapper,
+                            @Value("${policies.shard.peers:}") String peers,
+                            @Value("${policies.shard.timeout-millis:5000}") long timeoutMillis) {
+        this.objectMapper = objectMapper;
+        List<URI> uris = new ArrayList<>();
+        for (String peer : peers.split(",")) {
+            if (!peer.isBlank()) {
+                String base = peer.trim();
+                uris.add(URI.create(base.endsWith("/") ? base.substring(0, base.length() - 1) : base));
+            }
+        }
+        this.shards = List.copyOf(uris);
+        this.timeout = Duration.ofMillis(timeoutMillis);
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .executor(fanOutExecutor)
+                .build();
+        this.latencies = new LatencyHistogram[shards.size()];
+        this.failures = new LongAdder[shards.size()];
+        for (int shard = 0; shard < shards.size(); shard++) {
+            latencies[shard] = new LatencyHistogram();
+            failures[shard] = new LongAdder();
+        }
+        if (!shards.isEmpty()) {
+            log.info("Coordinating policy queries across {} shards: {}", shards.size(), shards);
+        }
+    }
+
+    /**
+     * Stops the HTTP client and the fan-out threads.
+     */
+    @PreDestroy
+    public void stop() {
+        httpClient.shutdownNow();
+        fanOutExecutor.shutdownNow();
+    }
+
+    /**
+     * @return whether this node coordinates queries across shards
+     */
+    public boolean isEnabled() {
+        return !shards.isEmpty();
+    }
+
+    /**
+     * Tells whether requests to a path are answered from the shards rather than from this node's
+     * catalogue. On a coordinator, no {@code /policies} endpoint serves the local catalogue: each
+     * is either answered by the shards or rejected.
+     *
+     * @param path the request path, without the context path
+     * @return true if this node coordinates and the path is a {@code /policies} endpoint
+     */
+    public boolean coordinates(String path) {
+        return isEnabled() && (path.equals(COORDINATED_PATH) || path.startsWith(COORDINATED_PATH + "/"));
+    }
+
+    /**
+     * Returns a policy by id from the shard that holds it.
+     *
+     * @param id the policy id
+     * @return the policy
+     * @throws PolicyNotFoundException   if the shard has no policy with that id
+     * @throws ShardUnavailableException if the shard fails or does not answer in time
+     */
+    public Policy getPolicy(long id) {
+        int shard = PolicyLoader.shardOf(id, shards.size());
+        List<Policy> found = call(shard, uri(shard, "/shard/policy", "id=" + id), POLICY_LIST);
+        if (found.isEmpty()) {
+            throw new PolicyNotFoundException(id);
+        }
+        return found.getFirst();
+    }
+
+    /**
+     * Returns a page of the policies of all shards, as {@link PolicyService#getPoliciesWithTotalCount(int, int, String, boolean, String, String, String)}
+     * does for one node.
+     *
+     * @param page               page number (zero-based), ignored when a cursor is given
+     * @param size               number of items per page
+     * @param name               policy name filter (optional)
+     * @param totalPagesRequired flag to indicate if total count should be included
+     * @param sortBy             field to order by: name, premium, coverage or value (optional)
+     * @param sortOrder          sort order ("asc" or "desc", optional)
+     * @param cursor             opaque cursor from a previous response (optional)
+     * @return a page containing policies, optionally the total count, and the next cursor if more policies follow
+     */
+    public PolicyPage getPolicies(int page, int size, String name, boolean totalPagesRequired,
+                                  String sortBy, String sortOrder, String cursor) {
+        PolicyQuery query = new PolicyQuery();
+        query.setName(CommonUtils.nullOrEmpty(name) ? null : name);
+        query.setSortBy(sortBy);
+        query.setSortOrder(sortOrder);
+        boolean count = query.getName() != null || totalPagesRequired;
+        if (cursor != null) {
+            return mergePage(query, 0, size, ShardCursor.decode(cursor, query, shards.size()), count);
+        }
+        return mergePage(query, (int) Math.min((long) page * size, Integer.MAX_VALUE), size, null, count);
+    }
+
+    /**
+     * Finds the policies of all shards whose name contains the given text (case insensitive).
+     *
+     * @param name name or partial name of the policy
+     * @return list of policies that match the name, in id order
+     */
+    public List<Policy> getPoliciesByName(String name) {
+        if (name == null) {
+            return List.of();
+        }
+        List<List<Policy>> parts = fanOut(shard -> uri(shard, "/shard/search", "name=" + encode(name)), POLICY_LIST);
+        return merge(parts, order(new PolicyQuery()), Integer.MAX_VALUE, new int[parts.size()]);
+    }
+
+    /**
+     * Suggests policy names of all shards starting with the given prefix (case-insensitive). Each
+     * shard returns its first {@code limit} suggestions in name order, so merging them yields the
+     * first {@code limit} of the whole catalogue.
+     *
+     * @param prefix beginning of the policy name
+     * @param limit  maximum number of suggestions, capped at {@link PolicyService#MAX_SUGGESTIONS}
+     * @return ids and names of the first matching policies in name order
+     */
+    public List<PolicySuggestion> suggestPolicies(String prefix, int limit) {
+        if (CommonUtils.nullOrEmpty(prefix)) {
+            return List.of();
+        }
+        int capped = Math.max(0, Math.min(limit, PolicyService.MAX_SUGGESTIONS));
+        List<List<PolicySuggestion>> parts = fanOut(shard -> uri(shard, "/shard/suggest",
+                "prefix=" + encode(prefix) + "&limit=" + capped), SUGGESTION_LIST);
+        return merge(parts, SUGGESTION_ORDER, capped, new int[parts.size()]);
+    }
+
+    /**
+     * Returns the distinct policy types of all shards, in the order the shards first list them.
+     *
+     * @return read-only set of policy types
+     */
+    public Set<String> getPolicyTypes() {
+        Set<String> types = new LinkedHashSet<>();
+        for (List<String> part : fanOut(shard -> uri(shard, "/shard/types", ""), STRING_LIST)) {
+            types.addAll(part);
+        }
+        return Collections.unmodifiableSet(types);
+    }
+
+    /**
+     * Filters the policies of all shards by the given criteria.
+     *
+     * @param query the filter criteria
+     * @return filtered and sorted list of policies
+     */
+    public List<Policy> filterPolicies(PolicyQuery query) {
+        Comparator<Policy> order = order(query);
+        List<ShardPage> parts = fanOut(shard -> shardPageUri(shard, query, ShardCursor.START, null, null, false), SHARD_PAGE);
+        List<List<Policy>> policies = new ArrayList<>(parts.size());
+        for (ShardPage part : parts) {
+            policies.add(part.getPolicies());
+        }
+        return merge(policies, order, Integer.MAX_VALUE, new int[parts.size()]);
+    }
+
+    /**
+     * Returns one keyset page of the policies of all shards matching the given criteria.
+     *
+     * @param query  the filter criteria
+     * @param limit  maximum number of policies on the page
+     * @param cursor opaque cursor from the previous page, or null for the first page
+     * @return the page and the cursor for the next one
+     */
+    public PolicyPage filterPoliciesPage(PolicyQuery query, int limit, String cursor) {
+        return mergePage(query, 0, limit, cursor == null ? null : ShardCursor.decode(cursor, query, shards.size()), false);
+    }
+
+    /**
+     * Writes the per-shard request latencies and failures in the Prometheus text format.
+     *
+     * @param out the buffer to append to
+     */
+    public void writeTo(StringBuilder out) {
+        if (!isEnabled()) {
+            return;
+        }
+        out.append("# HELP insurance_shard_request_duration_seconds Time for a shard to answer one fanned-out request.\n");
+        out.append("# TYPE insurance_shard_request_duration_seconds histogram\n");
+        for (int shard = 0; shard < shards.size(); shard++) {
+            latencies[shard].writeTo(out, "insurance_shard_request_duration_seconds", "shard=\"" + shard + "\"");
+        }
+        out.append("# HELP insurance_shard_request_failures_total Fanned-out requests a shard failed or did not answer in time.\n");
+        out.append("# TYPE insurance_shard_request_failures_total counter\n");
+        for (int shard = 0; shard < shards.size(); shard++) {
+            out.append("insurance_shard_request_failures_total{shard=\"").append(shard).append("\"} ")
+                    .append(failures[shard].sum()).append('\n');
+        }
+    }
+
+    /**
+     * Merges the matches at positions {@code [skip, skip + limit)} of the combined order. Shards
+     * the cursor marks as exhausted are only asked for their count, and only when it is needed.
+     */
+    private PolicyPage mergePage(PolicyQuery query, int skip, int limit, ShardCursor cursor, boolean count) {
+        Comparator<Policy> order = order(query);
+        int wanted = (int) Math.min((long) skip + limit, Integer.MAX_VALUE);
+        List<ShardPage> parts = fanOut(shard -> {
+            if (cursor == null) {
+                return shardPageUri(shard, query, ShardCursor.START, wanted, null, count);
+            }
+            if (cursor.position(shard) == ShardCursor.EXHAUSTED) {
+                return count ? shardPageUri(shard, query, ShardCursor.START, 0, cursor.version(shard), true) : null;
+            }
+            return shardPageUri(shard, query, cursor.position(shard), wanted, cursor.version(shard), count);
+        }, SHARD_PAGE);
+
+        List<List<Policy>> policies = new ArrayList<>(parts.size());
+        for (ShardPage part : parts) {
+            policies.add(part == null ? List.of() : part.getPolicies());
+        }
+        int[] taken = new int[parts.size()];
+        List<Policy> merged = merge(policies, order, wanted, taken);
+
+        long[] versions = new long[parts.size()];
+        int[] positions = new int[parts.size()];
+        boolean hasMore = false;
+        int total = 0;
+        for (int shard = 0; shard < parts.size(); shard++) {
+            ShardPage part = parts.get(shard);
+            versions[shard] = part == null ? cursor.version(shard) : part.getVersion();
+            if (count) {
+                total += part.getTotal();
+            }
+            if (cursor != null && cursor.position(shard) == ShardCursor.EXHAUSTED
+                    || taken[shard] == part.getPolicies().size() && !part.isHasMore()) {
+                positions[shard] = ShardCursor.EXHAUSTED;
+            } else {
+                hasMore = true;
+                if (taken[shard] > 0) {
+                    positions[shard] = part.getPositions()[taken[shard] - 1];
+                } else {
+                    positions[shard] = cursor == null ? ShardCursor.START : cursor.position(shard);
+                }
+            }
+        }
+
+        List<Policy> page = merged.subList(Math.min(skip, merged.size()), merged.size());
+        log.debug("Returning {} policies merged from {} shards", page.size(), parts.size());
+        String nextCursor = hasMore && !page.isEmpty() ? new ShardCursor(versions, positions).encode(query) : null;
+        return new PolicyPage(new ArrayList<>(page), count ? total : null, nextCursor);
+    }
+
+    /**
+     * Merges lists that are each sorted by {@code order} into the first {@code limit} elements of
+     * their combined order, with a heap over the heads of the lists. Ties go to the list with the
+     * lower index.
+     *
+     * @param parts the sorted lists, one per shard
+     * @param order the order the lists are sorted by
+     * @param limit maximum number of elements to take
+     * @param taken receives the number of elements taken from each list
+     * @return the merged elements
+     */
+    static <T> List<T> merge(List<List<T>> parts, Comparator<? super T> order, int limit, int[] taken) {
+        PriorityQueue<Integer> heads = new PriorityQueue<>(Math.max(parts.size(), 1), (shard, other) -> {
+            int compared = order.compare(parts.get(shard).get(taken[shard]), parts.get(other).get(taken[other]));
+            return compared != 0 ? compared : Integer.compare(shard, other);
+        });
+        long available = 0;
+        for (int shard = 0; shard < parts.size(); shard++) {
+            if (!parts.get(shard).isEmpty()) {
+                heads.add(shard);
+                available += parts.get(shard).size();
+            }
+        }
+        List<T> merged = new ArrayList<>((int) Math.min(available, limit));
+        while (merged.size() < limit && !heads.isEmpty()) {
+            int shard = heads.poll();
+            merged.add(parts.get(shard).get(taken[shard]++));
+            if (taken[shard] < parts.get(shard).size()) {
+                heads.add(shard);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the order the shards return a query's results in, mirroring
+     * {@link QueryPlanner#ordering}, with storage order approximated by id order.
+     */
+    private static Comparator<Policy> order(PolicyQuery query) {
+        Comparator<Policy> byId = Comparator.comparing(Policy::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+        SortKey key = SortKey.parse(query.getSortBy());
+        if (key == null) {
+            if (query.getSortOrder() == null) {
+                return byId;
+            }
+            key = SortKey.NAME;
+        }
+        Comparator<Policy> order = key.policyOrder();
+        // ties stay in storage order in both directions
+        return ("desc".equalsIgnoreCase(query.getSortOrder()) ? order.reversed() : order).thenComparing(byId);
+    }
+
+    /**
+     * Sends one request per shard, each on its own virtual thread, and waits for all of them.
+     *
+     * @param requests the request for each shard, or null to skip that shard
+     * @param type     the type of the response bodies
+     * @return the responses in shard order, null for skipped shards
+     * @throws ShardUnavailableException if a shard fails or does not answer in time
+     * @throws InvalidRequestException   if a shard rejects the request
+     */
+    private <T> List<T> fanOut(IntFunction<URI> requests, TypeReference<T> type) {
+        List<Future<T>> responses = new ArrayList<>(shards.size());
+        for (int shard = 0; shard < shards.size(); shard++) {
+            URI uri = requests.apply(shard);
+            int target = shard;
+            responses.add(uri == null ? CompletableFuture.completedFuture(null) : fanOutExecutor.submit(() -> call(target, uri, type)));
+        }
+        List<T> results = new ArrayList<>(responses.size());
+        try {
+            for (Future<T> response : responses) {
+                results.add(response.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ShardUnavailableException("Interrupted while waiting for shards", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new ShardUnavailableException("Shard request failed: " + e.getCause(), e.getCause());
+        } finally {
+            // once one shard has failed the others' answers are of no use
+            for (Future<T> response : responses) {
+                response.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    private <T> T call(int shard, URI uri, TypeReference<T> type) {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(timeout)
+                .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+                .GET()
+                .build();
+        long started = System.nanoTime();
+        try {
+            HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() == 200) {
+                return objectMapper.readValue(response.body(), type);
+            }
+            if (response.statusCode() == 400) {
+                throw new InvalidRequestException(objectMapper.readTree(response.body()).path("message").asText("Invalid request."));
+            }
+            failures[shard].increment();
+            throw new ShardUnavailableException("Shard " + shard + " at " + shards.get(shard) + " answered " + response.statusCode());
+        } catch (IOException e) {
+            failures[shard].increment();
+            throw new ShardUnavailableException("Shard " + shard + " at " + shards.get(shard) + " is unavailable: " + e, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ShardUnavailableException("Interrupted while waiting for shard " + shard, e);
+        } finally {
+            latencies[shard].record(System.nanoTime() - started);
+        }
+    }
+
+    private URI shardPageUri(int shard, PolicyQuery query, int after, Integer limit, Long version, boolean count) {
+        StringJoiner parameters = new StringJoiner("&");
+        addParameter(parameters, "minPremium", query.getMinPremium());
+        addParameter(parameters, "maxPremium", query.getMaxPremium());
+        addParameter(parameters, "policyType", query.getPolicyType());
+        addParameter(parameters, "name", query.getName());
+        addParameter(parameters, "coverage", query.getMinCoverage());
+        addParameter(parameters, "sortOrder", query.getSortOrder());
+        addParameter(parameters, "sortBy", query.getSortBy());
+        if (after != ShardCursor.START) {
+            addParameter(parameters, "after", after);
+        }
+        addParameter(parameters, "limit", limit);
+        addParameter(parameters, "version", version);
+        if (count) {
+            addParameter(parameters, "count", true);
+        }
+        return uri(shard, "/shard/policies", parameters.toString());
+    }
+
+    private URI uri(int shard, String path, String parameters) {
+        return URI.create(shards.get(shard) + path + (parameters.isEmpty() ? "" : "?" + parameters));
+    }
+
+    private static void addParameter(StringJoiner parameters, String name, Object value) {
+        if (value != null) {
+            parameters.add(name + "=" + encode(value.toString()));
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
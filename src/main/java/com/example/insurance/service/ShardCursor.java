@@ -0,0 +1,104 @@
+package com.example.insurance.service;
+
+import com.example.insurance.exception.InvalidRequestException;
+import com.example.insurance.model.PolicyQuery;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Opaque keyset pagination cursor over a partitioned catalogue. Like {@link PolicyCursor} it is
+ * bound to the query by a hash, but it records a position per shard: the catalogue version the
+ * shard answered from and the position of the last of its rows the merged pages have returned.
+ * Each shard therefore resumes exactly after its own last row, however the previous pages were
+ * interleaved, and a shard whose catalogue changed in between rejects the cursor as expired.
+ */
+final class ShardCursor {
+
+    /**
+     * Position of a shard none of whose rows has been returned yet.
+     */
+    static final int START = -1;
+
+    /**
+     * Position of a shard whose rows have all been returned, so it need not be asked again.
+     */
+    static final int EXHAUSTED = -2;
+
+    private static final int SHARD_LENGTH = Long.BYTES + Integer.BYTES;
+
+    private final long[] versions;
+    private final int[] positions;
+
+    ShardCursor(long[] versions, int[] positions) {
+        this.versions = versions;
+        this.positions = positions;
+    }
+
+    /**
+     * Encodes the cursor for a query.
+     *
+     * @param query the query being paginated
+     * @return the opaque cursor string
+     */
+    String encode(PolicyQuery query) {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + positions.length * SHARD_LENGTH).putInt(PolicyCursor.hash(query));
+        for (int shard = 0; shard < positions.length; shard++) {
+            buffer.putLong(versions[shard]).putInt(positions[shard]);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * Decodes a cursor and checks that it belongs to the given query and number of shards. Whether
+     * it is still current is checked by each shard.
+     *
+     * @param cursor the opaque cursor string
+     * @param query  the query being paginated
+     * @param shards the number of shards
+     * @return the decoded cursor
+     * @throws InvalidRequestException if the cursor is malformed or from another query or cluster
+     */
+    static ShardCursor decode(String cursor, PolicyQuery query, int shards) {
+        long[] versions = new long[shards];
+        int[] positions = new int[shards];
+        int queryHash;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getUrlDecoder().decode(cursor));
+            queryHash = buffer.getInt();
+            for (int shard = 0; shard < shards; shard++) {
+                versions[shard] = buffer.getLong();
+                positions[shard] = buffer.getInt();
+            }
+            if (buffer.hasRemaining()) {
+                throw new InvalidRequestException("Invalid cursor.");
+            }
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new InvalidRequestException("Invalid cursor.");
+        }
+        if (queryHash != PolicyCursor.hash(query)) {
+            throw new InvalidRequestException("Cursor does not match this query.");
+        }
+        for (int position : positions) {
+            if (position < EXHAUSTED) {
+                throw new InvalidRequestException("Cursor does not match this query.");
+            }
+        }
+        return new ShardCursor(versions, positions);
+    }
+
+    /**
+     * @return the catalogue version the shard answered the previous page from
+     */
+    long version(int shard) {
+        return versions[shard];
+    }
+
+    /**
+     * @return the position of the shard's last returned row, {@link #START} or {@link #EXHAUSTED}
+     */
+    int position(int shard) {
+        return positions[shard];
+    }
+}
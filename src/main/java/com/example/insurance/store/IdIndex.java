@@ -0,0 +1,147 @@
+package com.example.insurance.store;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Lookup of rows by policy id: the non-null ids in ascending order together with the row each id
+ * came from, so the rows of an id are found with one binary search. Catalogues are usually stored
+ * in id order, in which case building the index is a single linear pass.
+ */
+public final class IdIndex {
+
+    private static final int[] NO_ROWS = new int[0];
+
+    private final long[] ids;
+    private final int[] rows;
+
+    private IdIndex(long[] ids, int[] rows) {
+        this.ids = ids;
+        this.rows = rows;
+    }
+
+    /**
+     * Builds an index over the given column, skipping {@link PolicyStore#NULL_LONG} entries.
+     *
+     * @param column the ids indexed by row
+     * @param size   number of rows in use
+     * @return the index
+     */
+    public static IdIndex build(long[] column, int size) {
+        int count = 0;
+        boolean sorted = true;
+        boolean narrow = true;
+        long previous = Long.MIN_VALUE;
+        for (int row = 0; row < size; row++) {
+            long id = column[row];
+            if (id != PolicyStore.NULL_LONG) {
+                sorted &= id >= previous;
+                narrow &= id == (int) id;
+                previous = id;
+                count++;
+            }
+        }
+
+        long[] ids = new long[count];
+        int[] rows = new int[count];
+        if (sorted) {
+            int i = 0;
+            for (int row = 0; row < size; row++) {
+                if (column[row] != PolicyStore.NULL_LONG) {
+                    ids[i] = column[row];
+                    rows[i++] = row;
+                }
+            }
+        } else if (narrow) {
+            long[] packed = new long[count];
+            int i = 0;
+            for (int row = 0; row < size; row++) {
+                if (column[row] != PolicyStore.NULL_LONG) {
+                    // id in the high half, row in the low half: sorting the longs sorts by id, then row
+                    packed[i++] = (column[row] << 32) | row;
+                }
+            }
+            Arrays.parallelSort(packed);
+            for (i = 0; i < count; i++) {
+                ids[i] = packed[i] >> 32;
+                rows[i] = (int) packed[i];
+            }
+        } else {
+            Integer[] boxed = new Integer[count];
+            int i = 0;
+            for (int row = 0; row < size; row++) {
+                if (column[row] != PolicyStore.NULL_LONG) {
+                    boxed[i++] = row;
+                }
+            }
+            Arrays.parallelSort(boxed, Comparator.comparingLong((Integer row) -> column[row]).thenComparingInt(Integer::intValue));
+            for (i = 0; i < count; i++) {
+                ids[i] = column[boxed[i]];
+                rows[i] = boxed[i];
+            }
+        }
+        return new IdIndex(ids, rows);
+    }
+
+    void writeTo(SnapshotOutput out) throws IOException {
+        out.writeLongs(ids);
+        out.writeInts(rows);
+    }
+
+    static IdIndex readFrom(SnapshotInput in) throws IOException {
+        long[] ids = in.readLongs();
+        int[] rows = in.readInts();
+        if (ids.length != rows.length) {
+            throw new IOException("Corrupt snapshot: id index lengths differ");
+        }
+        return new IdIndex(ids, rows);
+    }
+
+    /**
+     * @return the largest indexed id, or {@link PolicyStore#NULL_LONG} if nothing is indexed
+     */
+    public long max() {
+        return ids.length == 0 ? PolicyStore.NULL_LONG : ids[ids.length - 1];
+    }
+
+    /**
+     * Returns the rows holding an id.
+     *
+     * @param id the policy id
+     * @return the matching rows in ascending order, empty if there are none
+     */
+    public int[] rowsOf(long id) {
+        int from = firstIndexOf(id);
+        int to = from;
+        while (to < ids.length && ids[to] == id) {
+            to++;
+        }
+        return from == to ? NO_ROWS : Arrays.copyOfRange(rows, from, to);
+    }
+
+    /**
+     * Returns the first row holding an id.
+     *
+     * @param id the policy id
+     * @return the lowest matching row, or -1 if there is none
+     */
+    public int firstRowOf(long id) {
+        int index = firstIndexOf(id);
+        return index < ids.length && ids[index] == id ? rows[index] : -1;
+    }
+
+    private int firstIndexOf(long id) {
+        int low = 0;
+        int high = ids.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ids[mid] < id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.insurance.store;
+
+import com.example.insurance.model.Policy;
+
+/**
+ * One write to the policy catalogue, as recorded in the {@link PolicyJournal}: either the complete
+ * new contents of the policy with an id, or its deletion. Applying a change twice has the same
+ * effect as applying it once, so a journal can safely be replayed over a base that already
+ * contains some of its changes.
+ *
+ * @param id     the policy id
+ * @param policy the new contents, with {@code id} set, or null for a deletion
+ */
+public record PolicyChange(long id, Policy policy) {
+
+    /**
+     * Creates a change replacing the policy with the given id, or adding it if there is none.
+     *
+     * @param id     the policy id
+     * @param policy the new contents; its own id is ignored
+     * @return the change
+     */
+    public static PolicyChange upsert(long id, Policy policy) {
+        return new PolicyChange(id, new Policy(id, policy.getName(), policy.getType(), policy.getPremium(), policy.getCoverage()));
+    }
+
+    /**
+     * Creates a change removing the policy with the given id.
+     *
+     * @param id the policy id
+     * @return the change
+     */
+    public static PolicyChange delete(long id) {
+        return new PolicyChange(id, null);
+    }
+
+    public boolean isDelete() {
+        return policy == null;
+    }
+}
@@ -0,0 +1,378 @@
+package com.example.insurance.store;
+
+import com.example.insurance.model.Policy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of {@link PolicyChange}s, replayed over the catalogue on load.
+ * <p>
+ * After a short header the file is a sequence of records, each its payload length, the CRC32C of
+ * the payload and the payload itself. A batch of changes is written with a single write and made
+ * durable with a single {@code fsync}, so concurrent writers share the cost of one sync. A crash
+ * can only leave a torn record at the end; reading stops at the first record that is incomplete
+ * or fails its checksum, and {@link #open(Path)} truncates the file back to the last good record.
+ * <p>
+ * For compaction the file is sealed as a numbered segment next to it ({@code <journal>.1},
+ * {@code <journal>.2}, ...) and writing continues in a new file, so the sealed changes can be
+ * folded into the catalogue while new ones are appended. A segment is deleted once the catalogue
+ * holds it; until then {@link #readAll(Path)} replays the segments in order before the journal.
+ * <p>
+ * Instances are not thread-safe; callers append and seal under their own lock.
+ */
+public final class PolicyJournal implements Closeable {
+
+    /**
+     * "MIVDHIJ1" in ASCII.
+     */
+    private static final long MAGIC = 0x4d49564448494a31L;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_LENGTH = Long.BYTES + Integer.BYTES;
+
+    private static final int RECORD_HEADER_LENGTH = Integer.BYTES * 2;
+
+    private static final byte UPSERT = 1;
+    private static final byte DELETE = 2;
+
+    private final Path path;
+    private FileChannel channel;
+    private long length;
+    private long records;
+
+    private PolicyJournal(Path path, FileChannel channel, long length, long records) {
+        this.path = path;
+        this.channel = channel;
+        this.length = length;
+        this.records = records;
+    }
+
+    /**
+     * Reads every intact change from a journal, in the order they were appended.
+     *
+     * @param path the journal file
+     * @return the changes, empty if the file does not exist
+     * @throws IOException if the file cannot be read or is not a policy journal
+     */
+    public static List<PolicyChange> read(Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return List.of();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<PolicyChange> changes = new ArrayList<>();
+            scan(channel, path, changes);
+            return changes;
+        }
+    }
+
+    /**
+     * Reads every intact change from the sealed segments of a journal and then from the journal
+     * itself, in the order they were appended.
+     *
+     * @param path the journal file
+     * @return the changes, empty if there are none
+     * @throws IOException if a file cannot be read or is not a policy journal
+     */
+    public static List<PolicyChange> readAll(Path path) throws IOException {
+        List<PolicyChange> changes = new ArrayList<>();
+        for (Path segment : segments(path)) {
+            changes.addAll(read(segment));
+        }
+        changes.addAll(read(path));
+        return changes;
+    }
+
+    /**
+     * Lists the sealed segments of a journal that have not been deleted yet.
+     *
+     * @param path the journal file
+     * @return the segment files, oldest first
+     * @throws IOException if the directory cannot be listed
+     */
+    public static List<Path> segments(Path path) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        String prefix = path.getFileName() + ".";
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> sequenceOf(file, prefix) > 0)
+                    .sorted(Comparator.comparingLong(file -> sequenceOf(file, prefix)))
+                    .toList();
+        }
+    }
+
+    /**
+     * Opens a journal for appending, creating it if needed and cutting off a torn record left by
+     * a crash.
+     *
+     * @param path the journal file
+     * @return the journal, positioned after its last intact record
+     * @throws IOException if the file cannot be opened or is not a policy journal
+     */
+    public static PolicyJournal open(Path path) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            List<PolicyChange> changes = new ArrayList<>();
+            long end = scan(channel, path, changes);
+            if (end < HEADER_LENGTH) {
+                // new, or created by a crashed writer before its header was synced
+                channel.truncate(0);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).putLong(MAGIC).putInt(FORMAT_VERSION).flip();
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                end = HEADER_LENGTH;
+                channel.force(true);
+                // a change acknowledged in the file is only durable once the file's name is
+                syncDirectory(path);
+            } else if (end < channel.size()) {
+                channel.truncate(end);
+                channel.force(true);
+            }
+            return new PolicyJournal(path, channel, end, changes.size());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a batch of changes and syncs them to disk. If the write fails the journal is cut
+     * back to where it was, so a later batch does not follow a partial one.
+     *
+     * @param changes the changes, in the order they are to be applied
+     * @throws IOException if the changes could not be made durable
+     */
+    public void append(List<PolicyChange> changes) throws IOException {
+        ByteBuffer batch = encode(changes);
+        try {
+            while (batch.hasRemaining()) {
+                channel.write(batch, length + batch.position());
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            channel.truncate(length);
+            throw e;
+        }
+        length += batch.limit();
+        records += changes.size();
+    }
+
+    /**
+     * Moves every change appended so far into a new sealed segment and continues with an empty
+     * journal file. Appended changes are already durable, so sealing only renames the file. The
+     * file is renamed while still open; if the new file cannot be created it is moved back, so a
+     * failed seal leaves the journal appending where it was. Creating the new file syncs the
+     * directory, which makes the rename durable along with it.
+     *
+     * @return the new segment file
+     * @throws IOException if the file cannot be moved or the new one cannot be created
+     */
+    public Path seal() throws IOException {
+        String prefix = path.getFileName() + ".";
+        List<Path> sealed = segments(path);
+        long sequence = sealed.isEmpty() ? 1 : sequenceOf(sealed.getLast(), prefix) + 1;
+        Path segment = path.resolveSibling(prefix + sequence);
+        Files.move(path, segment, StandardCopyOption.ATOMIC_MOVE);
+        PolicyJournal next;
+        try {
+            next = open(path);
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.move(segment, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException restoreFailure) {
+                // appends still reach the open file, which is replayed as a segment before any new journal
+                e.addSuppressed(restoreFailure);
+            }
+            throw e;
+        }
+        FileChannel sealedChannel = channel;
+        channel = next.channel;
+        length = next.length;
+        records = next.records;
+        try {
+            sealedChannel.close();
+        } catch (IOException e) {
+            // the sealed changes were synced when they were appended, so only the handle is lost
+        }
+        return segment;
+    }
+
+    /**
+     * Syncs the directory holding a file, so that a rename or creation of the file survives a
+     * crash.
+     *
+     * @param file a file in the directory
+     * @throws IOException if the directory cannot be synced
+     */
+    public static void syncDirectory(Path file) throws IOException {
+        try (FileChannel directory = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        }
+    }
+
+    /**
+     * @return the number of changes in the journal
+     */
+    public long records() {
+        return records;
+    }
+
+    /**
+     * @return the length of the journal file in bytes
+     */
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Returns the sequence number of a sealed segment, or -1 if the file is not one.
+     */
+    private static long sequenceOf(Path file, String prefix) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(prefix) || name.length() == prefix.length() || name.length() > prefix.length() + 18) {
+            return -1;
+        }
+        for (int i = prefix.length(); i < name.length(); i++) {
+            if (name.charAt(i) < '0' || name.charAt(i) > '9') {
+                return -1;
+            }
+        }
+        return Long.parseLong(name.substring(prefix.length()));
+    }
+
+    /**
+     * Decodes the intact records of a journal into {@code changes}.
+     *
+     * @return the length of the intact part, 0 if not even the header is complete
+     */
+    private static long scan(FileChannel channel, Path path, List<PolicyChange> changes) throws IOException {
+        long size = channel.size();
+        if (size < HEADER_LENGTH) {
+            return 0;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Policy journal too large: " + path);
+        }
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (buffer.getLong() != MAGIC) {
+            throw new IOException("Not a policy journal: " + path);
+        }
+        if (buffer.getInt() != FORMAT_VERSION) {
+            throw new IOException("Unsupported policy journal format: " + path);
+        }
+        CRC32C crc = new CRC32C();
+        while (buffer.remaining() >= RECORD_HEADER_LENGTH) {
+            int start = buffer.position();
+            int payloadLength = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (payloadLength <= 0 || payloadLength > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+            ByteBuffer payload = buffer.slice(buffer.position(), payloadLength);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                buffer.position(start);
+                break;
+            }
+            changes.add(decode(payload));
+            buffer.position(buffer.position() + payloadLength);
+        }
+        return buffer.position();
+    }
+
+    private static ByteBuffer encode(List<PolicyChange> changes) throws IOException {
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(changes.size() * 96);
+        DataOutputStream out = new DataOutputStream(batch);
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(128);
+        DataOutputStream fields = new DataOutputStream(payload);
+        CRC32C crc = new CRC32C();
+        for (PolicyChange change : changes) {
+            payload.reset();
+            if (change.isDelete()) {
+                fields.writeByte(DELETE);
+                fields.writeLong(change.id());
+            } else {
+                Policy policy = change.policy();
+                fields.writeByte(UPSERT);
+                fields.writeLong(change.id());
+                writeString(fields, policy.getName());
+                writeString(fields, policy.getType());
+                fields.writeInt(policy.getPremium() == null ? PolicyStore.NULL_INT : policy.getPremium());
+                fields.writeInt(policy.getCoverage() == null ? PolicyStore.NULL_INT : policy.getCoverage());
+            }
+            crc.reset();
+            crc.update(payload.toByteArray());
+            out.writeInt(payload.size());
+            out.writeInt((int) crc.getValue());
+            payload.writeTo(out);
+        }
+        return ByteBuffer.wrap(batch.toByteArray());
+    }
+
+    private static PolicyChange decode(ByteBuffer payload) throws IOException {
+        byte kind = payload.get();
+        long id = payload.getLong();
+        return switch (kind) {
+            case DELETE -> PolicyChange.delete(id);
+            case UPSERT -> {
+                String name = readString(payload);
+                String type = readString(payload);
+                int premium = payload.getInt();
+                int coverage = payload.getInt();
+                yield new PolicyChange(id, new Policy(id, name, type,
+                        premium == PolicyStore.NULL_INT ? null : premium,
+                        coverage == PolicyStore.NULL_INT ? null : coverage));
+            }
+            default -> throw new IOException("Corrupt policy journal: unknown change kind " + kind);
+        };
+    }
+
+    /**
+     * Writes a string as its UTF-8 length (-1 for null) followed by its bytes, as in snapshots.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.insurance.store;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Every row of a store serialized once as a UTF-8 JSON object, laid out back to back in byte
+ * array segments with an offset table. Responses are written by copying the fragments of the
+ * returned rows, so serving a policy costs a memory copy instead of an object allocation and a
+ * Jackson pass.
+ * <p>
+ * A segment holds at most {@value #SEGMENT_SIZE} bytes and a fragment never spans two, so the
+ * catalogue's JSON is not limited by the size of one array, and the segments are kept as they
+ * were filled instead of being copied into one. The offset of a row packs its segment into the
+ * high half and its start within the segment into the low half; a fragment ends where the next
+ * row starts, or at the end of the used part of its segment.
+ * <p>
+ * The fragments are produced by Jackson with default settings, so they are byte-for-byte what
+ * serializing the matching {@code Policy} would produce.
+ */
+final class PolicyJson {
+
+    private static final int SEGMENT_SIZE = 1 << 26;
+
+    private static final int FIRST_SEGMENT_SIZE = 1 << 12;
+
+    private final byte[][] segments;
+    private final int[] segmentLengths;
+    private final long[] offsets;
+
+    private PolicyJson(byte[][] segments, int[] segmentLengths, long[] offsets) {
+        this.segments = segments;
+        this.segmentLengths = segmentLengths;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Serializes every row of the given columns.
+     */
+    static PolicyJson build(long[] ids, String[] names, int[] typeCodes, String[] typeDictionary,
+                            int[] premiums, int[] coverages, int size) {
+        List<byte[]> segments = new ArrayList<>();
+        List<Integer> segmentLengths = new ArrayList<>();
+        byte[] segment = new byte[(int) Math.min(Math.max((long) size * 96, FIRST_SEGMENT_SIZE), SEGMENT_SIZE)];
+        int used = 0;
+        long[] offsets = new long[size + 1];
+        FragmentBuffer fragment = new FragmentBuffer();
+        try (JsonGenerator generator = new JsonFactory().createGenerator(fragment)) {
+            generator.setRootValueSeparator(null);
+            for (int row = 0; row < size; row++) {
+                fragment.reset();
+                generator.writeStartObject();
+                if (ids[row] == PolicyStore.NULL_LONG) {
+                    generator.writeNullField("id");
+                } else {
+                    generator.writeNumberField("id", ids[row]);
+                }
+                generator.writeStringField("name", names[row]);
+                generator.writeStringField("type", typeCodes[row] == PolicyStore.NO_TYPE ? null : typeDictionary[typeCodes[row]]);
+                writeIntField(generator, "premium", premiums[row]);
+                writeIntField(generator, "coverage", coverages[row]);
+                generator.writeEndObject();
+                generator.flush();
+
+                int length = fragment.size();
+                if (used + length > segment.length) {
+                    if (segment.length < SEGMENT_SIZE && used + length <= SEGMENT_SIZE) {
+                        segment = Arrays.copyOf(segment, (int) Math.min(Math.max((long) segment.length * 2, used + length), SEGMENT_SIZE));
+                    } else {
+                        segments.add(segment);
+                        segmentLengths.add(used);
+                        // a fragment larger than a segment gets a segment of its own
+                        segment = new byte[Math.max(SEGMENT_SIZE, length)];
+                        used = 0;
+                    }
+                }
+                offsets[row] = pack(segments.size(), used);
+                fragment.copyTo(segment, used);
+                used += length;
+            }
+        } catch (IOException e) {
+            // only in-memory buffers are written to
+            throw new UncheckedIOException(e);
+        }
+        offsets[size] = pack(segments.size(), used);
+        segments.add(segment);
+        segmentLengths.add(used);
+        return new PolicyJson(segments.toArray(new byte[0][]), segmentLengths.stream().mapToInt(Integer::intValue).toArray(), offsets);
+    }
+
+    void writeTo(SnapshotOutput out) throws IOException {
+        out.writeInt(segments.length);
+        for (int i = 0; i < segments.length; i++) {
+            out.writeBytes(segments[i], segmentLengths[i]);
+        }
+        out.writeLongs(offsets);
+    }
+
+    static PolicyJson readFrom(SnapshotInput in, int size) throws IOException {
+        int count = in.readInt();
+        if (count < 1) {
+            throw new IOException("Corrupt snapshot: " + count + " JSON fragment segments");
+        }
+        byte[][] segments = new byte[count][];
+        int[] segmentLengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = in.readBytes();
+            segmentLengths[i] = segments[i].length;
+        }
+        long[] offsets = in.readLongs();
+        if (offsets.length != size + 1 || offsets[0] != 0 || offsets[size] != pack(count - 1, segmentLengths[count - 1])) {
+            throw new IOException("Corrupt snapshot: JSON fragment table does not match the data");
+        }
+        for (int row = 0; row < size; row++) {
+            int segment = segment(offsets[row]);
+            int nextSegment = segment(offsets[row + 1]);
+            boolean ordered = nextSegment == segment ? start(offsets[row]) <= start(offsets[row + 1])
+                    : nextSegment == segment + 1 && start(offsets[row + 1]) == 0 && start(offsets[row]) <= segmentLengths[segment];
+            if (!ordered) {
+                throw new IOException("Corrupt snapshot: JSON fragment offsets out of order");
+            }
+        }
+        return new PolicyJson(segments, segmentLengths, offsets);
+    }
+
+    private static void writeIntField(JsonGenerator generator, String field, int value) throws IOException {
+        if (value == PolicyStore.NULL_INT) {
+            generator.writeNullField(field);
+        } else {
+            generator.writeNumberField(field, value);
+        }
+    }
+
+    private static long pack(int segment, int start) {
+        return ((long) segment << 32) | start;
+    }
+
+    private static int segment(long offset) {
+        return (int) (offset >>> 32);
+    }
+
+    private static int start(long offset) {
+        return (int) offset;
+    }
+
+    /**
+     * Number of bytes in the fragment of a row.
+     */
+    int length(int row) {
+        return end(row) - start(offsets[row]);
+    }
+
+    /**
+     * Writes the fragment of a row.
+     */
+    void writeTo(int row, OutputStream out) throws IOException {
+        int start = start(offsets[row]);
+        out.write(segments[segment(offsets[row])], start, end(row) - start);
+    }
+
+    private int end(int row) {
+        int segment = segment(offsets[row]);
+        return segment(offsets[row + 1]) == segment ? start(offsets[row + 1]) : segmentLengths[segment];
+    }
+
+    /**
+     * Buffer for the fragment of one row that can be copied out without a temporary array.
+     */
+    private static final class FragmentBuffer extends ByteArrayOutputStream {
+
+        FragmentBuffer() {
+            super(256);
+        }
+
+        void copyTo(byte[] target, int position) {
+            System.arraycopy(buf, 0, target, position, count);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.insurance.store;
+
+import com.example.insurance.model.Policy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list of the policies at a slice of rows of a store. Elements are materialised on
+ * access, and {@link #writeJson(OutputStream)} and {@link #writeNdjson(OutputStream)} write the
+ * whole list straight from the store's pre-serialized fragments without materialising anything.
+ * <p>
+ * The rows of a {@link PolicyView} with changes span two stores: row numbers past the end of the
+ * base store are rows of the delta store.
+ */
+public final class PolicyRows extends AbstractList<Policy> implements RandomAccess {
+
+    private final PolicyStore store;
+    private final PolicyStore delta;
+    private final int[] rows;
+    private final int from;
+    private final int to;
+
+    PolicyRows(PolicyStore store, int[] rows, int from, int to) {
+        this(store, null, rows, from, to);
+    }
+
+    PolicyRows(PolicyStore store, PolicyStore delta, int[] rows, int from, int to) {
+        this.store = store;
+        this.delta = delta;
+        this.rows = rows;
+        this.from = from;
+        this.to = Math.max(from, to);
+    }
+
+    @Override
+    public Policy get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        int row = row(index);
+        return row < store.size() ? store.policyAt(row) : delta.policyAt(row - store.size());
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    /**
+     * Number of bytes {@link #writeJson(OutputStream)} writes.
+     *
+     * @return the length of the JSON array
+     */
+    public long jsonLength() {
+        long length = 2 + Math.max(0, size() - 1);
+        for (int i = 0; i < size(); i++) {
+            int row = row(i);
+            length += row < store.size() ? store.json().length(row) : delta.json().length(row - store.size());
+        }
+        return length;
+    }
+
+    /**
+     * Writes the policies as a JSON array.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeJson(OutputStream out) throws IOException {
+        out.write('[');
+        for (int i = 0; i < size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            writeTo(row(i), out);
+        }
+        out.write(']');
+    }
+
+    /**
+     * Writes the policies as newline-delimited JSON, one object per line.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeNdjson(OutputStream out) throws IOException {
+        for (int i = 0; i < size(); i++) {
+            writeTo(row(i), out);
+            out.write('\n');
+        }
+    }
+
+    private int row(int index) {
+        return rows == null ? from + index : rows[from + index];
+    }
+
+    private void writeTo(int row, OutputStream out) throws IOException {
+        if (row < store.size()) {
+            store.json().writeTo(row, out);
+        } else {
+            delta.json().writeTo(row - store.size(), out);
+        }
+    }
+}
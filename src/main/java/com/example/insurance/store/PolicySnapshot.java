@@ -0,0 +1,171 @@
+package com.example.insurance.store;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.zip.CRC32C;
+
+/**
+ * Compact binary snapshot of a {@link PolicyStore}: fixed-width numeric columns, string tables
+ * for names and types, every prebuilt index and the pre-serialized JSON of each row, so a restart
+ * can read the file back with bulk copies instead of parsing JSON and rebuilding indexes. The
+ * loaded store holds heap copies of everything and keeps no reference to the file.
+ * <p>
+ * The header records the {@link Source} the store was built from and, for a partitioned
+ * catalogue, which shard of it the store holds; a snapshot whose header does not match the
+ * current source and shard is stale and ignored. A CRC32C trailer over the whole payload guards
+ * against truncated or corrupted files.
+ */
+public final class PolicySnapshot {
+
+    /**
+     * "MIVDHIS1" in ASCII.
+     */
+    private static final long MAGIC = 0x4d49564448495331L;
+
+    private static final int FORMAT_VERSION = 7;
+
+    private static final int TRAILER_LENGTH = Long.BYTES;
+
+    private static final long CHECKSUM_WINDOW = 1L << 30;
+
+    private PolicySnapshot() {
+    }
+
+    /**
+     * The JSON source a snapshot was built from: its checksum and length, and its modification
+     * time so that an unchanged file can be recognised without reading it.
+     *
+     * @param checksum CRC32C of the source
+     * @param length   length of the source in bytes
+     * @param modified modification time of the source in nanoseconds since the epoch, 0 if it has none
+     */
+    public record Source(long checksum, long length, long modified) {
+    }
+
+    /**
+     * Writes a snapshot atomically: the data goes to a temporary file in the same directory,
+     * which then replaces the target.
+     *
+     * @param store      the store to write
+     * @param source     the JSON source the store was built from
+     * @param shardIndex the shard of the source the store holds
+     * @param shardCount number of shards the source is partitioned into, 1 if the store holds all of it
+     * @param path       the snapshot file
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static void write(PolicyStore store, Source source, int shardIndex, int shardCount, Path path) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+                SnapshotOutput out = new SnapshotOutput(channel);
+                out.writeLong(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(source.checksum());
+                out.writeLong(source.length());
+                out.writeLong(source.modified());
+                out.writeInt(shardIndex);
+                out.writeInt(shardCount);
+                store.writeTo(out);
+                out.flush();
+                long payloadChecksum = checksum(channel, channel.size());
+                out.writeLong(payloadChecksum);
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Reads only the header of a snapshot, to find out which source it was built from before the
+     * rest of it is read.
+     *
+     * @param path       the snapshot file
+     * @param shardIndex the shard of the source to load
+     * @param shardCount number of shards the source is partitioned into, 1 to load all of it
+     * @return the recorded source, or null if the snapshot is missing, from another format version or of another shard
+     * @throws IOException if the snapshot exists but is not a snapshot or unreadable
+     */
+    public static Source source(Path path, int shardIndex, int shardCount) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < TRAILER_LENGTH) {
+                throw new IOException("Corrupt snapshot: file too short");
+            }
+            return readHeader(new SnapshotInput(channel), path, shardIndex, shardCount);
+        }
+    }
+
+    /**
+     * Reads the store from a snapshot, provided it was built from the given source and holds the
+     * given shard of it.
+     *
+     * @param path       the snapshot file
+     * @param source     the current JSON source
+     * @param shardIndex the shard of the source to load
+     * @param shardCount number of shards the source is partitioned into, 1 to load all of it
+     * @return the store, or null if the snapshot is missing, from another format version, stale or of another shard
+     * @throws IOException if the snapshot exists but is corrupt or unreadable
+     */
+    public static PolicyStore read(Path path, Source source, int shardIndex, int shardCount) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < TRAILER_LENGTH) {
+                throw new IOException("Corrupt snapshot: file too short");
+            }
+            SnapshotInput in = new SnapshotInput(channel);
+            if (!source.equals(readHeader(in, path, shardIndex, shardCount))) {
+                return null;
+            }
+            long expected = channel.map(FileChannel.MapMode.READ_ONLY, length - TRAILER_LENGTH, TRAILER_LENGTH).getLong();
+            if (checksum(channel, length - TRAILER_LENGTH) != expected) {
+                throw new IOException("Corrupt snapshot: checksum mismatch");
+            }
+            PolicyStore store = new PolicyStore(in);
+            in.readLong();
+            if (!in.atEnd()) {
+                throw new IOException("Corrupt snapshot: trailing data");
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Reads the header up to the payload.
+     *
+     * @return the recorded source, or null if the snapshot is from another format version or of another shard
+     */
+    private static Source readHeader(SnapshotInput in, Path path, int shardIndex, int shardCount) throws IOException {
+        if (in.readLong() != MAGIC) {
+            throw new IOException("Not a policy snapshot: " + path);
+        }
+        if (in.readInt() != FORMAT_VERSION) {
+            return null;
+        }
+        Source source = new Source(in.readLong(), in.readLong(), in.readLong());
+        return in.readInt() == shardIndex && in.readInt() == shardCount ? source : null;
+    }
+
+    /**
+     * Computes the CRC32C of the first {@code length} bytes of a file through mapped windows.
+     */
+    private static long checksum(FileChannel channel, long length) throws IOException {
+        CRC32C crc = new CRC32C();
+        for (long position = 0; position < length; position += CHECKSUM_WINDOW) {
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHECKSUM_WINDOW, length - position));
+            crc.update(window);
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,632 @@
+package com.example.insurance.store;
+
+import com.example.insurance.model.Policy;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Immutable, column-oriented in-memory store for insurance policies.
+ * Each attribute lives in its own primitive array indexed by row number, policy types are
+ * dictionary-encoded and names are kept pre-lowercased so that filter scans never box,
+ * allocate or re-normalise strings. {@link Policy} objects are only built on demand for
+ * the rows that are actually returned to a caller.
+ * <p>
+ * Secondary indexes are built alongside the columns: sorted premium and coverage indexes
+ * for range lookups, a posting list of rows per policy type, a trigram index over the
+ * normalised names for substring search, a sorted name array for prefix lookups and a
+ * sorted id index for lookups by id.
+ * Every {@link SortKey} also gets a precomputed {@link SortPermutation} in both directions,
+ * and the store carries a content fingerprint that identifies this exact dataset.
+ * <p>
+ * Each row is also kept serialized as a JSON fragment, so responses can be written by copying
+ * bytes through {@link PolicyRows#writeJson} instead of serializing {@link Policy} objects.
+ * <p>
+ * Writes never modify a store: they are laid over it by a {@link PolicyView}, and
+ * {@link #withChanges(List)} builds a new store when they are folded in.
+ */
+public final class PolicyStore {
+
+    /**
+     * Sentinel stored in the numeric columns when the source value was missing.
+     */
+    public static final int NULL_INT = Integer.MIN_VALUE;
+
+    /**
+     * Sentinel stored in the id column when the source value was missing.
+     */
+    public static final long NULL_LONG = Long.MIN_VALUE;
+
+    /**
+     * Type code stored for rows without a policy type.
+     */
+    public static final int NO_TYPE = -1;
+
+    private final int size;
+    private final long[] ids;
+    private final String[] names;
+    private final String[] lowerNames;
+    private final int[] typeCodes;
+    private final String[] typeDictionary;
+    private final int[] premiums;
+    private final int[] coverages;
+    private final SortedIntIndex premiumIndex;
+    private final SortedIntIndex coverageIndex;
+    private final int[][] rowsByType;
+    private final TrigramIndex nameIndex;
+    private final PrefixIndex prefixIndex;
+    private final IdIndex idIndex;
+    private final SortPermutation[] permutations;
+    private final PolicyJson json;
+    private final Set<String> typeNames;
+    private final long version;
+
+    private PolicyStore(Builder builder) {
+        this.size = builder.size;
+        this.ids = Arrays.copyOf(builder.ids, size);
+        this.names = Arrays.copyOf(builder.names, size);
+        this.lowerNames = normaliseAll(names);
+        this.typeCodes = Arrays.copyOf(builder.typeCodes, size);
+        this.typeDictionary = builder.typeDictionary.toArray(new String[0]);
+        this.premiums = Arrays.copyOf(builder.premiums, size);
+        this.coverages = Arrays.copyOf(builder.coverages, size);
+        this.typeNames = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(typeDictionary)));
+
+        // the indexes only read the columns and are independent of each other, so build them concurrently
+        CompletableFuture<SortedIntIndex> premiumIndexTask = CompletableFuture.supplyAsync(() -> SortedIntIndex.build(premiums, size));
+        CompletableFuture<SortedIntIndex> coverageIndexTask = CompletableFuture.supplyAsync(() -> SortedIntIndex.build(coverages, size));
+        CompletableFuture<int[][]> typePostingsTask = CompletableFuture.supplyAsync(() -> buildTypePostings(typeCodes, typeDictionary.length));
+        CompletableFuture<TrigramIndex> nameIndexTask = CompletableFuture.supplyAsync(() -> TrigramIndex.build(lowerNames, size));
+        CompletableFuture<PrefixIndex> prefixIndexTask = CompletableFuture.supplyAsync(() -> PrefixIndex.build(lowerNames, size));
+        CompletableFuture<IdIndex> idIndexTask = CompletableFuture.supplyAsync(() -> IdIndex.build(ids, size));
+        CompletableFuture<PolicyJson> jsonTask = CompletableFuture.supplyAsync(
+                () -> PolicyJson.build(ids, names, typeCodes, typeDictionary, premiums, coverages, size));
+        List<CompletableFuture<SortPermutation>> permutationTasks = new ArrayList<>();
+        for (SortKey key : SortKey.values()) {
+            CompletableFuture<SortPermutation> ascending = CompletableFuture.supplyAsync(() -> buildPermutation(key));
+            permutationTasks.add(ascending);
+            permutationTasks.add(ascending.thenApply(permutation -> permutation.descending(sameKey(key))));
+        }
+        this.version = fingerprint();
+
+        this.premiumIndex = premiumIndexTask.join();
+        this.coverageIndex = coverageIndexTask.join();
+        this.rowsByType = typePostingsTask.join();
+        this.nameIndex = nameIndexTask.join();
+        this.prefixIndex = prefixIndexTask.join();
+        this.idIndex = idIndexTask.join();
+        this.json = jsonTask.join();
+        this.permutations = new SortPermutation[permutationTasks.size()];
+        for (SortKey key : SortKey.values()) {
+            permutations[permutationSlot(key, false)] = permutationTasks.get(permutationSlot(key, false)).join();
+            permutations[permutationSlot(key, true)] = permutationTasks.get(permutationSlot(key, true)).join();
+        }
+    }
+
+    /**
+     * Reads a store written by {@link #writeTo(SnapshotOutput)}, taking every index as stored
+     * instead of rebuilding it. Only the normalised names and permutation inverses are derived.
+     */
+    PolicyStore(SnapshotInput in) throws IOException {
+        this.version = in.readLong();
+        this.typeDictionary = in.readStrings();
+        this.typeNames = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(typeDictionary)));
+        this.ids = in.readLongs();
+        this.size = ids.length;
+        this.names = in.readStrings();
+        this.lowerNames = normaliseAll(names);
+        this.typeCodes = in.readInts();
+        this.premiums = in.readInts();
+        this.coverages = in.readInts();
+        if (names.length != size || typeCodes.length != size || premiums.length != size || coverages.length != size) {
+            throw new IOException("Corrupt snapshot: column lengths differ");
+        }
+        this.premiumIndex = SortedIntIndex.readFrom(in);
+        this.coverageIndex = SortedIntIndex.readFrom(in);
+        this.rowsByType = new int[typeDictionary.length][];
+        for (int code = 0; code < rowsByType.length; code++) {
+            rowsByType[code] = in.readInts();
+        }
+        this.nameIndex = TrigramIndex.readFrom(in);
+        this.prefixIndex = PrefixIndex.readFrom(in);
+        this.idIndex = IdIndex.readFrom(in);
+        this.permutations = new SortPermutation[SortKey.values().length * 2];
+        for (int slot = 0; slot < permutations.length; slot++) {
+            permutations[slot] = SortPermutation.readFrom(in);
+            if (permutations[slot].size() != size) {
+                throw new IOException("Corrupt snapshot: permutation length differs");
+            }
+        }
+        this.json = PolicyJson.readFrom(in, size);
+    }
+
+    /**
+     * Writes the columns and every index in the order {@link #PolicyStore(SnapshotInput)} reads them.
+     */
+    void writeTo(SnapshotOutput out) throws IOException {
+        out.writeLong(version);
+        out.writeStrings(typeDictionary, typeDictionary.length);
+        out.writeLongs(ids);
+        out.writeStrings(names, size);
+        out.writeInts(typeCodes);
+        out.writeInts(premiums);
+        out.writeInts(coverages);
+        premiumIndex.writeTo(out);
+        coverageIndex.writeTo(out);
+        for (int[] posting : rowsByType) {
+            out.writeInts(posting);
+        }
+        nameIndex.writeTo(out);
+        prefixIndex.writeTo(out);
+        idIndex.writeTo(out);
+        for (SortPermutation permutation : permutations) {
+            permutation.writeTo(out);
+        }
+        json.writeTo(out);
+    }
+
+    /**
+     * Returns an empty store, used before any data has been loaded.
+     *
+     * @return store without rows
+     */
+    public static PolicyStore empty() {
+        return new Builder(0).build();
+    }
+
+    /**
+     * Normalises a name or query for case-insensitive matching.
+     *
+     * @param value the raw value, may be null
+     * @return the lowercased value, or null if the input was null
+     */
+    public static String normalise(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a fingerprint of the store's contents. Two stores holding the same rows in the
+     * same order have the same version, so it is stable across restarts and nodes.
+     *
+     * @return the dataset version
+     */
+    public long version() {
+        return version;
+    }
+
+    public long id(int row) {
+        return ids[row];
+    }
+
+    public String name(int row) {
+        return names[row];
+    }
+
+    public String lowerName(int row) {
+        return lowerNames[row];
+    }
+
+    public int typeCode(int row) {
+        return typeCodes[row];
+    }
+
+    public int premium(int row) {
+        return premiums[row];
+    }
+
+    public int coverage(int row) {
+        return coverages[row];
+    }
+
+    /**
+     * Returns the distinct policy types, indexed by type code.
+     *
+     * @return the type dictionary (callers must not modify it)
+     */
+    public String[] typeDictionary() {
+        return typeDictionary;
+    }
+
+    /**
+     * Returns the distinct policy types in type code order.
+     *
+     * @return read-only set of the type names
+     */
+    public Set<String> typeNames() {
+        return typeNames;
+    }
+
+    public SortedIntIndex premiumIndex() {
+        return premiumIndex;
+    }
+
+    public SortedIntIndex coverageIndex() {
+        return coverageIndex;
+    }
+
+    /**
+     * Returns the precomputed ordering of all rows by a sort key.
+     *
+     * @param key        the sort key
+     * @param descending whether the order is descending
+     * @return the permutation
+     */
+    public SortPermutation permutation(SortKey key, boolean descending) {
+        return permutations[permutationSlot(key, descending)];
+    }
+
+    /**
+     * Counts rows whose name contains the given text, ignoring case. Exact for queries the
+     * trigram index can answer, otherwise an upper bound of all rows.
+     *
+     * @param name the text to search for
+     * @return estimated number of matching rows
+     */
+    public int estimateNameMatches(String name) {
+        String query = normalise(name);
+        return TrigramIndex.supports(query) ? nameIndex.estimate(query) : size;
+    }
+
+    /**
+     * Finds rows whose name contains the given text, ignoring case. Queries of at least
+     * {@link TrigramIndex#GRAM_LENGTH} characters are served by the trigram index, shorter
+     * ones by a scan of the normalised name column.
+     *
+     * @param name the text to search for
+     * @return matching rows in ascending order
+     */
+    public int[] rowsWithName(String name) {
+        String query = normalise(name);
+        if (TrigramIndex.supports(query)) {
+            return nameIndex.search(query, lowerNames);
+        }
+        int[] matches = new int[size];
+        int found = 0;
+        for (int row = 0; row < size; row++) {
+            if (lowerNames[row] != null && lowerNames[row].contains(query)) {
+                matches[found++] = row;
+            }
+        }
+        return Arrays.copyOf(matches, found);
+    }
+
+    /**
+     * Finds rows whose name starts with the given text, ignoring case.
+     *
+     * @param prefix the prefix to look up
+     * @param limit  maximum number of rows to return
+     * @return up to {@code limit} matching rows in name order
+     */
+    public int[] rowsWithPrefix(String prefix, int limit) {
+        return prefixIndex.rowsWithPrefix(normalise(prefix), limit, lowerNames);
+    }
+
+    /**
+     * Finds the row holding a policy id.
+     *
+     * @param id the policy id
+     * @return the first row with that id, or -1 if there is none
+     */
+    public int rowOfId(long id) {
+        return idIndex.firstRowOf(id);
+    }
+
+    /**
+     * Finds every row holding a policy id.
+     *
+     * @param id the policy id
+     * @return the rows with that id in ascending order, empty if there is none
+     */
+    int[] rowsOfId(long id) {
+        return idIndex.rowsOf(id);
+    }
+
+    /**
+     * @return the largest policy id in the store, or {@link #NULL_LONG} if no row has an id
+     */
+    public long maxId() {
+        return idIndex.max();
+    }
+
+    /**
+     * Returns the posting list of a policy type.
+     *
+     * @param typeCode the dictionary code of the type
+     * @return rows of that type in ascending order (callers must not modify it)
+     */
+    public int[] rowsOfType(int typeCode) {
+        return rowsByType[typeCode];
+    }
+
+    /**
+     * Resolves a policy type to the dictionary codes it matches, ignoring case.
+     *
+     * @param type the policy type to look up
+     * @return mask indexed by type code, {@code true} where the dictionary entry matches
+     */
+    public boolean[] typeMask(String type) {
+        boolean[] mask = new boolean[typeDictionary.length];
+        for (int code = 0; code < typeDictionary.length; code++) {
+            mask[code] = typeDictionary[code].equalsIgnoreCase(type);
+        }
+        return mask;
+    }
+
+    /**
+     * Materialises a {@link Policy} view of a single row.
+     *
+     * @param row the row number
+     * @return a new policy object holding the row's values
+     */
+    public Policy policyAt(int row) {
+        int typeCode = typeCodes[row];
+        return new Policy(
+                ids[row] == NULL_LONG ? null : ids[row],
+                names[row],
+                typeCode == NO_TYPE ? null : typeDictionary[typeCode],
+                premiums[row] == NULL_INT ? null : premiums[row],
+                coverages[row] == NULL_INT ? null : coverages[row]);
+    }
+
+    /**
+     * Returns the policies for a slice of row numbers. Policy objects are materialised lazily on
+     * access; the list can also be written as JSON directly from the serialized fragments.
+     *
+     * @param rows  row numbers, which must not be modified afterwards
+     * @param from  first index into {@code rows} (inclusive)
+     * @param to    last index into {@code rows} (exclusive)
+     * @return read-only list of policies in the order of {@code rows}
+     */
+    public PolicyRows policiesAt(int[] rows, int from, int to) {
+        return new PolicyRows(this, rows, from, to);
+    }
+
+    /**
+     * Returns the policies for a contiguous range of rows in storage order.
+     *
+     * @param from first row (inclusive)
+     * @param to   last row (exclusive)
+     * @return read-only list of policies
+     */
+    public PolicyRows policiesInRange(int from, int to) {
+        return new PolicyRows(this, null, from, to);
+    }
+
+    PolicyJson json() {
+        return json;
+    }
+
+    /**
+     * Builds a new store with changes applied in order. An upsert replaces every row holding its
+     * id, or is appended after the existing rows if there is none; a delete removes every row
+     * holding its id. Only the last change to each id counts, and unchanged rows keep their
+     * order, so replaying the same changes over the same store always gives the same store.
+     *
+     * @param changes the changes to apply
+     * @return the new store; this store is left as it was
+     */
+    public PolicyStore withChanges(List<PolicyChange> changes) {
+        Map<Long, PolicyChange> latest = new LinkedHashMap<>();
+        for (PolicyChange change : changes) {
+            latest.put(change.id(), change);
+        }
+        NavigableMap<Integer, PolicyChange> changedRows = new TreeMap<>();
+        List<PolicyChange> added = new ArrayList<>();
+        for (PolicyChange change : latest.values()) {
+            int[] rows = idIndex.rowsOf(change.id());
+            if (rows.length == 0 && !change.isDelete()) {
+                added.add(change);
+            }
+            for (int row : rows) {
+                changedRows.put(row, change);
+            }
+        }
+
+        Builder builder = new Builder(size + added.size());
+        int next = 0;
+        for (Map.Entry<Integer, PolicyChange> entry : changedRows.entrySet()) {
+            builder.copyRows(this, next, entry.getKey());
+            if (!entry.getValue().isDelete()) {
+                builder.add(entry.getValue().policy());
+            }
+            next = entry.getKey() + 1;
+        }
+        builder.copyRows(this, next, size);
+        for (PolicyChange change : added) {
+            builder.add(change.policy());
+        }
+        return builder.build();
+    }
+
+    private static String[] normaliseAll(String[] values) {
+        String[] normalised = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            normalised[i] = normalise(values[i]);
+        }
+        return normalised;
+    }
+
+    private static int permutationSlot(SortKey key, boolean descending) {
+        return key.ordinal() * 2 + (descending ? 1 : 0);
+    }
+
+    private SortPermutation buildPermutation(SortKey key) {
+        return switch (key) {
+            case NAME -> SortPermutation.byString(names, size);
+            case PREMIUM -> SortPermutation.byInt(premiums, size);
+            case COVERAGE -> SortPermutation.byInt(coverages, size);
+            case VALUE -> {
+                double[] values = new double[size];
+                for (int row = 0; row < size; row++) {
+                    values[row] = value(row);
+                }
+                yield SortPermutation.byDouble(values, size);
+            }
+        };
+    }
+
+    private SortPermutation.SameKey sameKey(SortKey key) {
+        return switch (key) {
+            case NAME -> (row, otherRow) -> Objects.equals(names[row], names[otherRow]);
+            case PREMIUM -> (row, otherRow) -> premiums[row] == premiums[otherRow];
+            case COVERAGE -> (row, otherRow) -> coverages[row] == coverages[otherRow];
+            case VALUE -> (row, otherRow) -> Double.compare(value(row), value(otherRow)) == 0;
+        };
+    }
+
+    /**
+     * Coverage per unit of premium, or NaN when either is missing or the premium is zero.
+     */
+    double value(int row) {
+        if (premiums[row] == NULL_INT || coverages[row] == NULL_INT || premiums[row] == 0) {
+            return Double.NaN;
+        }
+        return (double) coverages[row] / premiums[row];
+    }
+
+    private long fingerprint() {
+        long hash = 0xcbf29ce484222325L;
+        for (int row = 0; row < size; row++) {
+            hash = mix(hash, ids[row]);
+            hash = mix(hash, names[row] == null ? 0 : names[row].hashCode());
+            hash = mix(hash, typeCodes[row] == NO_TYPE ? 0 : typeDictionary[typeCodes[row]].hashCode());
+            hash = mix(hash, premiums[row]);
+            hash = mix(hash, coverages[row]);
+        }
+        return mix(hash, size);
+    }
+
+    static long mix(long hash, long value) {
+        hash ^= value;
+        hash *= 0x100000001b3L;
+        return hash ^ (hash >>> 29);
+    }
+
+    private static int[][] buildTypePostings(int[] typeCodes, int typeCount) {
+        int[] counts = new int[typeCount];
+        for (int typeCode : typeCodes) {
+            if (typeCode != NO_TYPE) {
+                counts[typeCode]++;
+            }
+        }
+        int[][] postings = new int[typeCount][];
+        for (int code = 0; code < typeCount; code++) {
+            postings[code] = new int[counts[code]];
+        }
+        int[] fill = new int[typeCount];
+        for (int row = 0; row < typeCodes.length; row++) {
+            int typeCode = typeCodes[row];
+            if (typeCode != NO_TYPE) {
+                postings[typeCode][fill[typeCode]++] = row;
+            }
+        }
+        return postings;
+    }
+
+    /**
+     * Incrementally collects rows into growable primitive columns.
+     */
+    public static final class Builder {
+
+        private int size;
+        private long[] ids;
+        private String[] names;
+        private int[] typeCodes;
+        private int[] premiums;
+        private int[] coverages;
+        private final List<String> typeDictionary = new ArrayList<>();
+        private final Map<String, Integer> typeLookup = new HashMap<>();
+
+        public Builder(int expectedSize) {
+            int capacity = Math.max(16, expectedSize);
+            ids = new long[capacity];
+            names = new String[capacity];
+            typeCodes = new int[capacity];
+            premiums = new int[capacity];
+            coverages = new int[capacity];
+        }
+
+        /**
+         * Appends a row. Null numeric values are stored as sentinels.
+         *
+         * @return this builder
+         */
+        public Builder add(Long id, String name, String type, Integer premium, Integer coverage) {
+            if (size == ids.length) {
+                grow();
+            }
+            ids[size] = id == null ? NULL_LONG : id;
+            names[size] = name;
+            typeCodes[size] = encodeType(type);
+            premiums[size] = premium == null ? NULL_INT : premium;
+            coverages[size] = coverage == null ? NULL_INT : coverage;
+            size++;
+            return this;
+        }
+
+        /**
+         * Appends a row holding a policy's values.
+         *
+         * @return this builder
+         */
+        public Builder add(Policy policy) {
+            return add(policy.getId(), policy.getName(), policy.getType(), policy.getPremium(), policy.getCoverage());
+        }
+
+        /**
+         * Appends rows {@code [from, to)} of another store, copying the columns in bulk.
+         */
+        void copyRows(PolicyStore store, int from, int to) {
+            int count = to - from;
+            while (size + count > ids.length) {
+                grow();
+            }
+            System.arraycopy(store.ids, from, ids, size, count);
+            System.arraycopy(store.names, from, names, size, count);
+            System.arraycopy(store.premiums, from, premiums, size, count);
+            System.arraycopy(store.coverages, from, coverages, size, count);
+            // the codes are re-encoded, so types left without rows drop out of the dictionary
+            int[] codes = new int[store.typeDictionary.length];
+            Arrays.fill(codes, NO_TYPE);
+            for (int row = from; row < to; row++) {
+                int code = store.typeCodes[row];
+                if (code != NO_TYPE && codes[code] == NO_TYPE) {
+                    codes[code] = encodeType(store.typeDictionary[code]);
+                }
+                typeCodes[size++] = code == NO_TYPE ? NO_TYPE : codes[code];
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public PolicyStore build() {
+            return new PolicyStore(this);
+        }
+
+        private int encodeType(String type) {
+            if (type == null) {
+                return NO_TYPE;
+            }
+            return typeLookup.computeIfAbsent(type, key -> {
+                typeDictionary.add(key);
+                return typeDictionary.size() - 1;
+            });
+        }
+
+        private void grow() {
+            int capacity = ids.length + (ids.length >> 1);
+            ids = Arrays.copyOf(ids, capacity);
+            names = Arrays.copyOf(names, capacity);
+            typeCodes = Arrays.copyOf(typeCodes, capacity);
+            premiums = Arrays.copyOf(premiums, capacity);
+            coverages = Arrays.copyOf(coverages, capacity);
+        }
+    }
+}
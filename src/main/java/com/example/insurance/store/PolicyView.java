@@ -0,0 +1,649 @@
+package com.example.insurance.store;
+
+import com.example.insurance.model.Policy;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The policy catalogue as queries see it: a base {@link PolicyStore} with the changes published
+ * since it was built laid over it.
+ * <p>
+ * Rebuilding the store and every index for each batch of writes costs O(N log N) in the size of
+ * the catalogue. A view instead keeps the latest change to each id, builds a small delta store
+ * from the upserted policies and hides the base rows of every changed id, so publishing costs
+ * O(D log D) in the number of changed ids plus a bit per base row. Queries run against both
+ * stores and merge the results. The changes are only folded into a new base by
+ * {@link #fold()} when the journal is compacted.
+ * <p>
+ * Row numbers below {@code base().size()} are base rows; the rest are rows of the delta store,
+ * offset by the base size. Every row has a place in storage order: a base row its own row
+ * number, a delta row the base row it replaces, or a place after every base row for a new id,
+ * given by the order in which ids were first changed. Merging by sort key and then place gives
+ * exactly the order of the store {@link PolicyStore#withChanges(List)} would build, so folding
+ * never reorders a listing. Places only depend on the base and the order of the changes, so a
+ * {@link RowKey} taken from one view can be compared with the rows of any later view over the
+ * same base.
+ */
+public final class PolicyView {
+
+    private static final Comparator<String> NAME_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    private final PolicyStore base;
+    private final Map<Long, PolicyChange> changes;
+    private final PolicyStore delta;
+    // place of each delta row, ascending
+    private final int[] places;
+    // bit per base row whose id has changed
+    private final long[] hidden;
+    private final int hiddenCount;
+    private final String[] typeDictionary;
+    private final int[] baseTypeCodes;
+    private final int[] deltaTypeCodes;
+    private final Set<String> typeNames;
+    private final int minPremium;
+    private final int maxPremium;
+    private final int minCoverage;
+    private final int maxCoverage;
+    private final int size;
+    private final long version;
+    // sorted positions of the hidden rows in each base ordering, computed on first use
+    private final AtomicReferenceArray<int[]> hiddenPositions = new AtomicReferenceArray<>(SortKey.values().length * 2 + 1);
+
+    private PolicyView(PolicyStore base) {
+        this.base = base;
+        this.changes = Map.of();
+        this.delta = PolicyStore.empty();
+        this.places = new int[0];
+        this.hidden = new long[0];
+        this.hiddenCount = 0;
+        this.typeDictionary = base.typeDictionary();
+        this.baseTypeCodes = identity(typeDictionary.length);
+        this.deltaTypeCodes = new int[0];
+        this.typeNames = base.typeNames();
+        this.minPremium = base.premiumIndex().min();
+        this.maxPremium = base.premiumIndex().max();
+        this.minCoverage = base.coverageIndex().min();
+        this.maxCoverage = base.coverageIndex().max();
+        this.size = base.size();
+        this.version = base.version();
+    }
+
+    private PolicyView(PolicyStore base, Map<Long, PolicyChange> changes) {
+        this.base = base;
+        this.changes = Collections.unmodifiableMap(changes);
+        int baseSize = base.size();
+
+        // upserts of ids the base holds take the place of each of their rows, new ids follow in order
+        long[] hiddenRows = new long[(baseSize + 63) >>> 6];
+        int hiddenRowCount = 0;
+        List<Policy> replacing = new ArrayList<>();
+        long[] replacedRows = new long[16];
+        List<Policy> added = new ArrayList<>();
+        int[] addedPlaces = new int[16];
+        int changeIndex = 0;
+        for (PolicyChange change : changes.values()) {
+            for (int row : base.rowsOfId(change.id())) {
+                hiddenRows[row >>> 6] |= 1L << row;
+                hiddenRowCount++;
+                if (!change.isDelete()) {
+                    if (replacing.size() == replacedRows.length) {
+                        replacedRows = Arrays.copyOf(replacedRows, replacedRows.length * 2);
+                    }
+                    // row in the high half, index in the low half: sorting the longs sorts by row
+                    replacedRows[replacing.size()] = ((long) row << 32) | replacing.size();
+                    replacing.add(change.policy());
+                }
+            }
+            if (!change.isDelete() && base.rowOfId(change.id()) < 0) {
+                if (added.size() == addedPlaces.length) {
+                    addedPlaces = Arrays.copyOf(addedPlaces, addedPlaces.length * 2);
+                }
+                // by first change rather than by count, so deleting one new id does not move the others
+                addedPlaces[added.size()] = baseSize + changeIndex;
+                added.add(change.policy());
+            }
+            changeIndex++;
+        }
+        Arrays.sort(replacedRows, 0, replacing.size());
+        this.hidden = hiddenRows;
+        this.hiddenCount = hiddenRowCount;
+
+        PolicyStore.Builder builder = new PolicyStore.Builder(replacing.size() + added.size());
+        this.places = new int[replacing.size() + added.size()];
+        for (int i = 0; i < replacing.size(); i++) {
+            places[i] = (int) (replacedRows[i] >>> 32);
+            builder.add(replacing.get((int) replacedRows[i]));
+        }
+        for (int i = 0; i < added.size(); i++) {
+            places[replacing.size() + i] = addedPlaces[i];
+            builder.add(added.get(i));
+        }
+        this.delta = builder.build();
+
+        // the folded store lists the types in the order their first rows have in storage order
+        Map<String, Integer> firstPlaces = new HashMap<>();
+        String[] baseTypes = base.typeDictionary();
+        for (int code = 0; code < baseTypes.length; code++) {
+            for (int row : base.rowsOfType(code)) {
+                if (!isHidden(row)) {
+                    firstPlaces.merge(baseTypes[code], row, Math::min);
+                    break;
+                }
+            }
+        }
+        String[] deltaTypes = delta.typeDictionary();
+        for (int code = 0; code < deltaTypes.length; code++) {
+            firstPlaces.merge(deltaTypes[code], places[delta.rowsOfType(code)[0]], Math::min);
+        }
+        this.typeDictionary = firstPlaces.keySet().toArray(new String[0]);
+        Arrays.sort(typeDictionary, Comparator.comparingInt(firstPlaces::get));
+        Map<String, Integer> codes = new HashMap<>();
+        for (int code = 0; code < typeDictionary.length; code++) {
+            codes.put(typeDictionary[code], code);
+        }
+        this.baseTypeCodes = new int[baseTypes.length];
+        for (int code = 0; code < baseTypes.length; code++) {
+            baseTypeCodes[code] = codes.getOrDefault(baseTypes[code], PolicyStore.NO_TYPE);
+        }
+        this.deltaTypeCodes = new int[deltaTypes.length];
+        for (int code = 0; code < deltaTypes.length; code++) {
+            deltaTypeCodes[code] = codes.get(deltaTypes[code]);
+        }
+        this.typeNames = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(typeDictionary)));
+
+        this.minPremium = visibleMin(base.premiumIndex(), delta.premiumIndex());
+        this.maxPremium = visibleMax(base.premiumIndex(), delta.premiumIndex());
+        this.minCoverage = visibleMin(base.coverageIndex(), delta.coverageIndex());
+        this.maxCoverage = visibleMax(base.coverageIndex(), delta.coverageIndex());
+        this.size = baseSize - hiddenCount + delta.size();
+
+        long hash = base.version();
+        for (PolicyChange change : changes.values()) {
+            hash = PolicyStore.mix(hash, change.id());
+            if (!change.isDelete()) {
+                Policy policy = change.policy();
+                hash = PolicyStore.mix(hash, Objects.hash(policy.getName(), policy.getType(), policy.getPremium(), policy.getCoverage()));
+            }
+        }
+        this.version = PolicyStore.mix(hash, changes.size());
+    }
+
+    /**
+     * Returns a view of a store without changes.
+     *
+     * @param store the store
+     * @return the view
+     */
+    public static PolicyView of(PolicyStore store) {
+        return new PolicyView(store);
+    }
+
+    /**
+     * Lays further changes over this view. Only the latest change to each id is kept, so applying
+     * the same changes again gives a view with the same contents.
+     *
+     * @param changes the changes, in commit order
+     * @return the new view; this view is left as it was
+     */
+    public PolicyView withChanges(List<PolicyChange> changes) {
+        Map<Long, PolicyChange> latest = new LinkedHashMap<>(this.changes);
+        for (PolicyChange change : changes) {
+            latest.put(change.id(), change);
+        }
+        return new PolicyView(base, latest);
+    }
+
+    /**
+     * Builds the store holding this view's contents, with every change folded in.
+     *
+     * @return the folded store, or the base if there are no changes
+     */
+    public PolicyStore fold() {
+        return changes.isEmpty() ? base : base.withChanges(new ArrayList<>(changes.values()));
+    }
+
+    /**
+     * Moves this view onto a new base that already holds the changes of an earlier view, keeping
+     * only the changes made since then.
+     *
+     * @param folded   the store {@link #fold()} built from {@code foldedView}
+     * @param foldedView an earlier view over the same base as this one
+     * @return a view with the same contents over {@code folded}
+     */
+    public PolicyView rebase(PolicyStore folded, PolicyView foldedView) {
+        List<PolicyChange> later = new ArrayList<>();
+        for (PolicyChange change : changes.values()) {
+            // changes carried over from the folded view are the same objects
+            if (change != foldedView.changes.get(change.id())) {
+                later.add(change);
+            }
+        }
+        return later.isEmpty() ? of(folded) : new PolicyView(folded).withChanges(later);
+    }
+
+    public PolicyStore base() {
+        return base;
+    }
+
+    public PolicyStore delta() {
+        return delta;
+    }
+
+    /**
+     * @return true if changes are laid over the base
+     */
+    public boolean hasChanges() {
+        return !changes.isEmpty();
+    }
+
+    /**
+     * @return the number of base rows hidden by changes
+     */
+    public int hiddenCount() {
+        return hiddenCount;
+    }
+
+    /**
+     * @return the number of policies in the view
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of row numbers in use: every base row, hidden ones included, followed by
+     * every delta row.
+     *
+     * @return the row count
+     */
+    public int rowCount() {
+        return base.size() + delta.size();
+    }
+
+    /**
+     * Returns the version of the view's contents. A view without changes has the version of its
+     * base; changes mix into it, so every published view has its own.
+     *
+     * @return the view version
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @return true if the base row is replaced or deleted by a change
+     */
+    public boolean isHidden(int baseRow) {
+        return (baseRow >>> 6) < hidden.length && (hidden[baseRow >>> 6] & (1L << baseRow)) != 0;
+    }
+
+    /**
+     * @return the place of a row in storage order
+     */
+    public int place(int row) {
+        return row < base.size() ? row : places[row - base.size()];
+    }
+
+    public long id(int row) {
+        return row < base.size() ? base.id(row) : delta.id(row - base.size());
+    }
+
+    public String name(int row) {
+        return row < base.size() ? base.name(row) : delta.name(row - base.size());
+    }
+
+    public String lowerName(int row) {
+        return row < base.size() ? base.lowerName(row) : delta.lowerName(row - base.size());
+    }
+
+    /**
+     * @return the code of the row's type in {@link #typeDictionary()}, or {@link PolicyStore#NO_TYPE}
+     */
+    public int typeCode(int row) {
+        int code = row < base.size() ? base.typeCode(row) : delta.typeCode(row - base.size());
+        if (code == PolicyStore.NO_TYPE) {
+            return PolicyStore.NO_TYPE;
+        }
+        return row < base.size() ? baseTypeCodes[code] : deltaTypeCodes[code];
+    }
+
+    public int premium(int row) {
+        return row < base.size() ? base.premium(row) : delta.premium(row - base.size());
+    }
+
+    public int coverage(int row) {
+        return row < base.size() ? base.coverage(row) : delta.coverage(row - base.size());
+    }
+
+    /**
+     * Returns the distinct policy types, indexed by type code.
+     *
+     * @return the type dictionary (callers must not modify it)
+     */
+    public String[] typeDictionary() {
+        return typeDictionary;
+    }
+
+    /**
+     * Returns the distinct policy types in type code order.
+     *
+     * @return read-only set of the type names
+     */
+    public Set<String> typeNames() {
+        return typeNames;
+    }
+
+    /**
+     * @return the smallest premium in the view, or {@link PolicyStore#NULL_INT} if there is none
+     */
+    public int minPremium() {
+        return minPremium;
+    }
+
+    /**
+     * @return the largest premium in the view, or {@link PolicyStore#NULL_INT} if there is none
+     */
+    public int maxPremium() {
+        return maxPremium;
+    }
+
+    /**
+     * @return the smallest coverage in the view, or {@link PolicyStore#NULL_INT} if there is none
+     */
+    public int minCoverage() {
+        return minCoverage;
+    }
+
+    /**
+     * @return the largest coverage in the view, or {@link PolicyStore#NULL_INT} if there is none
+     */
+    public int maxCoverage() {
+        return maxCoverage;
+    }
+
+    /**
+     * Finds the row holding a policy id.
+     *
+     * @param id the policy id
+     * @return the first row with that id, or -1 if there is none
+     */
+    public int rowOfId(long id) {
+        PolicyChange change = changes.get(id);
+        if (change == null) {
+            return base.rowOfId(id);
+        }
+        int row = change.isDelete() ? -1 : delta.rowOfId(id);
+        return row < 0 ? -1 : base.size() + row;
+    }
+
+    /**
+     * @return the largest policy id in the base or the delta, deleted ones included, or
+     * {@link PolicyStore#NULL_LONG} if no row has an id
+     */
+    public long maxId() {
+        return Math.max(base.maxId(), delta.maxId());
+    }
+
+    /**
+     * Materialises a {@link Policy} view of a single row.
+     *
+     * @param row the row number
+     * @return a new policy object holding the row's values
+     */
+    public Policy policyAt(int row) {
+        return row < base.size() ? base.policyAt(row) : delta.policyAt(row - base.size());
+    }
+
+    /**
+     * Returns the policies for a slice of row numbers.
+     *
+     * @param rows row numbers, which must not be modified afterwards
+     * @param from first index into {@code rows} (inclusive)
+     * @param to   last index into {@code rows} (exclusive)
+     * @return read-only list of policies in the order of {@code rows}
+     */
+    public PolicyRows policiesAt(int[] rows, int from, int to) {
+        return changes.isEmpty() ? base.policiesAt(rows, from, to) : new PolicyRows(base, delta, rows, from, to);
+    }
+
+    /**
+     * Finds rows whose name contains the given text, ignoring case.
+     *
+     * @param name the text to search for
+     * @return matching rows in storage order
+     */
+    public int[] rowsWithName(String name) {
+        int[] rows = base.rowsWithName(name);
+        if (changes.isEmpty()) {
+            return rows;
+        }
+        return merge(visible(rows, Integer.MAX_VALUE), deltaRows(delta.rowsWithName(name)), Integer.MAX_VALUE,
+                (row, otherRow) -> Integer.compare(place(row), place(otherRow)));
+    }
+
+    /**
+     * Finds rows whose name starts with the given text, ignoring case.
+     *
+     * @param prefix the prefix to look up
+     * @param limit  maximum number of rows to return
+     * @return up to {@code limit} matching rows in name order
+     */
+    public int[] rowsWithPrefix(String prefix, int limit) {
+        if (changes.isEmpty()) {
+            return base.rowsWithPrefix(prefix, limit);
+        }
+        // hidden rows may take up part of the base's answer
+        int[] rows = visible(base.rowsWithPrefix(prefix, (int) Math.min((long) limit + hiddenCount, Integer.MAX_VALUE)), limit);
+        return merge(rows, deltaRows(delta.rowsWithPrefix(prefix, limit)), limit, (row, otherRow) -> {
+            int byName = lowerName(row).compareTo(lowerName(otherRow));
+            return byName != 0 ? byName : Integer.compare(place(row), place(otherRow));
+        });
+    }
+
+    /**
+     * Compares two rows in the order of a sort key, or in storage order without one. Rows with
+     * equal keys are in storage order in both directions, as in a {@link SortPermutation}.
+     *
+     * @param key        the sort key, or null for storage order
+     * @param descending whether the key is in descending order
+     * @param row        a row number
+     * @param otherRow   another row number
+     * @return a negative number, zero or a positive number as {@code row} comes before, at the same place as or after {@code otherRow}
+     */
+    public int compare(SortKey key, boolean descending, int row, int otherRow) {
+        if (key != null) {
+            int byKey = switch (key) {
+                case NAME -> NAME_ORDER.compare(name(row), name(otherRow));
+                case PREMIUM -> Integer.compare(premium(row), premium(otherRow));
+                case COVERAGE -> Integer.compare(coverage(row), coverage(otherRow));
+                case VALUE -> compareValues(value(row), value(otherRow));
+            };
+            if (byKey != 0) {
+                return descending ? -byKey : byKey;
+            }
+        }
+        return Integer.compare(place(row), place(otherRow));
+    }
+
+    /**
+     * Compares a row with a {@link RowKey} in the order of a sort key, as
+     * {@link #compare(SortKey, boolean, int, int)} compares two rows.
+     *
+     * @param key        the sort key, or null for storage order
+     * @param descending whether the key is in descending order
+     * @param row        a row number
+     * @param bound      the key of a row of this or an earlier view over the same base
+     * @return a negative number, zero or a positive number as {@code row} comes before, at the same place as or after {@code bound}
+     */
+    public int compare(SortKey key, boolean descending, int row, RowKey bound) {
+        if (key != null) {
+            int byKey = switch (key) {
+                case NAME -> NAME_ORDER.compare(name(row), bound.name());
+                case PREMIUM -> Integer.compare(premium(row), (int) bound.number());
+                case COVERAGE -> Integer.compare(coverage(row), (int) bound.number());
+                case VALUE -> compareValues(value(row), bound.number());
+            };
+            if (byKey != 0) {
+                return descending ? -byKey : byKey;
+            }
+        }
+        return Integer.compare(place(row), bound.place());
+    }
+
+    /**
+     * Returns where a row falls in the order of a sort key.
+     *
+     * @param key the sort key, or null for storage order
+     * @param row a row number
+     * @return the row's key
+     */
+    public RowKey keyOf(SortKey key, int row) {
+        if (key == null) {
+            return new RowKey(null, 0, place(row));
+        }
+        return switch (key) {
+            case NAME -> new RowKey(name(row), 0, place(row));
+            case PREMIUM -> new RowKey(null, premium(row), place(row));
+            case COVERAGE -> new RowKey(null, coverage(row), place(row));
+            case VALUE -> new RowKey(null, value(row), place(row));
+        };
+    }
+
+    /**
+     * Returns the positions the hidden base rows have in a base ordering.
+     *
+     * @param key        the sort key, or null for storage order
+     * @param descending whether the key is in descending order
+     * @return the positions in ascending order (callers must not modify them)
+     */
+    public int[] hiddenPositions(SortKey key, boolean descending) {
+        int slot = key == null ? SortKey.values().length * 2 : key.ordinal() * 2 + (descending ? 1 : 0);
+        int[] positions = hiddenPositions.get(slot);
+        if (positions == null) {
+            SortPermutation ordering = key == null ? null : base.permutation(key, descending);
+            positions = new int[hiddenCount];
+            int found = 0;
+            for (int word = 0; word < hidden.length; word++) {
+                for (long bits = hidden[word]; bits != 0; bits &= bits - 1) {
+                    int row = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    positions[found++] = ordering == null ? row : ordering.positionOf(row);
+                }
+            }
+            Arrays.sort(positions);
+            hiddenPositions.set(slot, positions);
+        }
+        return positions;
+    }
+
+    /**
+     * Drops the hidden rows from base rows, keeping at most {@code limit}.
+     *
+     * @param rows  base rows, which may be reused for the result
+     * @param limit maximum number of rows to keep
+     * @return the visible rows in their original order
+     */
+    public int[] visible(int[] rows, int limit) {
+        if (hiddenCount == 0 && rows.length <= limit) {
+            return rows;
+        }
+        int kept = 0;
+        for (int i = 0; i < rows.length && kept < limit; i++) {
+            if (!isHidden(rows[i])) {
+                rows[kept++] = rows[i];
+            }
+        }
+        return Arrays.copyOf(rows, kept);
+    }
+
+    /**
+     * Turns rows of the delta store into row numbers of this view.
+     *
+     * @param deltaRows rows of the delta store, offset in place
+     * @return the same array
+     */
+    public int[] deltaRows(int[] deltaRows) {
+        for (int i = 0; i < deltaRows.length; i++) {
+            deltaRows[i] += base.size();
+        }
+        return deltaRows;
+    }
+
+    /**
+     * Merges two row lists that are each sorted in an order, keeping the first {@code limit}.
+     *
+     * @param rows      rows in order
+     * @param otherRows more rows in the same order
+     * @param limit     maximum number of rows to return
+     * @param order     the order of both lists
+     * @return the merged rows
+     */
+    public static int[] merge(int[] rows, int[] otherRows, int limit, RowOrder order) {
+        int[] merged = new int[(int) Math.min((long) rows.length + otherRows.length, limit)];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < merged.length; k++) {
+            if (j == otherRows.length || (i < rows.length && order.compare(rows[i], otherRows[j]) < 0)) {
+                merged[k] = rows[i++];
+            } else {
+                merged[k] = otherRows[j++];
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * An order of row numbers.
+     */
+    @FunctionalInterface
+    public interface RowOrder {
+        int compare(int row, int otherRow);
+    }
+
+    private double value(int row) {
+        return row < base.size() ? base.value(row) : delta.value(row - base.size());
+    }
+
+    /**
+     * Compares values as {@link SortPermutation#byDouble} ranks them, NaN first.
+     */
+    private static int compareValues(double value, double other) {
+        if (Double.isNaN(value) || Double.isNaN(other)) {
+            return Boolean.compare(!Double.isNaN(value), !Double.isNaN(other));
+        }
+        return Double.compare(value, other);
+    }
+
+    private int visibleMin(SortedIntIndex baseIndex, SortedIntIndex deltaIndex) {
+        int min = PolicyStore.NULL_INT;
+        for (int i = 0; i < baseIndex.size(); i++) {
+            if (!isHidden(baseIndex.rowAt(i))) {
+                min = baseIndex.valueAt(i);
+                break;
+            }
+        }
+        if (deltaIndex.min() != PolicyStore.NULL_INT && (min == PolicyStore.NULL_INT || deltaIndex.min() < min)) {
+            min = deltaIndex.min();
+        }
+        return min;
+    }
+
+    private int visibleMax(SortedIntIndex baseIndex, SortedIntIndex deltaIndex) {
+        int max = PolicyStore.NULL_INT;
+        for (int i = baseIndex.size() - 1; i >= 0; i--) {
+            if (!isHidden(baseIndex.rowAt(i))) {
+                max = baseIndex.valueAt(i);
+                break;
+            }
+        }
+        return Math.max(max, deltaIndex.max());
+    }
+
+    private static int[] identity(int size) {
+        int[] codes = new int[size];
+        for (int i = 0; i < size; i++) {
+            codes[i] = i;
+        }
+        return codes;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.insurance.store;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Sorted array of row numbers ordered by normalised name, used for prefix lookups.
+ * All names sharing a prefix are contiguous, so a lookup is one binary search over the
+ * prefix followed by a walk over the first {@code limit} matches.
+ */
+public final class PrefixIndex {
+
+    private final int[] rows;
+
+    private PrefixIndex(int[] rows) {
+        this.rows = rows;
+    }
+
+    /**
+     * Builds the index over normalised names, skipping rows without a name.
+     *
+     * @param lowerNames normalised names indexed by row
+     * @param size       number of rows in use
+     * @return the index
+     */
+    public static PrefixIndex build(String[] lowerNames, int size) {
+        Integer[] sorted = new Integer[size];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (lowerNames[row] != null) {
+                sorted[count++] = row;
+            }
+        }
+        // stable sort, so equal names stay in row order
+        Arrays.sort(sorted, 0, count, Comparator.comparing(row -> lowerNames[row]));
+        int[] rows = new int[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = sorted[i];
+        }
+        return new PrefixIndex(rows);
+    }
+
+    void writeTo(SnapshotOutput out) throws IOException {
+        out.writeInts(rows);
+    }
+
+    static PrefixIndex readFrom(SnapshotInput in) throws IOException {
+        return new PrefixIndex(in.readInts());
+    }
+
+    /**
+     * Returns up to {@code limit} rows whose normalised name starts with the normalised prefix,
+     * in name order.
+     *
+     * @param lowerPrefix normalised prefix
+     * @param limit       maximum number of rows to return
+     * @param lowerNames  normalised names indexed by row
+     * @return matching rows
+     */
+    public int[] rowsWithPrefix(String lowerPrefix, int limit, String[] lowerNames) {
+        int low = 0;
+        int high = rows.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lowerNames[rows[mid]].compareTo(lowerPrefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int end = low;
+        while (end < rows.length && end - low < limit && lowerNames[rows[end]].startsWith(lowerPrefix)) {
+            end++;
+        }
+        return Arrays.copyOfRange(rows, low, end);
+    }
+}
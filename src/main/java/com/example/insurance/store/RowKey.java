@@ -0,0 +1,14 @@
+package com.example.insurance.store;
+
+/**
+ * Where a row falls in an ordering of a {@link PolicyView}: its sort key value and its place in
+ * storage order. Unlike a row number or a position it stays meaningful while further changes are
+ * laid over the same base, so a listing can resume after a row that has since been changed or
+ * deleted.
+ *
+ * @param name   the row's name when ordering by name, otherwise null
+ * @param number the row's premium, coverage or value when ordering by one of them, otherwise 0
+ * @param place  the row's place in storage order
+ */
+public record RowKey(String name, double number, int place) {
+}
@@ -0,0 +1,129 @@
+package com.example.insurance.store;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sequential big-endian reader for the snapshot format. The file is read through mapped windows
+ * of at most {@link #WINDOW_SIZE} bytes, so snapshots larger than a single mapping can hold are
+ * supported. Every column, string and fragment is copied out onto the heap in bulk and no window
+ * outlives the read, so the store does not share the file's pages with the page cache.
+ */
+final class SnapshotInput {
+
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final long length;
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    SnapshotInput(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.length = channel.size();
+        map(0);
+    }
+
+    int readInt() throws IOException {
+        ensure(Integer.BYTES);
+        return window.getInt();
+    }
+
+    long readLong() throws IOException {
+        ensure(Long.BYTES);
+        return window.getLong();
+    }
+
+    int[] readInts() throws IOException {
+        int[] values = new int[readLength()];
+        int read = 0;
+        while (read < values.length) {
+            ensure(Integer.BYTES);
+            int count = Math.min(values.length - read, window.remaining() / Integer.BYTES);
+            window.asIntBuffer().get(values, read, count);
+            window.position(window.position() + count * Integer.BYTES);
+            read += count;
+        }
+        return values;
+    }
+
+    long[] readLongs() throws IOException {
+        long[] values = new long[readLength()];
+        int read = 0;
+        while (read < values.length) {
+            ensure(Long.BYTES);
+            int count = Math.min(values.length - read, window.remaining() / Long.BYTES);
+            window.asLongBuffer().get(values, read, count);
+            window.position(window.position() + count * Long.BYTES);
+            read += count;
+        }
+        return values;
+    }
+
+    byte[] readBytes() throws IOException {
+        byte[] values = new byte[readLength()];
+        int read = 0;
+        while (read < values.length) {
+            ensure(1);
+            int chunk = Math.min(values.length - read, window.remaining());
+            window.get(values, read, chunk);
+            read += chunk;
+        }
+        return values;
+    }
+
+    String[] readStrings() throws IOException {
+        String[] values = new String[readLength()];
+        byte[] scratch = new byte[256];
+        for (int i = 0; i < values.length; i++) {
+            int byteLength = readInt();
+            if (byteLength < 0) {
+                continue;
+            }
+            if (byteLength > scratch.length) {
+                scratch = new byte[Math.max(byteLength, scratch.length * 2)];
+            }
+            int read = 0;
+            while (read < byteLength) {
+                ensure(1);
+                int chunk = Math.min(byteLength - read, window.remaining());
+                window.get(scratch, read, chunk);
+                read += chunk;
+            }
+            values[i] = new String(scratch, 0, byteLength, StandardCharsets.UTF_8);
+        }
+        return values;
+    }
+
+    /**
+     * @return whether every byte of the file has been read
+     */
+    boolean atEnd() {
+        return windowStart + window.position() == length;
+    }
+
+    private int readLength() throws IOException {
+        int count = readInt();
+        if (count < 0) {
+            throw new IOException("Corrupt snapshot: negative array length " + count);
+        }
+        return count;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (window.remaining() < bytes) {
+            long position = windowStart + window.position();
+            if (position + bytes > length) {
+                throw new IOException("Corrupt snapshot: unexpected end of file at byte " + position);
+            }
+            map(position);
+        }
+    }
+
+    private void map(long position) throws IOException {
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, length - position));
+    }
+}
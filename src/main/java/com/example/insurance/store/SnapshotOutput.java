@@ -0,0 +1,120 @@
+package com.example.insurance.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sequential big-endian writer for the snapshot format. Primitive arrays are copied into a
+ * direct buffer in bulk and flushed to the channel whenever it fills up.
+ */
+final class SnapshotOutput {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    SnapshotOutput(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    void writeInt(int value) throws IOException {
+        ensure(Integer.BYTES);
+        buffer.putInt(value);
+    }
+
+    void writeLong(long value) throws IOException {
+        ensure(Long.BYTES);
+        buffer.putLong(value);
+    }
+
+    /**
+     * Writes the array length followed by the values.
+     */
+    void writeInts(int[] values) throws IOException {
+        writeInt(values.length);
+        int written = 0;
+        while (written < values.length) {
+            ensure(Integer.BYTES);
+            int count = Math.min(values.length - written, buffer.remaining() / Integer.BYTES);
+            buffer.asIntBuffer().put(values, written, count);
+            buffer.position(buffer.position() + count * Integer.BYTES);
+            written += count;
+        }
+    }
+
+    /**
+     * Writes the array length followed by the values.
+     */
+    void writeLongs(long[] values) throws IOException {
+        writeInt(values.length);
+        int written = 0;
+        while (written < values.length) {
+            ensure(Long.BYTES);
+            int count = Math.min(values.length - written, buffer.remaining() / Long.BYTES);
+            buffer.asLongBuffer().put(values, written, count);
+            buffer.position(buffer.position() + count * Long.BYTES);
+            written += count;
+        }
+    }
+
+    /**
+     * Writes the array length followed by the bytes.
+     */
+    void writeBytes(byte[] values) throws IOException {
+        writeBytes(values, values.length);
+    }
+
+    /**
+     * Writes the first {@code length} bytes of an array as an array of that length.
+     */
+    void writeBytes(byte[] values, int length) throws IOException {
+        writeInt(length);
+        int written = 0;
+        while (written < length) {
+            ensure(1);
+            int chunk = Math.min(length - written, buffer.remaining());
+            buffer.put(values, written, chunk);
+            written += chunk;
+        }
+    }
+
+    /**
+     * Writes a string table: the entry count, then each entry as its UTF-8 length (-1 for null)
+     * followed by its bytes.
+     */
+    void writeStrings(String[] values, int count) throws IOException {
+        writeInt(count);
+        for (int i = 0; i < count; i++) {
+            if (values[i] == null) {
+                writeInt(-1);
+                continue;
+            }
+            byte[] bytes = values[i].getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            int written = 0;
+            while (written < bytes.length) {
+                ensure(1);
+                int chunk = Math.min(bytes.length - written, buffer.remaining());
+                buffer.put(bytes, written, chunk);
+                written += chunk;
+            }
+        }
+    }
+
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.insurance.store;
+
+import com.example.insurance.exception.InvalidRequestException;
+import com.example.insurance.model.Policy;
+
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Fields a policy listing can be ordered by. Every key has a precomputed
+ * {@link SortPermutation} in each direction.
+ */
+public enum SortKey {
+    NAME,
+    PREMIUM,
+    COVERAGE,
+    /**
+     * Coverage per unit of premium. Missing for policies without a premium or coverage, or
+     * with a premium of zero.
+     */
+    VALUE;
+
+    /**
+     * Parses a {@code sortBy} request parameter, ignoring case.
+     *
+     * @param value the parameter value, may be null or blank
+     * @return the sort key, or null if no value was given
+     * @throws InvalidRequestException if the value does not name a sort key
+     */
+    public static SortKey parse(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException("sortBy must be one of name, premium, coverage or value.");
+        }
+    }
+
+    /**
+     * Returns the ascending order of this key over policies, for merging results taken from
+     * several stores. Policies compare as their rows do in this key's {@link SortPermutation},
+     * missing values first; ties are left to the caller.
+     *
+     * @return the comparator
+     */
+    public Comparator<Policy> policyOrder() {
+        return switch (this) {
+            case NAME -> Comparator.comparing(Policy::getName, Comparator.nullsFirst(Comparator.naturalOrder()));
+            case PREMIUM -> Comparator.comparing(Policy::getPremium, Comparator.nullsFirst(Comparator.naturalOrder()));
+            case COVERAGE -> Comparator.comparing(Policy::getCoverage, Comparator.nullsFirst(Comparator.naturalOrder()));
+            case VALUE -> Comparator.comparingDouble(SortKey::value);
+        };
+    }
+
+    /**
+     * Coverage per unit of premium as the store computes it, with missing values below every
+     * real one.
+     */
+    private static double value(Policy policy) {
+        Integer premium = policy.getPremium();
+        Integer coverage = policy.getCoverage();
+        if (premium == null || coverage == null || premium == 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return (double) coverage / premium;
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.insurance.store;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Precomputed ordering of all rows by one {@link SortKey} in one direction.
+ * {@code order[position]} is the row at a position and {@code position[row]} its inverse, so
+ * sorting any subset of rows is a primitive sort of their positions, and a listing can resume
+ * after a known position without re-sorting. Rows with equal keys are always in row order,
+ * in both directions, and missing values sort first in ascending order and last in descending order.
+ */
+public final class SortPermutation {
+
+    private final int[] order;
+    private final int[] positions;
+
+    private SortPermutation(int[] order) {
+        this.order = order;
+        this.positions = new int[order.length];
+        for (int position = 0; position < order.length; position++) {
+            positions[order[position]] = position;
+        }
+    }
+
+    /**
+     * Orders rows by an int column, ascending.
+     *
+     * @param column the column values indexed by row
+     * @param size   number of rows in use
+     * @return the permutation
+     */
+    public static SortPermutation byInt(int[] column, int size) {
+        long[] packed = new long[size];
+        for (int row = 0; row < size; row++) {
+            // value in the high half, row in the low half: sorting the longs sorts by value, then row
+            packed[row] = ((long) column[row] << 32) | row;
+        }
+        Arrays.parallelSort(packed);
+        int[] order = new int[size];
+        for (int position = 0; position < size; position++) {
+            order[position] = (int) packed[position];
+        }
+        return new SortPermutation(order);
+    }
+
+    /**
+     * Orders rows by a double column, ascending. NaN marks a missing value. The values are
+     * replaced by their rank among the distinct values so the rows can be sorted as packed
+     * primitives like an int column.
+     *
+     * @param column the column values indexed by row
+     * @param size   number of rows in use
+     * @return the permutation
+     */
+    public static SortPermutation byDouble(double[] column, int size) {
+        double[] distinct = new double[size];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (!Double.isNaN(column[row])) {
+                distinct[count++] = column[row];
+            }
+        }
+        Arrays.parallelSort(distinct, 0, count);
+        int[] ranks = new int[size];
+        for (int row = 0; row < size; row++) {
+            // equal values find the same slot, so ties stay ties; missing values rank first
+            ranks[row] = Double.isNaN(column[row]) ? PolicyStore.NULL_INT : firstIndexOf(distinct, count, column[row]);
+        }
+        return byInt(ranks, size);
+    }
+
+    private static int firstIndexOf(double[] sorted, int count, double value) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Double.compare(sorted[mid], value) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Orders rows by a string column using natural string order, ascending.
+     *
+     * @param column the column values indexed by row, entries may be null
+     * @param size   number of rows in use
+     * @return the permutation
+     */
+    public static SortPermutation byString(String[] column, int size) {
+        Comparator<Integer> byRow = Comparator.comparing((Integer row) -> column[row],
+                        Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+                .thenComparingInt(Integer::intValue);
+        Integer[] boxed = new Integer[size];
+        for (int row = 0; row < size; row++) {
+            boxed[row] = row;
+        }
+        Arrays.parallelSort(boxed, byRow);
+        int[] order = new int[size];
+        for (int position = 0; position < size; position++) {
+            order[position] = boxed[position];
+        }
+        return new SortPermutation(order);
+    }
+
+    /**
+     * Derives the descending order from this ascending one in linear time: the order is
+     * reversed and every run of equal keys is flipped back so ties stay in row order.
+     *
+     * @param sameKey tells whether two rows have equal sort keys
+     * @return the descending permutation
+     */
+    public SortPermutation descending(SameKey sameKey) {
+        int size = order.length;
+        int[] reversed = new int[size];
+        int end = size;
+        while (end > 0) {
+            int start = end - 1;
+            while (start > 0 && sameKey.test(order[start - 1], order[end - 1])) {
+                start--;
+            }
+            // run [start, end) of equal keys, copied in ascending row order
+            System.arraycopy(order, start, reversed, size - end, end - start);
+            end = start;
+        }
+        return new SortPermutation(reversed);
+    }
+
+    /**
+     * Key equality between two rows, used to find ties when deriving the descending order.
+     */
+    @FunctionalInterface
+    public interface SameKey {
+        boolean test(int row, int otherRow);
+    }
+
+    void writeTo(SnapshotOutput out) throws IOException {
+        out.writeInts(order);
+    }
+
+    /**
+     * Reads the order back; the inverse is rebuilt in one linear pass.
+     */
+    static SortPermutation readFrom(SnapshotInput in) throws IOException {
+        return new SortPermutation(in.readInts());
+    }
+
+    public int size() {
+        return order.length;
+    }
+
+    /**
+     * @return the row at the given position
+     */
+    public int rowAt(int position) {
+        return order[position];
+    }
+
+    /**
+     * @return the position of the given row
+     */
+    public int positionOf(int row) {
+        return positions[row];
+    }
+
+    /**
+     * Sorts a set of rows into this order: their positions are sorted as primitives and mapped
+     * back to rows.
+     *
+     * @param rows rows to sort, sorted in place
+     * @return the sorted rows
+     */
+    public int[] sort(int[] rows) {
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = positions[rows[i]];
+        }
+        Arrays.sort(rows);
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = order[rows[i]];
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the rows at positions {@code [from, to)}.
+     */
+    public int[] rowsBetween(int from, int to) {
+        return Arrays.copyOfRange(order, from, to);
+    }
+}
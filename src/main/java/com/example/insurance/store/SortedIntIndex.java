@@ -0,0 +1,158 @@
+package com.example.insurance.store;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Secondary index over an int column: the non-null values in ascending order together with
+ * the row each value came from. Range lookups are two binary searches plus a copy of the
+ * matching slice, so both counting and fetching a range cost O(log N + matches).
+ */
+public final class SortedIntIndex {
+
+    private final int[] values;
+    private final int[] rows;
+
+    private SortedIntIndex(int[] values, int[] rows) {
+        this.values = values;
+        this.rows = rows;
+    }
+
+    /**
+     * Builds an index over the given column, skipping {@link PolicyStore#NULL_INT} entries.
+     *
+     * @param column the column values indexed by row
+     * @param size   number of rows in use
+     * @return the index
+     */
+    public static SortedIntIndex build(int[] column, int size) {
+        long[] packed = new long[size];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (column[row] != PolicyStore.NULL_INT) {
+                // value in the high half, row in the low half: sorting the longs sorts by value, then row
+                packed[count++] = ((long) column[row] << 32) | row;
+            }
+        }
+        Arrays.sort(packed, 0, count);
+        int[] values = new int[count];
+        int[] rows = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = (int) (packed[i] >> 32);
+            rows[i] = (int) packed[i];
+        }
+        return new SortedIntIndex(values, rows);
+    }
+
+    void writeTo(SnapshotOutput out) throws IOException {
+        out.writeInts(values);
+        out.writeInts(rows);
+    }
+
+    static SortedIntIndex readFrom(SnapshotInput in) throws IOException {
+        return new SortedIntIndex(in.readInts(), in.readInts());
+    }
+
+    /**
+     * @return the smallest indexed value, or {@link PolicyStore#NULL_INT} if nothing is indexed
+     */
+    public int min() {
+        return values.length == 0 ? PolicyStore.NULL_INT : values[0];
+    }
+
+    /**
+     * @return the largest indexed value, or {@link PolicyStore#NULL_INT} if nothing is indexed
+     */
+    public int max() {
+        return values.length == 0 ? PolicyStore.NULL_INT : values[values.length - 1];
+    }
+
+    /**
+     * @return the number of indexed rows
+     */
+    int size() {
+        return values.length;
+    }
+
+    /**
+     * @return the value at an index into the sorted values
+     */
+    int valueAt(int index) {
+        return values[index];
+    }
+
+    /**
+     * @return the row the value at an index into the sorted values came from
+     */
+    int rowAt(int index) {
+        return rows[index];
+    }
+
+    /**
+     * Counts indexed rows whose value lies in {@code [min, max]}.
+     */
+    public int countBetween(int min, int max) {
+        if (min > max) {
+            return 0;
+        }
+        return upperBound(max) - lowerBound(min);
+    }
+
+    /**
+     * Returns the rows whose value lies in {@code [min, max]}, ordered by value.
+     */
+    public int[] rowsBetween(int min, int max) {
+        if (min > max) {
+            return new int[0];
+        }
+        return Arrays.copyOfRange(rows, lowerBound(min), upperBound(max));
+    }
+
+    /**
+     * Counts indexed rows whose value is at least {@code min}.
+     */
+    public int countAtLeast(int min) {
+        return values.length - lowerBound(min);
+    }
+
+    /**
+     * Returns the rows whose value is at least {@code min}, ordered by value.
+     */
+    public int[] rowsAtLeast(int min) {
+        return Arrays.copyOfRange(rows, lowerBound(min), rows.length);
+    }
+
+    /**
+     * First position whose value is {@code >= key}.
+     */
+    private int lowerBound(int key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * First position whose value is {@code > key}.
+     */
+    private int upperBound(int key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
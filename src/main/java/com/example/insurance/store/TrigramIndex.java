@@ -0,0 +1,304 @@
+package com.example.insurance.store;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Inverted index from character trigrams of the normalised policy names to the rows that
+ * contain them, used for case-insensitive substring search.
+ * <p>
+ * The index is stored in compressed sparse row form: a sorted array of packed trigram keys,
+ * an offsets array and one shared postings array in which every row list is ascending.
+ * A substring query intersects the postings of its trigrams, starting with the shortest,
+ * and only the surviving candidates are verified against the name column.
+ */
+public final class TrigramIndex {
+
+    /**
+     * Shortest query length the index can answer; shorter queries have no trigrams.
+     */
+    public static final int GRAM_LENGTH = 3;
+
+    private final long[] keys;
+    private final int[] offsets;
+    private final int[] postings;
+
+    private TrigramIndex(long[] keys, int[] offsets, int[] postings) {
+        this.keys = keys;
+        this.offsets = offsets;
+        this.postings = postings;
+    }
+
+    /**
+     * Builds the index over normalised names.
+     *
+     * @param lowerNames normalised names indexed by row, entries may be null
+     * @param size       number of rows in use
+     * @return the index
+     */
+    public static TrigramIndex build(String[] lowerNames, int size) {
+        // first pass: assign a dense id to every distinct trigram and count its rows
+        GramIds gramIds = new GramIds();
+        int[] counts = new int[64];
+        int[] lastRow = new int[64];
+        for (int row = 0; row < size; row++) {
+            String name = lowerNames[row];
+            if (name == null) {
+                continue;
+            }
+            for (int i = 0; i + GRAM_LENGTH <= name.length(); i++) {
+                int gramCount = gramIds.size();
+                int id = gramIds.idOf(gram(name, i));
+                if (id == gramCount) {
+                    if (id == counts.length) {
+                        counts = Arrays.copyOf(counts, id * 2);
+                        lastRow = Arrays.copyOf(lastRow, id * 2);
+                    }
+                    lastRow[id] = -1;
+                }
+                if (lastRow[id] != row) {
+                    lastRow[id] = row;
+                    counts[id]++;
+                }
+            }
+        }
+
+        // order the trigrams by key so lookups can binary search
+        int gramCount = gramIds.size();
+        long[] sortedKeys = gramIds.keys();
+        Arrays.sort(sortedKeys);
+        int[] slotOfId = new int[gramCount];
+        int[] offsets = new int[gramCount + 1];
+        for (int slot = 0; slot < gramCount; slot++) {
+            int id = gramIds.idOf(sortedKeys[slot]);
+            slotOfId[id] = slot;
+            offsets[slot + 1] = offsets[slot] + counts[id];
+        }
+
+        // second pass: fill the postings, rows arrive in ascending order
+        int[] postings = new int[offsets[gramCount]];
+        int[] fill = Arrays.copyOf(offsets, gramCount);
+        Arrays.fill(lastRow, 0, gramCount, -1);
+        for (int row = 0; row < size; row++) {
+            String name = lowerNames[row];
+            if (name == null) {
+                continue;
+            }
+            for (int i = 0; i + GRAM_LENGTH <= name.length(); i++) {
+                int id = gramIds.idOf(gram(name, i));
+                if (lastRow[id] != row) {
+                    lastRow[id] = row;
+                    postings[fill[slotOfId[id]]++] = row;
+                }
+            }
+        }
+        return new TrigramIndex(sortedKeys, offsets, postings);
+    }
+
+    void writeTo(SnapshotOutput out) throws IOException {
+        out.writeLongs(keys);
+        out.writeInts(offsets);
+        out.writeInts(postings);
+    }
+
+    static TrigramIndex readFrom(SnapshotInput in) throws IOException {
+        return new TrigramIndex(in.readLongs(), in.readInts(), in.readInts());
+    }
+
+    /**
+     * Returns whether the index can answer the normalised query.
+     */
+    public static boolean supports(String lowerQuery) {
+        return lowerQuery != null && lowerQuery.length() >= GRAM_LENGTH;
+    }
+
+    /**
+     * Returns an upper bound on the number of rows containing the normalised query: the length
+     * of its shortest trigram posting list.
+     *
+     * @param lowerQuery normalised query of at least {@link #GRAM_LENGTH} characters
+     * @return estimated number of matching rows
+     */
+    public int estimate(String lowerQuery) {
+        int best = Integer.MAX_VALUE;
+        for (int i = 0; i + GRAM_LENGTH <= lowerQuery.length(); i++) {
+            int slot = Arrays.binarySearch(keys, gram(lowerQuery, i));
+            if (slot < 0) {
+                return 0;
+            }
+            best = Math.min(best, offsets[slot + 1] - offsets[slot]);
+        }
+        return best;
+    }
+
+    /**
+     * Finds the rows whose normalised name contains the normalised query.
+     *
+     * @param lowerQuery normalised query of at least {@link #GRAM_LENGTH} characters
+     * @param lowerNames normalised names indexed by row, used to verify candidates
+     * @return matching rows in ascending order
+     */
+    public int[] search(String lowerQuery, String[] lowerNames) {
+        int gramCount = lowerQuery.length() - GRAM_LENGTH + 1;
+        int[] slots = new int[gramCount];
+        for (int i = 0; i < gramCount; i++) {
+            int slot = Arrays.binarySearch(keys, gram(lowerQuery, i));
+            if (slot < 0) {
+                return new int[0];
+            }
+            slots[i] = slot;
+        }
+        // distinct trigrams, shortest postings first so the candidate set shrinks as quickly as possible
+        Arrays.sort(slots);
+        int distinct = 0;
+        for (int i = 0; i < gramCount; i++) {
+            if (i == 0 || slots[i] != slots[i - 1]) {
+                slots[distinct++] = slots[i];
+            }
+        }
+        Integer[] order = new Integer[distinct];
+        for (int i = 0; i < distinct; i++) {
+            order[i] = slots[i];
+        }
+        Arrays.sort(order, Comparator.comparingInt(slot -> offsets[slot + 1] - offsets[slot]));
+
+        int first = order[0];
+        int[] candidates = Arrays.copyOfRange(postings, offsets[first], offsets[first + 1]);
+        int count = candidates.length;
+        for (int i = 1; i < distinct && count > 0; i++) {
+            int slot = order[i];
+            count = intersect(candidates, count, offsets[slot], offsets[slot + 1]);
+        }
+
+        // trigrams are necessary but not sufficient, so verify the survivors
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            int row = candidates[i];
+            if (lowerNames[row].contains(lowerQuery)) {
+                candidates[found++] = row;
+            }
+        }
+        return Arrays.copyOf(candidates, found);
+    }
+
+    /**
+     * Intersects the first {@code count} candidates in place with a posting slice, galloping
+     * through the (usually longer) posting list.
+     *
+     * @return the number of candidates left
+     */
+    private int intersect(int[] candidates, int count, int from, int to) {
+        int kept = 0;
+        int position = from;
+        for (int i = 0; i < count && position < to; i++) {
+            int row = candidates[i];
+            position = gallop(row, position, to);
+            if (position < to && postings[position] == row) {
+                candidates[kept++] = row;
+                position++;
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Finds the first posting position in {@code [from, to)} holding a row {@code >= row}.
+     */
+    private int gallop(int row, int from, int to) {
+        int step = 1;
+        int low = from;
+        int high = from;
+        while (high < to && postings[high] < row) {
+            low = high + 1;
+            high = from + step;
+            step <<= 1;
+        }
+        high = Math.min(high, to);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (postings[mid] < row) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static long gram(String text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+
+    /**
+     * Open-addressing map from packed trigram to a dense id, assigned in insertion order.
+     * Used only while building, to avoid boxing one key per trigram occurrence.
+     */
+    private static final class GramIds {
+        private static final long EMPTY = -1L;
+
+        private long[] table = filled(1 << 12);
+        private int[] ids = new int[1 << 12];
+        private long[] keysById = new long[1 << 11];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Returns the id of a trigram, assigning the next free id if it is new.
+         */
+        int idOf(long key) {
+            int mask = table.length - 1;
+            int slot = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+            while (table[slot] != EMPTY) {
+                if (table[slot] == key) {
+                    return ids[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = key;
+            ids[slot] = size;
+            if (size == keysById.length) {
+                keysById = Arrays.copyOf(keysById, size * 2);
+            }
+            keysById[size] = key;
+            size++;
+            if (size * 2 > table.length) {
+                rehash();
+            }
+            return size - 1;
+        }
+
+        /**
+         * @return the distinct trigrams, indexed by id
+         */
+        long[] keys() {
+            return Arrays.copyOf(keysById, size);
+        }
+
+        private void rehash() {
+            long[] oldTable = table;
+            int[] oldIds = ids;
+            table = filled(oldTable.length * 2);
+            ids = new int[oldTable.length * 2];
+            int mask = table.length - 1;
+            for (int i = 0; i < oldTable.length; i++) {
+                if (oldTable[i] != EMPTY) {
+                    int slot = Long.hashCode(oldTable[i] * 0x9E3779B97F4A7C15L) & mask;
+                    while (table[slot] != EMPTY) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = oldTable[i];
+                    ids[slot] = oldIds[i];
+                }
+            }
+        }
+
+        private static long[] filled(int length) {
+            long[] table = new long[length];
+            Arrays.fill(table, EMPTY);
+            return table;
+        }
+    }
+}
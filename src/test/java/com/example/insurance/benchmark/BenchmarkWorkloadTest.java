@@ -0,0 +1,71 @@
+package com.example.insurance.benchmark;
+
+import com.example.insurance.store.PolicyStore;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs every benchmark once on the smallest catalogue, so a benchmark that silently measures an
+ * empty result or the wrong path fails here instead of producing a misleading number.
+ */
+class BenchmarkWorkloadTest {
+
+    private static CatalogueState state;
+
+    @BeforeAll
+    static void load() {
+        state = new CatalogueState();
+        state.catalogueSize = 10_000;
+        state.load();
+    }
+
+    @Test
+    void catalogueIsReproducibleAndShapedLikeTheBundledOne() {
+        PolicyStore store = state.store;
+
+        assertEquals(10_000, store.size());
+        assertEquals(store.version(), SyntheticCatalogue.generate(10_000).version());
+        assertEquals(Set.of(SyntheticCatalogue.TYPES), store.typeNames());
+        int missing = 0;
+        for (int row = 0; row < store.size(); row++) {
+            if (store.premium(row) == PolicyStore.NULL_INT) {
+                missing++;
+            }
+        }
+        assertTrue(missing > 0 && missing < store.size() / 50, "missing premiums: " + missing);
+    }
+
+    @Test
+    void serviceBenchmarksReturnResults() throws Exception {
+        PolicyServiceBenchmark benchmark = new PolicyServiceBenchmark();
+
+        assertFalse(benchmark.filterByTypeAndCoverage(state).isEmpty());
+        assertFalse(benchmark.filterByPremiumRange(state).isEmpty());
+        assertFalse(benchmark.filterByNameAndType(state).isEmpty());
+        assertEquals(benchmark.filterByTypeAndCoverage(state).size(), benchmark.filterCached(state).size());
+        assertTrue(benchmark.filterPoliciesAsJson(state) > 0);
+        assertFalse(benchmark.getPoliciesByName(state).isEmpty());
+        assertFalse(benchmark.getPoliciesByShortName(state).isEmpty());
+        assertEquals(20, benchmark.firstPage(state).getPolicies().size());
+        assertEquals(20, benchmark.middlePage(state).getPolicies().size());
+        assertEquals(20, benchmark.firstPageByName(state).getPolicies().size());
+        assertEquals(20, benchmark.firstPageByPremium(state).getPolicies().size());
+    }
+
+    @Test
+    void sortBenchmarksReturnResults() {
+        for (String sortBy : new String[]{"name", "premium", "coverage", "value"}) {
+            SortBenchmark benchmark = new SortBenchmark();
+            benchmark.sortBy = sortBy;
+            benchmark.sortOrder = "desc";
+            benchmark.prepare();
+
+            assertTrue(benchmark.sortFiltered(state).size() > 1000, sortBy);
+            assertEquals(20, benchmark.sortFirstPage(state).getPolicies().size(), sortBy);
+        }
+    }
+}
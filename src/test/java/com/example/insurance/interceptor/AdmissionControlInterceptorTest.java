@@ -0,0 +1,40 @@
+package com.example.insurance.interceptor;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControlInterceptorTest {
+
+    @Test
+    void takesTheHopTheTrustedProxyAppended() {
+        // the client put the first entry there itself
+        assertEquals("203.0.113.7", AdmissionControlInterceptor.clientOf("10.0.0.1, 203.0.113.7", 1));
+        assertEquals("203.0.113.7", AdmissionControlInterceptor.clientOf("203.0.113.7", 1));
+    }
+
+    @Test
+    void skipsTheHopsOfInnerTrustedProxies() {
+        String header = "10.0.0.1,198.51.100.4, 203.0.113.7 ,192.168.1.2";
+
+        assertEquals("192.168.1.2", AdmissionControlInterceptor.clientOf(header, 1));
+        assertEquals("203.0.113.7", AdmissionControlInterceptor.clientOf(header, 2));
+        assertEquals("198.51.100.4", AdmissionControlInterceptor.clientOf(header, 3));
+    }
+
+    @Test
+    void takesTheFirstHopWhenTheRequestPassedFewerProxies() {
+        assertEquals("203.0.113.7", AdmissionControlInterceptor.clientOf("203.0.113.7, 192.168.1.2", 3));
+    }
+
+    @Test
+    void yieldsNothingForAnEmptyHop() {
+        assertEquals("", AdmissionControlInterceptor.clientOf("203.0.113.7, ", 1));
+        assertEquals("", AdmissionControlInterceptor.clientOf("", 1));
+    }
+
+    @Test
+    void rejectsFewerThanOneTrustedProxy() {
+        assertThrows(IllegalArgumentException.class, () -> new AdmissionControlInterceptor(true, 100, 200, "X-Forwarded-For", 0, 0));
+    }
+}
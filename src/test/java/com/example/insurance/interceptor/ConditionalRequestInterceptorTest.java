@@ -0,0 +1,88 @@
+package com.example.insurance.interceptor;
+
+import com.example.insurance.controller.PolicyController;
+import com.example.insurance.exception.GlobalExceptionHandler;
+import com.example.insurance.exception.PolicyNotFoundException;
+import com.example.insurance.model.Policy;
+import com.example.insurance.service.PolicyService;
+import com.example.insurance.service.PolicyWriter;
+import com.example.insurance.service.ShardCoordinator;
+import com.example.insurance.store.PolicyStore;
+import com.example.insurance.store.PolicyView;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class ConditionalRequestInterceptorTest {
+
+    private final PolicyService policyService = mock(PolicyService.class);
+    private final ShardCoordinator shardCoordinator = new ShardCoordinator(new ObjectMapper(), "", 1000);
+    private PolicyView view;
+    private String etag;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        PolicyStore.Builder builder = new PolicyStore.Builder(1);
+        builder.add(1L, "Alpha", "Life", 100, 1000);
+        view = PolicyView.of(builder.build());
+        etag = "\"" + Long.toHexString(view.version()) + "\"";
+        when(policyService.getView()).thenReturn(view);
+        mockMvc = MockMvcBuilders
+                .standaloneSetup(new PolicyController(policyService, mock(PolicyWriter.class), shardCoordinator))
+                .addInterceptors(new ConditionalRequestInterceptor(policyService, shardCoordinator))
+                .setControllerAdvice(new GlobalExceptionHandler(), new ConditionalResponseAdvice())
+                .build();
+    }
+
+    @AfterEach
+    void stopCoordinator() {
+        shardCoordinator.stop();
+    }
+
+    @Test
+    void answersAnUnchangedFilterWithoutRunningTheQuery() throws Exception {
+        mockMvc.perform(get("/policies/filter").param("policyType", "Life").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag));
+
+        verify(policyService).getView();
+        verifyNoMoreInteractions(policyService);
+    }
+
+    @Test
+    void runsAChangedFilterAndTagsIt() throws Exception {
+        mockMvc.perform(get("/policies/filter").param("policyType", "Life").header(HttpHeaders.IF_NONE_MATCH, "\"0\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, etag));
+
+        verify(policyService).filterPolicies(any());
+    }
+
+    @Test
+    void answersAMissingPolicyWith404WhateverTheEtag() throws Exception {
+        when(policyService.getPolicy(999_999)).thenThrow(new PolicyNotFoundException(999_999));
+
+        mockMvc.perform(get("/policies/999999").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotFound())
+                .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void answersAnUnchangedPolicyWith304AfterLookingItUp() throws Exception {
+        when(policyService.getPolicy(1)).thenReturn(new Policy(1L, "Alpha", "Life", 100, 1000));
+
+        mockMvc.perform(get("/policies/1").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.insurance.interceptor;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConditionalResponseAdviceTest {
+
+    private static final String ETAG = "\"2a\"";
+
+    private final ConditionalResponseAdvice advice = new ConditionalResponseAdvice();
+
+    @Test
+    void answersAnUnchangedSuccessfulResponseWithNotModified() {
+        MockHttpServletRequest request = request(ETAG);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertNull(write(List.of("body"), request, response));
+        assertEquals(304, response.getStatus());
+        assertEquals(ETAG, response.getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void tagsAChangedSuccessfulResponse() {
+        MockHttpServletRequest request = request("\"29\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertEquals(List.of("body"), write(List.of("body"), request, response));
+        assertEquals(200, response.getStatus());
+        assertEquals(ETAG, response.getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void leavesErrorsAlone() {
+        MockHttpServletRequest request = request(ETAG);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setStatus(404);
+
+        assertEquals("error", write("error", request, response));
+        assertEquals(404, response.getStatus());
+        assertNull(response.getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void leavesRequestsWithoutAnEtagAlone() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/policies/search");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, ETAG);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertEquals("body", write("body", request, response));
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeader(HttpHeaders.ETAG));
+    }
+
+    private Object write(Object body, MockHttpServletRequest request, MockHttpServletResponse response) {
+        return advice.beforeBodyWrite(body, null, MediaType.APPLICATION_JSON, MappingJackson2HttpMessageConverter.class,
+                new ServletServerHttpRequest(request), new ServletServerHttpResponse(response));
+    }
+
+    private static MockHttpServletRequest request(String ifNoneMatch) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/policies/42");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        request.setAttribute(ConditionalRequestInterceptor.ETAG_ATTRIBUTE, ETAG);
+        return request;
+    }
+}
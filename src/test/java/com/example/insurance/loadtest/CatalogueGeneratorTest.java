@@ -0,0 +1,48 @@
+package com.example.insurance.loadtest;
+
+import com.example.insurance.service.PolicyLoader;
+import com.example.insurance.store.PolicyStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogueGeneratorTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writesACatalogueTheServerLoads() throws Exception {
+        Path file = directory.resolve("policies.json");
+
+        CatalogueGenerator.write(file, 5000, 1.1, 7);
+        PolicyStore store = new PolicyLoader(file.toString(), "", false, "", 0, 1).load();
+
+        assertEquals(5000, store.size());
+        assertTrue(Set.of(CatalogueGenerator.TYPES).containsAll(store.typeNames()));
+        for (int row = 0; row < store.size(); row++) {
+            assertEquals(row + 1, store.id(row));
+            assertTrue(store.premium(row) >= 100);
+            assertTrue(store.coverage(row) >= 0);
+        }
+    }
+
+    @Test
+    void sameArgumentsWriteTheSameFile() throws Exception {
+        Path first = directory.resolve("first.json");
+        Path second = directory.resolve("second.json");
+        Path other = directory.resolve("other.json");
+
+        CatalogueGenerator.write(first, 500, 1.1, 7);
+        CatalogueGenerator.write(second, 500, 1.1, 7);
+        CatalogueGenerator.write(other, 500, 1.1, 8);
+
+        assertEquals(-1, Files.mismatch(first, second));
+        assertNotEquals(-1, Files.mismatch(first, other));
+    }
+}
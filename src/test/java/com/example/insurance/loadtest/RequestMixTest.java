@@ -0,0 +1,92 @@
+package com.example.insurance.loadtest;
+
+import com.example.insurance.controller.PolicyController;
+import com.example.insurance.exception.GlobalExceptionHandler;
+import com.example.insurance.interceptor.RequestValidationInterceptor;
+import com.example.insurance.metrics.QueryStageMetrics;
+import com.example.insurance.service.FacetCalculator;
+import com.example.insurance.service.PolicyLoader;
+import com.example.insurance.service.PolicyService;
+import com.example.insurance.service.PolicyWriter;
+import com.example.insurance.service.QueryPlanner;
+import com.example.insurance.service.QueryResultCache;
+import com.example.insurance.service.ShardCoordinator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+class RequestMixTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void drawsEndpointsInTheirShares() {
+        RequestMix mix = new RequestMix(1.1);
+        SplittableRandom random = new SplittableRandom(3);
+        Map<RequestMix.Endpoint, Integer> counts = new EnumMap<>(RequestMix.Endpoint.class);
+        int draws = 100_000;
+        for (int i = 0; i < draws; i++) {
+            RequestMix.Request request = mix.next(random);
+            assertTrue(request.pathAndQuery().startsWith(request.endpoint().path), request.pathAndQuery());
+            counts.merge(request.endpoint(), 1, Integer::sum);
+        }
+
+        for (RequestMix.Endpoint endpoint : RequestMix.Endpoint.values()) {
+            assertEquals(draws * endpoint.share / 100.0, counts.get(endpoint), draws / 100.0, endpoint.name());
+        }
+    }
+
+    @Test
+    void everyRequestIsAValidRequestThatFindsPolicies() throws Exception {
+        Path file = directory.resolve("policies.json");
+        CatalogueGenerator.write(file, 20_000, 1.1, 5);
+        PolicyLoader policyLoader = new PolicyLoader(file.toString(), "", false, "", 0, 1);
+        QueryPlanner queryPlanner = new QueryPlanner(new QueryStageMetrics());
+        PolicyService policyService = new PolicyService(policyLoader, queryPlanner,
+                new QueryResultCache(queryPlanner, 1000), new FacetCalculator());
+        policyService.loadPolicies();
+        ShardCoordinator shardCoordinator = new ShardCoordinator(new ObjectMapper(), "", 1000);
+        MockMvc mockMvc = MockMvcBuilders
+                .standaloneSetup(new PolicyController(policyService, mock(PolicyWriter.class), shardCoordinator))
+                .addInterceptors(new RequestValidationInterceptor())
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+
+        try {
+            RequestMix mix = new RequestMix(1.1);
+            SplittableRandom random = new SplittableRandom(4);
+            int empty = 0;
+            for (int i = 0; i < 300; i++) {
+                RequestMix.Request request = mix.next(random);
+                // MockMvc does not decode '+' in the query string as a servlet container does
+                String pathAndQuery = request.pathAndQuery().replace("+", "%20");
+                MockHttpServletResponse response = mockMvc.perform(get(URI.create(pathAndQuery)))
+                        .andReturn().getResponse();
+                String body = response.getContentAsString();
+
+                assertEquals(200, response.getStatus(), pathAndQuery + ": " + body);
+                if (body.equals("[]") || body.contains("\"policies\":[]")) {
+                    empty++;
+                }
+            }
+            // the mix is meant to hit real names and types, so nearly every request finds something
+            assertTrue(empty < 30, empty + " of 300 requests found nothing");
+        } finally {
+            shardCoordinator.stop();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.insurance.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZipfDistributionTest {
+
+    private static final int DRAWS = 200_000;
+
+    @Test
+    void zeroSkewIsUniform() {
+        int[] counts = sample(new ZipfDistribution(10, 0), 10);
+
+        for (int count : counts) {
+            assertEquals(DRAWS / 10.0, count, DRAWS / 100.0);
+        }
+    }
+
+    @Test
+    void skewFollowsTheRankWeights() {
+        double skew = 1.2;
+        int[] counts = sample(new ZipfDistribution(20, skew), 20);
+
+        double total = 0;
+        for (int rank = 0; rank < 20; rank++) {
+            total += 1 / Math.pow(rank + 1, skew);
+        }
+        for (int rank = 0; rank < 20; rank++) {
+            double expected = DRAWS / Math.pow(rank + 1, skew) / total;
+            assertEquals(expected, counts[rank], Math.max(expected * 0.05, 100), "rank " + rank);
+        }
+    }
+
+    private static int[] sample(ZipfDistribution distribution, int n) {
+        SplittableRandom random = new SplittableRandom(42);
+        int[] counts = new int[n];
+        for (int i = 0; i < DRAWS; i++) {
+            counts[distribution.sample(random)]++;
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.insurance.metrics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class AccessLogTest {
+
+    @TempDir
+    Path directory;
+
+    private AccessLog accessLog;
+
+    @AfterEach
+    void stopLog() throws Exception {
+        if (accessLog != null) {
+            accessLog.stop();
+        }
+    }
+
+    @Test
+    void writesOneLinePerRecord() throws Exception {
+        Path path = directory.resolve("logs/access.log");
+        accessLog = new AccessLog(path.toString(), 1.0, 16);
+        accessLog.start();
+
+        accessLog.record(0, "GET", "/policies", "page=1", 200, 1_500_000);
+        accessLog.record(0, "GET", "/policies/7", null, 404, 2_000);
+        accessLog.stop();
+
+        assertEquals(List.of("1970-01-01T00:00:00Z GET /policies 200 1500us page=1",
+                "1970-01-01T00:00:00Z GET /policies/7 404 2us -"), Files.readAllLines(path));
+        assertTrue(metrics().contains("outcome=\"written\"} 2\n"));
+    }
+
+    @Test
+    void countsRecordsItCannotWriteAsDroppedAndKeepsGoing() throws Exception {
+        Path full = Path.of("/dev/full");
+        assumeTrue(Files.isWritable(full), "needs /dev/full");
+        accessLog = new AccessLog(full.toString(), 1.0, 16);
+        accessLog.start();
+
+        accessLog.record(0, "GET", "/policies", null, 200, 1_000);
+        await("outcome=\"dropped\"} 1\n");
+        // records after the failure are still taken off the buffer and counted
+        for (int i = 0; i < 40; i++) {
+            accessLog.record(0, "GET", "/policies", null, 200, 1_000);
+        }
+        await("outcome=\"dropped\"} 41\n");
+        assertTrue(metrics().contains("outcome=\"written\"} 0\n"));
+    }
+
+    private void await(String metric) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!metrics().contains(metric)) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for " + metric.trim() + " in " + metrics());
+            Thread.sleep(10);
+        }
+    }
+
+    private String metrics() {
+        StringBuilder out = new StringBuilder();
+        accessLog.writeTo(out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.insurance.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void bucketsAreCumulativeAndInclusiveOfTheirBound() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(0);
+        histogram.record(1024);
+        histogram.record(1025);
+        histogram.record(2048);
+        histogram.record(1_000_000);
+        String out = write(histogram, "");
+
+        assertTrue(out.contains("latency_bucket{le=\"0.000001024\"} 2\n"), out);
+        assertTrue(out.contains("latency_bucket{le=\"0.000002048\"} 4\n"), out);
+        assertTrue(out.contains("latency_bucket{le=\"0.000524288\"} 4\n"), out);
+        assertTrue(out.contains("latency_bucket{le=\"0.001048576\"} 5\n"), out);
+        assertTrue(out.contains("latency_bucket{le=\"+Inf\"} 5\n"), out);
+        assertTrue(out.contains("latency_sum 0.001004098\n"), out);
+        assertTrue(out.contains("latency_count 5\n"), out);
+    }
+
+    @Test
+    void durationsPastTheLastBoundOnlyCountInInf() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(60_000_000_000L);
+        String out = write(histogram, "stage=\"sort\"");
+
+        assertTrue(out.contains("latency_bucket{stage=\"sort\",le=\"17.179869184\"} 0\n"), out);
+        assertTrue(out.contains("latency_bucket{stage=\"sort\",le=\"+Inf\"} 1\n"), out);
+        assertTrue(out.contains("latency_sum{stage=\"sort\"} 60.000000000\n"), out);
+        assertTrue(out.contains("latency_count{stage=\"sort\"} 1\n"), out);
+    }
+
+    private static String write(LatencyHistogram histogram, String labels) {
+        StringBuilder out = new StringBuilder();
+        histogram.writeTo(out, "latency", labels);
+        return out.toString();
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.insurance.metrics;
+
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestMetricsFilterTest {
+
+    private final RequestMetrics requestMetrics = new RequestMetrics();
+    private final RequestMetricsFilter filter = new RequestMetricsFilter(requestMetrics, new AccessLog("", 1.0, 16));
+
+    @Test
+    void recordsRequestsUnderTheirHandlerPattern() throws Exception {
+        for (String id : new String[]{"1", "2", "3"}) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/policies/" + id);
+            filter.doFilter(request, new MockHttpServletResponse(), (req, res) ->
+                    req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/policies/{id}"));
+        }
+        MockHttpServletResponse notFound = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/nowhere"), notFound, (req, res) -> notFound.setStatus(404));
+
+        String out = metrics();
+        assertTrue(out.contains("insurance_http_requests_total{method=\"GET\",uri=\"/policies/{id}\",status=\"2xx\"} 3\n"), out);
+        assertTrue(out.contains("insurance_http_requests_total{method=\"GET\",uri=\"UNMATCHED\",status=\"4xx\"} 1\n"), out);
+        assertTrue(out.contains("insurance_http_request_duration_seconds_count{method=\"GET\",uri=\"/policies/{id}\"} 3\n"), out);
+        assertFalse(out.contains("/policies/1"), out);
+    }
+
+    @Test
+    void countsAFailedRequestAsAServerError() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/policies");
+
+        assertThrows(ServletException.class, () -> filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            throw new ServletException("handler failed");
+        }));
+
+        assertTrue(metrics().contains("method=\"POST\",uri=\"UNMATCHED\",status=\"5xx\"} 1\n"));
+    }
+
+    @Test
+    void foldsUnknownMethodsIntoOne() throws Exception {
+        filter.doFilter(new MockHttpServletRequest("BREW", "/"), new MockHttpServletResponse(), new MockFilterChain());
+        filter.doFilter(new MockHttpServletRequest("WHEN", "/"), new MockHttpServletResponse(), new MockFilterChain());
+
+        assertTrue(metrics().contains("method=\"OTHER\",uri=\"UNMATCHED\",status=\"2xx\"} 2\n"));
+    }
+
+    @Test
+    void recordsAnAsyncRequestOnlyWhenItCompletes() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/policies/export");
+        request.setAsyncSupported(true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, (req, res) -> req.startAsync());
+        assertFalse(metrics().contains("/policies/export"));
+
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/policies/export");
+        ((MockAsyncContext) request.getAsyncContext()).complete();
+        assertTrue(metrics().contains("method=\"GET\",uri=\"/policies/export\",status=\"2xx\"} 1\n"));
+    }
+
+    private String metrics() {
+        StringBuilder out = new StringBuilder();
+        requestMetrics.writeTo(out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.insurance.service;
+
+import com.example.insurance.exception.InvalidRequestException;
+import com.example.insurance.metrics.QueryStageMetrics;
+import com.example.insurance.model.Policy;
+import com.example.insurance.model.PolicyQuery;
+import com.example.insurance.store.PolicyChange;
+import com.example.insurance.store.PolicyStore;
+import com.example.insurance.store.PolicyView;
+import com.example.insurance.store.RowKey;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PolicyCursorTest {
+
+    private final QueryPlanner queryPlanner = new QueryPlanner(new QueryStageMetrics());
+
+    @Test
+    void roundTripsTheRowKey() {
+        PolicyView view = PolicyView.of(store(10));
+        PolicyQuery query = query("name", "desc");
+        RowKey key = queryPlanner.keyOf(view, query, 3);
+
+        PolicyCursor decoded = PolicyCursor.decode(PolicyCursor.encode(view, query, key), view, query);
+
+        assertEquals(key, decoded.getRowKey());
+        assertEquals(view.base().version(), decoded.getVersion());
+    }
+
+    @Test
+    void rejectsCursorsOfOtherQueriesAndMalformedOnes() {
+        PolicyView view = PolicyView.of(store(10));
+        String cursor = PolicyCursor.encode(view, query("premium", "asc"), queryPlanner.keyOf(view, query("premium", "asc"), 0));
+
+        assertThrows(InvalidRequestException.class, () -> PolicyCursor.decode(cursor, view, query("premium", "desc")));
+        assertThrows(InvalidRequestException.class, () -> PolicyCursor.decode("not a cursor", view, query("premium", "asc")));
+        assertThrows(InvalidRequestException.class, () -> PolicyCursor.decode(cursor.substring(0, 10), view, query("premium", "asc")));
+    }
+
+    @Test
+    void survivesWritesButNotANewBase() {
+        PolicyStore store = store(10);
+        PolicyView view = PolicyView.of(store);
+        PolicyQuery query = query("premium", "asc");
+        String cursor = PolicyCursor.encode(view, query, queryPlanner.keyOf(view, query, 0));
+
+        PolicyView written = view.withChanges(List.of(PolicyChange.delete(1)));
+        assertNotNull(PolicyCursor.decode(cursor, written, query));
+        PolicyView folded = PolicyView.of(written.fold());
+        assertThrows(InvalidRequestException.class, () -> PolicyCursor.decode(cursor, folded, query));
+    }
+
+    @Test
+    void pagesResumeAfterTheLastRowWhileWritesArePublished() {
+        PolicyView view = PolicyView.of(store(20));
+        PolicyQuery query = query("premium", "desc");
+        List<Long> seen = new ArrayList<>();
+        String cursor = null;
+        long nextId = 100;
+        do {
+            RowKey after = cursor == null ? null : PolicyCursor.decode(cursor, view, query).getRowKey();
+            QueryPlanner.RowPage page = queryPlanner.pageAfter(view, query, after, 3);
+            int[] rows = page.rows();
+            for (int row : rows) {
+                seen.add(view.id(row));
+            }
+            cursor = page.hasMore() ? PolicyCursor.encode(view, query, queryPlanner.keyOf(view, query, rows[rows.length - 1])) : null;
+            // rows added before the cursor are not listed, rows after it are; the last listed row moving does not matter
+            view = view.withChanges(List.of(
+                    PolicyChange.upsert(nextId++, new Policy(null, "Top", "Life", 1_000_000, 1)),
+                    PolicyChange.upsert(nextId++, new Policy(null, "Bottom", "Life", -1, 1)),
+                    PolicyChange.upsert(view.id(rows[rows.length - 1]), new Policy(null, "Moved", "Life", 500_000, 1))));
+        } while (cursor != null);
+
+        List<Long> expected = new ArrayList<>();
+        for (long id = 20; id >= 1; id--) {
+            expected.add(id);
+        }
+        assertEquals(expected, seen.subList(0, 20));
+        assertTrue(seen.subList(20, seen.size()).stream().allMatch(id -> id >= 100 && id % 2 == 1));
+    }
+
+    @Test
+    void pagingTheCompleteResultMatchesEvaluatingEachPage() {
+        PolicyView view = PolicyView.of(store(30)).withChanges(List.of(
+                PolicyChange.delete(12),
+                PolicyChange.upsert(100, new Policy(null, "Policy 1x", "Life", 155, 1)),
+                PolicyChange.upsert(15, new Policy(null, "Policy 15", "Life", 5, 1))));
+        for (String sortBy : new String[]{null, "premium", "name"}) {
+            PolicyQuery query = query(sortBy, sortBy == null ? null : "desc");
+            query.setName("policy 1");
+            int[] all = queryPlanner.execute(view, query);
+            for (int row : all) {
+                RowKey key = queryPlanner.keyOf(view, query, row);
+                QueryPlanner.RowPage evaluated = queryPlanner.pageAfter(view, query, key, 3);
+                QueryPlanner.RowPage cut = queryPlanner.pageAfter(view, query, all, key, 3);
+
+                assertArrayEquals(evaluated.rows(), cut.rows(), sortBy + " after row " + row);
+                assertEquals(evaluated.hasMore(), cut.hasMore());
+            }
+        }
+    }
+
+    @Test
+    void pagesListEveryRowOnceAcrossTies() {
+        PolicyStore.Builder builder = new PolicyStore.Builder(50);
+        for (int i = 1; i <= 50; i++) {
+            builder.add((long) i, "Policy " + (i % 4), "Life", i % 3 == 0 ? null : (i % 5) * 100, 1);
+        }
+        PolicyView view = PolicyView.of(builder.build());
+        for (String sortBy : new String[]{null, "premium", "name"}) {
+            for (String sortOrder : new String[]{"asc", "desc"}) {
+                PolicyQuery query = query(sortBy, sortOrder);
+                List<Integer> listed = new ArrayList<>();
+                RowKey after = null;
+                QueryPlanner.RowPage page;
+                do {
+                    page = queryPlanner.pageAfter(view, query, after, 4);
+                    for (int row : page.rows()) {
+                        listed.add(row);
+                    }
+                    after = page.rows().length == 0 ? null : queryPlanner.keyOf(view, query, page.rows()[page.rows().length - 1]);
+                } while (page.hasMore());
+
+                assertEquals(Arrays.stream(queryPlanner.execute(view, query)).boxed().toList(), listed, sortBy + " " + sortOrder);
+            }
+        }
+    }
+
+    private static PolicyStore store(int size) {
+        PolicyStore.Builder builder = new PolicyStore.Builder(size);
+        for (int i = 1; i <= size; i++) {
+            builder.add((long) i, "Policy " + i, "Life", i * 10, i * 100);
+        }
+        return builder.build();
+    }
+
+    private static PolicyQuery query(String sortBy, String sortOrder) {
+        PolicyQuery query = new PolicyQuery();
+        query.setSortBy(sortBy);
+        query.setSortOrder(sortOrder);
+        return query;
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.insurance.service;
+
+import com.example.insurance.exception.PolicyLoadException;
+import com.example.insurance.store.PolicyStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PolicyLoaderTest {
+
+    private static final String CATALOGUE = """
+            [{"id": 1, "name": "Alpha", "type": "Health", "premium": 100, "coverage": 1000},
+             {"id": 2, "name": "Beta", "type": "Life", "premium": 200, "coverage": 2000}]
+            """;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsPoliciesSkippingUnknownFields() throws Exception {
+        PolicyStore store = parse("""
+                [{"id": 1, "name": "Alpha", "extra": {"nested": [1, 2]}, "type": "Health", "premium": 100, "coverage": 1000},
+                 {"id": null, "name": null, "type": null, "premium": null},
+                 {}]
+                """);
+
+        assertEquals(3, store.size());
+        assertEquals("Alpha", store.name(0));
+        assertEquals(1000, store.coverage(0));
+        assertEquals(PolicyStore.NULL_LONG, store.id(1));
+        assertEquals(PolicyStore.NULL_INT, store.premium(1));
+        assertEquals(PolicyStore.NULL_INT, store.coverage(2));
+        assertEquals(0, parse("[]").size());
+    }
+
+    @Test
+    void malformedInputNamesTheLocation() {
+        assertInvalid("{\"id\": 1}", "line 1, column 2: expected a JSON array of policies");
+        assertInvalid("[1]", "expected a policy object");
+        assertInvalid("[{\"id\": 1}]\n[]", "line 2, column 2: expected end of input after the policy array");
+        assertInvalid("[{\"premium\": \"100\"}]", "expected a 32-bit integer for 'premium'");
+        assertInvalid("[{\"coverage\": 3000000000}]", "expected a 32-bit integer for 'coverage'");
+        assertInvalid("[{\"id\": 1.5}]", "expected an integer for 'id'");
+        assertInvalid("[{\"id\": 99999999999999999999}]", "expected an integer for 'id'");
+        assertInvalid("[{\"name\": 7}]", "expected a string for 'name'");
+    }
+
+    @Test
+    void truncatedInputFailsTheLoad() throws Exception {
+        assertThrows(IOException.class, () -> parse("[{\"id\": 1, \"name\": \"Al"));
+
+        Path dataPath = write("[{\"id\": 1}, {\"id\"");
+        PolicyLoadException e = assertThrows(PolicyLoadException.class, () -> loader(dataPath).load());
+        assertTrue(e.getMessage().contains(dataPath.toString()), e.getMessage());
+        assertThrows(PolicyLoadException.class, () -> loader(directory.resolve("missing.json")).load());
+    }
+
+    @Test
+    void compactionReplacesTheFileItLoaded() throws Exception {
+        Path dataPath = write(CATALOGUE);
+        Path segment = Files.writeString(directory.resolve("policies.json.journal.1"), "");
+        PolicyLoader policyLoader = loader(dataPath);
+        PolicyStore store = policyLoader.load();
+
+        assertTrue(policyLoader.writeBase(store, List.of(segment)));
+
+        assertTrue(policyLoader.isWrittenBase());
+        assertFalse(Files.exists(segment));
+        assertEquals(2, loader(dataPath).load().size());
+    }
+
+    @Test
+    void compactionLeavesAnEditedFileAlone() throws Exception {
+        Path dataPath = write(CATALOGUE);
+        Path segment = Files.writeString(directory.resolve("policies.json.journal.1"), "");
+        PolicyLoader policyLoader = loader(dataPath);
+        PolicyStore store = policyLoader.load();
+        String edited = CATALOGUE.replace("Beta", "Beta edited");
+        Files.writeString(dataPath, edited);
+
+        assertFalse(policyLoader.writeBase(store, List.of(segment)));
+
+        assertEquals(edited, Files.readString(dataPath));
+        assertFalse(policyLoader.isWrittenBase());
+        assertTrue(Files.exists(segment));
+        try (var files = Files.list(directory)) {
+            assertTrue(files.noneMatch(file -> file.toString().endsWith(".tmp")));
+        }
+    }
+
+    @Test
+    void snapshotIsUsedWithoutReadingAnUnchangedFile() throws Exception {
+        Path dataPath = write(CATALOGUE);
+        loader(dataPath).load();
+        FileTime modified = Files.getLastModifiedTime(dataPath);
+        // same size and modification time but no longer JSON: only a snapshot load can succeed
+        Files.writeString(dataPath, "x".repeat(CATALOGUE.length()));
+        Files.setLastModifiedTime(dataPath, modified);
+
+        PolicyStore store = loader(dataPath).load();
+
+        assertEquals(2, store.size());
+        assertEquals("Beta", store.name(store.rowOfId(2)));
+    }
+
+    @Test
+    void snapshotIsIgnoredOnceTheFileIsTouched() throws Exception {
+        Path dataPath = write(CATALOGUE);
+        loader(dataPath).load();
+        FileTime modified = Files.getLastModifiedTime(dataPath);
+        Files.writeString(dataPath, CATALOGUE.replace("Beta", "Zeta"));
+        Files.setLastModifiedTime(dataPath, FileTime.fromMillis(modified.toMillis() + 1000));
+
+        PolicyStore store = loader(dataPath).load();
+
+        assertEquals("Zeta", store.name(store.rowOfId(2)));
+    }
+
+    @Test
+    void shardsSplitTheCatalogueEvenlyAndKeepTheirOwnSnapshots() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 1; i <= 3000; i++) {
+            // ids sharing the shard count as a stride still have to spread
+            json.append(i == 1 ? "" : ",").append("{\"id\": ").append(3L * i).append(", \"name\": \"Policy ").append(i).append("\"}");
+        }
+        Path dataPath = write(json.append(']').toString());
+
+        Set<Long> seen = new HashSet<>();
+        for (int shard = 0; shard < 3; shard++) {
+            PolicyLoader shardLoader = new PolicyLoader(dataPath.toString(), "", true, "", shard, 3);
+            shardLoader.load();
+            PolicyStore store = shardLoader.load();
+
+            assertTrue(store.size() > 900 && store.size() < 1100, "shard " + shard + " holds " + store.size());
+            for (int row = 0; row < store.size(); row++) {
+                assertEquals(shard, PolicyLoader.shardOf(store.id(row), 3));
+                assertTrue(seen.add(store.id(row)));
+            }
+        }
+        assertEquals(3000, seen.size());
+        assertTrue(Files.exists(Path.of(dataPath + ".shard-2-of-3.snapshot")));
+    }
+
+    private static PolicyStore parse(String json) throws IOException {
+        return new PolicyLoader("", "", false, "", 0, 1)
+                .read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), "test");
+    }
+
+    private static void assertInvalid(String json, String message) {
+        PolicyLoadException e = assertThrows(PolicyLoadException.class, () -> parse(json));
+        assertTrue(e.getMessage().contains(message), e.getMessage());
+    }
+
+    private PolicyLoader loader(Path dataPath) {
+        return new PolicyLoader(dataPath.toString(), "", true, "", 0, 1);
+    }
+
+    private Path write(String json) throws Exception {
+        return Files.writeString(directory.resolve("policies.json"), json);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.insurance.service;
+
+import com.example.insurance.exception.PolicyLoadException;
+import com.example.insurance.metrics.QueryStageMetrics;
+import com.example.insurance.model.PolicyQuery;
+import com.example.insurance.store.PolicyStore;
+import com.example.insurance.store.PolicyView;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PolicyReloaderTest {
+
+    private static final String CATALOGUE = """
+            [{"id": 1, "name": "Alpha", "type": "Health", "premium": 100, "coverage": 1000},
+             {"id": 2, "name": "Beta", "type": "Life", "premium": 200, "coverage": 2000}]
+            """;
+
+    @TempDir
+    Path directory;
+
+    private PolicyReloader policyReloader;
+
+    @AfterEach
+    void stop() throws Exception {
+        if (policyReloader != null) {
+            policyReloader.stop();
+        }
+    }
+
+    @Test
+    void reloadSwapsInTheNewCatalogueWithoutTouchingTheOldView() throws Exception {
+        Path dataPath = Files.writeString(directory.resolve("policies.json"), CATALOGUE);
+        PolicyService policyService = start(dataPath, false);
+        PolicyView before = policyService.getView();
+        Files.writeString(dataPath, CATALOGUE.replace("]", ", {\"id\": 3, \"name\": \"Gamma\"}]"));
+
+        PolicyStore reloaded = policyReloader.requestReload().get(10, TimeUnit.SECONDS);
+
+        assertSame(reloaded, policyService.getView().base());
+        assertEquals(3, policyService.getView().size());
+        assertNotEquals(before.version(), policyService.getView().version());
+        // a request still holding the previous view keeps answering from it
+        assertEquals(2, before.size());
+        assertEquals("Beta", before.policyAt(before.rowOfId(2)).getName());
+        assertEquals(3, policyService.filterPolicies(new PolicyQuery()).size());
+    }
+
+    @Test
+    void malformedFileKeepsTheCurrentCatalogue() throws Exception {
+        Path dataPath = Files.writeString(directory.resolve("policies.json"), CATALOGUE);
+        PolicyService policyService = start(dataPath, false);
+        PolicyView before = policyService.getView();
+        Files.writeString(dataPath, "[{\"id\": \"one\"}]");
+
+        CompletionException e = assertThrows(CompletionException.class, () -> policyReloader.requestReload().join());
+
+        assertInstanceOf(PolicyLoadException.class, e.getCause());
+        assertSame(before, policyService.getView());
+    }
+
+    @Test
+    void changingTheFileTriggersAReload() throws Exception {
+        Path dataPath = Files.writeString(directory.resolve("policies.json"), CATALOGUE);
+        PolicyService policyService = start(dataPath, true);
+
+        Files.writeString(dataPath, CATALOGUE.replace("Beta", "Beta 2"));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        PolicyView view;
+        while ((view = policyService.getView()).policyAt(view.rowOfId(2)).getName().equals("Beta")) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for the reload");
+            Thread.sleep(20);
+        }
+        assertEquals("Beta 2", view.policyAt(view.rowOfId(2)).getName());
+    }
+
+    private PolicyService start(Path dataPath, boolean watchEnabled) throws Exception {
+        PolicyLoader policyLoader = new PolicyLoader(dataPath.toString(), "", false, "", 0, 1);
+        QueryPlanner queryPlanner = new QueryPlanner(new QueryStageMetrics());
+        PolicyService policyService = new PolicyService(policyLoader, queryPlanner,
+                new QueryResultCache(queryPlanner, 1000), new FacetCalculator());
+        policyService.loadPolicies();
+        policyReloader = new PolicyReloader(policyService, policyLoader, watchEnabled);
+        policyReloader.startWatching();
+        return policyService;
+    }
+}
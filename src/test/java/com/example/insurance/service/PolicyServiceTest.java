@@ -0,0 +1,187 @@
+package com.example.insurance.service;
+
+import com.example.insurance.exception.InvalidRequestException;
+import com.example.insurance.metrics.QueryStageMetrics;
+import com.example.insurance.model.Policy;
+import com.example.insurance.model.PolicyBatchQuery;
+import com.example.insurance.model.PolicyBatchResult;
+import com.example.insurance.model.PolicyQuery;
+import com.example.insurance.store.PolicyChange;
+import com.example.insurance.store.PolicyRows;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PolicyServiceTest {
+
+    private static final String[] TYPES = {"Health", "Life", "Auto", "Home"};
+    private static final int SIZE = 5000;
+
+    @TempDir
+    Path directory;
+
+    private Path dataPath;
+    private PolicyService policyService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dataPath = directory.resolve("policies.json");
+        writeCatalogue(new Random(12), SIZE);
+        PolicyLoader policyLoader = new PolicyLoader(dataPath.toString(), "", false, "", 0, 1);
+        QueryPlanner queryPlanner = new QueryPlanner(new QueryStageMetrics());
+        policyService = new PolicyService(policyLoader, queryPlanner, new QueryResultCache(queryPlanner, 1000), new FacetCalculator());
+        policyService.loadPolicies();
+    }
+
+    @Test
+    void exportListsWhatFilterLists() {
+        policyService.applyChanges(List.of(
+                PolicyChange.delete(10),
+                PolicyChange.upsert(SIZE + 1, new Policy(null, "Added Plus", "Life", 450, 90_000)),
+                PolicyChange.upsert(20, new Policy(null, "Moved Plus", "Auto", 1, 1))));
+        for (PolicyQuery query : List.of(
+                new PolicyQuery(),
+                new PolicyQuery(null, null, "Life", null, null, null, null),
+                new PolicyQuery(100, 600, null, 20_000, "desc", null, "premium"),
+                new PolicyQuery(null, null, null, null, "asc", "plus", "name"))) {
+            assertEquals(ids(policyService.filterPolicies(query)), ids(export(query)), query.toString());
+        }
+    }
+
+    @Test
+    void exportKeepsReadingTheCatalogueItStartedOn() throws Exception {
+        Iterator<PolicyRows> chunks = policyService.exportPolicies(new PolicyQuery());
+        List<Policy> exported = new ArrayList<>(chunks.next());
+
+        writeCatalogue(new Random(13), 10);
+        policyService.reloadPolicies();
+        chunks.forEachRemaining(exported::addAll);
+
+        assertEquals(SIZE, exported.size());
+        assertEquals(10, policyService.getView().size());
+    }
+
+    @Test
+    void ndjsonHasOnePolicyPerLine() throws Exception {
+        PolicyQuery query = new PolicyQuery(null, null, "Home", null, null, null, null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Iterator<PolicyRows> chunks = policyService.exportPolicies(query); chunks.hasNext(); ) {
+            chunks.next().writeNdjson(out);
+        }
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        List<Policy> expected = policyService.filterPolicies(query);
+        assertEquals(expected.size(), lines.length);
+        ObjectMapper objectMapper = new ObjectMapper();
+        for (int i = 0; i < lines.length; i++) {
+            Policy policy = objectMapper.readValue(lines[i], Policy.class);
+            assertEquals(expected.get(i).getId(), policy.getId());
+            assertEquals(expected.get(i).getName(), policy.getName());
+            assertEquals("Home", policy.getType());
+        }
+    }
+
+    @Test
+    void batchQueryAnswersEachQueryAsFilterDoes() {
+        Random random = new Random(14);
+        for (int round = 0; round < 2; round++) {
+            if (round == 1) {
+                policyService.applyChanges(List.of(
+                        PolicyChange.delete(3),
+                        PolicyChange.upsert(SIZE + 1, new Policy(null, "Added Gold", "Home", 500, 50_000)),
+                        PolicyChange.upsert(7, new Policy(null, "Moved Gold", "Life", 999, 99_999))));
+            }
+            List<PolicyBatchQuery> queries = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                PolicyBatchQuery query = new PolicyBatchQuery();
+                query.setId(i % 5 == 0 ? null : "q" + i);
+                if (random.nextBoolean()) {
+                    int min = random.nextInt(1000);
+                    query.setMinPremium(min);
+                    query.setMaxPremium(min + random.nextInt(random.nextBoolean() ? 20 : 800));
+                }
+                if (random.nextInt(3) == 0) {
+                    query.setPolicyType(TYPES[random.nextInt(TYPES.length)]);
+                }
+                if (random.nextInt(3) == 0) {
+                    query.setMinCoverage(random.nextInt(100_000));
+                }
+                if (random.nextInt(4) == 0) {
+                    query.setName(random.nextBoolean() ? "gold" : "Term Ca");
+                }
+                if (random.nextBoolean()) {
+                    query.setSortBy(random.nextBoolean() ? "premium" : "name");
+                    query.setSortOrder(random.nextBoolean() ? "asc" : "desc");
+                }
+                query.setLimit(random.nextInt(3) == 0 ? null : 1 + random.nextInt(100));
+                queries.add(query);
+            }
+
+            PolicyBatchResult result = policyService.batchQuery(queries);
+
+            assertEquals(queries.size(), result.size());
+            for (int i = 0; i < queries.size(); i++) {
+                PolicyBatchQuery query = queries.get(i);
+                List<Policy> expected = policyService.filterPolicies(query);
+                if (query.getLimit() != null && expected.size() > query.getLimit()) {
+                    expected = expected.subList(0, query.getLimit());
+                }
+                String id = query.getId() == null ? String.valueOf(i) : query.getId();
+                assertEquals(ids(expected), ids(result.get(id)), query.toString());
+            }
+        }
+    }
+
+    @Test
+    void batchQueryRejectsInvalidBatches() {
+        PolicyBatchQuery first = new PolicyBatchQuery();
+        first.setId("a");
+        PolicyBatchQuery duplicate = new PolicyBatchQuery();
+        duplicate.setId("a");
+        PolicyBatchQuery zeroLimit = new PolicyBatchQuery();
+        zeroLimit.setLimit(0);
+
+        assertThrows(InvalidRequestException.class, () -> policyService.batchQuery(List.of()));
+        assertThrows(InvalidRequestException.class, () -> policyService.batchQuery(List.of(first, duplicate)));
+        assertThrows(InvalidRequestException.class, () -> policyService.batchQuery(List.of(zeroLimit)));
+        assertThrows(InvalidRequestException.class, () -> policyService.batchQuery(
+                Collections.nCopies(PolicyService.MAX_BATCH_QUERIES + 1, new PolicyBatchQuery())));
+    }
+
+    private List<Policy> export(PolicyQuery query) {
+        List<Policy> exported = new ArrayList<>();
+        policyService.exportPolicies(query).forEachRemaining(exported::addAll);
+        return exported;
+    }
+
+    private static List<Long> ids(List<Policy> policies) {
+        return policies.stream().map(Policy::getId).toList();
+    }
+
+    private void writeCatalogue(Random random, int size) throws Exception {
+        String[] words = {"Family", "Basic", "Plus", "Term", "Gold", "Care"};
+        StringBuilder json = new StringBuilder("[");
+        for (int id = 1; id <= size; id++) {
+            json.append(id == 1 ? "" : ",\n")
+                    .append("{\"id\": ").append(id)
+                    .append(", \"name\": \"").append(words[random.nextInt(words.length)]).append(' ').append(words[random.nextInt(words.length)])
+                    .append("\", \"type\": \"").append(TYPES[random.nextInt(TYPES.length)])
+                    .append("\", \"premium\": ").append(random.nextInt(1000))
+                    .append(", \"coverage\": ").append(random.nextInt(100_000)).append('}');
+        }
+        Files.writeString(dataPath, json.append(']').toString());
+    }
+}
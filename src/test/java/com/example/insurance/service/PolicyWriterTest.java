@@ -0,0 +1,144 @@
+package com.example.insurance.service;
+
+import com.example.insurance.exception.PolicyNotFoundException;
+import com.example.insurance.exception.ReadOnlyCatalogueException;
+import com.example.insurance.metrics.QueryStageMetrics;
+import com.example.insurance.model.Policy;
+import com.example.insurance.model.PolicyQuery;
+import com.example.insurance.store.PolicyJournal;
+import com.example.insurance.store.PolicyStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PolicyWriterTest {
+
+    @TempDir
+    Path directory;
+
+    private PolicyWriter policyWriter;
+
+    @AfterEach
+    void stopWriter() throws Exception {
+        if (policyWriter != null) {
+            policyWriter.stop();
+        }
+    }
+
+    @Test
+    void writesAreVisibleAndSurviveARestart() throws Exception {
+        Path dataPath = catalogue();
+        PolicyService policyService = start(dataPath, 0);
+
+        Policy created = policyWriter.create(new Policy(null, "Delta", "Auto", 400, 4000));
+        assertFalse(policyWriter.put(3, new Policy(null, "Gamma 2", "Auto", 350, 3500)));
+        policyWriter.delete(1);
+        await(() -> policyService.getView().rowOfId(1) < 0);
+
+        assertEquals(4L, created.getId());
+        assertEquals("Delta", policyService.getPolicy(4).getName());
+        assertEquals("Gamma 2", policyService.getPolicy(3).getName());
+        assertThrows(PolicyNotFoundException.class, () -> policyWriter.delete(1));
+
+        policyWriter.stop();
+        policyWriter = null;
+        PolicyStore reloaded = loader(dataPath).load();
+        assertEquals(3, reloaded.size());
+        assertEquals(-1, reloaded.rowOfId(1));
+        assertEquals("Gamma 2", reloaded.policyAt(reloaded.rowOfId(3)).getName());
+    }
+
+    @Test
+    void compactionFoldsSealedChangesIntoTheDataFileAndRebasesTheView() throws Exception {
+        Path dataPath = catalogue();
+        PolicyService policyService = start(dataPath, 5);
+        PolicyStore initialBase = policyService.getView().base();
+
+        for (int i = 0; i < 12; i++) {
+            policyWriter.create(new Policy(null, "Created " + i, "Pet", 10 * i, 100 * i));
+        }
+        Path journalPath = Path.of(dataPath + ".journal");
+        await(() -> policyService.getView().base() != initialBase && PolicyJournal.segments(journalPath).isEmpty());
+
+        // the view lists the same policies whether or not their changes are folded yet
+        assertEquals(15, policyService.getView().size());
+        assertEquals(15, policyService.getFacets(new PolicyQuery()).getTotal());
+        assertEquals(12, policyService.getFacets(new PolicyQuery()).getTypes().get("Pet"));
+        for (long id = 4; id <= 15; id++) {
+            assertEquals("Created " + (id - 4), policyService.getPolicy(id).getName());
+        }
+        String data = Files.readString(dataPath);
+        assertTrue(data.contains("\"Created 0\""), data);
+
+        // a compaction leaves a catalogue that loads to the same contents
+        policyWriter.stop();
+        policyWriter = null;
+        PolicyStore reloaded = loader(dataPath).load();
+        assertEquals(15, reloaded.size());
+        assertEquals("Created 11", reloaded.policyAt(reloaded.rowOfId(15)).getName());
+    }
+
+    @Test
+    void coordinatorRejectsWrites() throws Exception {
+        Path dataPath = catalogue();
+        ShardCoordinator shardCoordinator = new ShardCoordinator(new ObjectMapper(), "http://shard-0,http://shard-1", 1000);
+        try {
+            PolicyService policyService = start(dataPath, 0, shardCoordinator);
+
+            assertThrows(ReadOnlyCatalogueException.class, () -> policyWriter.create(new Policy(null, "Delta", "Auto", 400, 4000)));
+            assertThrows(ReadOnlyCatalogueException.class, () -> policyWriter.delete(1));
+            assertEquals(3, policyService.getView().size());
+            assertFalse(Files.exists(Path.of(dataPath + ".journal")));
+        } finally {
+            shardCoordinator.stop();
+        }
+    }
+
+    private PolicyService start(Path dataPath, long compactAfter) throws Exception {
+        return start(dataPath, compactAfter, new ShardCoordinator(new ObjectMapper(), "", 1000));
+    }
+
+    private PolicyService start(Path dataPath, long compactAfter, ShardCoordinator shardCoordinator) throws Exception {
+        PolicyLoader policyLoader = loader(dataPath);
+        QueryPlanner queryPlanner = new QueryPlanner(new QueryStageMetrics());
+        PolicyService policyService = new PolicyService(policyLoader, queryPlanner,
+                new QueryResultCache(queryPlanner, 1000), new FacetCalculator());
+        policyService.loadPolicies();
+        policyWriter = new PolicyWriter(policyService, policyLoader, shardCoordinator, compactAfter);
+        policyWriter.start();
+        return policyService;
+    }
+
+    private PolicyLoader loader(Path dataPath) {
+        return new PolicyLoader(dataPath.toString(), "", true, "", 0, 1);
+    }
+
+    private Path catalogue() throws Exception {
+        Path dataPath = directory.resolve("policies.json");
+        Files.writeString(dataPath, """
+                [{"id": 1, "name": "Alpha", "type": "Health", "premium": 100, "coverage": 1000},
+                 {"id": 2, "name": "Beta", "type": "Life", "premium": 200, "coverage": 2000},
+                 {"id": 3, "name": "Gamma", "type": "Auto", "premium": 300, "coverage": 3000}]
+                """);
+        return dataPath;
+    }
+
+    private static void await(ThrowingCondition condition) throws Exception {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!condition.holds()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for the writer");
+            Thread.sleep(10);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ThrowingCondition {
+        boolean holds() throws Exception;
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.insurance.service;
+
+import com.example.insurance.metrics.QueryStageMetrics;
+import com.example.insurance.model.PolicyQuery;
+import com.example.insurance.store.PolicyStore;
+import com.example.insurance.store.PolicyView;
+import com.example.insurance.store.RowKey;
+import com.example.insurance.store.SortPermutation;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryPlannerTest {
+
+    private static final String[] TYPES = {"Health", "Life", "Auto", "Home"};
+    private static final String[] WORDS = {"Family", "Basic", "Plus", "Term", "Senior", "Care", "Shield", "Gold"};
+
+    private final QueryPlanner queryPlanner = new QueryPlanner(new QueryStageMetrics());
+
+    @Test
+    void plansMatchABruteForceScan() {
+        Random random = new Random(7);
+        PolicyStore store = store(random, 2000);
+        PolicyView view = PolicyView.of(store);
+        for (int i = 0; i < 500; i++) {
+            PolicyQuery query = query(random, store);
+
+            assertArrayEquals(scan(store, query), queryPlanner.execute(view, query), query.toString());
+        }
+    }
+
+    @Test
+    void sortedPlansFollowThePrecomputedOrdering() {
+        Random random = new Random(11);
+        PolicyStore store = store(random, 1000);
+        PolicyView view = PolicyView.of(store);
+        for (int i = 0; i < 200; i++) {
+            PolicyQuery query = query(random, store);
+            query.setSortBy(random.nextBoolean() ? "premium" : "name");
+            query.setSortOrder(random.nextBoolean() ? "asc" : "desc");
+
+            SortPermutation ordering = queryPlanner.ordering(store, query);
+            int[] expected = Arrays.stream(ordering.rowsBetween(0, store.size()))
+                    .filter(row -> matches(store, query, row))
+                    .toArray();
+            assertArrayEquals(expected, queryPlanner.execute(view, query), query.toString());
+        }
+    }
+
+    @Test
+    void smallestMatchesAFullSort() {
+        Random random = new Random(17);
+        for (int i = 0; i < 300; i++) {
+            int count = random.nextInt(400);
+            int[] values = random.ints(count + random.nextInt(5), -50, 200).toArray();
+            int k = random.nextInt(count + 3);
+
+            int[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            assertArrayEquals(Arrays.copyOf(sorted, Math.min(k, count)), QueryPlanner.smallest(values.clone(), count, k),
+                    "k=" + k + " of " + count);
+        }
+    }
+
+    @Test
+    void topPagesMatchTheHeadOfTheFullSort() {
+        Random random = new Random(19);
+        PolicyStore store = store(random, 3000);
+        PolicyView view = PolicyView.of(store);
+        for (int i = 0; i < 200; i++) {
+            PolicyQuery query = query(random, store);
+            query.setSortBy(new String[]{"name", "premium", "coverage", "value"}[random.nextInt(4)]);
+            query.setSortOrder(random.nextBoolean() ? "asc" : "desc");
+            int[] all = queryPlanner.execute(view, query);
+            for (int limit : new int[]{1, 10, 37}) {
+                QueryPlanner.RowPage page = queryPlanner.page(view, query, -1, limit);
+
+                assertArrayEquals(Arrays.copyOf(all, Math.min(limit, all.length)), page.rows(), query + " limit " + limit);
+                assertEquals(all.length > limit, page.hasMore());
+                if (page.hasMore()) {
+                    RowKey last = queryPlanner.keyOf(view, query, page.rows()[limit - 1]);
+                    assertArrayEquals(Arrays.copyOfRange(all, limit, Math.min(2 * limit, all.length)),
+                            queryPlanner.pageAfter(view, query, last, limit).rows(), query + " second page of " + limit);
+                }
+            }
+        }
+    }
+
+    @Test
+    void mostSelectivePredicateRunsFirst() {
+        PolicyStore.Builder builder = new PolicyStore.Builder(100);
+        for (int row = 0; row < 100; row++) {
+            builder.add((long) row, "Policy " + row, row < 5 ? "Life" : "Health", row, row * 10);
+        }
+        PolicyStore store = builder.build();
+        PolicyQuery query = new PolicyQuery(10, 90, "Life", 0, null, null, null);
+
+        List<QueryPlanner.Step> steps = queryPlanner.plan(store, query);
+
+        assertEquals(3, steps.size());
+        assertInstanceOf(QueryPlanner.TypeStep.class, steps.get(0));
+        assertInstanceOf(QueryPlanner.PremiumRangeStep.class, steps.get(1));
+        assertInstanceOf(QueryPlanner.CoverageStep.class, steps.get(2));
+        assertEquals(5, steps.get(0).estimate());
+        assertEquals(0, queryPlanner.execute(PolicyView.of(store), query).length);
+    }
+
+    @Test
+    void recordsTheRowsInAndOutOfEachStage() {
+        PolicyStore.Builder builder = new PolicyStore.Builder(100);
+        for (int row = 0; row < 100; row++) {
+            builder.add((long) row, "Policy " + row, row < 5 ? "Life" : "Health", row, row * 10);
+        }
+        PolicyStore store = builder.build();
+        QueryStageMetrics stageMetrics = new QueryStageMetrics();
+        PolicyQuery query = new PolicyQuery(2, 10, "Life", null, "desc", null, "premium");
+
+        assertEquals(3, new QueryPlanner(stageMetrics).execute(PolicyView.of(store), query).length);
+
+        StringBuilder out = new StringBuilder();
+        stageMetrics.writeTo(out);
+        String metrics = out.toString();
+        assertTrue(metrics.contains("insurance_query_stage_rows_in_total{stage=\"type\",mode=\"lookup\"} 100\n"), metrics);
+        assertTrue(metrics.contains("insurance_query_stage_rows_out_total{stage=\"type\",mode=\"lookup\"} 5\n"), metrics);
+        assertTrue(metrics.contains("insurance_query_stage_rows_in_total{stage=\"premium\",mode=\"filter\"} 5\n"), metrics);
+        assertTrue(metrics.contains("insurance_query_stage_rows_out_total{stage=\"premium\",mode=\"filter\"} 3\n"), metrics);
+        assertTrue(metrics.contains("insurance_query_stage_rows_in_total{stage=\"sort\",mode=\"order\"} 3\n"), metrics);
+        assertTrue(metrics.contains("insurance_query_stage_duration_seconds_count{stage=\"sort\",mode=\"order\"} 1\n"), metrics);
+        assertFalse(metrics.contains("stage=\"coverage\""), metrics);
+    }
+
+    @Test
+    void incompletePremiumRangeIsIgnored() {
+        Random random = new Random(3);
+        PolicyStore store = store(random, 200);
+        PolicyQuery query = new PolicyQuery(500, null, null, null, null, null, null);
+
+        assertTrue(queryPlanner.plan(store, query).isEmpty());
+        assertEquals(store.size(), queryPlanner.execute(PolicyView.of(store), query).length);
+    }
+
+    private static int[] scan(PolicyStore store, PolicyQuery query) {
+        int[] rows = new int[store.size()];
+        int found = 0;
+        for (int row = 0; row < store.size(); row++) {
+            if (matches(store, query, row)) {
+                rows[found++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, found);
+    }
+
+    private static boolean matches(PolicyStore store, PolicyQuery query, int row) {
+        if (query.getMinPremium() != null && query.getMaxPremium() != null) {
+            int premium = store.premium(row);
+            if (premium == PolicyStore.NULL_INT || premium < query.getMinPremium() || premium > query.getMaxPremium()) {
+                return false;
+            }
+        }
+        if (query.getPolicyType() != null && !query.getPolicyType().isBlank()) {
+            int typeCode = store.typeCode(row);
+            if (typeCode == PolicyStore.NO_TYPE || !store.typeDictionary()[typeCode].equalsIgnoreCase(query.getPolicyType())) {
+                return false;
+            }
+        }
+        if (query.getMinCoverage() != null) {
+            int coverage = store.coverage(row);
+            if (coverage == PolicyStore.NULL_INT || coverage < query.getMinCoverage()) {
+                return false;
+            }
+        }
+        if (query.getName() != null && !query.getName().isBlank()) {
+            String name = store.name(row);
+            return name != null && name.toLowerCase(Locale.ROOT).contains(query.getName().toLowerCase(Locale.ROOT));
+        }
+        return true;
+    }
+
+    private static PolicyQuery query(Random random, PolicyStore store) {
+        PolicyQuery query = new PolicyQuery();
+        if (random.nextInt(3) == 0) {
+            int min = random.nextInt(1000);
+            query.setMinPremium(min);
+            query.setMaxPremium(min + random.nextInt(400));
+        }
+        if (random.nextInt(3) == 0) {
+            String type = random.nextInt(10) == 0 ? "Travel" : TYPES[random.nextInt(TYPES.length)];
+            query.setPolicyType(random.nextBoolean() ? type.toUpperCase() : type);
+        }
+        if (random.nextInt(3) == 0) {
+            query.setMinCoverage(random.nextInt(100_000));
+        }
+        if (random.nextInt(2) == 0) {
+            String name = store.name(random.nextInt(store.size()));
+            if (name != null) {
+                int from = random.nextInt(name.length());
+                query.setName(name.substring(from, Math.min(name.length(), from + 1 + random.nextInt(6))).toUpperCase());
+            }
+        }
+        return query;
+    }
+
+    private static PolicyStore store(Random random, int size) {
+        PolicyStore.Builder builder = new PolicyStore.Builder(size);
+        for (int row = 0; row < size; row++) {
+            String name = random.nextInt(50) == 0 ? null
+                    : WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(100);
+            builder.add((long) row + 1, name,
+                    random.nextInt(40) == 0 ? null : TYPES[random.nextInt(TYPES.length)],
+                    random.nextInt(40) == 0 ? null : random.nextInt(1400),
+                    random.nextInt(40) == 0 ? null : random.nextInt(100_000));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.insurance.service;
+
+import com.example.insurance.model.Policy;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardCoordinatorTest {
+
+    private static final Comparator<Policy> BY_PREMIUM = Comparator.comparing(Policy::getPremium);
+
+    @Test
+    void mergesSortedPartsInOrder() {
+        List<List<Policy>> parts = List.of(
+                List.of(policy(1, 10), policy(4, 40), policy(7, 70)),
+                List.of(),
+                List.of(policy(2, 20), policy(3, 30), policy(9, 90)));
+        int[] taken = new int[parts.size()];
+
+        List<Policy> merged = ShardCoordinator.merge(parts, BY_PREMIUM, Integer.MAX_VALUE, taken);
+
+        assertEquals(List.of(1L, 2L, 3L, 4L, 7L, 9L), ids(merged));
+        assertArrayEquals(new int[]{3, 0, 3}, taken);
+    }
+
+    @Test
+    void stopsAtTheLimitAndCountsWhatEachPartGave() {
+        List<List<Policy>> parts = List.of(
+                List.of(policy(1, 10), policy(4, 40)),
+                List.of(policy(2, 20), policy(3, 30)));
+        int[] taken = new int[parts.size()];
+
+        List<Policy> merged = ShardCoordinator.merge(parts, BY_PREMIUM, 3, taken);
+
+        assertEquals(List.of(1L, 2L, 3L), ids(merged));
+        assertArrayEquals(new int[]{1, 2}, taken);
+    }
+
+    @Test
+    void breaksTiesTowardsTheLowerShard() {
+        List<List<Policy>> parts = List.of(
+                List.of(policy(5, 10)),
+                List.of(policy(6, 10)),
+                List.of(policy(4, 10)));
+
+        List<Policy> merged = ShardCoordinator.merge(parts, BY_PREMIUM, Integer.MAX_VALUE, new int[parts.size()]);
+
+        assertEquals(List.of(5L, 6L, 4L), ids(merged));
+    }
+
+    @Test
+    void coordinatesEveryPoliciesPathOnlyWhenPartitioned() {
+        ShardCoordinator single = new ShardCoordinator(new ObjectMapper(), "", 1000);
+        ShardCoordinator coordinator = new ShardCoordinator(new ObjectMapper(), "http://shard-0/,http://shard-1", 1000);
+        try {
+            assertFalse(single.coordinates("/policies/42"));
+            assertTrue(coordinator.coordinates("/policies"));
+            assertTrue(coordinator.coordinates("/policies/42"));
+            assertTrue(coordinator.coordinates("/policies/facets"));
+            assertFalse(coordinator.coordinates("/policiesX"));
+            assertFalse(coordinator.coordinates("/shard/policies"));
+        } finally {
+            single.stop();
+            coordinator.stop();
+        }
+    }
+
+    private static Policy policy(long id, int premium) {
+        return new Policy(id, "Policy " + id, "Life", premium, 1000);
+    }
+
+    private static List<Long> ids(List<Policy> policies) {
+        return policies.stream().map(Policy::getId).toList();
+    }
+}
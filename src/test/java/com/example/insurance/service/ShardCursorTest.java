@@ -0,0 +1,46 @@
+package com.example.insurance.service;
+
+import com.example.insurance.exception.InvalidRequestException;
+import com.example.insurance.model.PolicyQuery;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardCursorTest {
+
+    @Test
+    void roundTripsVersionsAndPositions() {
+        PolicyQuery query = query("coverage");
+        ShardCursor cursor = new ShardCursor(new long[]{11, 22, 33}, new int[]{ShardCursor.START, 7, ShardCursor.EXHAUSTED});
+
+        ShardCursor decoded = ShardCursor.decode(cursor.encode(query), query, 3);
+
+        for (int shard = 0; shard < 3; shard++) {
+            assertEquals(cursor.version(shard), decoded.version(shard));
+            assertEquals(cursor.position(shard), decoded.position(shard));
+        }
+    }
+
+    @Test
+    void rejectsCursorsOfOtherQueriesOrClusters() {
+        String cursor = new ShardCursor(new long[]{1, 2}, new int[]{3, 4}).encode(query("name"));
+
+        assertThrows(InvalidRequestException.class, () -> ShardCursor.decode(cursor, query("premium"), 2));
+        assertThrows(InvalidRequestException.class, () -> ShardCursor.decode(cursor, query("name"), 3));
+        assertThrows(InvalidRequestException.class, () -> ShardCursor.decode(cursor, query("name"), 1));
+        assertThrows(InvalidRequestException.class, () -> ShardCursor.decode("%%%", query("name"), 2));
+    }
+
+    @Test
+    void rejectsPositionsBelowExhausted() {
+        String cursor = new ShardCursor(new long[]{1}, new int[]{-3}).encode(query("name"));
+
+        assertThrows(InvalidRequestException.class, () -> ShardCursor.decode(cursor, query("name"), 1));
+    }
+
+    private static PolicyQuery query(String sortBy) {
+        PolicyQuery query = new PolicyQuery();
+        query.setSortBy(sortBy);
+        return query;
+    }
+}
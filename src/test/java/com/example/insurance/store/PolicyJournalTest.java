@@ -0,0 +1,138 @@
+package com.example.insurance.store;
+
+import com.example.insurance.model.Policy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PolicyJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackAppendedChangesInOrder() throws IOException {
+        Path path = directory.resolve("policies.journal");
+        try (PolicyJournal journal = PolicyJournal.open(path)) {
+            journal.append(List.of(upsert(1, "Alpha"), upsert(2, "Beta")));
+            journal.append(List.of(PolicyChange.delete(1)));
+            assertEquals(3, journal.records());
+        }
+
+        assertEquals(List.of("1 Alpha", "2 Beta", "1 deleted"), describe(PolicyJournal.read(path)));
+    }
+
+    @Test
+    void cutsOffATornRecord() throws IOException {
+        Path path = directory.resolve("policies.journal");
+        long intact;
+        try (PolicyJournal journal = PolicyJournal.open(path)) {
+            journal.append(List.of(upsert(1, "Alpha")));
+            intact = journal.length();
+            journal.append(List.of(upsert(2, "Beta")));
+        }
+        // a crash in the middle of the second record
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(intact + 6);
+        }
+
+        assertEquals(List.of("1 Alpha"), describe(PolicyJournal.read(path)));
+        try (PolicyJournal journal = PolicyJournal.open(path)) {
+            assertEquals(intact, journal.length());
+            assertEquals(intact, Files.size(path));
+            journal.append(List.of(upsert(3, "Gamma")));
+        }
+        assertEquals(List.of("1 Alpha", "3 Gamma"), describe(PolicyJournal.read(path)));
+    }
+
+    @Test
+    void cutsOffARecordFailingItsChecksum() throws IOException {
+        Path path = directory.resolve("policies.journal");
+        long intact;
+        try (PolicyJournal journal = PolicyJournal.open(path)) {
+            journal.append(List.of(upsert(1, "Alpha")));
+            intact = journal.length();
+            journal.append(List.of(upsert(2, "Beta")));
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // flip a byte of the second record's payload, after its length and checksum
+            long offset = intact + Integer.BYTES * 2 + 3;
+            ByteBuffer value = ByteBuffer.allocate(1);
+            channel.read(value, offset);
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) ~value.get(0)}), offset);
+        }
+
+        assertEquals(List.of("1 Alpha"), describe(PolicyJournal.read(path)));
+        try (PolicyJournal journal = PolicyJournal.open(path)) {
+            assertEquals(1, journal.records());
+            assertEquals(intact, Files.size(path));
+        }
+    }
+
+    @Test
+    void rejectsAFileThatIsNotAJournal() throws IOException {
+        Path path = directory.resolve("policies.journal");
+        Files.writeString(path, "[{\"id\": 1, \"name\": \"Alpha\"}]");
+
+        assertThrows(IOException.class, () -> PolicyJournal.read(path));
+        assertThrows(IOException.class, () -> PolicyJournal.open(path));
+    }
+
+    @Test
+    void sealingMovesChangesToASegmentAndContinuesInAnEmptyFile() throws IOException {
+        Path path = directory.resolve("policies.journal");
+        try (PolicyJournal journal = PolicyJournal.open(path)) {
+            journal.append(List.of(upsert(1, "Alpha")));
+            Path segment = journal.seal();
+
+            assertEquals(directory.resolve("policies.journal.1"), segment);
+            assertEquals(0, journal.records());
+            assertEquals(List.of("1 Alpha"), describe(PolicyJournal.read(segment)));
+            assertEquals(List.of(), PolicyJournal.read(path));
+
+            journal.append(List.of(upsert(2, "Beta")));
+        }
+        assertEquals(List.of("2 Beta"), describe(PolicyJournal.read(path)));
+    }
+
+    @Test
+    void replaysSegmentsInSequenceOrderBeforeTheJournal() throws IOException {
+        Path path = directory.resolve("policies.journal");
+        List<String> expected = new ArrayList<>();
+        try (PolicyJournal journal = PolicyJournal.open(path)) {
+            // more than nine segments, so that name order and sequence order differ
+            for (int i = 1; i <= 12; i++) {
+                journal.append(List.of(upsert(i, "Policy " + i)));
+                expected.add(i + " Policy " + i);
+                journal.seal();
+            }
+            journal.append(List.of(PolicyChange.delete(3)));
+            expected.add("3 deleted");
+        }
+        Files.writeString(directory.resolve("policies.journal.tmp"), "not a segment");
+
+        assertEquals(12, PolicyJournal.segments(path).size());
+        assertEquals(directory.resolve("policies.journal.12"), PolicyJournal.segments(path).getLast());
+        assertEquals(expected, describe(PolicyJournal.readAll(path)));
+    }
+
+    private static PolicyChange upsert(long id, String name) {
+        return PolicyChange.upsert(id, new Policy(null, name, "Life", 100, 1000));
+    }
+
+    private static List<String> describe(List<PolicyChange> changes) {
+        return changes.stream()
+                .map(change -> change.id() + " " + (change.isDelete() ? "deleted" : change.policy().getName()))
+                .toList();
+    }
+}
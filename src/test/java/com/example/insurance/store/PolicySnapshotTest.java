@@ -0,0 +1,120 @@
+package com.example.insurance.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PolicySnapshotTest {
+
+    private static final String[] TYPES = {"Health", "Life", "Auto", "Home"};
+    private static final PolicySnapshot.Source SOURCE = new PolicySnapshot.Source(0x1234L, 5678, 9012);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsTheStoreAndItsIndexes() throws Exception {
+        PolicyStore store = store(new Random(8), 3000);
+        Path path = directory.resolve("policies.snapshot");
+
+        PolicySnapshot.write(store, SOURCE, 0, 1, path);
+        PolicyStore read = PolicySnapshot.read(path, SOURCE, 0, 1);
+
+        assertNotNull(read);
+        assertEquals(store.size(), read.size());
+        assertEquals(store.version(), read.version());
+        assertArrayEquals(store.typeDictionary(), read.typeDictionary());
+        assertArrayEquals(json(store), json(read));
+        for (int row = 0; row < store.size(); row++) {
+            assertEquals(store.lowerName(row), read.lowerName(row));
+        }
+        for (SortKey key : SortKey.values()) {
+            for (boolean descending : new boolean[]{false, true}) {
+                SortPermutation permutation = read.permutation(key, descending);
+                assertArrayEquals(store.permutation(key, descending).rowsBetween(0, store.size()), permutation.rowsBetween(0, read.size()));
+                assertEquals(17, permutation.positionOf(permutation.rowAt(17)));
+            }
+        }
+        for (int code = 0; code < TYPES.length; code++) {
+            assertArrayEquals(store.rowsOfType(code), read.rowsOfType(code));
+        }
+        assertArrayEquals(store.premiumIndex().rowsBetween(200, 400), read.premiumIndex().rowsBetween(200, 400));
+        assertArrayEquals(store.coverageIndex().rowsAtLeast(50_000), read.coverageIndex().rowsAtLeast(50_000));
+        assertArrayEquals(store.rowsWithName("plus"), read.rowsWithName("plus"));
+        assertArrayEquals(store.rowsWithPrefix("gold", 20), read.rowsWithPrefix("gold", 20));
+        assertEquals(store.rowOfId(1234), read.rowOfId(1234));
+        assertEquals(store.maxId(), read.maxId());
+    }
+
+    @Test
+    void roundTripsAnEmptyStore() throws Exception {
+        Path path = directory.resolve("empty.snapshot");
+
+        PolicySnapshot.write(PolicyStore.empty(), SOURCE, 0, 1, path);
+
+        assertEquals(0, PolicySnapshot.read(path, SOURCE, 0, 1).size());
+    }
+
+    @Test
+    void staleSnapshotsAreNotRead() throws Exception {
+        Path path = directory.resolve("policies.snapshot");
+        PolicySnapshot.write(store(new Random(1), 10), SOURCE, 1, 3, path);
+
+        assertEquals(SOURCE, PolicySnapshot.source(path, 1, 3));
+        assertNull(PolicySnapshot.source(path, 0, 3));
+        assertNull(PolicySnapshot.source(path, 1, 1));
+        assertNotNull(PolicySnapshot.read(path, SOURCE, 1, 3));
+        assertNull(PolicySnapshot.read(path, new PolicySnapshot.Source(0x1234L, 5678, 9013), 1, 3));
+        assertNull(PolicySnapshot.read(path, new PolicySnapshot.Source(0x1235L, 5678, 9012), 1, 3));
+        assertNull(PolicySnapshot.read(path, SOURCE, 2, 3));
+        assertNull(PolicySnapshot.read(directory.resolve("missing.snapshot"), SOURCE, 0, 1));
+        assertNull(PolicySnapshot.source(directory.resolve("missing.snapshot"), 0, 1));
+    }
+
+    @Test
+    void corruptSnapshotsAreRejected() throws Exception {
+        Path path = directory.resolve("policies.snapshot");
+        PolicySnapshot.write(store(new Random(2), 500), SOURCE, 0, 1, path);
+        byte[] bytes = Files.readAllBytes(path);
+
+        // a flipped bit anywhere in the payload fails the trailer checksum
+        byte[] flipped = bytes.clone();
+        flipped[bytes.length / 2] ^= 0x10;
+        assertThrows(IOException.class, () -> PolicySnapshot.read(Files.write(path, flipped), SOURCE, 0, 1));
+
+        assertThrows(IOException.class, () -> PolicySnapshot.read(Files.write(path, Arrays.copyOf(bytes, bytes.length - 100)), SOURCE, 0, 1));
+        assertThrows(IOException.class, () -> PolicySnapshot.read(Files.write(path, Arrays.copyOf(bytes, 4)), SOURCE, 0, 1));
+
+        byte[] foreign = bytes.clone();
+        foreign[0] ^= 0x01;
+        assertThrows(IOException.class, () -> PolicySnapshot.read(Files.write(path, foreign), SOURCE, 0, 1));
+        assertThrows(IOException.class, () -> PolicySnapshot.source(path, 0, 1));
+    }
+
+    private static byte[] json(PolicyStore store) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        store.policiesInRange(0, store.size()).writeJson(out);
+        return out.toByteArray();
+    }
+
+    private static PolicyStore store(Random random, int size) {
+        String[] words = {"Family", "Basic", "Plus", "Term", "Gold", "Care"};
+        PolicyStore.Builder builder = new PolicyStore.Builder(size);
+        for (int row = 0; row < size; row++) {
+            builder.add(random.nextInt(50) == 0 ? null : (long) random.nextInt(size * 2),
+                    random.nextInt(50) == 0 ? null : words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)] + " \"" + row + "\"",
+                    random.nextInt(50) == 0 ? null : TYPES[random.nextInt(TYPES.length)],
+                    random.nextInt(50) == 0 ? null : random.nextInt(1000),
+                    random.nextInt(50) == 0 ? null : random.nextInt(100_000));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.insurance.store;
+
+import com.example.insurance.model.Policy;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PolicyStoreTest {
+
+    @Test
+    void policyAtReturnsTheValuesItWasBuiltFrom() {
+        PolicyStore store = new PolicyStore.Builder(1)
+                .add(1L, "Alpha", "Health", 100, 1000)
+                .add(null, null, null, null, null)
+                .add(3L, "Gamma", "Life", 0, -5)
+                .build();
+
+        assertEquals(3, store.size());
+        assertEquals("1|Alpha|Health|100|1000", describe(store.policyAt(0)));
+        assertEquals("null|null|null|null|null", describe(store.policyAt(1)));
+        assertEquals("3|Gamma|Life|0|-5", describe(store.policyAt(2)));
+        assertEquals(PolicyStore.NULL_LONG, store.id(1));
+        assertEquals(PolicyStore.NULL_INT, store.premium(1));
+        assertEquals(PolicyStore.NO_TYPE, store.typeCode(1));
+    }
+
+    @Test
+    void typesAreDictionaryEncodedWithAPostingListEach() {
+        PolicyStore store = new PolicyStore.Builder(4)
+                .add(1L, "Alpha", "Health", 100, 1000)
+                .add(2L, "Beta", "Life", 200, 2000)
+                .add(3L, "Gamma", "Health", 300, 3000)
+                .add(4L, "Delta", null, 400, 4000)
+                .build();
+
+        assertArrayEquals(new String[]{"Health", "Life"}, store.typeDictionary());
+        assertEquals(List.of("Health", "Life"), List.copyOf(store.typeNames()));
+        assertArrayEquals(new int[]{0, 2}, store.rowsOfType(0));
+        assertArrayEquals(new int[]{1}, store.rowsOfType(1));
+        assertArrayEquals(new boolean[]{true, false}, store.typeMask("HEALTH"));
+        assertArrayEquals(new boolean[]{false, false}, store.typeMask("Auto"));
+    }
+
+    @Test
+    void lookupsByIdAndName() {
+        PolicyStore store = new PolicyStore.Builder(3)
+                .add(7L, "Family Health Plus", "Health", 100, 1000)
+                .add(3L, "Term Life", "Life", 200, 2000)
+                .add(9L, "Health Basic", "Health", 300, 3000)
+                .build();
+
+        assertEquals(1, store.rowOfId(3));
+        assertEquals(-1, store.rowOfId(4));
+        assertEquals(9, store.maxId());
+        assertEquals("family health plus", store.lowerName(0));
+        assertArrayEquals(new int[]{0, 2}, store.rowsWithName("HEALTH"));
+        assertArrayEquals(new int[]{0, 1}, store.rowsWithName("m"));
+        assertEquals(100, store.premiumIndex().min());
+        assertEquals(300, store.premiumIndex().max());
+    }
+
+    @Test
+    void versionIdentifiesTheContents() {
+        PolicyStore store = catalogue("Beta");
+
+        assertEquals(store.version(), catalogue("Beta").version());
+        assertNotEquals(store.version(), catalogue("Beta 2").version());
+        assertNotEquals(store.version(), PolicyStore.empty().version());
+    }
+
+    @Test
+    void builderGrowsPastItsExpectedSize() {
+        PolicyStore.Builder builder = new PolicyStore.Builder(0);
+        for (int row = 0; row < 1000; row++) {
+            builder.add((long) row, "Policy " + row, row % 2 == 0 ? "Health" : "Life", row, row * 10);
+        }
+        PolicyStore store = builder.build();
+
+        assertEquals(1000, store.size());
+        assertEquals("999|Policy 999|Life|999|9990", describe(store.policyAt(999)));
+        assertEquals(500, store.rowsOfType(1).length);
+    }
+
+    private static PolicyStore catalogue(String secondName) {
+        return new PolicyStore.Builder(2)
+                .add(1L, "Alpha", "Health", 100, 1000)
+                .add(2L, secondName, "Life", 200, 2000)
+                .build();
+    }
+
+    private static String describe(Policy policy) {
+        return policy.getId() + "|" + policy.getName() + "|" + policy.getType() + "|" + policy.getPremium() + "|" + policy.getCoverage();
+    }
+}
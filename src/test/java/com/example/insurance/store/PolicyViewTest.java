@@ -0,0 +1,153 @@
+package com.example.insurance.store;
+
+import com.example.insurance.model.Policy;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PolicyViewTest {
+
+    private static final String[] TYPES = {"Health", "Life", "Auto", "Home"};
+
+    @Test
+    void withChangesListsWhatFoldLists() {
+        Random random = new Random(42);
+        PolicyStore base = store(random, 500);
+        PolicyView view = PolicyView.of(base);
+        for (int round = 0; round < 5; round++) {
+            view = view.withChanges(changes(random, 60, 700));
+            PolicyStore folded = view.fold();
+
+            assertEquals(folded.size(), view.size());
+            assertArrayEquals(folded.typeDictionary(), view.typeDictionary());
+            assertEquals(folded.premiumIndex().min(), view.minPremium());
+            assertEquals(folded.premiumIndex().max(), view.maxPremium());
+            assertEquals(folded.coverageIndex().min(), view.minCoverage());
+            assertEquals(folded.coverageIndex().max(), view.maxCoverage());
+            assertEquals(describe(folded, storageOrder(folded)), describe(view, visibleRows(view, null, false)));
+            for (SortKey key : SortKey.values()) {
+                for (boolean descending : new boolean[]{false, true}) {
+                    SortPermutation ordering = folded.permutation(key, descending);
+                    int[] foldedRows = ordering.rowsBetween(0, folded.size());
+                    assertEquals(describe(folded, foldedRows), describe(view, visibleRows(view, key, descending)),
+                            key + (descending ? " descending" : " ascending"));
+                }
+            }
+        }
+    }
+
+    @Test
+    void rowOfIdFollowsTheLatestChange() {
+        PolicyStore base = new PolicyStore.Builder(2)
+                .add(1L, "Alpha", "Health", 100, 1000)
+                .add(2L, "Beta", "Life", 200, 2000)
+                .build();
+        PolicyView view = PolicyView.of(base).withChanges(List.of(
+                PolicyChange.delete(1),
+                PolicyChange.upsert(3, new Policy(null, "Gamma", "Auto", 300, 3000)),
+                PolicyChange.upsert(2, new Policy(null, "Beta 2", "Life", 250, 2500))));
+
+        assertEquals(-1, view.rowOfId(1));
+        assertEquals("Gamma", view.policyAt(view.rowOfId(3)).getName());
+        assertEquals("Beta 2", view.policyAt(view.rowOfId(2)).getName());
+        assertEquals(2, view.size());
+        assertEquals(3, view.maxId());
+    }
+
+    @Test
+    void rowKeysKeepTheirPlaceAcrossLaterChanges() {
+        PolicyStore base = new PolicyStore.Builder(3)
+                .add(1L, "Alpha", "Health", 100, 1000)
+                .add(2L, "Beta", "Life", 200, 2000)
+                .add(3L, "Gamma", "Auto", 300, 3000)
+                .build();
+        PolicyView view = PolicyView.of(base).withChanges(List.of(
+                PolicyChange.upsert(10, new Policy(null, "Delta", "Auto", 400, 4000)),
+                PolicyChange.upsert(11, new Policy(null, "Epsilon", "Auto", 500, 5000))));
+        RowKey epsilon = view.keyOf(null, view.rowOfId(11));
+
+        // deleting an earlier new id must not move the later one in storage order
+        PolicyView later = view.withChanges(List.of(PolicyChange.delete(10)));
+        assertEquals(0, later.compare(null, false, later.rowOfId(11), epsilon));
+        assertTrue(later.compare(null, false, later.rowOfId(3), epsilon) < 0);
+
+        RowKey beta = view.keyOf(SortKey.PREMIUM, view.rowOfId(2));
+        PolicyView changed = view.withChanges(List.of(PolicyChange.upsert(2, new Policy(null, "Beta", "Life", 450, 2000))));
+        assertTrue(changed.compare(SortKey.PREMIUM, false, changed.rowOfId(3), beta) > 0);
+        assertTrue(changed.compare(SortKey.PREMIUM, false, changed.rowOfId(1), beta) < 0);
+    }
+
+    @Test
+    void rebaseKeepsOnlyLaterChanges() {
+        Random random = new Random(7);
+        PolicyStore base = store(random, 200);
+        PolicyView folded = PolicyView.of(base).withChanges(changes(random, 30, 250));
+        PolicyView current = folded.withChanges(changes(random, 10, 250));
+        PolicyStore store = folded.fold();
+
+        PolicyView rebased = current.rebase(store, folded);
+
+        assertSame(store, rebased.base());
+        assertEquals(describe(current.fold(), storageOrder(current.fold())), describe(rebased, visibleRows(rebased, null, false)));
+        assertTrue(rebased.delta().size() <= 10);
+    }
+
+    private static PolicyStore store(Random random, int size) {
+        PolicyStore.Builder builder = new PolicyStore.Builder(size);
+        for (int i = 0; i < size; i++) {
+            builder.add(policy(random, (long) i + 1));
+        }
+        return builder.build();
+    }
+
+    private static List<PolicyChange> changes(Random random, int count, int maxId) {
+        List<PolicyChange> changes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            long id = 1 + random.nextInt(maxId);
+            changes.add(random.nextInt(4) == 0 ? PolicyChange.delete(id) : PolicyChange.upsert(id, policy(random, id)));
+        }
+        return changes;
+    }
+
+    private static Policy policy(Random random, long id) {
+        // few distinct values, so that every ordering has ties to break by place
+        return new Policy(id, "Policy " + random.nextInt(40), TYPES[random.nextInt(TYPES.length)],
+                random.nextInt(10) == 0 ? null : random.nextInt(20) * 50,
+                random.nextInt(10) == 0 ? null : random.nextInt(20) * 1000);
+    }
+
+    private static int[] storageOrder(PolicyStore store) {
+        int[] rows = new int[store.size()];
+        Arrays.setAll(rows, row -> row);
+        return rows;
+    }
+
+    private static int[] visibleRows(PolicyView view, SortKey key, boolean descending) {
+        List<Integer> rows = new ArrayList<>();
+        for (int row = 0; row < view.rowCount(); row++) {
+            if (row >= view.base().size() || !view.isHidden(row)) {
+                rows.add(row);
+            }
+        }
+        rows.sort(Comparator.comparing(row -> row, (row, otherRow) -> view.compare(key, descending, row, otherRow)));
+        return rows.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static List<String> describe(PolicyStore store, int[] rows) {
+        return describe(store.policiesAt(rows, 0, rows.length));
+    }
+
+    private static List<String> describe(PolicyView view, int[] rows) {
+        return describe(view.policiesAt(rows, 0, rows.length));
+    }
+
+    private static List<String> describe(List<Policy> policies) {
+        return policies.stream().map(Policy::toString).toList();
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.insurance.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrefixIndexTest {
+
+    @Test
+    void returnsMatchesInNameOrderUpToTheLimit() {
+        String[] names = {"health plus", "auto basic", null, "health", "home", "health plus", "healthy"};
+        PrefixIndex index = PrefixIndex.build(names, names.length);
+
+        assertArrayEquals(new int[]{3, 0, 5, 6}, index.rowsWithPrefix("health", 10, names));
+        assertArrayEquals(new int[]{3, 0}, index.rowsWithPrefix("health", 2, names));
+        assertArrayEquals(new int[]{4}, index.rowsWithPrefix("ho", 10, names));
+        assertArrayEquals(new int[0], index.rowsWithPrefix("life", 10, names));
+        assertArrayEquals(new int[0], index.rowsWithPrefix("zzz", 10, names));
+        assertEquals(6, index.rowsWithPrefix("", 10, names).length);
+    }
+
+    @Test
+    void findsWhatStartsWithFinds() {
+        Random random = new Random(9);
+        int size = 2000;
+        String[] names = new String[size];
+        for (int row = 0; row < size; row++) {
+            names[row] = random.nextInt(30) == 0 ? null : text(random, random.nextInt(8));
+        }
+        PrefixIndex index = PrefixIndex.build(names, size);
+        for (int i = 0; i < 300; i++) {
+            String prefix = text(random, random.nextInt(4));
+            int limit = 1 + random.nextInt(50);
+
+            int[] expected = IntStream.range(0, size).boxed()
+                    .filter(row -> names[row] != null && names[row].startsWith(prefix))
+                    .sorted(Comparator.<Integer, String>comparing(row -> names[row]).thenComparing(row -> row))
+                    .limit(limit)
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            assertArrayEquals(expected, index.rowsWithPrefix(prefix, limit, names), prefix);
+        }
+    }
+
+    private static String text(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append("abcd".charAt(random.nextInt(4)));
+        }
+        return text.toString();
+    }
+}
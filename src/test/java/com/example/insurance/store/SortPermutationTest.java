@@ -0,0 +1,96 @@
+package com.example.insurance.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SortPermutationTest {
+
+    @Test
+    void descendingKeepsTiesInRowOrder() {
+        int[] premiums = {300, 100, 300, PolicyStore.NULL_INT, 100, 200, 300, PolicyStore.NULL_INT};
+        SortPermutation ascending = SortPermutation.byInt(premiums, premiums.length);
+        SortPermutation descending = ascending.descending((row, otherRow) -> premiums[row] == premiums[otherRow]);
+
+        assertArrayEquals(new int[]{3, 7, 1, 4, 5, 0, 2, 6}, ascending.rowsBetween(0, premiums.length));
+        assertArrayEquals(new int[]{0, 2, 6, 5, 1, 4, 3, 7}, descending.rowsBetween(0, premiums.length));
+    }
+
+    @Test
+    void descendingMatchesAStableSortOfInts() {
+        Random random = new Random(1);
+        int size = 3000;
+        int[] column = new int[size];
+        for (int row = 0; row < size; row++) {
+            column[row] = random.nextInt(20) == 0 ? PolicyStore.NULL_INT : random.nextInt(50) - 10;
+        }
+        SortPermutation ascending = SortPermutation.byInt(column, size);
+
+        assertOrder(ascending, size, Comparator.comparingInt(row -> column[row]));
+        assertOrder(ascending.descending((row, otherRow) -> column[row] == column[otherRow]), size,
+                Comparator.<Integer>comparingInt(row -> column[row]).reversed());
+    }
+
+    @Test
+    void descendingMatchesAStableSortOfDoublesWithMissingValues() {
+        Random random = new Random(2);
+        int size = 3000;
+        double[] column = new double[size];
+        for (int row = 0; row < size; row++) {
+            column[row] = random.nextInt(10) == 0 ? Double.NaN : random.nextInt(40) / 4.0;
+        }
+        // missing values first when ascending, last when descending
+        Comparator<Integer> byValue = Comparator.comparingDouble(row -> Double.isNaN(column[row]) ? Double.NEGATIVE_INFINITY : column[row]);
+        SortPermutation ascending = SortPermutation.byDouble(column, size);
+
+        assertOrder(ascending, size, byValue);
+        assertOrder(ascending.descending((row, otherRow) -> Double.compare(column[row], column[otherRow]) == 0), size, byValue.reversed());
+    }
+
+    @Test
+    void descendingMatchesAStableSortOfStrings() {
+        Random random = new Random(3);
+        int size = 2000;
+        String[] column = new String[size];
+        for (int row = 0; row < size; row++) {
+            column[row] = random.nextInt(15) == 0 ? null : "Policy " + (char) ('A' + random.nextInt(12));
+        }
+        Comparator<Integer> byName = Comparator.comparing(row -> column[row], Comparator.nullsFirst(Comparator.<String>naturalOrder()));
+        SortPermutation ascending = SortPermutation.byString(column, size);
+
+        assertOrder(ascending, size, byName);
+        assertOrder(ascending.descending((row, otherRow) -> Objects.equals(column[row], column[otherRow])), size, byName.reversed());
+    }
+
+    @Test
+    void sortOrdersASubsetAsTheFullOrderDoes() {
+        Random random = new Random(4);
+        int size = 500;
+        int[] column = IntStream.range(0, size).map(row -> random.nextInt(30)).toArray();
+        SortPermutation permutation = SortPermutation.byInt(column, size).descending((row, otherRow) -> column[row] == column[otherRow]);
+        int[] subset = IntStream.range(0, size).filter(row -> row % 3 == 0).toArray();
+
+        int[] expected = IntStream.of(permutation.rowsBetween(0, size)).filter(row -> row % 3 == 0).toArray();
+        assertArrayEquals(expected, permutation.sort(subset));
+        for (int position = 0; position < size; position++) {
+            assertEquals(position, permutation.positionOf(permutation.rowAt(position)));
+        }
+    }
+
+    /**
+     * Asserts the permutation lists the rows as a stable sort by the given order would, that is
+     * with ties in ascending row order.
+     */
+    private static void assertOrder(SortPermutation permutation, int size, Comparator<Integer> order) {
+        int[] expected = IntStream.range(0, size).boxed()
+                .sorted(order)
+                .mapToInt(Integer::intValue)
+                .toArray();
+        assertArrayEquals(expected, permutation.rowsBetween(0, size));
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.insurance.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrigramIndexTest {
+
+    @Test
+    void searchFindsWhatContainsFinds() {
+        // a small alphabet makes names share and repeat trigrams
+        assertMatchesScan(new Random(5), "abcü ", 3000);
+    }
+
+    @Test
+    void searchFindsWhatContainsFindsAcrossManyTrigrams() {
+        assertMatchesScan(new Random(6), "abcdefghijklmnopqrstuvwxyz", 5000);
+    }
+
+    @Test
+    void estimateIsAnUpperBound() {
+        String[] names = {"family health", "health plus", "term life", null, "healthy"};
+        TrigramIndex index = TrigramIndex.build(names, names.length);
+
+        assertEquals(3, index.estimate("health"));
+        assertEquals(0, index.estimate("dental"));
+        assertTrue(index.estimate("lth p") >= index.search("lth p", names).length);
+        assertArrayEquals(new int[]{1}, index.search("lth p", names));
+        assertArrayEquals(new int[0], index.search("ealth life", names));
+    }
+
+    @Test
+    void shortQueriesAreNotSupported() {
+        assertFalse(TrigramIndex.supports(null));
+        assertFalse(TrigramIndex.supports("ab"));
+        assertTrue(TrigramIndex.supports("abc"));
+    }
+
+    private static void assertMatchesScan(Random random, String alphabet, int size) {
+        String[] names = new String[size];
+        for (int row = 0; row < size; row++) {
+            names[row] = random.nextInt(30) == 0 ? null : text(random, alphabet, random.nextInt(13));
+        }
+        TrigramIndex index = TrigramIndex.build(names, size);
+        for (int i = 0; i < 500; i++) {
+            String query;
+            String name = names[random.nextInt(size)];
+            if (i % 2 == 0 && name != null && name.length() >= TrigramIndex.GRAM_LENGTH) {
+                int from = random.nextInt(name.length() - TrigramIndex.GRAM_LENGTH + 1);
+                query = name.substring(from, from + TrigramIndex.GRAM_LENGTH + random.nextInt(name.length() - from - 2));
+            } else {
+                query = text(random, alphabet, TrigramIndex.GRAM_LENGTH + random.nextInt(4));
+            }
+
+            int[] expected = scan(names, query);
+            assertArrayEquals(expected, index.search(query, names), query);
+            assertTrue(index.estimate(query) >= expected.length, query);
+        }
+    }
+
+    private static int[] scan(String[] names, String query) {
+        return IntStream.range(0, names.length)
+                .filter(row -> names[row] != null && names[row].contains(query))
+                .toArray();
+    }
+
+    private static String text(Random random, String alphabet, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+}